@@ -0,0 +1,360 @@
+package org.spongycastle.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A parser for DER encoded data held in a ByteBuffer, such as a MappedByteBuffer
+ * over a file.
+ * <p>
+ * Rather than building objects the parser moves over the encoding an element at a
+ * time, giving the tag, offset and length of the current element. Nothing is copied
+ * or allocated unless the contents are asked for, and an ASN1Primitive is only built
+ * for an element by {@link #toASN1Primitive()}. Offsets are absolute positions in the
+ * buffer, whose own position and limit are never changed.
+ * <p>
+ * Only definite length encodings can be parsed.
+ */
+public class ASN1BufferParser
+{
+    private final ByteBuffer buf;
+
+    /*
+     * The end of each enclosing level, the innermost last.
+     */
+    private int[] ends = new int[8];
+    private int depth = 0;
+
+    private int end;
+    private int next;
+
+    /*
+     * The current element, tag is -1 when there is none.
+     */
+    private int tag = -1;
+    private int tagNo;
+    private int start;
+    private int contentOffset;
+    private int contentLength;
+
+    /**
+     * Parse the elements between the buffer's position and its limit.
+     *
+     * @param buf the buffer holding the encoding.
+     */
+    public ASN1BufferParser(ByteBuffer buf)
+    {
+        this(buf, buf.position(), buf.remaining());
+    }
+
+    /**
+     * Parse the elements in a region of a buffer, which may start at any element.
+     *
+     * @param buf the buffer holding the encoding.
+     * @param offset the absolute position of the first element.
+     * @param length the number of bytes to parse.
+     */
+    public ASN1BufferParser(ByteBuffer buf, int offset, int length)
+    {
+        if (offset < 0 || length < 0 || offset > buf.limit() - length)
+        {
+            throw new IllegalArgumentException("offset and length do not fit in buffer.");
+        }
+
+        this.buf = buf;
+        this.next = offset;
+        this.end = offset + length;
+    }
+
+    /**
+     * Move to the next element at the current level.
+     *
+     * @return true if there is another element, false at the end of the level.
+     * @throws IOException if the element's header is corrupt or runs past the end of the level.
+     */
+    public boolean next()
+        throws IOException
+    {
+        tag = -1;
+
+        if (next >= end)
+        {
+            return false;
+        }
+
+        int pos = next;
+        int b = buf.get(pos++) & 0xff;
+        int no = b & 0x1f;
+
+        if (no == 0x1f)
+        {
+            no = 0;
+
+            int t = readByte(pos++, "EOF found inside tag value.");
+
+            // X.690-0207 8.1.2.4.2
+            // "c) bits 7 to 1 of the first subsequent octet shall not all be zero."
+            if ((t & 0x7f) == 0)
+            {
+                throw new IOException("corrupted stream - invalid high tag number found");
+            }
+
+            while ((t & 0x80) != 0)
+            {
+                no |= (t & 0x7f);
+                no <<= 7;
+                t = readByte(pos++, "EOF found inside tag value.");
+            }
+
+            no |= (t & 0x7f);
+        }
+
+        int length = readByte(pos++, "EOF found when length expected");
+
+        if (length == 0x80)
+        {
+            throw new IOException("indefinite-length encoding not supported");
+        }
+
+        if (length > 127)
+        {
+            int size = length & 0x7f;
+
+            if (size > 4)
+            {
+                throw new IOException("DER length more than 4 bytes: " + size);
+            }
+
+            length = 0;
+            for (int i = 0; i < size; i++)
+            {
+                length = (length << 8) + readByte(pos++, "EOF found reading length");
+            }
+
+            if (length < 0)
+            {
+                throw new IOException("corrupted stream - negative length found");
+            }
+        }
+
+        if (length > end - pos)
+        {
+            throw new IOException("corrupted stream - out of bounds length found");
+        }
+
+        this.start = next;
+        this.tag = b;
+        this.tagNo = no;
+        this.contentOffset = pos;
+        this.contentLength = length;
+        this.next = pos + length;
+
+        return true;
+    }
+
+    /**
+     * Move into the contents of the current element, which must be constructed. The
+     * first call to {@link #next()} then gives its first element.
+     */
+    public void descend()
+    {
+        checkCurrent();
+
+        if (!isConstructed())
+        {
+            throw new IllegalStateException("current element is not constructed.");
+        }
+
+        if (depth == ends.length)
+        {
+            int[] tmp = new int[depth * 2];
+            System.arraycopy(ends, 0, tmp, 0, depth);
+            ends = tmp;
+        }
+
+        ends[depth++] = end;
+
+        this.end = next;
+        this.next = contentOffset;
+        this.tag = -1;
+    }
+
+    /**
+     * Leave the element last descended into, skipping any of its contents not yet
+     * read. The next call to {@link #next()} gives the element following it.
+     */
+    public void ascend()
+    {
+        if (depth == 0)
+        {
+            throw new IllegalStateException("not inside a constructed element.");
+        }
+
+        this.next = end;
+        this.end = ends[--depth];
+        this.tag = -1;
+    }
+
+    /**
+     * @return the number of constructed elements the parser is inside.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return the identifier octet of the current element, including its class and
+     * constructed bits. For high tag numbers the low five bits are all set.
+     */
+    public int getTag()
+    {
+        checkCurrent();
+
+        return tag;
+    }
+
+    /**
+     * @return the tag number of the current element.
+     */
+    public int getTagNo()
+    {
+        checkCurrent();
+
+        return tagNo;
+    }
+
+    public boolean isConstructed()
+    {
+        checkCurrent();
+
+        return (tag & BERTags.CONSTRUCTED) != 0;
+    }
+
+    /**
+     * @return the position of the first byte of the current element's encoding.
+     */
+    public int getOffset()
+    {
+        checkCurrent();
+
+        return start;
+    }
+
+    /**
+     * @return the length of the current element's encoding, header included.
+     */
+    public int getEncodedLength()
+    {
+        checkCurrent();
+
+        return next - start;
+    }
+
+    /**
+     * @return the position of the current element's contents.
+     */
+    public int getContentOffset()
+    {
+        checkCurrent();
+
+        return contentOffset;
+    }
+
+    /**
+     * @return the length of the current element's contents.
+     */
+    public int getContentLength()
+    {
+        checkCurrent();
+
+        return contentLength;
+    }
+
+    /**
+     * Copy the contents of the current element.
+     *
+     * @param out the array to copy the contents to.
+     * @param outOff the offset in out to start copying to.
+     */
+    public void getContents(byte[] out, int outOff)
+    {
+        checkCurrent();
+
+        copy(contentOffset, contentLength, out, outOff);
+    }
+
+    /**
+     * @return a buffer sharing the current element's contents, with no copy made.
+     */
+    public ByteBuffer getContentBuffer()
+    {
+        checkCurrent();
+
+        ByteBuffer contents = buf.duplicate();
+        contents.limit(contentOffset + contentLength);
+        contents.position(contentOffset);
+
+        return contents.slice();
+    }
+
+    /**
+     * Build the object for the current element, and anything inside it.
+     *
+     * @return the current element as an ASN1Primitive.
+     * @throws IOException if the element cannot be decoded.
+     */
+    public ASN1Primitive toASN1Primitive()
+        throws IOException
+    {
+        checkCurrent();
+
+        if (tag == BERTags.OBJECT_IDENTIFIER)
+        {
+            byte[] contents = new byte[contentLength];
+            copy(contentOffset, contentLength, contents, 0);
+
+            return ASN1ObjectIdentifier.fromOctetString(contents);
+        }
+
+        byte[] encoding = new byte[next - start];
+        copy(start, encoding.length, encoding, 0);
+
+        return ASN1Primitive.fromByteArray(encoding);
+    }
+
+    private int readByte(int pos, String eofMessage)
+        throws IOException
+    {
+        if (pos >= end)
+        {
+            throw new EOFException(eofMessage);
+        }
+
+        return buf.get(pos) & 0xff;
+    }
+
+    private void copy(int from, int len, byte[] out, int outOff)
+    {
+        if (buf.hasArray())
+        {
+            System.arraycopy(buf.array(), buf.arrayOffset() + from, out, outOff, len);
+        }
+        else
+        {
+            for (int i = 0; i != len; i++)
+            {
+                out[outOff + i] = buf.get(from + i);
+            }
+        }
+    }
+
+    private void checkCurrent()
+    {
+        if (tag < 0)
+        {
+            throw new IllegalStateException("no current element.");
+        }
+    }
+}
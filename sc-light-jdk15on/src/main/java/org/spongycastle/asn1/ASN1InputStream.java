@@ -1,12 +1,15 @@
 package org.spongycastle.asn1;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 
 import org.spongycastle.util.io.Streams;
+import org.spongycastle.util.io.TeeInputStream;
 
 /**
  * a general purpose ASN.1 decoder - note: this class differs from the
@@ -278,6 +281,56 @@ public class ASN1InputStream
         }
     }
 
+    /**
+     * Read the encoding of the next object without decoding it, so it can be
+     * handed on as it was received. An object with an indefinite length is
+     * decoded, and returned in its DER encoding.
+     *
+     * @return the encoding of the object, or null at the end of the stream.
+     */
+    public byte[] readEncoded()
+        throws IOException
+    {
+        int tag = read();
+        if (tag <= 0)
+        {
+            if (tag == 0)
+            {
+                throw new IOException("unexpected end-of-contents marker");
+            }
+
+            return null;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(tag);
+
+        InputStream hIn = new TeeInputStream(this, header);
+
+        readTagNumber(hIn, tag);
+
+        int length = readLength(hIn, limit);
+
+        if (length < 0)
+        {
+            ASN1InputStream aIn = new ASN1InputStream(
+                new SequenceInputStream(new ByteArrayInputStream(header.toByteArray()), this), limit);
+
+            return aIn.readObject().getEncoded(ASN1Encoding.DER);
+        }
+
+        byte[] encoding = new byte[header.size() + length];
+
+        System.arraycopy(header.toByteArray(), 0, encoding, 0, header.size());
+
+        if (Streams.readFully(this, encoding, header.size(), length) != length)
+        {
+            throw new EOFException("EOF encountered in middle of object");
+        }
+
+        return encoding;
+    }
+
     static int readTagNumber(InputStream s, int tag) 
         throws IOException
     {
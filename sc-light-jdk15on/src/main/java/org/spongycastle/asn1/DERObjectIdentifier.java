@@ -3,13 +3,14 @@ package org.spongycastle.asn1;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.spongycastle.util.Arrays;
 
 public class DERObjectIdentifier
     extends ASN1Primitive
 {
-    String      identifier;
+    final String    identifier;
 
     private     byte[] body;
 
@@ -118,6 +119,7 @@ public class DERObjectIdentifier
         }
 
         this.identifier = objId.toString();
+        this.body = Arrays.clone(bytes);
     }
 
     public DERObjectIdentifier(
@@ -298,74 +300,33 @@ public class DERObjectIdentifier
         return periodAllowed;
     }
 
-    private static ASN1ObjectIdentifier[][] cache = new ASN1ObjectIdentifier[255][];
+    /*
+     * Identifiers read from encodings, in a fixed number of slots indexed by a
+     * hash of the encoding. A new identifier replaces whatever was in its slot,
+     * so the cache never holds more than CACHE_SIZE entries and keeps the ones
+     * most recently seen. The slots are read and written atomically, so shared
+     * instances are safely published between threads.
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    private static final AtomicReferenceArray cache = new AtomicReferenceArray(CACHE_SIZE);
 
     static ASN1ObjectIdentifier fromOctetString(byte[] enc)
     {
-        if (enc.length < 3)
-        {
-            return new ASN1ObjectIdentifier(enc);
-        }
+        int hash = Arrays.hashCode(enc);
+        int idx = (hash ^ (hash >>> 10) ^ (hash >>> 20)) & (CACHE_SIZE - 1);
 
-        int idx1 = enc[enc.length - 2] & 0xff;
-        ASN1ObjectIdentifier[] first = cache[idx1];
+        ASN1ObjectIdentifier possibleMatch = (ASN1ObjectIdentifier)cache.get(idx);
 
-        if (first == null)
+        if (possibleMatch != null && Arrays.areEqual(enc, possibleMatch.getBody()))
         {
-            first = cache[idx1] = new ASN1ObjectIdentifier[255];
-        }
-
-        int idx2 = enc[enc.length - 1] & 0xff;
-
-        ASN1ObjectIdentifier possibleMatch = first[idx2];
-
-        if (possibleMatch == null)
-        {
-            possibleMatch = first[idx2] = new ASN1ObjectIdentifier(enc);
             return possibleMatch;
         }
 
-        if (Arrays.areEqual(enc, possibleMatch.getBody()))
-        {
-            return possibleMatch;
-        }
-        else
-        {
-            idx1 = (idx1 + 1) % 256;
-            first = cache[idx1];
-            if (first == null)
-            {
-                first = cache[idx1] = new ASN1ObjectIdentifier[255];
-            }
-
-            possibleMatch = first[idx2];
-
-            if (possibleMatch == null)
-            {
-                possibleMatch = first[idx2] = new ASN1ObjectIdentifier(enc);
-                return possibleMatch;
-            }
-
-            if (Arrays.areEqual(enc, possibleMatch.getBody()))
-            {
-                return possibleMatch;
-            }
+        ASN1ObjectIdentifier oid = new ASN1ObjectIdentifier(enc);
 
-            idx2 = (idx2 + 1) % 256;
-            possibleMatch = first[idx2];
-
-            if (possibleMatch == null)
-            {
-                possibleMatch = first[idx2] = new ASN1ObjectIdentifier(enc);
-                return possibleMatch;
-            }
-
-            if (Arrays.areEqual(enc, possibleMatch.getBody()))
-            {
-                return possibleMatch;
-            }
-        }
+        cache.set(idx, oid);
 
-        return new ASN1ObjectIdentifier(enc);
+        return oid;
     }
 }
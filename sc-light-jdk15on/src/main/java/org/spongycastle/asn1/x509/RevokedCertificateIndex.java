@@ -0,0 +1,526 @@
+package org.spongycastle.asn1.x509;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.spongycastle.asn1.ASN1BufferParser;
+import org.spongycastle.asn1.BERTags;
+import org.spongycastle.asn1.x500.X500Name;
+
+/**
+ * An index over the revokedCertificates of a DER encoded CRL held in a ByteBuffer.
+ * <p>
+ * The entries are read once, without being decoded, and the index keeps only the
+ * position of each entry and of its serial number, sorted by serial number, so a
+ * lookup is a binary search over the encoding. An entry is only decoded when it is
+ * asked for by {@link #getEntry(int)}.
+ * <p>
+ * For indirect CRLs the issuer named by the most recent certificateIssuer extension
+ * before each entry is also recorded, see {@link #getPrecedingCertificateIssuer(int)}.
+ */
+public class RevokedCertificateIndex
+{
+    /*
+     * contents of the OID 2.5.29.29
+     */
+    private static final byte[] CERTIFICATE_ISSUER = { 0x55, 0x1d, 0x1d };
+
+    private final ByteBuffer buf;
+
+    private int[] entryOffsets;
+    private int[] serialOffsets;
+
+    /*
+     * Index into issuers of the certificate issuer in effect before each entry,
+     * null if the CRL has no certificateIssuer extensions.
+     */
+    private int[] issuerIndexes;
+    private X500Name[] issuers;
+
+    /**
+     * Index the CRL between the buffer's position and its limit. The buffer must not
+     * be changed while the index is in use.
+     *
+     * @param buf the buffer holding the encoded CertificateList.
+     * @throws IOException if the CRL cannot be parsed.
+     */
+    public RevokedCertificateIndex(ByteBuffer buf)
+        throws IOException
+    {
+        this.buf = buf;
+
+        ASN1BufferParser p = new ASN1BufferParser(buf);
+
+        if (!p.next() || p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+        {
+            throw new IOException("CRL does not start with a SEQUENCE");
+        }
+        p.descend();
+
+        if (!p.next() || p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+        {
+            throw new IOException("CRL missing TBSCertList");
+        }
+        p.descend();
+
+        // version, signature, issuer, thisUpdate
+        if (!p.next())
+        {
+            throw new IOException("TBSCertList is empty");
+        }
+        if (p.getTag() == BERTags.INTEGER)
+        {
+            p.next();
+        }
+        p.next();
+        p.next();
+
+        boolean more = p.next();
+
+        // nextUpdate
+        if (more && (p.getTag() == BERTags.UTC_TIME || p.getTag() == BERTags.GENERALIZED_TIME))
+        {
+            more = p.next();
+        }
+
+        if (more && p.getTag() == (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+        {
+            p.descend();
+            readEntries(p);
+        }
+        else
+        {
+            entryOffsets = new int[0];
+            serialOffsets = new int[0];
+        }
+    }
+
+    private void readEntries(ASN1BufferParser p)
+        throws IOException
+    {
+        int count = 0;
+        int[] entries = new int[1024];
+        int[] serials = new int[1024];
+        int[] issuerIdx = null;
+        List issuerList = new ArrayList();
+        int currentIssuer = 0;
+
+        issuerList.add(null);
+
+        while (p.next())
+        {
+            if (count == entries.length)
+            {
+                entries = grow(entries);
+                serials = grow(serials);
+                if (issuerIdx != null)
+                {
+                    issuerIdx = grow(issuerIdx);
+                }
+            }
+
+            entries[count] = p.getOffset();
+
+            p.descend();
+
+            if (!p.next() || p.getTag() != BERTags.INTEGER)
+            {
+                throw new IOException("CRL entry missing serial number");
+            }
+            if (p.getContentLength() == 0 || p.getContentLength() > 255)
+            {
+                throw new IOException("CRL entry serial number has bad length: " + p.getContentLength());
+            }
+            serials[count] = p.getContentOffset();
+
+            if (issuerIdx != null)
+            {
+                issuerIdx[count] = currentIssuer;
+            }
+
+            // revocationDate, then any extensions
+            p.next();
+            if (p.next())
+            {
+                X500Name issuer = findCertificateIssuer(p);
+
+                if (issuer != null)
+                {
+                    if (issuerIdx == null)
+                    {
+                        issuerIdx = new int[entries.length];
+                    }
+                    issuerList.add(issuer);
+                    currentIssuer = issuerList.size() - 1;
+                }
+            }
+
+            p.ascend();
+            count++;
+        }
+
+        int[] order = new int[count];
+        for (int i = 0; i != count; i++)
+        {
+            order[i] = i;
+        }
+
+        if (!isSorted(serials, count))
+        {
+            // a stable sort, so the first of any duplicate serial numbers stays first
+            mergeSort(order, new int[count], 0, count, serials);
+        }
+
+        this.entryOffsets = new int[count];
+        this.serialOffsets = new int[count];
+        for (int i = 0; i != count; i++)
+        {
+            entryOffsets[i] = entries[order[i]];
+            serialOffsets[i] = serials[order[i]];
+        }
+
+        if (issuerIdx != null)
+        {
+            this.issuerIndexes = new int[count];
+            for (int i = 0; i != count; i++)
+            {
+                issuerIndexes[i] = issuerIdx[order[i]];
+            }
+            this.issuers = (X500Name[])issuerList.toArray(new X500Name[issuerList.size()]);
+        }
+    }
+
+    /*
+     * Look through the entry extensions the parser is on for a certificateIssuer,
+     * only decoding the extension if one is found.
+     */
+    private X500Name findCertificateIssuer(ASN1BufferParser p)
+        throws IOException
+    {
+        if (p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+        {
+            return null;
+        }
+
+        p.descend();
+
+        try
+        {
+            while (p.next())
+            {
+                if (p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+                {
+                    continue;
+                }
+
+                p.descend();
+
+                X500Name issuer = null;
+
+                if (p.next() && p.getTag() == BERTags.OBJECT_IDENTIFIER
+                    && contentEquals(p.getContentOffset(), p.getContentLength(), CERTIFICATE_ISSUER))
+                {
+                    // skip any critical flag to reach the extnValue
+                    while (p.next())
+                    {
+                        if (p.getTag() == BERTags.OCTET_STRING)
+                        {
+                            ASN1BufferParser value = new ASN1BufferParser(buf, p.getContentOffset(), p.getContentLength());
+
+                            if (value.next())
+                            {
+                                issuer = X500Name.getInstance(GeneralNames.getInstance(value.toASN1Primitive()).getNames()[0].getName());
+                            }
+                            break;
+                        }
+                    }
+                }
+
+                p.ascend();
+
+                if (issuer != null)
+                {
+                    return issuer;
+                }
+            }
+        }
+        finally
+        {
+            p.ascend();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the number of entries in the CRL.
+     */
+    public int size()
+    {
+        return entryOffsets.length;
+    }
+
+    /**
+     * Find an entry by serial number. Where a serial number appears more than once, as
+     * it may in an indirect CRL, the one first in the CRL is found and any others
+     * follow it in the index.
+     *
+     * @param serialNumber the serial number to look for.
+     * @return the position of the entry in the index, -1 if it is not present.
+     */
+    public int indexOf(BigInteger serialNumber)
+    {
+        byte[] key = serialNumber.toByteArray();
+
+        int low = 0;
+        int high = entryOffsets.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (compare(serialOffsets[mid], key) < 0)
+            {
+                low = mid + 1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+
+        if (low < entryOffsets.length && compare(serialOffsets[low], key) == 0)
+        {
+            return low;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param index the position of the entry in the index.
+     * @return the serial number of the entry.
+     */
+    public BigInteger getSerialNumber(int index)
+    {
+        int off = serialOffsets[index];
+        byte[] serial = new byte[serialLength(off)];
+
+        for (int i = 0; i != serial.length; i++)
+        {
+            serial[i] = buf.get(off + i);
+        }
+
+        return new BigInteger(serial);
+    }
+
+    /**
+     * Decode an entry.
+     *
+     * @param index the position of the entry in the index.
+     * @return the decoded entry.
+     * @throws IOException if the entry cannot be decoded.
+     */
+    public TBSCertList.CRLEntry getEntry(int index)
+        throws IOException
+    {
+        int off = entryOffsets[index];
+        ASN1BufferParser p = new ASN1BufferParser(buf, off, buf.limit() - off);
+
+        p.next();
+
+        return TBSCertList.CRLEntry.getInstance(p.toASN1Primitive());
+    }
+
+    /**
+     * Return the issuer given by the last certificateIssuer extension in the entries
+     * before the one at index, in the order they appear in the CRL. This is only
+     * meaningful for an indirect CRL.
+     *
+     * @param index the position of the entry in the index.
+     * @return the issuer, or null if no earlier entry names one.
+     */
+    public X500Name getPrecedingCertificateIssuer(int index)
+    {
+        if (issuerIndexes == null)
+        {
+            return null;
+        }
+
+        return issuers[issuerIndexes[index]];
+    }
+
+    /*
+     * The serial number is limited to 255 octets, so the last octet of its length is
+     * the length whatever form it is written in.
+     */
+    private int serialLength(int serialOff)
+    {
+        return buf.get(serialOff - 1) & 0xff;
+    }
+
+    private int compare(int aOff, int bOff)
+    {
+        int aLen = serialLength(aOff);
+        int bLen = serialLength(bOff);
+
+        while (aLen > 1 && isRedundant(buf.get(aOff), buf.get(aOff + 1)))
+        {
+            aOff++;
+            aLen--;
+        }
+        while (bLen > 1 && isRedundant(buf.get(bOff), buf.get(bOff + 1)))
+        {
+            bOff++;
+            bLen--;
+        }
+
+        byte a0 = buf.get(aOff);
+        byte b0 = buf.get(bOff);
+
+        if (a0 < 0 != b0 < 0)
+        {
+            return a0 < 0 ? -1 : 1;
+        }
+        if (aLen != bLen)
+        {
+            return (aLen < bLen) == (a0 >= 0) ? -1 : 1;
+        }
+
+        for (int i = 0; i != aLen; i++)
+        {
+            int a = buf.get(aOff + i) & 0xff;
+            int b = buf.get(bOff + i) & 0xff;
+
+            if (a != b)
+            {
+                return a < b ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /*
+     * key is the minimal encoding given by BigInteger.toByteArray().
+     */
+    private int compare(int aOff, byte[] key)
+    {
+        int aLen = serialLength(aOff);
+
+        while (aLen > 1 && isRedundant(buf.get(aOff), buf.get(aOff + 1)))
+        {
+            aOff++;
+            aLen--;
+        }
+
+        byte a0 = buf.get(aOff);
+        byte b0 = key[0];
+
+        if (a0 < 0 != b0 < 0)
+        {
+            return a0 < 0 ? -1 : 1;
+        }
+        if (aLen != key.length)
+        {
+            return (aLen < key.length) == (a0 >= 0) ? -1 : 1;
+        }
+
+        for (int i = 0; i != aLen; i++)
+        {
+            int a = buf.get(aOff + i) & 0xff;
+            int b = key[i] & 0xff;
+
+            if (a != b)
+            {
+                return a < b ? -1 : 1;
+            }
+        }
+
+        return 0;
+    }
+
+    /*
+     * a leading octet which only repeats the sign of the next one.
+     */
+    private static boolean isRedundant(byte b0, byte b1)
+    {
+        return (b0 == 0 && b1 >= 0) || (b0 == -1 && b1 < 0);
+    }
+
+    private boolean contentEquals(int off, int len, byte[] value)
+    {
+        if (len != value.length)
+        {
+            return false;
+        }
+
+        for (int i = 0; i != len; i++)
+        {
+            if (buf.get(off + i) != value[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isSorted(int[] serials, int count)
+    {
+        for (int i = 1; i < count; i++)
+        {
+            if (compare(serials[i - 1], serials[i]) > 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void mergeSort(int[] order, int[] tmp, int from, int to, int[] serials)
+    {
+        if (to - from < 2)
+        {
+            return;
+        }
+
+        int mid = (from + to) >>> 1;
+
+        mergeSort(order, tmp, from, mid, serials);
+        mergeSort(order, tmp, mid, to, serials);
+
+        if (compare(serials[order[mid - 1]], serials[order[mid]]) <= 0)
+        {
+            return;
+        }
+
+        System.arraycopy(order, from, tmp, from, to - from);
+
+        int i = from, j = mid;
+        for (int k = from; k < to; k++)
+        {
+            if (j >= to || (i < mid && compare(serials[tmp[i]], serials[tmp[j]]) <= 0))
+            {
+                order[k] = tmp[i++];
+            }
+            else
+            {
+                order[k] = tmp[j++];
+            }
+        }
+    }
+
+    private static int[] grow(int[] a)
+    {
+        int[] tmp = new int[a.length * 2];
+
+        System.arraycopy(a, 0, tmp, 0, a.length);
+
+        return tmp;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.Hashtable;
 
 import org.spongycastle.asn1.ASN1ObjectIdentifier;
 import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.custom.sec.SecP256R1Curve;
 import org.spongycastle.util.Strings;
 import org.spongycastle.util.encoders.Hex;
 
@@ -133,10 +134,7 @@ public class X962NamedCurves
     {
         protected X9ECParameters createParameters()
         {
-            ECCurve cFp256v1 = new ECCurve.Fp(
-                new BigInteger("115792089210356248762697446949407573530086143415290314195533631308867097853951"),
-                new BigInteger("ffffffff00000001000000000000000000000000fffffffffffffffffffffffc", 16),
-                new BigInteger("5ac635d8aa3a93e7b3ebbd55769886bc651d06b0cc53b0f63bce3c3e27d2604b", 16));
+            ECCurve cFp256v1 = new SecP256R1Curve();
 
             return new X9ECParameters(
                 cFp256v1,
@@ -218,12 +218,28 @@ public class BufferedBlockCipher
             len -= gapLen;
             inOff += gapLen;
 
-            while (len > buf.length)
+            if (cipher instanceof MultiBlockCipher)
             {
-                resultLen += cipher.processBlock(in, inOff, out, outOff + resultLen);
+                // as below, all but the last block go straight through
+                if (len > buf.length)
+                {
+                    int blockCount = (len - buf.length + blockSize - 1) / blockSize;
+
+                    resultLen += ((MultiBlockCipher)cipher).processBlocks(in, inOff, blockCount, out, outOff + resultLen);
+
+                    len -= blockCount * blockSize;
+                    inOff += blockCount * blockSize;
+                }
+            }
+            else
+            {
+                while (len > buf.length)
+                {
+                    resultLen += cipher.processBlock(in, inOff, out, outOff + resultLen);
 
-                len -= blockSize;
-                inOff += blockSize;
+                    len -= blockSize;
+                    inOff += blockSize;
+                }
             }
         }
 
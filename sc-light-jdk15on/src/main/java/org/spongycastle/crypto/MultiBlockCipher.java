@@ -0,0 +1,29 @@
+package org.spongycastle.crypto;
+
+/**
+ * Block ciphers which can process a run of consecutive blocks in a single
+ * call, typically engines and modes where the blocks can be dealt with
+ * independently. Callers processing bulk data should check for this
+ * interface and use it in preference to calling processBlock() in a loop.
+ */
+public interface MultiBlockCipher
+    extends BlockCipher
+{
+    /**
+     * Process blockCount blocks of input from the array in and write them to
+     * the out array. The result is the same as calling processBlock() for each
+     * block in turn.
+     *
+     * @param in the array containing the input data.
+     * @param inOff offset into the in array the data starts at.
+     * @param blockCount the number of blocks to process.
+     * @param out the array the output data will be copied into.
+     * @param outOff the offset into the out array the output will start at.
+     * @exception DataLengthException if there isn't enough data in in, or
+     * space in out.
+     * @exception IllegalStateException if the cipher isn't initialised.
+     * @return the number of bytes processed and produced.
+     */
+    public int processBlocks(byte[] in, int inOff, int blockCount, byte[] out, int outOff)
+        throws DataLengthException, IllegalStateException;
+}
@@ -1,11 +1,14 @@
 package org.spongycastle.crypto.digests;
 
+import org.spongycastle.util.Memoable;
+
 
 /**
  * implementation of MD5 as outlined in "Handbook of Applied Cryptography", pages 346 - 347.
  */
 public class MD5Digest
     extends GeneralDigest
+    implements Memoable
 {
     private static final int    DIGEST_LENGTH = 16;
 
@@ -30,6 +33,13 @@ public class MD5Digest
     {
         super(t);
 
+        copyIn(t);
+    }
+
+    private void copyIn(MD5Digest t)
+    {
+        super.copyIn(t);
+
         H1 = t.H1;
         H2 = t.H2;
         H3 = t.H3;
@@ -299,4 +309,16 @@ public class MD5Digest
             X[i] = 0;
         }
     }
+
+    public Memoable copy()
+    {
+        return new MD5Digest(this);
+    }
+
+    public void reset(Memoable other)
+    {
+        MD5Digest d = (MD5Digest)other;
+
+        copyIn(d);
+    }
 }
@@ -1,6 +1,7 @@
 package org.spongycastle.crypto.digests;
 
 import org.spongycastle.crypto.util.Pack;
+import org.spongycastle.util.Memoable;
 
 
 /**
@@ -16,6 +17,7 @@ import org.spongycastle.crypto.util.Pack;
  */
 public class SHA512Digest
     extends LongDigest
+    implements Memoable
 {
     private static final int    DIGEST_LENGTH = 64;
 
@@ -85,5 +87,16 @@ public class SHA512Digest
         H7 = 0x1f83d9abfb41bd6bL;
         H8 = 0x5be0cd19137e2179L;
     }
-}
 
+    public Memoable copy()
+    {
+        return new SHA512Digest(this);
+    }
+
+    public void reset(Memoable other)
+    {
+        SHA512Digest d = (SHA512Digest)other;
+
+        super.copyIn(d);
+    }
+}
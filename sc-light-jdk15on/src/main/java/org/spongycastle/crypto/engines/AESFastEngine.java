@@ -1,8 +1,8 @@
 package org.spongycastle.crypto.engines;
 
-import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.KeyParameter;
 
 /**
@@ -29,7 +29,7 @@ import org.spongycastle.crypto.params.KeyParameter;
  *
  */
 public class AESFastEngine
-    implements BlockCipher
+    implements MultiBlockCipher
 {
     // The S box
     private static final byte[] S = {
@@ -744,6 +744,60 @@ public class AESFastEngine
         return BLOCK_SIZE;
     }
 
+    public int processBlocks(
+        byte[] in,
+        int inOff,
+        int blockCount,
+        byte[] out,
+        int outOff)
+    {
+        if (WorkingKey == null)
+        {
+            throw new IllegalStateException("AES engine not initialised");
+        }
+
+        if (blockCount < 0 || blockCount > (in.length - inOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (blockCount > (out.length - outOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        int len = blockCount * BLOCK_SIZE;
+
+        int[][] KW = WorkingKey;
+
+        if (forEncryption)
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                unpackBlock(in, inOff);
+                encryptBlock(KW);
+                packBlock(out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                unpackBlock(in, inOff);
+                decryptBlock(KW);
+                packBlock(out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+
+        return len;
+    }
+
     public void reset()
     {
     }
@@ -1,15 +1,15 @@
 package org.spongycastle.crypto.engines;
 
-import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.KeyParameter;
 
 /**
  * Camellia - based on RFC 3713.
  */
 public class CamelliaEngine
-    implements BlockCipher
+    implements MultiBlockCipher
 {
     private boolean initialised = false;
     private boolean _keyIs128;
@@ -675,6 +675,55 @@ public class CamelliaEngine
         }
     }
 
+    public int processBlocks(
+        byte[] in,
+        int inOff,
+        int blockCount,
+        byte[] out,
+        int outOff)
+        throws DataLengthException, IllegalStateException
+    {
+        if (!initialised)
+        {
+            throw new IllegalStateException("Camellia engine not initialised");
+        }
+
+        if (blockCount < 0 || blockCount > (in.length - inOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (blockCount > (out.length - outOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        int len = blockCount * BLOCK_SIZE;
+
+        if (_keyIs128)
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                processBlock128(in, inOff, out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                processBlock192or256(in, inOff, out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+
+        return len;
+    }
+
     public void reset()
     {
         // nothing
@@ -1,8 +1,8 @@
 package org.spongycastle.crypto.engines;
 
-import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.KeyParameter;
 
 /**
@@ -13,7 +13,7 @@ import org.spongycastle.crypto.params.KeyParameter;
  * by Raif S. Naffah.
  */
 public final class TwofishEngine
-    implements BlockCipher
+    implements MultiBlockCipher
 {
     private static final byte[][] P =  {
     {  // p0
@@ -318,6 +318,54 @@ public final class TwofishEngine
         return BLOCK_SIZE;
     }
 
+    public int processBlocks(
+        byte[] in,
+        int inOff,
+        int blockCount,
+        byte[] out,
+        int outOff)
+    {
+        if (workingKey == null)
+        {
+            throw new IllegalStateException("Twofish not initialised");
+        }
+
+        if (blockCount < 0 || blockCount > (in.length - inOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (blockCount > (out.length - outOff) / BLOCK_SIZE)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        int len = blockCount * BLOCK_SIZE;
+
+        if (encrypting)
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                encryptBlock(in, inOff, out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < blockCount; i++)
+            {
+                decryptBlock(in, inOff, out, outOff);
+
+                inOff += BLOCK_SIZE;
+                outOff += BLOCK_SIZE;
+            }
+        }
+
+        return len;
+    }
+
     public void reset()
     {
         if (this.workingKey != null)
@@ -44,7 +44,7 @@ public class ECKeyPairGenerator
         }
         while (d.equals(ZERO)  || (d.compareTo(n) >= 0));
 
-        ECPoint Q = params.getG().multiply(d);
+        ECPoint Q = params.getGMultiplier().multiply(d);
 
         return new AsymmetricCipherKeyPair(
             new ECPublicKeyParameters(Q, params),
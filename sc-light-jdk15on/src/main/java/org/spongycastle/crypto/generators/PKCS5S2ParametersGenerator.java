@@ -1,5 +1,12 @@
 package org.spongycastle.crypto.generators;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.Mac;
@@ -8,6 +15,7 @@ import org.spongycastle.crypto.digests.SHA1Digest;
 import org.spongycastle.crypto.macs.HMac;
 import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
+import org.spongycastle.util.Memoable;
 
 /**
  * Generator for PBE derived keys and ivs as defined by PKCS 5 V2.0 Scheme 2.
@@ -20,7 +28,9 @@ import org.spongycastle.crypto.params.ParametersWithIV;
 public class PKCS5S2ParametersGenerator
     extends PBEParametersGenerator
 {
+    private Digest digest;
     private Mac hMac;
+    private ExecutorService executor;
 
     /**
      * construct a PKCS5 Scheme 2 Parameters generator.
@@ -32,10 +42,31 @@ public class PKCS5S2ParametersGenerator
 
     public PKCS5S2ParametersGenerator(Digest digest)
     {
-        hMac = new HMac(digest);
+        this.digest = digest;
+        this.hMac = new HMac(digest);
+    }
+
+    /**
+     * Construct a generator which, when more than one block of output is
+     * needed and the digest is {@link Memoable}, computes the blocks at the
+     * same time as tasks on the given executor.
+     *
+     * @param digest the digest to use in the HMAC.
+     * @param executor the executor the blocks are computed on.
+     */
+    public PKCS5S2ParametersGenerator(Digest digest, ExecutorService executor)
+    {
+        this(digest);
+
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        this.executor = executor;
     }
 
-    private void F(
+    private static void F(
+        Mac     hMac,
         byte[]  P,
         byte[]  S,
         int     c,
@@ -46,6 +77,10 @@ public class PKCS5S2ParametersGenerator
         byte[]              state = new byte[hMac.getMacSize()];
         CipherParameters    param = new KeyParameter(P);
 
+        /*
+         * The MAC is only keyed once, doFinal() leaves it ready for the next
+         * message under the same key.
+         */
         hMac.init(param);
 
         if (S != null)
@@ -66,7 +101,6 @@ public class PKCS5S2ParametersGenerator
         
         for (int count = 1; count < c; count++)
         {
-            hMac.init(param);
             hMac.update(state, 0, state.length);
             hMac.doFinal(state, 0);
 
@@ -77,7 +111,7 @@ public class PKCS5S2ParametersGenerator
         }
     }
 
-    private void intToOctet(
+    private static void intToOctet(
         byte[]  buf,
         int     i)
     {
@@ -95,16 +129,98 @@ public class PKCS5S2ParametersGenerator
         byte[]  iBuf = new byte[4];
         byte[]  out = new byte[l * hLen];
 
+        if (executor != null && l > 1 && digest instanceof Memoable)
+        {
+            generateBlocksInParallel(l, out);
+            return out;
+        }
+
         for (int i = 1; i <= l; i++)
         {
             intToOctet(iBuf, i);
 
-            F(password, salt, iterationCount, iBuf, out, (i - 1) * hLen);
+            F(hMac, password, salt, iterationCount, iBuf, out, (i - 1) * hLen);
         }
 
         return out;
     }
 
+    /**
+     * Compute blocks 2 to l on the executor, each with its own copy of the
+     * digest, and block 1 on this thread. Every block is waited for, even
+     * after a failure, and an interrupt is passed on once they are all done.
+     */
+    private void generateBlocksInParallel(
+        int     l,
+        final byte[]  out)
+    {
+        final int hLen = hMac.getMacSize();
+        final byte[] P = password;
+        final byte[] S = salt;
+        final int c = iterationCount;
+
+        List<Future<Object>> blocks = new ArrayList<Future<Object>>(l - 1);
+
+        for (int i = 2; i <= l; i++)
+        {
+            final Mac blockMac = new HMac((Digest)((Memoable)digest).copy());
+            final byte[] blockBuf = new byte[4];
+            final int blockOff = (i - 1) * hLen;
+
+            intToOctet(blockBuf, i);
+
+            blocks.add(executor.submit(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    F(blockMac, P, S, c, blockBuf, out, blockOff);
+                    return null;
+                }
+            }));
+        }
+
+        byte[] iBuf = new byte[4];
+        intToOctet(iBuf, 1);
+
+        F(hMac, P, S, c, iBuf, out, 0);
+
+        boolean interrupted = false;
+        Throwable failure = null;
+
+        for (int i = 0; i != blocks.size(); i++)
+        {
+            for (;;)
+            {
+                try
+                {
+                    blocks.get(i).get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null)
+        {
+            throw new IllegalStateException("PBKDF2 block failed: " + failure.getMessage(), failure);
+        }
+    }
+
     /**
      * Generate a key parameter derived from the password, salt, and iteration
      * count we are currently initialised with.
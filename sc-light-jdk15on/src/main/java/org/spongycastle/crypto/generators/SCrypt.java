@@ -1,8 +1,15 @@
 package org.spongycastle.crypto.generators;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.spongycastle.crypto.PBEParametersGenerator;
 import org.spongycastle.crypto.digests.SHA256Digest;
-import org.spongycastle.crypto.engines.Salsa20Engine;
 import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.util.Pack;
 import org.spongycastle.util.Arrays;
@@ -12,11 +19,34 @@ public class SCrypt
     // TODO Validate arguments
     public static byte[] generate(byte[] P, byte[] S, int N, int r, int p, int dkLen)
     {
-        return MFcrypt(P, S, N, r, p, dkLen);
+        return MFcrypt(P, S, N, r, p, dkLen, null);
+    }
+
+    /**
+     * Generate a key as for {@link #generate(byte[], byte[], int, int, int, int)},
+     * running the p independent SMix lanes as tasks on the given executor. The
+     * output is the same, but each lane running at once needs its own 128 * r * N
+     * bytes of memory.
+     *
+     * @param executor the executor the lanes are submitted to.
+     */
+    public static byte[] generate(byte[] P, byte[] S, int N, int r, int p, int dkLen, ExecutorService executor)
+    {
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        return MFcrypt(P, S, N, r, p, dkLen, executor);
     }
 
-    private static byte[] MFcrypt(byte[] P, byte[] S, int N, int r, int p, int dkLen)
+    private static byte[] MFcrypt(byte[] P, byte[] S, int N, int r, int p, int dkLen, ExecutorService executor)
     {
+        if ((long)N * r * 32 > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("N and r too large.");
+        }
+
         int MFLenBytes = r * 128;
         byte[] bytes = SingleIterationPBKDF2(P, S, p * MFLenBytes);
 
@@ -30,10 +60,16 @@ public class SCrypt
             Pack.littleEndianToInt(bytes, 0, B);
 
             int MFLenWords = MFLenBytes >>> 2;
-            for (int BOff = 0; BOff < BLen; BOff += MFLenWords)
+            if (executor == null || p == 1)
+            {
+                for (int BOff = 0; BOff < BLen; BOff += MFLenWords)
+                {
+                    SMix(B, BOff, N, r);
+                }
+            }
+            else
             {
-                // TODO These can be done in parallel threads
-                SMix(B, BOff, N, r);
+                SMixParallel(B, BLen, MFLenWords, N, r, executor);
             }
 
             Pack.intToLittleEndian(B, bytes, 0);
@@ -55,62 +91,283 @@ public class SCrypt
         return key.getKey();
     }
 
+    /**
+     * Run SMix on each lane of B as a separate task, waiting for them all. The
+     * lanes are disjoint ranges of B, so the tasks share nothing else.
+     * <p>
+     * Every lane is waited for, even after a failure or an interrupt, as a lane still
+     * running would otherwise be writing to B while the caller clears it. Lanes that
+     * have not started by then are skipped.
+     */
+    private static void SMixParallel(final int[] B, int BLen, int MFLenWords, final int N, final int r,
+        ExecutorService executor)
+    {
+        final AtomicBoolean abandoned = new AtomicBoolean(false);
+        List<Future<Object>> lanes = new ArrayList<Future<Object>>();
+
+        try
+        {
+            for (int BOff = 0; BOff < BLen; BOff += MFLenWords)
+            {
+                final int laneOff = BOff;
+
+                lanes.add(executor.submit(new Callable<Object>()
+                {
+                    public Object call()
+                    {
+                        if (!abandoned.get())
+                        {
+                            SMix(B, laneOff, N, r);
+                        }
+                        return null;
+                    }
+                }));
+            }
+        }
+        catch (RuntimeException e)
+        {
+            abandoned.set(true);
+            waitFor(lanes, abandoned);
+            throw e;
+        }
+
+        waitFor(lanes, abandoned);
+    }
+
+    private static void waitFor(List<Future<Object>> lanes, AtomicBoolean abandoned)
+    {
+        InterruptedException interrupt = null;
+        Throwable failure = null;
+
+        for (int i = 0; i != lanes.size(); i++)
+        {
+            for (;;)
+            {
+                try
+                {
+                    lanes.get(i).get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    abandoned.set(true);
+                    interrupt = e;
+                }
+                catch (ExecutionException e)
+                {
+                    abandoned.set(true);
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupt != null)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("SCrypt interrupted", interrupt);
+        }
+        if (failure != null)
+        {
+            throw new IllegalStateException("SCrypt lane failed: " + failure.getMessage(), failure);
+        }
+    }
+
     private static void SMix(int[] B, int BOff, int N, int r)
     {
         int BCount = r * 32;
 
-        int[] blockX1 = new int[16];
-        int[] blockX2 = new int[16];
-        int[] blockY = new int[BCount];
-
         int[] X = new int[BCount];
-        int[][] V = new int[N][];
+        int[] Y = new int[BCount];
+
+        /*
+         * V holds the N successive values of X end to end, in one array. Each is
+         * produced by BlockMix straight from the one before it.
+         */
+        int[] V = new int[N * BCount];
 
         try
         {
-            System.arraycopy(B, BOff, X, 0, BCount);
+            System.arraycopy(B, BOff, V, 0, BCount);
 
-            for (int i = 0; i < N; ++i)
+            int VOff = 0;
+            for (int i = 1; i < N; ++i, VOff += BCount)
             {
-                V[i] = Arrays.clone(X);
-                BlockMix(X, blockX1, blockX2, blockY, r);
+                BlockMix(V, VOff, V, VOff + BCount, r);
             }
+            BlockMix(V, VOff, X, 0, r);
 
             int mask = N - 1;
             for (int i = 0; i < N; ++i)
             {
                 int j = X[BCount - 16] & mask;
-                Xor(X, V[j], 0, X);
-                BlockMix(X, blockX1, blockX2, blockY, r);
+                Xor(X, V, j * BCount, X);
+                BlockMix(X, 0, Y, 0, r);
+
+                int[] tmp = X;
+                X = Y;
+                Y = tmp;
             }
 
             System.arraycopy(X, 0, B, BOff, BCount);
         }
         finally
         {
-            ClearAll(V);
-            ClearAll(new int[][]{ X, blockX1, blockX2, blockY });
+            Clear(V);
+            Clear(X);
+            Clear(Y);
         }
     }
 
-    private static void BlockMix(int[] B, int[] X1, int[] X2, int[] Y, int r)
+    /**
+     * BlockMix with Salsa20/8 as the hash, reading the 2 * r blocks at BOff in B and
+     * writing the shuffled result at YOff in Y. The Salsa20 state is kept in local
+     * variables throughout, so nothing is allocated or copied between blocks.
+     */
+    private static void BlockMix(int[] B, int BOff, int[] Y, int YOff, int r)
     {
-        System.arraycopy(B, B.length - 16, X1, 0, 16);
+        int last = BOff + r * 32 - 16;
 
-        int BOff = 0, YOff = 0, halfLen = B.length >>> 1;
+        int x0 = B[last + 0];
+        int x1 = B[last + 1];
+        int x2 = B[last + 2];
+        int x3 = B[last + 3];
+        int x4 = B[last + 4];
+        int x5 = B[last + 5];
+        int x6 = B[last + 6];
+        int x7 = B[last + 7];
+        int x8 = B[last + 8];
+        int x9 = B[last + 9];
+        int x10 = B[last + 10];
+        int x11 = B[last + 11];
+        int x12 = B[last + 12];
+        int x13 = B[last + 13];
+        int x14 = B[last + 14];
+        int x15 = B[last + 15];
 
-        for (int i = 2 * r; i > 0; --i)
+        int evenOff = YOff, oddOff = YOff + r * 16;
+
+        for (int i = 0; i < 2 * r; ++i, BOff += 16)
         {
-            Xor(X1, B, BOff, X2);
+            int j0 = x0 ^ B[BOff + 0];
+            int j1 = x1 ^ B[BOff + 1];
+            int j2 = x2 ^ B[BOff + 2];
+            int j3 = x3 ^ B[BOff + 3];
+            int j4 = x4 ^ B[BOff + 4];
+            int j5 = x5 ^ B[BOff + 5];
+            int j6 = x6 ^ B[BOff + 6];
+            int j7 = x7 ^ B[BOff + 7];
+            int j8 = x8 ^ B[BOff + 8];
+            int j9 = x9 ^ B[BOff + 9];
+            int j10 = x10 ^ B[BOff + 10];
+            int j11 = x11 ^ B[BOff + 11];
+            int j12 = x12 ^ B[BOff + 12];
+            int j13 = x13 ^ B[BOff + 13];
+            int j14 = x14 ^ B[BOff + 14];
+            int j15 = x15 ^ B[BOff + 15];
 
-            Salsa20Engine.salsaCore(8, X2, X1);
-            System.arraycopy(X1, 0, Y, YOff, 16);
+            x0 = j0;
+            x1 = j1;
+            x2 = j2;
+            x3 = j3;
+            x4 = j4;
+            x5 = j5;
+            x6 = j6;
+            x7 = j7;
+            x8 = j8;
+            x9 = j9;
+            x10 = j10;
+            x11 = j11;
+            x12 = j12;
+            x13 = j13;
+            x14 = j14;
+            x15 = j15;
 
-            YOff = halfLen + BOff - YOff;
-            BOff += 16;
-        }
+            for (int round = 8; round > 0; round -= 2)
+            {
+                x4 ^= rotl((x0+x12), 7);
+                x8 ^= rotl((x4+x0), 9);
+                x12 ^= rotl((x8+x4),13);
+                x0 ^= rotl((x12+x8),18);
+                x9 ^= rotl((x5+x1), 7);
+                x13 ^= rotl((x9+x5), 9);
+                x1 ^= rotl((x13+x9),13);
+                x5 ^= rotl((x1+x13),18);
+                x14 ^= rotl((x10+x6), 7);
+                x2 ^= rotl((x14+x10), 9);
+                x6 ^= rotl((x2+x14),13);
+                x10 ^= rotl((x6+x2),18);
+                x3 ^= rotl((x15+x11), 7);
+                x7 ^= rotl((x3+x15), 9);
+                x11 ^= rotl((x7+x3),13);
+                x15 ^= rotl((x11+x7),18);
+                x1 ^= rotl((x0+x3), 7);
+                x2 ^= rotl((x1+x0), 9);
+                x3 ^= rotl((x2+x1),13);
+                x0 ^= rotl((x3+x2),18);
+                x6 ^= rotl((x5+x4), 7);
+                x7 ^= rotl((x6+x5), 9);
+                x4 ^= rotl((x7+x6),13);
+                x5 ^= rotl((x4+x7),18);
+                x11 ^= rotl((x10+x9), 7);
+                x8 ^= rotl((x11+x10), 9);
+                x9 ^= rotl((x8+x11),13);
+                x10 ^= rotl((x9+x8),18);
+                x12 ^= rotl((x15+x14), 7);
+                x13 ^= rotl((x12+x15), 9);
+                x14 ^= rotl((x13+x12),13);
+                x15 ^= rotl((x14+x13),18);
+            }
 
-        System.arraycopy(Y, 0, B, 0, Y.length);
+            x0 += j0;
+            x1 += j1;
+            x2 += j2;
+            x3 += j3;
+            x4 += j4;
+            x5 += j5;
+            x6 += j6;
+            x7 += j7;
+            x8 += j8;
+            x9 += j9;
+            x10 += j10;
+            x11 += j11;
+            x12 += j12;
+            x13 += j13;
+            x14 += j14;
+            x15 += j15;
+
+            int YPos;
+            if ((i & 1) == 0)
+            {
+                YPos = evenOff;
+                evenOff += 16;
+            }
+            else
+            {
+                YPos = oddOff;
+                oddOff += 16;
+            }
+
+            Y[YPos + 0] = x0;
+            Y[YPos + 1] = x1;
+            Y[YPos + 2] = x2;
+            Y[YPos + 3] = x3;
+            Y[YPos + 4] = x4;
+            Y[YPos + 5] = x5;
+            Y[YPos + 6] = x6;
+            Y[YPos + 7] = x7;
+            Y[YPos + 8] = x8;
+            Y[YPos + 9] = x9;
+            Y[YPos + 10] = x10;
+            Y[YPos + 11] = x11;
+            Y[YPos + 12] = x12;
+            Y[YPos + 13] = x13;
+            Y[YPos + 14] = x14;
+            Y[YPos + 15] = x15;
+        }
     }
 
     private static void Xor(int[] a, int[] b, int bOff, int[] output)
@@ -121,6 +378,11 @@ public class SCrypt
         }
     }
 
+    private static int rotl(int x, int y)
+    {
+        return (x << y) | (x >>> -y);
+    }
+
     private static void Clear(byte[] array)
     {
         if (array != null)
@@ -136,12 +398,4 @@ public class SCrypt
             Arrays.fill(array, 0);
         }
     }
-
-    private static void ClearAll(int[][] arrays)
-    {
-        for (int i = 0; i < arrays.length; ++i)
-        {
-            Clear(arrays[i]);
-        }
-    }
 }
@@ -7,6 +7,7 @@ import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.ExtendedDigest;
 import org.spongycastle.crypto.Mac;
 import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.util.Memoable;
 
 /**
  * HMAC implementation based on RFC2104
@@ -26,6 +27,13 @@ public class HMac
     private byte[] inputPad;
     private byte[] outputPad;
 
+    /*
+     * The digest state after the padded key blocks, when the digest can save
+     * its state, so that they are only hashed once per key.
+     */
+    private Memoable ipadState;
+    private Memoable opadState;
+
     private static Hashtable blockLengths;
     
     static
@@ -142,7 +150,18 @@ public class HMac
             outputPad[i] ^= OPAD;
         }
 
+        if (digest instanceof Memoable)
+        {
+            opadState = ((Memoable)digest).copy();
+            ((Digest)opadState).update(outputPad, 0, outputPad.length);
+        }
+
         digest.update(inputPad, 0, inputPad.length);
+
+        if (digest instanceof Memoable)
+        {
+            ipadState = ((Memoable)digest).copy();
+        }
     }
 
     public int getMacSize()
@@ -171,7 +190,14 @@ public class HMac
         byte[] tmp = new byte[digestSize];
         digest.doFinal(tmp, 0);
 
-        digest.update(outputPad, 0, outputPad.length);
+        if (opadState != null)
+        {
+            ((Memoable)digest).reset(opadState);
+        }
+        else
+        {
+            digest.update(outputPad, 0, outputPad.length);
+        }
         digest.update(tmp, 0, tmp.length);
 
         int     len = digest.doFinal(out, outOff);
@@ -186,6 +212,12 @@ public class HMac
      */
     public void reset()
     {
+        if (ipadState != null)
+        {
+            ((Memoable)digest).reset(ipadState);
+            return;
+        }
+
         /*
          * reset the underlying digest.
          */
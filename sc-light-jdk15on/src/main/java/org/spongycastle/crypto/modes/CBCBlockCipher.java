@@ -3,6 +3,7 @@ package org.spongycastle.crypto.modes;
 import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.ParametersWithIV;
 import org.spongycastle.util.Arrays;
 
@@ -10,8 +11,14 @@ import org.spongycastle.util.Arrays;
  * implements Cipher-Block-Chaining (CBC) mode on top of a simple cipher.
  */
 public class CBCBlockCipher
-    implements BlockCipher
+    implements MultiBlockCipher
 {
+    /**
+     * The number of blocks decrypted with one call to the underlying cipher
+     * when it supports multi-block processing.
+     */
+    private static final int BULK_BLOCKS = 64;
+
     private byte[]          IV;
     private byte[]          cbcV;
     private byte[]          cbcNextV;
@@ -20,6 +27,8 @@ public class CBCBlockCipher
     private BlockCipher     cipher = null;
     private boolean         encrypting;
 
+    private byte[]          bulkBuf;
+
     /**
      * Basic constructor.
      *
@@ -148,6 +157,95 @@ public class CBCBlockCipher
         return (encrypting) ? encryptBlock(in, inOff, out, outOff) : decryptBlock(in, inOff, out, outOff);
     }
 
+    /**
+     * Process blockCount blocks of input from the array in and write them to
+     * the out array. Encryption is inherently serial, but on decryption the
+     * underlying cipher can work on many blocks at once if it is a
+     * <code>MultiBlockCipher</code>.
+     *
+     * @param in the array containing the input data.
+     * @param inOff offset into the in array the data starts at.
+     * @param blockCount the number of blocks to process.
+     * @param out the array the output data will be copied into.
+     * @param outOff the offset into the out array the output will start at.
+     * @exception DataLengthException if there isn't enough data in in, or
+     * space in out.
+     * @exception IllegalStateException if the cipher isn't initialised.
+     * @return the number of bytes processed and produced.
+     */
+    public int processBlocks(
+        byte[]      in,
+        int         inOff,
+        int         blockCount,
+        byte[]      out,
+        int         outOff)
+        throws DataLengthException, IllegalStateException
+    {
+        if (blockCount < 0 || blockCount > (in.length - inOff) / blockSize)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (blockCount > (out.length - outOff) / blockSize)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        int len = blockCount * blockSize;
+
+        if (encrypting || !(cipher instanceof MultiBlockCipher))
+        {
+            for (int i = 0; i < len; i += blockSize)
+            {
+                processBlock(in, inOff + i, out, outOff + i);
+            }
+
+            return len;
+        }
+
+        if (bulkBuf == null)
+        {
+            bulkBuf = new byte[BULK_BLOCKS * blockSize];
+        }
+
+        MultiBlockCipher multiCipher = (MultiBlockCipher)cipher;
+
+        while (blockCount > 0)
+        {
+            int count = Math.min(blockCount, BULK_BLOCKS);
+            int chunkLen = count * blockSize;
+
+            /*
+             * keep a copy of the ciphertext, the output may overwrite it
+             */
+            System.arraycopy(in, inOff, bulkBuf, 0, chunkLen);
+
+            multiCipher.processBlocks(bulkBuf, 0, count, out, outOff);
+
+            /*
+             * XOR the cbcV into the first block and each ciphertext block
+             * into the block following it
+             */
+            for (int i = 0; i < blockSize; i++)
+            {
+                out[outOff + i] ^= cbcV[i];
+            }
+
+            for (int i = blockSize; i < chunkLen; i++)
+            {
+                out[outOff + i] ^= bulkBuf[i - blockSize];
+            }
+
+            System.arraycopy(bulkBuf, chunkLen - blockSize, cbcV, 0, blockSize);
+
+            blockCount -= count;
+            inOff += chunkLen;
+            outOff += chunkLen;
+        }
+
+        return len;
+    }
+
     /**
      * reset the chaining vector back to the IV and reset the underlying
      * cipher.
@@ -4,8 +4,9 @@ import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
 import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.modes.gcm.GCMMultiBlockMultiplier;
 import org.spongycastle.crypto.modes.gcm.GCMMultiplier;
-import org.spongycastle.crypto.modes.gcm.Tables8kGCMMultiplier;
+import org.spongycastle.crypto.modes.gcm.Tables32kGCMMultiplier;
 import org.spongycastle.crypto.params.AEADParameters;
 import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
@@ -22,9 +23,13 @@ public class GCMBlockCipher
     private static final int BLOCK_SIZE = 16;
     private static final byte[] ZEROES = new byte[BLOCK_SIZE];
 
+    // the number of blocks collected before being hashed by a GCMMultiBlockMultiplier
+    private static final int HASH_BLOCKS = 8;
+
     // not final due to a compiler bug 
     private BlockCipher   cipher;
     private GCMMultiplier multiplier;
+    private GCMMultiBlockMultiplier multiBlockMultiplier;
 
     // These fields are set by init and not modified by processing
     private boolean             forEncryption;
@@ -42,6 +47,8 @@ public class GCMBlockCipher
     private byte[]      counter;
     private int         bufOff;
     private long        totalLength;
+    private byte[]      hashBuf;
+    private int         hashOff;
 
     public GCMBlockCipher(BlockCipher c)
     {
@@ -59,11 +66,17 @@ public class GCMBlockCipher
         if (m == null)
         {
             // TODO Consider a static property specifying default multiplier
-            m = new Tables8kGCMMultiplier();
+            m = new Tables32kGCMMultiplier();
         }
 
         this.cipher = c;
         this.multiplier = m;
+
+        if (m instanceof GCMMultiBlockMultiplier)
+        {
+            this.multiBlockMultiplier = (GCMMultiBlockMultiplier)m;
+            this.hashBuf = new byte[HASH_BLOCKS * BLOCK_SIZE];
+        }
     }
 
     public BlockCipher getUnderlyingCipher()
@@ -139,9 +152,13 @@ public class GCMBlockCipher
         // (but must be 16 if nonce length not 12) (BLOCK_SIZE?)
 //        this.tagLength = 16;
 
-        this.H = new byte[BLOCK_SIZE];
-        cipher.processBlock(ZEROES, 0, H, 0);
-        multiplier.init(H);
+        // H, and the multiplier's tables built from it, only change with the key
+        if (keyParam != null || H == null)
+        {
+            this.H = new byte[BLOCK_SIZE];
+            cipher.processBlock(ZEROES, 0, H, 0);
+            multiplier.init(H);
+        }
 
         this.initS = gHASH(A);
 
@@ -164,6 +181,7 @@ public class GCMBlockCipher
         this.counter = Arrays.clone(J0);
         this.bufOff = 0;
         this.totalLength = 0;
+        this.hashOff = 0;
     }
 
     public byte[] getMac()
@@ -260,6 +278,8 @@ public class GCMBlockCipher
             gCTRBlock(tmp, extra, out, outOff);
         }
 
+        flushGHASH();
+
         // Final gHASH
         byte[] X = new byte[16];
         packLength((long)A.length * 8, X, 0);
@@ -314,6 +334,7 @@ public class GCMBlockCipher
         counter = Arrays.clone(J0);
         bufOff = 0;
         totalLength = 0;
+        hashOff = 0;
 
         if (bufBlock != null)
         {
@@ -362,9 +383,7 @@ public class GCMBlockCipher
             out[outOff + i] = tmp[i];
         }
 
-//        gHASHBlock(hashBytes);
-        xor(S, hashBytes);
-        multiplier.multiplyH(S);
+        gHASHBlock(hashBytes);
 
         totalLength += bufCount;
     }
@@ -372,8 +391,15 @@ public class GCMBlockCipher
     private byte[] gHASH(byte[] b)
     {
         byte[] Y = new byte[16];
+        int pos = 0;
+
+        if (multiBlockMultiplier != null)
+        {
+            pos = b.length - b.length % 16;
+            multiBlockMultiplier.multiplyBlocks(Y, b, 0, pos / 16);
+        }
 
-        for (int pos = 0; pos < b.length; pos += 16)
+        for (; pos < b.length; pos += 16)
         {
             byte[] X = new byte[16];
             int num = Math.min(b.length - pos, 16);
@@ -385,11 +411,35 @@ public class GCMBlockCipher
         return Y;
     }
 
-//    private void gHASHBlock(byte[] block)
-//    {
-//        xor(S, block);
-//        multiplier.multiplyH(S);
-//    }
+    private void gHASHBlock(byte[] block)
+    {
+        if (multiBlockMultiplier == null)
+        {
+            xor(S, block);
+            multiplier.multiplyH(S);
+            return;
+        }
+
+        System.arraycopy(block, 0, hashBuf, hashOff, BLOCK_SIZE);
+        hashOff += BLOCK_SIZE;
+
+        if (hashOff == hashBuf.length)
+        {
+            flushGHASH();
+        }
+    }
+
+    /**
+     * Hash any blocks still waiting in hashBuf into S.
+     */
+    private void flushGHASH()
+    {
+        if (hashOff > 0)
+        {
+            multiBlockMultiplier.multiplyBlocks(S, hashBuf, 0, hashOff / BLOCK_SIZE);
+            hashOff = 0;
+        }
+    }
 
 //    private static void inc(byte[] block)
 //    {
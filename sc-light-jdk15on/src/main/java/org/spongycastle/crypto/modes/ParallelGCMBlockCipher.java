@@ -0,0 +1,558 @@
+package org.spongycastle.crypto.modes;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.spongycastle.crypto.BlockCipher;
+import org.spongycastle.crypto.CipherParameters;
+import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.modes.gcm.BasicGCMMultiplier;
+import org.spongycastle.crypto.modes.gcm.GCMExponentiator;
+import org.spongycastle.crypto.modes.gcm.GCMMultiplier;
+import org.spongycastle.crypto.modes.gcm.Tables1kGCMExponentiator;
+import org.spongycastle.crypto.modes.gcm.Tables8kGCMMultiplier;
+import org.spongycastle.crypto.params.AEADParameters;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.params.ParametersWithIV;
+import org.spongycastle.crypto.util.Pack;
+import org.spongycastle.util.Arrays;
+
+/**
+ * A version of the Galois/Counter mode (GCM) detailed in NIST Special
+ * Publication 800-38D for large messages, which splits the message into
+ * chunks that are encrypted and hashed concurrently.
+ * <p>
+ * The message is buffered until <code>doFinal()</code> is called, as the
+ * chunks can only be laid out once its length is known, so memory is needed
+ * for the whole message as well as the output. Use {@link GCMBlockCipher} to
+ * process a stream whose size is not bounded. At <code>doFinal()</code> the
+ * message is divided into at most one chunk per underlying cipher, and each
+ * chunk is
+ * CTR-encrypted and GHASHed on its own by a task submitted to the executor.
+ * As GHASH is a polynomial in H, the partial sum for a chunk of n blocks
+ * only needs multiplying by H<sup>n</sup> to be combined with the chunks
+ * after it, so the output and tag are identical to those of
+ * {@link GCMBlockCipher}.
+ */
+public class ParallelGCMBlockCipher
+    implements AEADBlockCipher
+{
+    private static final int BLOCK_SIZE = 16;
+    private static final byte[] ZEROES = new byte[BLOCK_SIZE];
+
+    /**
+     * Messages are not split into chunks smaller than this many blocks, as
+     * below it the cost of handing the work to another thread dominates.
+     */
+    private static final int MIN_CHUNK_BLOCKS = 1024;
+
+    private final BlockCipher[]     ciphers;
+    private final GCMMultiplier[]   multipliers;
+    private final ExecutorService   executor;
+
+    // These fields are set by init and not modified by processing
+    private boolean             forEncryption;
+    private int                 macSize;
+    private byte[]              nonce;
+    private byte[]              A;
+    private byte[]              H;
+    private byte[]              initS;
+    private byte[]              J0;
+    private GCMExponentiator    exp;
+
+    // These fields are modified during processing
+    private Buffer                  data = new Buffer();
+    private byte[]                  macBlock;
+
+    /**
+     * Base constructor.
+     *
+     * @param ciphers the block ciphers to use, all of the same algorithm. The
+     * message is processed in at most one chunk per cipher, so this also
+     * sets the number of tasks run concurrently.
+     * @param executor the executor the chunk tasks are submitted to.
+     */
+    public ParallelGCMBlockCipher(BlockCipher[] ciphers, ExecutorService executor)
+    {
+        if (ciphers == null || ciphers.length < 1)
+        {
+            throw new IllegalArgumentException("at least one cipher required.");
+        }
+        if (executor == null)
+        {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+
+        for (int i = 0; i != ciphers.length; i++)
+        {
+            if (ciphers[i].getBlockSize() != BLOCK_SIZE)
+            {
+                throw new IllegalArgumentException(
+                    "cipher required with a block size of " + BLOCK_SIZE + ".");
+            }
+        }
+
+        this.ciphers = ciphers.clone();
+        this.multipliers = new GCMMultiplier[ciphers.length];
+        this.executor = executor;
+
+        for (int i = 0; i != multipliers.length; i++)
+        {
+            multipliers[i] = new Tables8kGCMMultiplier();
+        }
+    }
+
+    public BlockCipher getUnderlyingCipher()
+    {
+        return ciphers[0];
+    }
+
+    public String getAlgorithmName()
+    {
+        return ciphers[0].getAlgorithmName() + "/GCM";
+    }
+
+    public void init(boolean forEncryption, CipherParameters params)
+        throws IllegalArgumentException
+    {
+        this.forEncryption = forEncryption;
+        this.macBlock = null;
+
+        KeyParameter        keyParam;
+
+        if (params instanceof AEADParameters)
+        {
+            AEADParameters param = (AEADParameters)params;
+
+            nonce = param.getNonce();
+            A = param.getAssociatedText();
+
+            int macSizeBits = param.getMacSize();
+            if (macSizeBits < 96 || macSizeBits > 128 || macSizeBits % 8 != 0)
+            {
+                throw new IllegalArgumentException("Invalid value for MAC size: " + macSizeBits);
+            }
+
+            macSize = macSizeBits / 8;
+            keyParam = param.getKey();
+        }
+        else if (params instanceof ParametersWithIV)
+        {
+            ParametersWithIV param = (ParametersWithIV)params;
+
+            nonce = param.getIV();
+            A = null;
+            macSize = 16;
+            keyParam = (KeyParameter)param.getParameters();
+        }
+        else
+        {
+            throw new IllegalArgumentException("invalid parameters passed to GCM");
+        }
+
+        if (nonce == null || nonce.length < 1)
+        {
+            throw new IllegalArgumentException("IV must be at least 1 byte");
+        }
+
+        if (A == null)
+        {
+            // Avoid lots of null checks
+            A = new byte[0];
+        }
+
+        // Cipher always used in forward mode
+        // if keyParam is null we're reusing the last key.
+        if (keyParam != null)
+        {
+            for (int i = 0; i != ciphers.length; i++)
+            {
+                ciphers[i].init(true, keyParam);
+            }
+        }
+
+        this.H = new byte[BLOCK_SIZE];
+        ciphers[0].processBlock(ZEROES, 0, H, 0);
+
+        for (int i = 0; i != multipliers.length; i++)
+        {
+            multipliers[i].init(H);
+        }
+
+        this.exp = new Tables1kGCMExponentiator();
+        exp.init(H);
+
+        this.initS = gHASH(A);
+
+        if (nonce.length == 12)
+        {
+            this.J0 = new byte[16];
+            System.arraycopy(nonce, 0, J0, 0, nonce.length);
+            this.J0[15] = 0x01;
+        }
+        else
+        {
+            this.J0 = gHASH(nonce);
+            byte[] X = new byte[16];
+            packLength((long)nonce.length * 8, X, 8);
+            xor(this.J0, X);
+            multipliers[0].multiplyH(this.J0);
+        }
+
+        this.data.reset();
+    }
+
+    public byte[] getMac()
+    {
+        return Arrays.clone(macBlock);
+    }
+
+    public int getOutputSize(int len)
+    {
+        if (forEncryption)
+        {
+             return len + data.size() + macSize;
+        }
+
+        return len + data.size() - macSize;
+    }
+
+    /**
+     * Nothing is output until <code>doFinal()</code> is called.
+     */
+    public int getUpdateOutputSize(int len)
+    {
+        return 0;
+    }
+
+    public int processByte(byte in, byte[] out, int outOff)
+        throws DataLengthException
+    {
+        data.write(in);
+
+        return 0;
+    }
+
+    public int processBytes(byte[] in, int inOff, int len, byte[] out, int outOff)
+        throws DataLengthException
+    {
+        if (inOff < 0 || len < 0 || (inOff + len) > in.length)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        data.write(in, inOff, len);
+
+        return 0;
+    }
+
+    public int doFinal(byte[] out, int outOff)
+        throws IllegalStateException, InvalidCipherTextException
+    {
+        // the chunks read the buffered data in place
+        byte[] input = data.getBuffer();
+        int msgLen = data.size();
+
+        if (!forEncryption)
+        {
+            if (msgLen < macSize)
+            {
+                throw new InvalidCipherTextException("data too short");
+            }
+            msgLen -= macSize;
+        }
+
+        if (outOff + msgLen + (forEncryption ? macSize : 0) > out.length)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        byte[] S = processChunks(input, msgLen, out, outOff);
+
+        // Final gHASH
+        byte[] X = new byte[16];
+        packLength((long)A.length * 8, X, 0);
+        packLength((long)msgLen * 8, X, 8);
+
+        xor(S, X);
+        multipliers[0].multiplyH(S);
+
+        // T = MSBt(GCTRk(J0,S))
+        byte[] tag = new byte[BLOCK_SIZE];
+        ciphers[0].processBlock(J0, 0, tag, 0);
+        xor(tag, S);
+
+        int resultLen = msgLen;
+
+        // We place into macBlock our calculated value for T
+        this.macBlock = new byte[macSize];
+        System.arraycopy(tag, 0, macBlock, 0, macSize);
+
+        if (forEncryption)
+        {
+            // Append T to the message
+            System.arraycopy(macBlock, 0, out, outOff + msgLen, macSize);
+            resultLen += macSize;
+        }
+        else
+        {
+            // Retrieve the T value from the message and compare to calculated one
+            byte[] msgMac = new byte[macSize];
+            System.arraycopy(input, msgLen, msgMac, 0, macSize);
+            if (!Arrays.constantTimeAreEqual(this.macBlock, msgMac))
+            {
+                throw new InvalidCipherTextException("mac check in GCM failed");
+            }
+        }
+
+        reset(false);
+
+        return resultLen;
+    }
+
+    public void reset()
+    {
+        reset(true);
+    }
+
+    private void reset(
+        boolean clearMac)
+    {
+        data.reset();
+
+        if (clearMac)
+        {
+            macBlock = null;
+        }
+
+        for (int i = 0; i != ciphers.length; i++)
+        {
+            ciphers[i].reset();
+        }
+    }
+
+    /**
+     * Encrypt or decrypt the first msgLen bytes of input into out, returning
+     * the GHASH of the associated text and ciphertext.
+     */
+    private byte[] processChunks(byte[] input, int msgLen, byte[] out, int outOff)
+    {
+        int blocks = (msgLen + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int chunks = Math.max(1, Math.min(ciphers.length, blocks / MIN_CHUNK_BLOCKS));
+        int chunkBlocks = (blocks + chunks - 1) / chunks;
+
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>(chunks);
+        int[] lengths = new int[chunks];
+
+        for (int i = 0; i != chunks; i++)
+        {
+            int firstBlock = i * chunkBlocks;
+            int start = firstBlock * BLOCK_SIZE;
+            int len = Math.min(chunkBlocks * BLOCK_SIZE, msgLen - start);
+
+            lengths[i] = (len + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+            ChunkTask task = new ChunkTask(ciphers[i], multipliers[i], firstBlock, input, start, len, out, outOff + start);
+
+            if (chunks == 1)
+            {
+                return combine(initS, task.call(), lengths[i]);
+            }
+
+            results.add(executor.submit(task));
+        }
+
+        byte[][] partials = waitFor(results);
+        byte[] S = initS;
+
+        for (int i = 0; i != chunks; i++)
+        {
+            S = combine(S, partials[i], lengths[i]);
+        }
+
+        return S;
+    }
+
+    /**
+     * Wait for every chunk task, even if one fails or this thread is
+     * interrupted, so that no task is still writing to the output once this
+     * returns. An interrupt is passed on by setting the thread's interrupt
+     * status again.
+     */
+    private static byte[][] waitFor(List<Future<byte[]>> results)
+    {
+        byte[][] partials = new byte[results.size()][];
+        Throwable failure = null;
+        boolean interrupted = false;
+
+        for (int i = 0; i != partials.length; i++)
+        {
+            for (;;)
+            {
+                try
+                {
+                    partials[i] = results.get(i).get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null)
+        {
+            throw new IllegalStateException("GCM chunk failed: " + failure.getMessage(), failure);
+        }
+
+        return partials;
+    }
+
+    /**
+     * Return S * H^blocks + partial, the GHASH after appending a chunk of
+     * the given number of blocks with GHASH partial.
+     */
+    private byte[] combine(byte[] S, byte[] partial, int blocks)
+    {
+        byte[] result = Arrays.clone(S);
+
+        if (blocks > 0)
+        {
+            byte[] hPow = new byte[BLOCK_SIZE];
+            exp.exponentiateX(blocks, hPow);
+
+            GCMMultiplier m = new BasicGCMMultiplier();
+            m.init(hPow);
+            m.multiplyH(result);
+        }
+
+        xor(result, partial);
+
+        return result;
+    }
+
+    private byte[] gHASH(byte[] b)
+    {
+        byte[] Y = new byte[16];
+
+        for (int pos = 0; pos < b.length; pos += 16)
+        {
+            byte[] X = new byte[16];
+            int num = Math.min(b.length - pos, 16);
+            System.arraycopy(b, pos, X, 0, num);
+            xor(Y, X);
+            multipliers[0].multiplyH(Y);
+        }
+
+        return Y;
+    }
+
+    private static void xor(byte[] block, byte[] val)
+    {
+        for (int i = 15; i >= 0; --i)
+        {
+            block[i] ^= val[i];
+        }
+    }
+
+    private static void packLength(long count, byte[] bs, int off)
+    {
+        Pack.intToBigEndian((int)(count >>> 32), bs, off);
+        Pack.intToBigEndian((int)count, bs, off + 4);
+    }
+
+    /**
+     * A ByteArrayOutputStream whose contents can be read without copying them.
+     */
+    private static class Buffer
+        extends ByteArrayOutputStream
+    {
+        byte[] getBuffer()
+        {
+            return buf;
+        }
+    }
+
+    /**
+     * CTR-encrypts one chunk of the message and returns its GHASH, taken as
+     * though the chunk were the whole of the ciphertext.
+     */
+    private class ChunkTask
+        implements Callable<byte[]>
+    {
+        private final BlockCipher   cipher;
+        private final GCMMultiplier multiplier;
+        private final int           firstBlock;
+        private final byte[]        in;
+        private final int           inOff;
+        private final int           len;
+        private final byte[]        out;
+        private final int           outOff;
+
+        ChunkTask(BlockCipher cipher, GCMMultiplier multiplier, int firstBlock, byte[] in, int inOff, int len, byte[] out, int outOff)
+        {
+            this.cipher = cipher;
+            this.multiplier = multiplier;
+            this.firstBlock = firstBlock;
+            this.in = in;
+            this.inOff = inOff;
+            this.len = len;
+            this.out = out;
+            this.outOff = outOff;
+        }
+
+        public byte[] call()
+        {
+            byte[] S = new byte[BLOCK_SIZE];
+            byte[] counter = Arrays.clone(J0);
+            byte[] tmp = new byte[BLOCK_SIZE];
+            byte[] hashBytes = new byte[BLOCK_SIZE];
+
+            // block i of the message uses inc32 applied i + 1 times to J0
+            int ctr = Pack.bigEndianToInt(J0, 12) + firstBlock;
+
+            for (int pos = 0; pos < len; pos += BLOCK_SIZE)
+            {
+                int count = Math.min(BLOCK_SIZE, len - pos);
+
+                Pack.intToBigEndian(++ctr, counter, 12);
+                cipher.processBlock(counter, 0, tmp, 0);
+
+                System.arraycopy(ZEROES, 0, hashBytes, 0, BLOCK_SIZE);
+
+                for (int i = 0; i != count; i++)
+                {
+                    byte c = (byte)(tmp[i] ^ in[inOff + pos + i]);
+
+                    out[outOff + pos + i] = c;
+                    hashBytes[i] = forEncryption ? c : in[inOff + pos + i];
+                }
+
+                xor(S, hashBytes);
+                multiplier.multiplyH(S);
+            }
+
+            return S;
+        }
+    }
+}
@@ -3,14 +3,21 @@ package org.spongycastle.crypto.modes;
 import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.ParametersWithIV;
 
 /**
  * Implements the Segmented Integer Counter (SIC) mode on top of a simple
  * block cipher. This mode is also known as CTR mode.
  */
-public class SICBlockCipher implements BlockCipher
+public class SICBlockCipher implements MultiBlockCipher
 {
+    /**
+     * The number of counter blocks encrypted with one call to the underlying
+     * cipher when it supports multi-block processing.
+     */
+    private static final int BULK_BLOCKS = 64;
+
     private final BlockCipher     cipher;
     private final int             blockSize;
     
@@ -18,6 +25,10 @@ public class SICBlockCipher implements BlockCipher
     private byte[]          counter;
     private byte[]          counterOut;
 
+    private byte[]          keyStream;
+
+    private boolean         initialised;
+
 
     /**
      * Basic constructor.
@@ -58,6 +69,8 @@ public class SICBlockCipher implements BlockCipher
 
           reset();
 
+          initialised = true;
+
           // if null it's an IV changed only.
           if (ivParam.getParameters() != null)
           {
@@ -94,25 +107,134 @@ public class SICBlockCipher implements BlockCipher
           out[outOff + i] = (byte)(counterOut[i] ^ in[inOff + i]);
         }
 
-        int    carry = 1;
-        
-        for (int i = counter.length - 1; i >= 0; i--)
+        incrementCounter();
+
+        return counter.length;
+    }
+
+    /**
+     * Process blockCount blocks of input from the array in and write them to
+     * the out array. If the underlying cipher is a
+     * <code>MultiBlockCipher</code> the key stream for a batch of counter
+     * blocks is generated with a single call to it, letting the cipher work
+     * on several blocks at once.
+     *
+     * @param in the array containing the input data.
+     * @param inOff offset into the in array the data starts at.
+     * @param blockCount the number of blocks to process.
+     * @param out the array the output data will be copied into.
+     * @param outOff the offset into the out array the output will start at.
+     * @exception DataLengthException if there isn't enough data in in, or
+     * space in out.
+     * @exception IllegalStateException if the cipher isn't initialised.
+     * @return the number of bytes processed and produced.
+     */
+    public int processBlocks(byte[] in, int inOff, int blockCount, byte[] out, int outOff)
+          throws DataLengthException, IllegalStateException
+    {
+        if (blockCount < 0 || blockCount > (in.length - inOff) / blockSize)
+        {
+            throw new DataLengthException("input buffer too short");
+        }
+
+        if (blockCount > (out.length - outOff) / blockSize)
+        {
+            throw new DataLengthException("output buffer too short");
+        }
+
+        int len = blockCount * blockSize;
+
+        if (!(cipher instanceof MultiBlockCipher))
+        {
+            for (int i = 0; i < len; i += blockSize)
+            {
+                processBlock(in, inOff + i, out, outOff + i);
+            }
+
+            return len;
+        }
+
+        if (keyStream == null)
+        {
+            keyStream = new byte[BULK_BLOCKS * blockSize];
+        }
+
+        MultiBlockCipher multiCipher = (MultiBlockCipher)cipher;
+
+        while (blockCount > 0)
         {
-            int    x = (counter[i] & 0xff) + carry;
-            
-            if (x > 0xff)
+            int count = Math.min(blockCount, BULK_BLOCKS);
+            int chunkLen = count * blockSize;
+
+            for (int off = 0; off < chunkLen; off += blockSize)
             {
-                carry = 1;
+                System.arraycopy(counter, 0, keyStream, off, blockSize);
+                incrementCounter();
             }
-            else
+
+            multiCipher.processBlocks(keyStream, 0, count, keyStream, 0);
+
+            for (int i = 0; i < chunkLen; i++)
             {
-                carry = 0;
+                out[outOff + i] = (byte)(keyStream[i] ^ in[inOff + i]);
             }
-            
+
+            blockCount -= count;
+            inOff += chunkLen;
+            outOff += chunkLen;
+        }
+
+        return len;
+    }
+
+    /**
+     * Move to the start of block <code>blockIndex</code> of the key stream,
+     * as though that many blocks had been processed since the last
+     * <code>init()</code> or <code>reset()</code>. This allows random access
+     * into a stream without generating the key stream leading up to it, and
+     * lets a large stream be split into sections which are each processed
+     * by their own cipher instance.
+     *
+     * @param blockIndex the number of the block to be processed next.
+     * @exception IllegalArgumentException if blockIndex is negative.
+     * @exception IllegalStateException if the cipher isn't initialised.
+     */
+    public void seekTo(long blockIndex)
+    {
+        if (!initialised)
+        {
+            throw new IllegalStateException(getAlgorithmName() + " not initialised");
+        }
+
+        if (blockIndex < 0)
+        {
+            throw new IllegalArgumentException("block index cannot be negative");
+        }
+
+        System.arraycopy(IV, 0, counter, 0, counter.length);
+
+        int    carry = 0;
+
+        for (int i = counter.length - 1; i >= 0 && (blockIndex != 0 || carry != 0); i--)
+        {
+            int    x = (counter[i] & 0xff) + (int)(blockIndex & 0xff) + carry;
+
             counter[i] = (byte)x;
+            carry = x >>> 8;
+            blockIndex >>>= 8;
         }
+    }
 
-        return counter.length;
+    private void incrementCounter()
+    {
+        // the carry only needs to go as far as the first byte that doesn't wrap
+        for (int i = counter.length - 1; i >= 0; i--)
+        {
+            if (++counter[i] != 0)
+            {
+                break;
+            }
+        }
     }
 
 
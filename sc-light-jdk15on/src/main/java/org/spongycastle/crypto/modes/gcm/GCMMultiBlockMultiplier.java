@@ -0,0 +1,20 @@
+package org.spongycastle.crypto.modes.gcm;
+
+/**
+ * A GCM multiplier that can also fold a run of blocks into a GHASH value in
+ * one call, allowing it to work on several blocks at once.
+ */
+public interface GCMMultiBlockMultiplier
+    extends GCMMultiplier
+{
+    /**
+     * Fold blockCount 16 byte blocks into the GHASH value x, giving the same
+     * result as XORing each block into x and calling multiplyH(x) in turn.
+     *
+     * @param x the GHASH value to update.
+     * @param buf the array containing the blocks.
+     * @param off the offset into buf of the first block.
+     * @param blockCount the number of blocks to process.
+     */
+    void multiplyBlocks(byte[] x, byte[] buf, int off, int blockCount);
+}
@@ -29,6 +29,20 @@ abstract class GCMUtil
         return us;
     }
 
+    static long[] asLongs(byte[] bs)
+    {
+        long[] us = new long[2];
+        us[0] = Pack.bigEndianToLong(bs, 0);
+        us[1] = Pack.bigEndianToLong(bs, 8);
+        return us;
+    }
+
+    static void asBytes(long[] x, byte[] bs)
+    {
+        Pack.longToBigEndian(x[0], bs, 0);
+        Pack.longToBigEndian(x[1], bs, 8);
+    }
+
     static void multiply(byte[] block, byte[] val)
     {
         byte[] tmp = Arrays.clone(block);
@@ -71,6 +85,41 @@ abstract class GCMUtil
         }
     }
 
+    static void multiply(long[] x, long[] y)
+    {
+        long[] v = new long[]{ y[0], y[1] };
+        long z0 = 0, z1 = 0;
+
+        for (int i = 0; i < 2; ++i)
+        {
+            long bits = x[i];
+            for (int j = 63; j >= 0; --j)
+            {
+                if ((bits & (1L << j)) != 0)
+                {
+                    z0 ^= v[0];
+                    z1 ^= v[1];
+                }
+
+                multiplyP(v);
+            }
+        }
+
+        x[0] = z0;
+        x[1] = z1;
+    }
+
+    static void multiplyP(long[] x)
+    {
+        boolean lsb = (x[1] & 1) != 0;
+        x[1] = (x[1] >>> 1) | (x[0] << 63);
+        x[0] >>>= 1;
+        if (lsb)
+        {
+            x[0] ^= 0xe100000000000000L;
+        }
+    }
+
     static void multiplyP8(int[] x)
     {
 //        for (int i = 8; i != 0; --i)
@@ -0,0 +1,140 @@
+package org.spongycastle.crypto.modes.gcm;
+
+import org.spongycastle.crypto.util.Pack;
+
+/**
+ * A GCM multiplier using 8k tables for each of H, H^2, H^3 and H^4.
+ * <p>
+ * When folding blocks into a GHASH, four blocks X1..X4 are handled together
+ * as (S ^ X1)H^4 ^ X2H^3 ^ X3H^2 ^ X4H, which needs no more table lookups
+ * than four single multiplications but gives four independent chains of
+ * lookups rather than one long dependent chain, and needs only one write back
+ * of the result. The table entries are held as pairs of longs.
+ */
+public class Tables32kGCMMultiplier
+    implements GCMMultiBlockMultiplier
+{
+    private static final int POWERS = 4;
+
+    /*
+     * T[p] holds H^(p + 1) multiplied by each value of each of the 32 nibbles
+     * of an element, with byte j of the element at offset 64 * j. The high
+     * nibble of the byte comes first, then the low nibble at offset 32.
+     */
+    private final long[][] T = new long[POWERS][];
+
+    public void init(byte[] H)
+    {
+        long[] h = GCMUtil.asLongs(H);
+        long[] hPow = GCMUtil.asLongs(H);
+
+        T[0] = buildTable(hPow);
+
+        for (int p = 1; p < POWERS; ++p)
+        {
+            GCMUtil.multiply(hPow, h);
+            T[p] = buildTable(hPow);
+        }
+    }
+
+    public void multiplyH(byte[] x)
+    {
+        long[] t = T[0];
+        long z0 = 0, z1 = 0;
+
+        for (int j = 0, k = 0; j < 16; ++j, k += 64)
+        {
+            int c = x[j] & 0xff;
+            int hi = k + ((c >>> 4) << 1), lo = k + 32 + ((c & 0x0f) << 1);
+            z0 ^= t[hi] ^ t[lo];
+            z1 ^= t[hi + 1] ^ t[lo + 1];
+        }
+
+        Pack.longToBigEndian(z0, x, 0);
+        Pack.longToBigEndian(z1, x, 8);
+    }
+
+    public void multiplyBlocks(byte[] x, byte[] buf, int off, int blockCount)
+    {
+        long[] t1 = T[0], t2 = T[1], t3 = T[2], t4 = T[3];
+
+        while (blockCount >= POWERS)
+        {
+            long z0 = 0, z1 = 0;
+
+            for (int j = 0, k = 0; j < 16; ++j, k += 64)
+            {
+                int c = (x[j] ^ buf[off + j]) & 0xff;
+                int hi = k + ((c >>> 4) << 1), lo = k + 32 + ((c & 0x0f) << 1);
+                z0 ^= t4[hi] ^ t4[lo];
+                z1 ^= t4[hi + 1] ^ t4[lo + 1];
+
+                c = buf[off + 16 + j] & 0xff;
+                hi = k + ((c >>> 4) << 1);
+                lo = k + 32 + ((c & 0x0f) << 1);
+                z0 ^= t3[hi] ^ t3[lo];
+                z1 ^= t3[hi + 1] ^ t3[lo + 1];
+
+                c = buf[off + 32 + j] & 0xff;
+                hi = k + ((c >>> 4) << 1);
+                lo = k + 32 + ((c & 0x0f) << 1);
+                z0 ^= t2[hi] ^ t2[lo];
+                z1 ^= t2[hi + 1] ^ t2[lo + 1];
+
+                c = buf[off + 48 + j] & 0xff;
+                hi = k + ((c >>> 4) << 1);
+                lo = k + 32 + ((c & 0x0f) << 1);
+                z0 ^= t1[hi] ^ t1[lo];
+                z1 ^= t1[hi + 1] ^ t1[lo + 1];
+            }
+
+            Pack.longToBigEndian(z0, x, 0);
+            Pack.longToBigEndian(z1, x, 8);
+
+            off += 16 * POWERS;
+            blockCount -= POWERS;
+        }
+
+        while (blockCount > 0)
+        {
+            for (int j = 0; j < 16; ++j)
+            {
+                x[j] ^= buf[off + j];
+            }
+            multiplyH(x);
+
+            off += 16;
+            --blockCount;
+        }
+    }
+
+    private static long[] buildTable(long[] h)
+    {
+        long[] t = new long[32 * 16 * 2];
+        long[] v = new long[]{ h[0], h[1] };
+
+        // v runs through h * x^i, i being the bit number of the element from the most significant end
+        for (int pos = 0; pos < 32; ++pos)
+        {
+            int base = pos * 32;
+
+            for (int bit = 8; bit > 0; bit >>= 1)
+            {
+                t[base + bit * 2] = v[0];
+                t[base + bit * 2 + 1] = v[1];
+                GCMUtil.multiplyP(v);
+            }
+
+            for (int j = 2; j < 16; j += j)
+            {
+                for (int k = 1; k < j; ++k)
+                {
+                    t[base + (j + k) * 2] = t[base + j * 2] ^ t[base + k * 2];
+                    t[base + (j + k) * 2 + 1] = t[base + j * 2 + 1] ^ t[base + k * 2 + 1];
+                }
+            }
+        }
+
+        return t;
+    }
+}
@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import org.spongycastle.math.ec.ECConstants;
 import org.spongycastle.math.ec.ECCurve;
 import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
 
 public class ECDomainParameters
     implements ECConstants
@@ -78,4 +79,16 @@ public class ECDomainParameters
     {
         return seed;
     }
+
+    /**
+     * Return a multiplier for the base point G using a precomputed table.
+     * The table is built on first use and saved on G, so it is shared by
+     * every set of parameters over the same base point.
+     *
+     * @return a thread safe multiplier for G.
+     */
+    public FixedPointCombMultiplier getGMultiplier()
+    {
+        return FixedPointCombMultiplier.getInstance(G, n.bitLength());
+    }
 }
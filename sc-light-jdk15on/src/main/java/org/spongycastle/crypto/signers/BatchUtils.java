@@ -0,0 +1,80 @@
+package org.spongycastle.crypto.signers;
+
+import java.math.BigInteger;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+class BatchUtils
+{
+    /**
+     * Invert every element of xs modulo n using Montgomery's trick, so that
+     * there is a single modular inversion however many values are passed in.
+     *
+     * @param xs values in the range [1, n-1], n is assumed prime.
+     * @param n the modulus.
+     * @return the inverses, in the same order as xs.
+     */
+    static BigInteger[] modInverseAll(BigInteger[] xs, BigInteger n)
+    {
+        BigInteger[] c = new BigInteger[xs.length];
+
+        if (xs.length == 0)
+        {
+            return c;
+        }
+
+        c[0] = xs[0];
+        for (int i = 1; i < xs.length; i++)
+        {
+            c[i] = c[i - 1].multiply(xs[i]).mod(n);
+        }
+
+        BigInteger inv = c[xs.length - 1].modInverse(n);
+        BigInteger[] rs = new BigInteger[xs.length];
+
+        for (int i = xs.length - 1; i > 0; i--)
+        {
+            rs[i] = inv.multiply(c[i - 1]).mod(n);
+            inv = inv.multiply(xs[i]).mod(n);
+        }
+        rs[0] = inv;
+
+        return rs;
+    }
+
+    /**
+     * Group the indices 0..keys.length-1 by their key, returning an
+     * enumeration of int[] index lists in no particular order.
+     */
+    static Enumeration groupBy(Object[] keys)
+    {
+        Hashtable groups = new Hashtable();
+
+        for (int i = 0; i != keys.length; i++)
+        {
+            Vector group = (Vector)groups.get(keys[i]);
+            if (group == null)
+            {
+                group = new Vector();
+                groups.put(keys[i], group);
+            }
+            group.addElement(new Integer(i));
+        }
+
+        Vector result = new Vector();
+        for (Enumeration en = groups.elements(); en.hasMoreElements();)
+        {
+            Vector group = (Vector)en.nextElement();
+            int[] indices = new int[group.size()];
+
+            for (int i = 0; i != indices.length; i++)
+            {
+                indices[i] = ((Integer)group.elementAt(i)).intValue();
+            }
+            result.addElement(indices);
+        }
+
+        return result.elements();
+    }
+}
@@ -0,0 +1,151 @@
+package org.spongycastle.crypto.signers;
+
+import java.math.BigInteger;
+import java.util.Enumeration;
+import java.util.Vector;
+
+import org.spongycastle.crypto.params.DSAParameters;
+import org.spongycastle.crypto.params.DSAPublicKeyParameters;
+
+/**
+ * Verifies a number of DSA signatures in one go, sharing only the modular
+ * inversions: the inverses of s for signatures sharing parameters are
+ * calculated together using Montgomery's trick. Each signature is still
+ * checked on its own, so the result says exactly which entries failed.
+ * <p>
+ * Note: the two exponentiations for each signature are still done separately
+ * with <code>BigInteger.modPow()</code>, which is faster than a joint
+ * exponentiation built from <code>BigInteger</code> multiplications, so the
+ * saving is one inversion per signature rather than any exponentiation work.
+ */
+public class DSASharedInverseVerifier
+{
+    private static final BigInteger ZERO = BigInteger.valueOf(0);
+
+    private Vector messages = new Vector();
+    private Vector rs = new Vector();
+    private Vector ss = new Vector();
+    private Vector keys = new Vector();
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param message the message digest the signature is over.
+     * @param r the r value of the signature.
+     * @param s the s value of the signature.
+     * @param key the public key to verify the signature with.
+     */
+    public void add(
+        byte[]                  message,
+        BigInteger              r,
+        BigInteger              s,
+        DSAPublicKeyParameters  key)
+    {
+        messages.addElement(message);
+        rs.addElement(r);
+        ss.addElement(s);
+        keys.addElement(key);
+    }
+
+    /**
+     * Return the number of signatures added since the last reset.
+     */
+    public int size()
+    {
+        return keys.size();
+    }
+
+    /**
+     * Remove all the signatures from the batch.
+     */
+    public void reset()
+    {
+        messages.removeAllElements();
+        rs.removeAllElements();
+        ss.removeAllElements();
+        keys.removeAllElements();
+    }
+
+    /**
+     * Verify every signature in the batch. The batch is left unchanged.
+     *
+     * @return an array with an entry for each signature in the order they
+     * were added, true if the signature is valid, false otherwise.
+     */
+    public boolean[] verify()
+    {
+        int count = keys.size();
+        boolean[] results = new boolean[count];
+
+        DSAParameters[] params = new DSAParameters[count];
+        for (int i = 0; i != count; i++)
+        {
+            params[i] = ((DSAPublicKeyParameters)keys.elementAt(i)).getParameters();
+        }
+
+        for (Enumeration en = BatchUtils.groupBy(params); en.hasMoreElements();)
+        {
+            verifyGroup((int[])en.nextElement(), params, results);
+        }
+
+        return results;
+    }
+
+    /*
+     * Verify the signatures at the given indices, all using the same
+     * parameters.
+     */
+    private void verifyGroup(int[] indices, DSAParameters[] params, boolean[] results)
+    {
+        DSAParameters dsaParams = params[indices[0]];
+        BigInteger p = dsaParams.getP();
+        BigInteger q = dsaParams.getQ();
+
+        // r and s in the range [1,q-1], anything else fails straight away
+        int valid = 0;
+        int[] idx = new int[indices.length];
+
+        for (int j = 0; j != indices.length; j++)
+        {
+            int i = indices[j];
+            BigInteger r = (BigInteger)rs.elementAt(i);
+            BigInteger s = (BigInteger)ss.elementAt(i);
+
+            if (ZERO.compareTo(r) < 0 && q.compareTo(r) > 0
+                && ZERO.compareTo(s) < 0 && q.compareTo(s) > 0)
+            {
+                idx[valid++] = i;
+            }
+        }
+
+        if (valid == 0)
+        {
+            return;
+        }
+
+        BigInteger[] sValues = new BigInteger[valid];
+        for (int j = 0; j != valid; j++)
+        {
+            sValues[j] = (BigInteger)ss.elementAt(idx[j]);
+        }
+
+        BigInteger[] w = BatchUtils.modInverseAll(sValues, q);
+
+        for (int j = 0; j != valid; j++)
+        {
+            int i = idx[j];
+            BigInteger m = DSASigner.calculateE(q, (byte[])messages.elementAt(i));
+            BigInteger r = (BigInteger)rs.elementAt(i);
+
+            BigInteger u1 = m.multiply(w[j]).mod(q);
+            BigInteger u2 = r.multiply(w[j]).mod(q);
+
+            u1 = dsaParams.getG().modPow(u1, p);
+            u2 = ((DSAPublicKeyParameters)keys.elementAt(i)).getY().modPow(u2, p);
+
+            BigInteger v = u1.multiply(u2).mod(p).mod(q);
+
+            results[i] = v.equals(r);
+        }
+    }
+}
@@ -120,7 +120,7 @@ public class DSASigner
         return v.equals(r);
     }
 
-    private BigInteger calculateE(BigInteger n, byte[] message)
+    static BigInteger calculateE(BigInteger n, byte[] message)
     {
         if (n.bitLength() >= message.length * 8)
         {
@@ -0,0 +1,163 @@
+package org.spongycastle.crypto.signers;
+
+import java.math.BigInteger;
+import java.util.Enumeration;
+import java.util.Vector;
+
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.math.ec.ECAlgorithms;
+import org.spongycastle.math.ec.ECConstants;
+import org.spongycastle.math.ec.ECPoint;
+
+/**
+ * Verifies a batch of EC-DSA signatures, as described in X9.62, in one go.
+ * Each signature is still checked on its own, so the result says exactly
+ * which entries failed, but the work is shared where possible: the inverses
+ * of s are calculated together using Montgomery's trick, the multiplication
+ * of G uses the table cached with the domain parameters, and for curves
+ * over Fp the points are converted back to affine form together.
+ * <p>
+ * Entries sharing domain parameters should use the same
+ * <code>ECDomainParameters</code> object to get the most out of this.
+ */
+public class ECDSABatchVerifier
+    implements ECConstants
+{
+    private Vector messages = new Vector();
+    private Vector rs = new Vector();
+    private Vector ss = new Vector();
+    private Vector keys = new Vector();
+
+    /**
+     * Add a signature to the batch.
+     *
+     * @param message the message digest the signature is over.
+     * @param r the r value of the signature.
+     * @param s the s value of the signature.
+     * @param key the public key to verify the signature with.
+     */
+    public void add(
+        byte[]                  message,
+        BigInteger              r,
+        BigInteger              s,
+        ECPublicKeyParameters   key)
+    {
+        messages.addElement(message);
+        rs.addElement(r);
+        ss.addElement(s);
+        keys.addElement(key);
+    }
+
+    /**
+     * Return the number of signatures added since the last reset.
+     */
+    public int size()
+    {
+        return keys.size();
+    }
+
+    /**
+     * Remove all the signatures from the batch.
+     */
+    public void reset()
+    {
+        messages.removeAllElements();
+        rs.removeAllElements();
+        ss.removeAllElements();
+        keys.removeAllElements();
+    }
+
+    /**
+     * Verify every signature in the batch. The batch is left unchanged.
+     *
+     * @return an array with an entry for each signature in the order they
+     * were added, true if the signature is valid, false otherwise.
+     */
+    public boolean[] verify()
+    {
+        int count = keys.size();
+        boolean[] results = new boolean[count];
+
+        ECDomainParameters[] params = new ECDomainParameters[count];
+        for (int i = 0; i != count; i++)
+        {
+            params[i] = ((ECPublicKeyParameters)keys.elementAt(i)).getParameters();
+        }
+
+        for (Enumeration en = BatchUtils.groupBy(params); en.hasMoreElements();)
+        {
+            verifyGroup((int[])en.nextElement(), params, results);
+        }
+
+        return results;
+    }
+
+    /*
+     * Verify the signatures at the given indices, all using the same domain
+     * parameters.
+     */
+    private void verifyGroup(int[] indices, ECDomainParameters[] params, boolean[] results)
+    {
+        ECDomainParameters ecParams = params[indices[0]];
+        BigInteger n = ecParams.getN();
+
+        // r and s in the range [1,n-1], anything else fails straight away
+        int valid = 0;
+        int[] idx = new int[indices.length];
+
+        for (int j = 0; j != indices.length; j++)
+        {
+            int i = indices[j];
+            BigInteger r = (BigInteger)rs.elementAt(i);
+            BigInteger s = (BigInteger)ss.elementAt(i);
+
+            if (r.compareTo(ONE) >= 0 && r.compareTo(n) < 0
+                && s.compareTo(ONE) >= 0 && s.compareTo(n) < 0)
+            {
+                idx[valid++] = i;
+            }
+        }
+
+        if (valid == 0)
+        {
+            return;
+        }
+
+        BigInteger[] sValues = new BigInteger[valid];
+        for (int j = 0; j != valid; j++)
+        {
+            sValues[j] = (BigInteger)ss.elementAt(idx[j]);
+        }
+
+        BigInteger[] c = BatchUtils.modInverseAll(sValues, n);
+
+        BigInteger[] u1 = new BigInteger[valid];
+        BigInteger[] u2 = new BigInteger[valid];
+        ECPoint[] Q = new ECPoint[valid];
+
+        for (int j = 0; j != valid; j++)
+        {
+            int i = idx[j];
+            BigInteger e = ECDSASigner.calculateE(n, (byte[])messages.elementAt(i));
+
+            u1[j] = e.multiply(c[j]).mod(n);
+            u2[j] = ((BigInteger)rs.elementAt(i)).multiply(c[j]).mod(n);
+            Q[j] = ((ECPublicKeyParameters)keys.elementAt(i)).getQ();
+        }
+
+        ECPoint[] points = ECAlgorithms.sumOfTwoMultiplies(ecParams.getGMultiplier(), u1, Q, u2);
+
+        for (int j = 0; j != valid; j++)
+        {
+            if (points[j].isInfinity())
+            {
+                continue;
+            }
+
+            BigInteger v = points[j].getX().toBigInteger().mod(n);
+
+            results[idx[j]] = v.equals(rs.elementAt(idx[j]));
+        }
+    }
+}
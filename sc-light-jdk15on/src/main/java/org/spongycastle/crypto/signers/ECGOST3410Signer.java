@@ -82,7 +82,7 @@ public class ECGOST3410Signer
                 }
                 while (k.equals(ECConstants.ZERO));
 
-                ECPoint p = key.getParameters().getG().multiply(k);
+                ECPoint p = key.getParameters().getGMultiplier().multiply(k);
 
                 BigInteger x = p.getX().toBigInteger();
 
@@ -140,10 +140,9 @@ public class ECGOST3410Signer
         BigInteger z1 = s.multiply(v).mod(n);
         BigInteger z2 = (n.subtract(r)).multiply(v).mod(n);
 
-        ECPoint G = key.getParameters().getG(); // P
         ECPoint Q = ((ECPublicKeyParameters)key).getQ();
 
-        ECPoint point = ECAlgorithms.sumOfTwoMultiplies(G, z1, Q, z2);
+        ECPoint point = ECAlgorithms.sumOfTwoMultiplies(key.getParameters().getGMultiplier(), z1, Q, z2);
 
         BigInteger R = point.getX().toBigInteger().mod(n);
 
@@ -169,10 +169,9 @@ public class ECNRSigner
 
         // compute P = sG + rW
 
-        ECPoint G = pubKey.getParameters().getG();
         ECPoint W = pubKey.getQ();
         // calculate P using Bouncy math
-        ECPoint P = ECAlgorithms.sumOfTwoMultiplies(G, s, W, r);
+        ECPoint P = ECAlgorithms.sumOfTwoMultiplies(pubKey.getParameters().getGMultiplier(), s, W, r);
 
         BigInteger x = P.getX().toBigInteger();
         BigInteger t = r.subtract(x).mod(n);
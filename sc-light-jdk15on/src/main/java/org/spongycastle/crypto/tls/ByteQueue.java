@@ -1,7 +1,9 @@
 package org.spongycastle.crypto.tls;
 
 /**
- * A queue for bytes. This file could be more optimized.
+ * A queue for bytes, held in a ring buffer. Removing data only moves the start
+ * of the queue, so data is never shifted within the buffer; the buffer is only
+ * reallocated when the queue grows past its current capacity.
  */
 public class ByteQueue
 {
@@ -28,23 +30,55 @@ public class ByteQueue
     private static final int INITBUFSIZE = 1024;
 
     /**
-     * The buffer where we store our data.
+     * The buffer where we store our data, its length is always a power of two.
      */
-    private byte[] databuf = new byte[ByteQueue.INITBUFSIZE];
+    private byte[] databuf;
 
     /**
-     * How many bytes at the beginning of the buffer are skipped.
+     * The position of the first byte of our data in the buffer.
      */
-    private int skipped = 0;
+    private int head = 0;
 
     /**
      * How many bytes in the buffer are valid data.
      */
     private int available = 0;
 
+    /**
+     * The most bytes this queue will hold.
+     */
+    private final int limit;
+
+    public ByteQueue()
+    {
+        this(INITBUFSIZE);
+    }
+
+    /**
+     * @param capacity The number of bytes the queue can hold before it has to grow.
+     */
+    public ByteQueue(int capacity)
+    {
+        this(capacity, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity The number of bytes the queue can hold before it has to grow.
+     * @param limit The most bytes the queue may hold, adding more is an error.
+     */
+    public ByteQueue(int capacity, int limit)
+    {
+        if (capacity <= 0 || capacity > limit)
+        {
+            throw new IllegalArgumentException("'capacity' must be positive and not greater than 'limit'");
+        }
+        this.databuf = new byte[ByteQueue.nextTwoPow(capacity - 1)];
+        this.limit = limit;
+    }
+
     /**
      * Read data from the buffer.
-     * 
+     *
      * @param buf The buffer where the read data will be copied to.
      * @param offset How many bytes to skip at the beginning of buf.
      * @param len How many bytes to read at all.
@@ -61,33 +95,59 @@ public class ByteQueue
             throw new TlsRuntimeException("Buffer size of " + buf.length
                 + " is too small for a read of " + len + " bytes");
         }
-        System.arraycopy(databuf, skipped + skip, buf, offset, len);
-        return;
+
+        int start = (head + skip) & (databuf.length - 1);
+        int first = Math.min(len, databuf.length - start);
+        System.arraycopy(databuf, start, buf, offset, first);
+        System.arraycopy(databuf, 0, buf, offset + first, len - first);
+    }
+
+    /**
+     * Look at a single byte of our data without removing it.
+     *
+     * @param skip How many bytes from our data to skip.
+     * @return The byte at that position, as an unsigned value.
+     */
+    public int peek(int skip)
+    {
+        if (skip < 0 || skip >= available)
+        {
+            throw new TlsRuntimeException("Not enough data to read");
+        }
+        return databuf[(head + skip) & (databuf.length - 1)] & 0xff;
     }
 
     /**
      * Add some data to our buffer.
-     * 
+     *
      * @param data A byte-array to read data from.
      * @param offset How many bytes to skip at the beginning of the array.
      * @param len How many bytes to read from the array.
      */
     public void addData(byte[] data, int offset, int len)
     {
-        if ((skipped + available + len) > databuf.length)
+        if (len > limit - available)
+        {
+            throw new TlsRuntimeException("Cannot add " + len + " bytes, queue is limited to " + limit);
+        }
+        if ((available + len) > databuf.length)
         {
-            byte[] tmp = new byte[ByteQueue.nextTwoPow(data.length)];
-            System.arraycopy(databuf, skipped, tmp, 0, available);
-            skipped = 0;
+            byte[] tmp = new byte[ByteQueue.nextTwoPow(available + len)];
+            read(tmp, 0, available, 0);
+            head = 0;
             databuf = tmp;
         }
-        System.arraycopy(data, offset, databuf, skipped + available, len);
+
+        int tail = (head + available) & (databuf.length - 1);
+        int first = Math.min(len, databuf.length - tail);
+        System.arraycopy(data, offset, databuf, tail, first);
+        System.arraycopy(data, offset + first, databuf, 0, len - first);
         available += len;
     }
 
     /**
      * Remove some bytes from our data from the beginning.
-     * 
+     *
      * @param i How many bytes to remove.
      */
     public void removeData(int i)
@@ -97,20 +157,35 @@ public class ByteQueue
             throw new TlsRuntimeException("Cannot remove " + i + " bytes, only got " + available);
         }
 
-        /*
-         * Skip the data.
-         */
         available -= i;
-        skipped += i;
 
         /*
-         * If more than half of our data is skipped, we will move the data in the buffer.
+         * Start again from the front of the buffer once it is empty, so that later
+         * reads are less likely to wrap.
          */
-        if (skipped > (databuf.length / 2))
-        {
-            System.arraycopy(databuf, skipped, databuf, 0, available);
-            skipped = 0;
-        }
+        head = available == 0 ? 0 : (head + i) & (databuf.length - 1);
+    }
+
+    /**
+     * Read data from the beginning of the buffer and remove it.
+     *
+     * @param buf The buffer where the read data will be copied to.
+     * @param offset How many bytes to skip at the beginning of buf.
+     * @param len How many bytes to read and remove.
+     */
+    public void removeData(byte[] buf, int offset, int len)
+    {
+        read(buf, offset, len, 0);
+        removeData(len);
+    }
+
+    /**
+     * @param len A number of bytes to be added.
+     * @return True if that many bytes can be added without passing the queue's limit.
+     */
+    public boolean hasRoomFor(int len)
+    {
+        return len <= limit - available;
     }
 
     /**
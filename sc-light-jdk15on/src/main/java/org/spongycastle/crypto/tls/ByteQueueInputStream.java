@@ -0,0 +1,50 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.InputStream;
+
+/**
+ * An InputStream reading the contents of a ByteQueue, which never blocks.
+ */
+class ByteQueueInputStream
+    extends InputStream
+{
+    private ByteQueue queue;
+
+    ByteQueueInputStream(ByteQueue queue)
+    {
+        this.queue = queue;
+    }
+
+    public int available()
+    {
+        return queue.size();
+    }
+
+    public int read()
+    {
+        if (queue.size() == 0)
+        {
+            return -1;
+        }
+
+        int b = queue.peek(0);
+        queue.removeData(1);
+        return b;
+    }
+
+    public int read(byte[] buf, int offset, int len)
+    {
+        if (queue.size() == 0)
+        {
+            return len == 0 ? 0 : -1;
+        }
+
+        len = Math.min(len, queue.size());
+        queue.removeData(buf, offset, len);
+        return len;
+    }
+
+    public void close()
+    {
+    }
+}
@@ -0,0 +1,31 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.OutputStream;
+
+/**
+ * An OutputStream appending everything written to it to a ByteQueue.
+ */
+class ByteQueueOutputStream
+    extends OutputStream
+{
+    private ByteQueue queue;
+
+    ByteQueueOutputStream(ByteQueue queue)
+    {
+        this.queue = queue;
+    }
+
+    public void write(int b)
+    {
+        queue.addData(new byte[]{ (byte)b }, 0, 1);
+    }
+
+    public void write(byte[] buf, int offset, int len)
+    {
+        queue.addData(buf, offset, len);
+    }
+
+    public void close()
+    {
+    }
+}
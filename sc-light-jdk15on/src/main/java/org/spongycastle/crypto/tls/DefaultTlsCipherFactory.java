@@ -10,7 +10,9 @@ import org.spongycastle.crypto.digests.SHA256Digest;
 import org.spongycastle.crypto.digests.SHA384Digest;
 import org.spongycastle.crypto.engines.AESFastEngine;
 import org.spongycastle.crypto.engines.DESedeEngine;
+import org.spongycastle.crypto.modes.AEADBlockCipher;
 import org.spongycastle.crypto.modes.CBCBlockCipher;
+import org.spongycastle.crypto.modes.GCMBlockCipher;
 
 public class DefaultTlsCipherFactory implements TlsCipherFactory
 {
@@ -24,6 +26,10 @@ public class DefaultTlsCipherFactory implements TlsCipherFactory
                 return createAESCipher(context, 16, digestAlgorithm);
             case EncryptionAlgorithm.AES_256_CBC:
                 return createAESCipher(context, 32, digestAlgorithm);
+            case EncryptionAlgorithm.AES_128_GCM:
+                return createAESGCMCipher(context, 16, 16);
+            case EncryptionAlgorithm.AES_256_GCM:
+                return createAESGCMCipher(context, 32, 16);
             default:
                 throw new TlsFatalAlert(AlertDescription.internal_error);
         }
@@ -35,6 +41,13 @@ public class DefaultTlsCipherFactory implements TlsCipherFactory
             createAESBlockCipher(), createDigest(digestAlgorithm), createDigest(digestAlgorithm), cipherKeySize);
     }
 
+    protected TlsCipher createAESGCMCipher(TlsClientContext context, int cipherKeySize, int macSize)
+        throws IOException
+    {
+        return new TlsAEADCipher(context, createAESGCMBlockCipher(), createAESGCMBlockCipher(), cipherKeySize,
+            macSize);
+    }
+
     protected TlsCipher createDESedeCipher(TlsClientContext context, int cipherKeySize, int digestAlgorithm) throws IOException
     {
         return new TlsBlockCipher(context, createDESedeBlockCipher(),
@@ -46,6 +59,11 @@ public class DefaultTlsCipherFactory implements TlsCipherFactory
         return new CBCBlockCipher(new AESFastEngine());
     }
 
+    protected AEADBlockCipher createAESGCMBlockCipher()
+    {
+        return new GCMBlockCipher(new AESFastEngine());
+    }
+
     protected BlockCipher createDESedeBlockCipher()
     {
         return new CBCBlockCipher(new DESedeEngine());
@@ -3,7 +3,7 @@ package org.spongycastle.crypto.tls;
 import java.io.IOException;
 import java.util.Hashtable;
 
-public abstract class DefaultTlsClient implements TlsClient
+public abstract class DefaultTlsClient implements TlsResumableClient
 {
     protected TlsCipherFactory cipherFactory;
 
@@ -12,6 +12,9 @@ public abstract class DefaultTlsClient implements TlsClient
     protected int selectedCipherSuite;
     protected int selectedCompressionMethod;
 
+    protected TlsSessionCache sessionCache;
+    protected Object peer;
+
     public DefaultTlsClient()
     {
         this(new DefaultTlsCipherFactory());
@@ -22,6 +25,21 @@ public abstract class DefaultTlsClient implements TlsClient
         this.cipherFactory = cipherFactory;
     }
 
+    /**
+     * Keep the sessions established by this client in a cache, so that later
+     * connections to the same server can resume them. Session tickets
+     * (RFC 5077) and the extended master secret (RFC 7627), which servers
+     * may insist on before resuming, are offered to the server as well.
+     *
+     * @param sessionCache the cache to hold the sessions.
+     * @param peer the key identifying the server in the cache.
+     */
+    public void setSessionCache(TlsSessionCache sessionCache, Object peer)
+    {
+        this.sessionCache = sessionCache;
+        this.peer = peer;
+    }
+
     public void init(TlsClientContext context)
     {
         this.context = context;
@@ -29,12 +47,16 @@ public abstract class DefaultTlsClient implements TlsClient
 
     public ProtocolVersion getClientVersion()
     {
-        return ProtocolVersion.TLSv10;
+        return ProtocolVersion.TLSv12;
     }
 
     public int[] getCipherSuites()
     {
         return new int[] {
+            CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384,
+            CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256,
+            CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384,
+            CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256,
             CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA,
             CipherSuite.TLS_DHE_DSS_WITH_AES_256_CBC_SHA,
             CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA,
@@ -47,9 +69,27 @@ public abstract class DefaultTlsClient implements TlsClient
         };
     }
 
-    public Hashtable getClientExtensions()
+    public Hashtable getClientExtensions() throws IOException
     {
-        return null;
+        Hashtable clientExtensions = new Hashtable();
+
+        /*
+         * RFC 5246 7.4.1.4.1. Without this the server may only sign with SHA-1.
+         */
+        if (getClientVersion().getFullVersion() >= ProtocolVersion.TLSv12.getFullVersion())
+        {
+            clientExtensions.put(new Integer(ExtensionType.signature_algorithms),
+                TlsUtils.createSignatureAlgorithmsExtension(TlsUtils.getDefaultSupportedSignatureAlgorithms()));
+        }
+
+        if (sessionCache != null)
+        {
+            // The handler fills in the ticket of the session being resumed, if any
+            clientExtensions.put(new Integer(ExtensionType.session_ticket), new byte[0]);
+            clientExtensions.put(new Integer(ExtensionType.extended_master_secret), new byte[0]);
+        }
+
+        return clientExtensions.isEmpty() ? null : clientExtensions;
     }
 
     public short[] getCompressionMethods()
@@ -59,12 +99,22 @@ public abstract class DefaultTlsClient implements TlsClient
 
     public void notifyServerVersion(ProtocolVersion serverVersion) throws IOException
     {
-        if (!ProtocolVersion.TLSv10.equals(serverVersion))
+        if (serverVersion.getFullVersion() < ProtocolVersion.TLSv10.getFullVersion())
         {
             throw new TlsFatalAlert(AlertDescription.illegal_parameter);
         }
     }
 
+    public TlsSession getSessionToResume()
+    {
+        if (sessionCache == null)
+        {
+            return null;
+        }
+
+        return sessionCache.getSession(peer);
+    }
+
     public void notifySessionID(byte[] sessionID)
     {
         // Currently ignored 
@@ -105,46 +155,64 @@ public abstract class DefaultTlsClient implements TlsClient
             case CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
                 return createRSAKeyExchange();
 
             case CipherSuite.TLS_DH_DSS_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_DH_DSS_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_DH_DSS_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_256_GCM_SHA384:
                 return createDHKeyExchange(KeyExchangeAlgorithm.DH_DSS);
 
             case CipherSuite.TLS_DH_RSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_DH_RSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_DH_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_256_GCM_SHA384:
                 return createDHKeyExchange(KeyExchangeAlgorithm.DH_RSA);
 
             case CipherSuite.TLS_DHE_DSS_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_DHE_DSS_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_DHE_DSS_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_256_GCM_SHA384:
                 return createDHEKeyExchange(KeyExchangeAlgorithm.DHE_DSS);
 
             case CipherSuite.TLS_DHE_RSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
                 return createDHEKeyExchange(KeyExchangeAlgorithm.DHE_RSA);
 
             case CipherSuite.TLS_ECDH_ECDSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_GCM_SHA384:
                 return createECDHKeyExchange(KeyExchangeAlgorithm.ECDH_ECDSA);
 
             case CipherSuite.TLS_ECDHE_ECDSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384:
                 return createECDHEKeyExchange(KeyExchangeAlgorithm.ECDHE_ECDSA);
 
             case CipherSuite.TLS_ECDH_RSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_ECDH_RSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_GCM_SHA384:
                 return createECDHKeyExchange(KeyExchangeAlgorithm.ECDH_RSA);
 
             case CipherSuite.TLS_ECDHE_RSA_WITH_3DES_EDE_CBC_SHA:
             case CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA:
             case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384:
                 return createECDHEKeyExchange(KeyExchangeAlgorithm.ECDHE_RSA);
 
             default:
@@ -213,6 +281,28 @@ public abstract class DefaultTlsClient implements TlsClient
             case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA:
                 return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_256_CBC, DigestAlgorithm.SHA);
 
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_128_GCM, DigestAlgorithm.NULL);
+
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_256_GCM, DigestAlgorithm.NULL);
+
             default:
                 /*
                  * Note: internal error here; the TlsProtocolHandler verifies that the
@@ -224,6 +314,14 @@ public abstract class DefaultTlsClient implements TlsClient
         }
     }
 
+    public void notifySessionEstablished(TlsSession session)
+    {
+        if (sessionCache != null)
+        {
+            sessionCache.putSession(peer, session);
+        }
+    }
+
     protected TlsKeyExchange createDHKeyExchange(int keyExchange)
     {
         return new TlsDHKeyExchange(context, keyExchange);
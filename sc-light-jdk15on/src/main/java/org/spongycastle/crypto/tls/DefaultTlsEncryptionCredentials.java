@@ -0,0 +1,74 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.encodings.PKCS1Encoding;
+import org.spongycastle.crypto.engines.RSABlindedEngine;
+import org.spongycastle.crypto.params.AsymmetricKeyParameter;
+import org.spongycastle.crypto.params.ParametersWithRandom;
+import org.spongycastle.crypto.params.RSAKeyParameters;
+
+public class DefaultTlsEncryptionCredentials implements TlsEncryptionCredentials
+{
+    protected TlsClientContext context;
+    protected Certificate serverCert;
+    protected AsymmetricKeyParameter serverPrivateKey;
+
+    public DefaultTlsEncryptionCredentials(TlsClientContext context, Certificate serverCertificate,
+        AsymmetricKeyParameter serverPrivateKey)
+    {
+        if (serverCertificate == null)
+        {
+            throw new IllegalArgumentException("'serverCertificate' cannot be null");
+        }
+        if (serverCertificate.certs.length == 0)
+        {
+            throw new IllegalArgumentException("'serverCertificate' cannot be empty");
+        }
+        if (serverPrivateKey == null)
+        {
+            throw new IllegalArgumentException("'serverPrivateKey' cannot be null");
+        }
+        if (!serverPrivateKey.isPrivate())
+        {
+            throw new IllegalArgumentException("'serverPrivateKey' must be private");
+        }
+        if (!(serverPrivateKey instanceof RSAKeyParameters))
+        {
+            throw new IllegalArgumentException("'serverPrivateKey' type not supported: "
+                + serverPrivateKey.getClass().getName());
+        }
+
+        this.context = context;
+        this.serverCert = serverCertificate;
+        this.serverPrivateKey = serverPrivateKey;
+    }
+
+    public Certificate getCertificate()
+    {
+        return serverCert;
+    }
+
+    public byte[] decryptPreMasterSecret(byte[] encryptedPreMasterSecret) throws IOException
+    {
+        PKCS1Encoding encoding = new PKCS1Encoding(new RSABlindedEngine());
+        encoding.init(false, new ParametersWithRandom(serverPrivateKey, context.getSecureRandom()));
+
+        /*
+         * A padding failure must not be distinguishable from a good decryption, so it
+         * gives a random value for TlsRSAUtils to reject rather than an alert.
+         */
+        byte[] fallback = new byte[48];
+        context.getSecureRandom().nextBytes(fallback);
+
+        try
+        {
+            return encoding.processBlock(encryptedPreMasterSecret, 0, encryptedPreMasterSecret.length);
+        }
+        catch (InvalidCipherTextException e)
+        {
+            return fallback;
+        }
+    }
+}
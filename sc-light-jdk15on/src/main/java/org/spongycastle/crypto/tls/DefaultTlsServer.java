@@ -0,0 +1,309 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Hashtable;
+
+import org.spongycastle.crypto.params.DHParameters;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * A server offering the RSA and DHE_RSA key exchanges with AES (in GCM mode for
+ * TLS 1.2 clients) and 3DES.
+ * Subclasses supply the server's credentials.
+ */
+public abstract class DefaultTlsServer implements TlsServer
+{
+    /*
+     * The 2048 bit group of RFC 7919, with private values of 256 bits as
+     * recommended there, rather than the size of the group.
+     */
+    private static final DHParameters FFDHE2048 = new DHParameters(new BigInteger(
+        "FFFFFFFFFFFFFFFFADF85458A2BB4A9AAFDC5620273D3CF1D8B9C583CE2D3695A9E13641146433FBCC939DCE249B3EF9"
+      + "7D2FE363630C75D8F681B202AEC4617AD3DF1ED5D5FD65612433F51F5F066ED0856365553DED1AF3B557135E7F57C935"
+      + "984F0C70E0E68B77E2A689DAF3EFE8721DF158A136ADE73530ACCA4F483A797ABC0AB182B324FB61D108A94BB2C8E3FB"
+      + "B96ADAB760D7F4681D4F42A3DE394DF4AE56EDE76372BB190B07A7C8EE0A6D709E02FCE1CDF7E2ECC03404CD28342F61"
+      + "9172FE9CE98583FF8E4F1232EEF28183C3FE3B1B4C6FAD733BB5FCBC2EC22005C58EF1837D1683B2C6F34A26C1B2EFFA"
+      + "886B423861285C97FFFFFFFFFFFFFFFF", 16), BigInteger.valueOf(2), null, 256);
+
+    protected TlsCipherFactory cipherFactory;
+
+    protected TlsClientContext context;
+
+    protected TlsSessionCache sessionCache;
+
+    protected ProtocolVersion clientVersion;
+    protected int[] offeredCipherSuites;
+    protected short[] offeredCompressionMethods;
+    protected Hashtable clientExtensions;
+
+    protected int selectedCipherSuite;
+    protected short selectedCompressionMethod;
+
+    public DefaultTlsServer()
+    {
+        this(new DefaultTlsCipherFactory());
+    }
+
+    public DefaultTlsServer(TlsCipherFactory cipherFactory)
+    {
+        this.cipherFactory = cipherFactory;
+    }
+
+    /**
+     * Keep the sessions established by this server in a cache, keyed by
+     * session ID, so that clients can resume them. The cache is typically
+     * shared by all the connections of a server.
+     *
+     * @param sessionCache the cache to hold the sessions.
+     */
+    public void setSessionCache(TlsSessionCache sessionCache)
+    {
+        this.sessionCache = sessionCache;
+    }
+
+    public void init(TlsClientContext context)
+    {
+        this.context = context;
+    }
+
+    /**
+     * Return the cipher suites this server supports, most preferred first.
+     */
+    protected int[] getCipherSuites()
+    {
+        return new int[] {
+            CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384,
+            CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256,
+            CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384,
+            CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256,
+            CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA,
+            CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA,
+            CipherSuite.TLS_RSA_WITH_AES_256_CBC_SHA,
+            CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA,
+            CipherSuite.TLS_DHE_RSA_WITH_3DES_EDE_CBC_SHA,
+            CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA,
+        };
+    }
+
+    public void notifyClientVersion(ProtocolVersion clientVersion) throws IOException
+    {
+        this.clientVersion = clientVersion;
+    }
+
+    public void notifyOfferedCipherSuites(int[] offeredCipherSuites) throws IOException
+    {
+        this.offeredCipherSuites = offeredCipherSuites;
+    }
+
+    public void notifyOfferedCompressionMethods(short[] offeredCompressionMethods) throws IOException
+    {
+        this.offeredCompressionMethods = offeredCompressionMethods;
+    }
+
+    public void notifySecureRenegotiation(boolean secureRenegotiation) throws IOException
+    {
+        /*
+         * RFC 5746 3.6. Renegotiation is never accepted, so the handshake carries on with
+         * clients not supporting secure renegotiation. Servers wanting to refuse them can
+         * override this and throw a TlsFatalAlert(handshake_failure).
+         */
+    }
+
+    public void processClientExtensions(Hashtable clientExtensions) throws IOException
+    {
+        this.clientExtensions = clientExtensions;
+    }
+
+    public ProtocolVersion getServerVersion() throws IOException
+    {
+        if (clientVersion.getFullVersion() >= ProtocolVersion.TLSv12.getFullVersion())
+        {
+            return ProtocolVersion.TLSv12;
+        }
+        return ProtocolVersion.TLSv10;
+    }
+
+    public int getSelectedCipherSuite() throws IOException
+    {
+        boolean isTLSv12 = TlsUtils.isTLSv12(context);
+
+        int[] cipherSuites = getCipherSuites();
+        for (int i = 0; i < cipherSuites.length; ++i)
+        {
+            if (!isTLSv12 && TlsUtils.isTLSv12CipherSuite(cipherSuites[i]))
+            {
+                continue;
+            }
+
+            for (int j = 0; j < offeredCipherSuites.length; ++j)
+            {
+                if (cipherSuites[i] == offeredCipherSuites[j])
+                {
+                    return this.selectedCipherSuite = cipherSuites[i];
+                }
+            }
+        }
+
+        throw new TlsFatalAlert(AlertDescription.handshake_failure);
+    }
+
+    public short getSelectedCompressionMethod() throws IOException
+    {
+        for (int i = 0; i < offeredCompressionMethods.length; ++i)
+        {
+            if (offeredCompressionMethods[i] == CompressionMethod.NULL)
+            {
+                return this.selectedCompressionMethod = CompressionMethod.NULL;
+            }
+        }
+
+        throw new TlsFatalAlert(AlertDescription.handshake_failure);
+    }
+
+    public Hashtable getServerExtensions() throws IOException
+    {
+        return null;
+    }
+
+    public TlsSession getSessionToResume(byte[] sessionID)
+    {
+        if (sessionCache == null)
+        {
+            return null;
+        }
+
+        return sessionCache.getSession(getSessionKey(sessionID));
+    }
+
+    public void notifySessionResumed(TlsSession session)
+    {
+        this.selectedCipherSuite = session.getCipherSuite();
+        this.selectedCompressionMethod = session.getCompressionMethod();
+    }
+
+    public TlsCredentials getCredentials() throws IOException
+    {
+        switch (selectedCipherSuite)
+        {
+            case CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+                return getRSAEncryptionCredentials();
+
+            case CipherSuite.TLS_DHE_RSA_WITH_3DES_EDE_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+                return getRSASignerCredentials();
+
+            default:
+                /*
+                 * Note: internal error here; the selected cipher suite came from
+                 * getCipherSuites(), so it should always be supported.
+                 */
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
+    public TlsServerKeyExchange getKeyExchange() throws IOException
+    {
+        switch (selectedCipherSuite)
+        {
+            case CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+                return new TlsRSAKeyExchange(context);
+
+            case CipherSuite.TLS_DHE_RSA_WITH_3DES_EDE_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+                return new TlsDHEKeyExchange(context, KeyExchangeAlgorithm.DHE_RSA, getDHParameters());
+
+            default:
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
+    public TlsCompression getCompression() throws IOException
+    {
+        switch (selectedCompressionMethod)
+        {
+            case CompressionMethod.NULL:
+                return new TlsNullCompression();
+
+            default:
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
+    public TlsCipher getCipher() throws IOException
+    {
+        switch (selectedCipherSuite)
+        {
+            case CipherSuite.TLS_RSA_WITH_3DES_EDE_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_3DES_EDE_CBC_SHA:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm._3DES_EDE_CBC, DigestAlgorithm.SHA);
+
+            case CipherSuite.TLS_RSA_WITH_AES_128_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_CBC_SHA:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_128_CBC, DigestAlgorithm.SHA);
+
+            case CipherSuite.TLS_RSA_WITH_AES_256_CBC_SHA:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_CBC_SHA:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_256_CBC, DigestAlgorithm.SHA);
+
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_128_GCM, DigestAlgorithm.NULL);
+
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+                return cipherFactory.createCipher(context, EncryptionAlgorithm.AES_256_GCM, DigestAlgorithm.NULL);
+
+            default:
+                throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+    }
+
+    public void notifySessionEstablished(TlsSession session)
+    {
+        if (sessionCache != null)
+        {
+            sessionCache.putSession(getSessionKey(session.getSessionID()), session);
+        }
+    }
+
+    /**
+     * Return the group used for the DHE key exchanges, by default the 2048
+     * bit group of RFC 7919.
+     */
+    protected DHParameters getDHParameters()
+    {
+        return FFDHE2048;
+    }
+
+    protected Object getSessionKey(byte[] sessionID)
+    {
+        return new String(Hex.encode(sessionID));
+    }
+
+    /**
+     * Return the credentials for the RSA key exchange, which decrypt the
+     * pre-master secret sent by the client.
+     */
+    protected abstract TlsEncryptionCredentials getRSAEncryptionCredentials() throws IOException;
+
+    /**
+     * Return the credentials for the DHE_RSA key exchange, which sign the
+     * server's key exchange parameters.
+     */
+    protected abstract TlsSignerCredentials getRSASignerCredentials() throws IOException;
+}
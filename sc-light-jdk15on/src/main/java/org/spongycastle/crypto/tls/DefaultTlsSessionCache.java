@@ -0,0 +1,103 @@
+package org.spongycastle.crypto.tls;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A TlsSessionCache holding a bounded number of sessions in memory, evicting
+ * the least recently used when full. Sessions are dropped once they are older
+ * than the time to live, or than the lifetime the server gave their ticket.
+ */
+public class DefaultTlsSessionCache
+    implements TlsSessionCache
+{
+    private final int maxSize;
+    private final long timeToLive;
+    private final LinkedHashMap sessions;
+
+    /**
+     * @param maxSize the largest number of sessions to hold.
+     * @param timeToLive how long a session may be resumed for, in milliseconds.
+     */
+    public DefaultTlsSessionCache(final int maxSize, long timeToLive)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("'maxSize' must be positive");
+        }
+        if (timeToLive < 1)
+        {
+            throw new IllegalArgumentException("'timeToLive' must be positive");
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.sessions = new LinkedHashMap(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public synchronized TlsSession getSession(Object peer)
+    {
+        TlsSession session = (TlsSession)sessions.get(peer);
+
+        if (session != null && isExpired(session, System.currentTimeMillis()))
+        {
+            sessions.remove(peer);
+            return null;
+        }
+
+        return session;
+    }
+
+    public synchronized void putSession(Object peer, TlsSession session)
+    {
+        if (session.isResumable())
+        {
+            sessions.put(peer, session);
+        }
+        else
+        {
+            sessions.remove(peer);
+        }
+    }
+
+    public synchronized void removeSession(Object peer)
+    {
+        sessions.remove(peer);
+    }
+
+    /**
+     * @return the number of sessions held, including any which have expired
+     * but not yet been looked up.
+     */
+    public synchronized int size()
+    {
+        return sessions.size();
+    }
+
+    /**
+     * @return the largest number of sessions held.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    protected boolean isExpired(TlsSession session, long now)
+    {
+        long age = now - session.getCreationTime();
+
+        if (age >= timeToLive)
+        {
+            return true;
+        }
+
+        return session.getSessionTicket() != null && session.getTicketLifetimeHint() > 0
+            && age >= session.getTicketLifetimeHint() * 1000;
+    }
+}
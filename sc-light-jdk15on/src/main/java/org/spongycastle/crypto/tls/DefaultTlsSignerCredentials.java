@@ -8,7 +8,7 @@ import org.spongycastle.crypto.params.DSAPrivateKeyParameters;
 import org.spongycastle.crypto.params.ECPrivateKeyParameters;
 import org.spongycastle.crypto.params.RSAKeyParameters;
 
-public class DefaultTlsSignerCredentials implements TlsSignerCredentials
+public class DefaultTlsSignerCredentials implements TlsSignatureAndHashCredentials
 {
     protected TlsClientContext context;
     protected Certificate clientCert;
@@ -65,11 +65,17 @@ public class DefaultTlsSignerCredentials implements TlsSignerCredentials
     }
 
     public byte[] generateCertificateSignature(byte[] md5andsha1) throws IOException
+    {
+        return generateCertificateSignature(null, md5andsha1);
+    }
+
+    public byte[] generateCertificateSignature(SignatureAndHashAlgorithm algorithm, byte[] hash)
+        throws IOException
     {
         try
         {
             return clientSigner.calculateRawSignature(context.getSecureRandom(), clientPrivateKey,
-                md5andsha1);
+                algorithm, hash);
         }
         catch (CryptoException e)
         {
@@ -23,6 +23,21 @@ public class ExtensionType
      */
     public static final int srp = 12;
 
+    /*
+     * RFC 5246 7.4.1.4
+     */
+    public static final int signature_algorithms = 13;
+
+    /*
+     * RFC 7627 5.1
+     */
+    public static final int extended_master_secret = 23;
+
+    /*
+     * RFC 5077 7
+     */
+    public static final int session_ticket = 35;
+
     /*
      * RFC 5746 6
      */
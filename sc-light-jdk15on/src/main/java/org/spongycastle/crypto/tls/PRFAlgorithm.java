@@ -0,0 +1,24 @@
+package org.spongycastle.crypto.tls;
+
+public class PRFAlgorithm
+{
+    /*
+     * Note that the values here are implementation-specific and arbitrary.
+     * It is recommended not to depend on the particular values (e.g. serialization).
+     */
+
+    /*
+     * The PRF of TLS 1.0 and 1.1, combining MD5 and SHA-1.
+     */
+    public static final int tls_prf_legacy = 0;
+
+    /*
+     * RFC 5246 5. The PRF of TLS 1.2, unless the cipher suite says otherwise.
+     */
+    public static final int tls_prf_sha256 = 1;
+
+    /*
+     * RFC 5288 3, RFC 5289 3.2
+     */
+    public static final int tls_prf_sha384 = 2;
+}
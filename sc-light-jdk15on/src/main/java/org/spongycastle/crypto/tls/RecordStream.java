@@ -1,30 +1,57 @@
 package org.spongycastle.crypto.tls;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.spongycastle.crypto.Digest;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.digests.SHA384Digest;
+import org.spongycastle.util.io.Streams;
 
 /**
- * An implementation of the TLS 1.0 record layer, allowing downgrade to SSLv3.
+ * An implementation of the TLS 1.0 - 1.2 record layer, allowing downgrade to SSLv3.
  */
 class RecordStream
 {
-    private TlsProtocolHandler handler;
+    /*
+     * The size of a record header, and the largest fragments allowed in
+     * TLSPlaintext and TLSCiphertext records.
+     */
+    private static final int RECORD_HEADER = 5;
+    private static final int MAX_PLAINTEXT = 1 << 14;
+    private static final int MAX_CIPHERTEXT = MAX_PLAINTEXT + TlsInPlaceCipher.MAX_EXPANSION;
+
+    private TlsProtocol handler;
     private InputStream is;
     private OutputStream os;
     private TlsCompression readCompression = null;
     private TlsCompression writeCompression = null;
     private TlsCipher readCipher = null;
     private TlsCipher writeCipher = null;
+    private TlsCompression pendingCompression = null;
+    private TlsCipher pendingCipher = null;
     private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
+    /*
+     * Buffers for a whole record each way, reused for every record.
+     */
+    private final byte[] readBuf = new byte[RECORD_HEADER + MAX_CIPHERTEXT];
+    private final byte[] writeBuf = new byte[RECORD_HEADER + MAX_CIPHERTEXT];
+
     private TlsClientContext context = null;
     private CombinedHash hash = null;
-    
-    RecordStream(TlsProtocolHandler handler, InputStream is, OutputStream os)
+
+    /*
+     * The handshake hashes of TLS 1.2, run alongside the MD5/SHA-1 one until the
+     * negotiated version and cipher suite say which of them the PRF needs.
+     */
+    private SHA256Digest sha256Hash = null;
+    private SHA384Digest sha384Hash = null;
+
+    RecordStream(TlsProtocol handler, InputStream is, OutputStream os)
     {
         this.handler = handler;
         this.is = is;
@@ -39,32 +66,83 @@ class RecordStream
     {
         this.context = context;
         this.hash = new CombinedHash(context);
+        this.sha256Hash = new SHA256Digest();
+        this.sha384Hash = new SHA384Digest();
+    }
+
+    /**
+     * Set the compression and cipher to be used in each direction once the
+     * change_cipher_spec message for that direction has been sent or received.
+     */
+    void setPendingConnectionState(TlsCompression tlsCompression, TlsCipher tlsCipher)
+    {
+        this.pendingCompression = tlsCompression;
+        this.pendingCipher = tlsCipher;
     }
 
-    void clientCipherSpecDecided(TlsCompression tlsCompression, TlsCipher tlsCipher)
+    void sentWriteCipherSpec() throws IOException
     {
-        this.writeCompression = tlsCompression;
-        this.writeCipher = tlsCipher;
+        if (pendingCipher == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.handshake_failure);
+        }
+        this.writeCompression = this.pendingCompression;
+        this.writeCipher = this.pendingCipher;
     }
 
-    void serverClientSpecReceived()
+    void receivedReadCipherSpec() throws IOException
     {
-        this.readCompression = this.writeCompression;
-        this.readCipher = this.writeCipher;
+        if (pendingCipher == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.handshake_failure);
+        }
+        this.readCompression = this.pendingCompression;
+        this.readCipher = this.pendingCipher;
     }
 
     public void readData() throws IOException
     {
-        short type = TlsUtils.readUint8(is);
+        readFully(readBuf, 0, RECORD_HEADER);
 
-        // TODO In light of versioning and SSLv3, what should we expect here?
-        ProtocolVersion expectedVersion = ProtocolVersion.TLSv10; //context.getServerVersion();
-        if (!expectedVersion.equals(TlsUtils.readVersion(is)))
+        short type = (short)(readBuf[0] & 0xff);
+
+        /*
+         * Until a version has been agreed, records from any TLS version are
+         * accepted; a TLS 1.2 peer will commonly send its first flight as 1.0.
+         */
+        ProtocolVersion expectedVersion = context == null ? null : context.getServerVersion();
+        if (expectedVersion == null)
+        {
+            if (readBuf[1] != 3 || readBuf[2] < ProtocolVersion.TLSv10.getMinorVersion()
+                || readBuf[2] > ProtocolVersion.TLSv12.getMinorVersion())
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+        }
+        else if (readBuf[1] != expectedVersion.getMajorVersion() || readBuf[2] != expectedVersion.getMinorVersion())
         {
             throw new TlsFatalAlert(AlertDescription.illegal_parameter);
         }
 
-        int size = TlsUtils.readUint16(is);
+        int size = ((readBuf[3] & 0xff) << 8) | (readBuf[4] & 0xff);
+        if (size > MAX_CIPHERTEXT)
+        {
+            throw new TlsFatalAlert(AlertDescription.record_overflow);
+        }
+
+        if (readCipher instanceof TlsInPlaceCipher && readCompression instanceof TlsNullCompression)
+        {
+            /*
+             * The common case, the record is read into, decrypted in and handed
+             * on from the one buffer, with no copies made.
+             */
+            readFully(readBuf, RECORD_HEADER, size);
+
+            int len = ((TlsInPlaceCipher)readCipher).decodeCiphertextInPlace(type, readBuf, RECORD_HEADER, size);
+            handler.processData(type, readBuf, RECORD_HEADER, len);
+            return;
+        }
+
         byte[] buf = decodeAndVerify(type, is, size);
         handler.processData(type, buf, 0, buf.length);
     }
@@ -96,6 +174,21 @@ class RecordStream
 
         OutputStream cOut = writeCompression.compress(buffer);
 
+        if (cOut == buffer && writeCipher instanceof TlsInPlaceCipher && len <= MAX_PLAINTEXT)
+        {
+            /*
+             * The common case, the record is built and encrypted in the one
+             * buffer and written out with a single call.
+             */
+            System.arraycopy(message, offset, writeBuf, RECORD_HEADER, len);
+            int ciphertextLength = ((TlsInPlaceCipher)writeCipher).encodePlaintextInPlace(type, writeBuf,
+                RECORD_HEADER, len);
+            writeHeader(type, ciphertextLength, writeBuf);
+            os.write(writeBuf, 0, RECORD_HEADER + ciphertextLength);
+            flushIfControl(type);
+            return;
+        }
+
         byte[] ciphertext;
         if (cOut == buffer)
         {
@@ -109,20 +202,46 @@ class RecordStream
             ciphertext = writeCipher.encodePlaintext(type, compressed, 0, compressed.length);
         }
 
-        byte[] writeMessage = new byte[ciphertext.length + 5];
-        TlsUtils.writeUint8(type, writeMessage, 0);
-        // TODO In light of versioning, what should we send here?
-//        TlsUtils.writeVersion(context.getServerVersion(), writeMessage, 1);
-        TlsUtils.writeVersion(ProtocolVersion.TLSv10, writeMessage, 1);
-        TlsUtils.writeUint16(ciphertext.length, writeMessage, 3);
-        System.arraycopy(ciphertext, 0, writeMessage, 5, ciphertext.length);
+        byte[] writeMessage = new byte[ciphertext.length + RECORD_HEADER];
+        writeHeader(type, ciphertext.length, writeMessage);
+        System.arraycopy(ciphertext, 0, writeMessage, RECORD_HEADER, ciphertext.length);
         os.write(writeMessage);
-        os.flush();
+        flushIfControl(type);
+    }
+
+    /*
+     * Handshake, alert and change_cipher_spec records go out at once; application
+     * data waits for an explicit flush so that several records can share a write.
+     */
+    private void flushIfControl(short type) throws IOException
+    {
+        if (type != ContentType.application_data)
+        {
+            os.flush();
+        }
+    }
+
+    /**
+     * Whether records are written with an explicit IV, as in TLS 1.1 and later.
+     */
+    boolean hasExplicitIV()
+    {
+        return context != null && context.getServerVersion() != null && TlsUtils.isTLSv11(context);
+    }
+
+    private void writeHeader(short type, int length, byte[] buf) throws IOException
+    {
+        TlsUtils.writeUint8(type, buf, 0);
+        ProtocolVersion version = context == null ? null : context.getServerVersion();
+        TlsUtils.writeVersion(version == null ? ProtocolVersion.TLSv10 : version, buf, 1);
+        TlsUtils.writeUint16(length, buf, 3);
     }
 
     void updateHandshakeData(byte[] message, int offset, int len)
     {
         hash.update(message, offset, len);
+        sha256Hash.update(message, offset, len);
+        sha384Hash.update(message, offset, len);
     }
 
     /**
@@ -130,6 +249,14 @@ class RecordStream
      */
     byte[] getCurrentHash(byte[] sender)
     {
+        switch (context.getSecurityParameters().prfAlgorithm)
+        {
+            case PRFAlgorithm.tls_prf_sha256:
+                return doFinal(new SHA256Digest(sha256Hash));
+            case PRFAlgorithm.tls_prf_sha384:
+                return doFinal(new SHA384Digest(sha384Hash));
+        }
+
         Digest d = new CombinedHash(hash);
 
         boolean isTls = context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv10.getFullVersion();
@@ -145,6 +272,33 @@ class RecordStream
         return doFinal(d);
     }
 
+    /**
+     * The hash of the handshake messages so far under a particular hash, for the
+     * TLS 1.2 CertificateVerify.
+     *
+     * @param hashAlgorithm {@link HashAlgorithm}
+     */
+    byte[] getHandshakeHash(short hashAlgorithm)
+    {
+        switch (hashAlgorithm)
+        {
+            case HashAlgorithm.sha1:
+            {
+                // The SHA-1 half of md5(m) || sha1(m)
+                byte[] md5andsha1 = doFinal(new CombinedHash(hash));
+                byte[] sha1 = new byte[20];
+                System.arraycopy(md5andsha1, 16, sha1, 0, 20);
+                return sha1;
+            }
+            case HashAlgorithm.sha256:
+                return doFinal(new SHA256Digest(sha256Hash));
+            case HashAlgorithm.sha384:
+                return doFinal(new SHA384Digest(sha384Hash));
+            default:
+                throw new IllegalArgumentException("unsupported HashAlgorithm: " + hashAlgorithm);
+        }
+    }
+
     protected void close() throws IOException
     {
         IOException e = null;
@@ -175,6 +329,14 @@ class RecordStream
         os.flush();
     }
 
+    private void readFully(byte[] buf, int off, int len) throws IOException
+    {
+        if (Streams.readFully(is, buf, off, len) < len)
+        {
+            throw new EOFException();
+        }
+    }
+
     private byte[] getBufferContents()
     {
         byte[] contents = buffer.toByteArray();
@@ -1,11 +1,25 @@
 package org.spongycastle.crypto.tls;
 
+import java.util.Vector;
+
 public class SecurityParameters
 {
+    int prfAlgorithm = PRFAlgorithm.tls_prf_legacy;
     byte[] clientRandom = null;
     byte[] serverRandom = null;
     byte[] masterSecret = null;
 
+    // The peer's signature_algorithms (TLS 1.2), as SignatureAndHashAlgorithm
+    Vector peerSigAlgs = null;
+
+    /**
+     * @return {@link PRFAlgorithm}
+     */
+    public int getPrfAlgorithm()
+    {
+        return prfAlgorithm;
+    }
+
     public byte[] getClientRandom()
     {
         return clientRandom;
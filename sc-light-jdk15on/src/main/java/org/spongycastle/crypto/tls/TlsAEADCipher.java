@@ -0,0 +1,206 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.modes.AEADBlockCipher;
+import org.spongycastle.crypto.params.AEADParameters;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.util.Arrays;
+
+/**
+ * A TLS 1.2 AEAD cipher (RFC 5246 6.2.3.3), such as AES in GCM mode (RFC 5288).
+ * <p>
+ * Each record is encrypted and authenticated in a single pass of the AEAD mode, with
+ * no separate MAC, padding or CBC chaining between records.
+ */
+public class TlsAEADCipher implements TlsInPlaceCipher
+{
+    /*
+     * RFC 5288 3. The nonce is a 4 byte salt from the key block followed by 8 explicit
+     * bytes sent in front of each record; like most we use the sequence number for those.
+     */
+    private static final int IMPLICIT_NONCE_SIZE = 4;
+    private static final int EXPLICIT_NONCE_SIZE = 8;
+
+    protected TlsClientContext context;
+    protected int macSize;
+
+    protected AEADBlockCipher encryptCipher;
+    protected AEADBlockCipher decryptCipher;
+
+    protected byte[] encryptImplicitNonce, decryptImplicitNonce;
+
+    private long writeSeqNo = 0;
+    private long readSeqNo = 0;
+
+    /*
+     * The key is set up once for each direction; every record only brings a new nonce
+     * and additional data, which are rewritten in these arrays rather than reallocated.
+     */
+    private KeyParameter encryptKey, decryptKey;
+    private final byte[] encryptNonce = new byte[IMPLICIT_NONCE_SIZE + EXPLICIT_NONCE_SIZE];
+    private final byte[] decryptNonce = new byte[IMPLICIT_NONCE_SIZE + EXPLICIT_NONCE_SIZE];
+    private final byte[] encryptAdditionalData = new byte[13];
+    private final byte[] decryptAdditionalData = new byte[13];
+
+    public TlsAEADCipher(TlsClientContext context, AEADBlockCipher encryptCipher, AEADBlockCipher decryptCipher,
+        int cipherKeySize, int macSize) throws IOException
+    {
+        if (!TlsUtils.isTLSv12(context))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        this.context = context;
+        this.macSize = macSize;
+        this.encryptCipher = encryptCipher;
+        this.decryptCipher = decryptCipher;
+
+        int key_block_size = (2 * cipherKeySize) + (2 * IMPLICIT_NONCE_SIZE);
+
+        byte[] key_block = TlsUtils.calculateKeyBlock(context, key_block_size);
+
+        int offset = 0;
+
+        KeyParameter client_write_key = new KeyParameter(key_block, offset, cipherKeySize);
+        offset += cipherKeySize;
+        KeyParameter server_write_key = new KeyParameter(key_block, offset, cipherKeySize);
+        offset += cipherKeySize;
+        byte[] client_write_IV = Arrays.copyOfRange(key_block, offset, offset + IMPLICIT_NONCE_SIZE);
+        offset += IMPLICIT_NONCE_SIZE;
+        byte[] server_write_IV = Arrays.copyOfRange(key_block, offset, offset + IMPLICIT_NONCE_SIZE);
+        offset += IMPLICIT_NONCE_SIZE;
+
+        if (offset != key_block_size)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        if (TlsUtils.isServer(context))
+        {
+            this.encryptKey = server_write_key;
+            this.decryptKey = client_write_key;
+            this.encryptImplicitNonce = server_write_IV;
+            this.decryptImplicitNonce = client_write_IV;
+        }
+        else
+        {
+            this.encryptKey = client_write_key;
+            this.decryptKey = server_write_key;
+            this.encryptImplicitNonce = client_write_IV;
+            this.decryptImplicitNonce = server_write_IV;
+        }
+
+        System.arraycopy(encryptImplicitNonce, 0, encryptNonce, 0, IMPLICIT_NONCE_SIZE);
+        System.arraycopy(decryptImplicitNonce, 0, decryptNonce, 0, IMPLICIT_NONCE_SIZE);
+
+        /*
+         * Check the keys take, with a dummy nonce; the real one is set for each record.
+         */
+        this.encryptCipher.init(true, new AEADParameters(encryptKey, 8 * macSize, encryptNonce, null));
+        this.decryptCipher.init(false, new AEADParameters(decryptKey, 8 * macSize, decryptNonce, null));
+    }
+
+    public byte[] encodePlaintext(short type, byte[] plaintext, int offset, int len) throws IOException
+    {
+        byte[] buf = new byte[EXPLICIT_NONCE_SIZE + len + macSize];
+        System.arraycopy(plaintext, offset, buf, 0, len);
+        int totalsize = encodePlaintextInPlace(type, buf, 0, len);
+        return Arrays.copyOf(buf, totalsize);
+    }
+
+    public int encodePlaintextInPlace(short type, byte[] buf, int offset, int len) throws IOException
+    {
+        if (buf.length - offset - len < EXPLICIT_NONCE_SIZE + macSize)
+        {
+            throw new IllegalArgumentException("no room in buffer for nonce and tag");
+        }
+
+        long seqNo = writeSeqNo++;
+
+        TlsUtils.writeUint64(seqNo, encryptNonce, IMPLICIT_NONCE_SIZE);
+        setAdditionalData(encryptAdditionalData, seqNo, type, len);
+
+        /*
+         * The plaintext moves up to make room for the explicit nonce, then is
+         * encrypted back down over itself; the output never overtakes the input.
+         */
+        int plaintextOffset = offset + EXPLICIT_NONCE_SIZE;
+        System.arraycopy(buf, offset, buf, plaintextOffset, len);
+        System.arraycopy(encryptNonce, IMPLICIT_NONCE_SIZE, buf, offset, EXPLICIT_NONCE_SIZE);
+
+        // The key is unchanged, so GCM does not repeat its key schedule or tables
+        encryptCipher.init(true, new AEADParameters(null, 8 * macSize, encryptNonce, encryptAdditionalData));
+
+        int outputPos = plaintextOffset;
+        outputPos += encryptCipher.processBytes(buf, plaintextOffset, len, buf, outputPos);
+        try
+        {
+            outputPos += encryptCipher.doFinal(buf, outputPos);
+        }
+        catch (InvalidCipherTextException e)
+        {
+            // doFinal only fails this way when decrypting
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        return outputPos - offset;
+    }
+
+    public byte[] decodeCiphertext(short type, byte[] ciphertext, int offset, int len) throws IOException
+    {
+        byte[] buf = new byte[len];
+        System.arraycopy(ciphertext, offset, buf, 0, len);
+        int plaintextlength = decodeCiphertextInPlace(type, buf, 0, len);
+        return Arrays.copyOf(buf, plaintextlength);
+    }
+
+    public int decodeCiphertextInPlace(short type, byte[] buf, int offset, int len) throws IOException
+    {
+        if (len < EXPLICIT_NONCE_SIZE + macSize)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+
+        long seqNo = readSeqNo++;
+        int plaintextLength = len - EXPLICIT_NONCE_SIZE - macSize;
+
+        System.arraycopy(buf, offset, decryptNonce, IMPLICIT_NONCE_SIZE, EXPLICIT_NONCE_SIZE);
+        setAdditionalData(decryptAdditionalData, seqNo, type, plaintextLength);
+
+        decryptCipher.init(false, new AEADParameters(null, 8 * macSize, decryptNonce, decryptAdditionalData));
+
+        // The plaintext is written from offset, trailing the ciphertext it comes from
+        int inputOffset = offset + EXPLICIT_NONCE_SIZE;
+        int outputPos = offset;
+        outputPos += decryptCipher.processBytes(buf, inputOffset, len - EXPLICIT_NONCE_SIZE, buf, outputPos);
+        try
+        {
+            outputPos += decryptCipher.doFinal(buf, outputPos);
+        }
+        catch (InvalidCipherTextException e)
+        {
+            throw new TlsFatalAlert(AlertDescription.bad_record_mac);
+        }
+
+        if (outputPos - offset != plaintextLength)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        return plaintextLength;
+    }
+
+    /*
+     * RFC 5246 6.2.3.3. additional_data = seq_num + TLSCompressed.type +
+     * TLSCompressed.version + TLSCompressed.length
+     */
+    protected void setAdditionalData(byte[] additionalData, long seqNo, short type, int len) throws IOException
+    {
+        TlsUtils.writeUint64(seqNo, additionalData, 0);
+        TlsUtils.writeUint8(type, additionalData, 8);
+        TlsUtils.writeVersion(context.getServerVersion(), additionalData, 9);
+        TlsUtils.writeUint16(len, additionalData, 11);
+    }
+}
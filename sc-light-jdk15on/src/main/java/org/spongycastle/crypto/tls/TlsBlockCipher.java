@@ -5,15 +5,16 @@ import java.security.SecureRandom;
 
 import org.spongycastle.crypto.BlockCipher;
 import org.spongycastle.crypto.Digest;
+import org.spongycastle.crypto.MultiBlockCipher;
 import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.crypto.params.ParametersWithIV;
 import org.spongycastle.util.Arrays;
 
 /**
- * A generic TLS 1.0 / SSLv3 block cipher.
+ * A generic TLS 1.0 - 1.2 / SSLv3 block cipher.
  * This can be used for AES or 3DES for example.
  */
-public class TlsBlockCipher implements TlsCipher
+public class TlsBlockCipher implements TlsInPlaceCipher
 {
     protected TlsClientContext context;
 
@@ -23,6 +24,9 @@ public class TlsBlockCipher implements TlsCipher
     protected TlsMac writeMac;
     protected TlsMac readMac;
 
+    private byte[] calculatedMac;
+    private byte[] explicitIV;
+
 	public TlsMac getWriteMac()
 	{
 		return writeMac;
@@ -46,21 +50,36 @@ public class TlsBlockCipher implements TlsCipher
 
         byte[] key_block = TlsUtils.calculateKeyBlock(context, key_block_size);
 
+        /*
+         * The key block holds the client's MAC secret, key and IV before the
+         * server's, so a server writes with the second set of each.
+         */
+        boolean isServer = TlsUtils.isServer(context);
+        Digest clientDigest = isServer ? readDigest : writeDigest;
+        Digest serverDigest = isServer ? writeDigest : readDigest;
+        BlockCipher clientCipher = isServer ? decryptCipher : encryptCipher;
+
         int offset = 0;
 
         // Init MACs
-        writeMac = new TlsMac(context, writeDigest, key_block, offset, writeDigest.getDigestSize());
-        offset += writeDigest.getDigestSize();
-        readMac = new TlsMac(context, readDigest, key_block, offset, readDigest.getDigestSize());
-        offset += readDigest.getDigestSize();
+        TlsMac clientMac = new TlsMac(context, clientDigest, key_block, offset, clientDigest.getDigestSize());
+        offset += clientDigest.getDigestSize();
+        TlsMac serverMac = new TlsMac(context, serverDigest, key_block, offset, serverDigest.getDigestSize());
+        offset += serverDigest.getDigestSize();
 
-        // Init Ciphers
-        this.initCipher(true, encryptCipher, key_block, cipherKeySize, offset, offset
-            + (cipherKeySize * 2));
-        offset += cipherKeySize;
-        this.initCipher(false, decryptCipher, key_block, cipherKeySize, offset, offset
-            + cipherKeySize + encryptCipher.getBlockSize());
+        writeMac = isServer ? serverMac : clientMac;
+        readMac = isServer ? clientMac : serverMac;
 
+        // Init Ciphers
+        int clientKeyOffset = offset;
+        int serverKeyOffset = offset + cipherKeySize;
+        int clientIVOffset = offset + (cipherKeySize * 2);
+        int serverIVOffset = clientIVOffset + clientCipher.getBlockSize();
+
+        this.initCipher(true, encryptCipher, key_block, cipherKeySize,
+            isServer ? serverKeyOffset : clientKeyOffset, isServer ? serverIVOffset : clientIVOffset);
+        this.initCipher(false, decryptCipher, key_block, cipherKeySize,
+            isServer ? clientKeyOffset : serverKeyOffset, isServer ? clientIVOffset : serverIVOffset);
     }
 
     protected void initCipher(boolean forEncryption, BlockCipher cipher, byte[] key_block,
@@ -73,51 +92,100 @@ public class TlsBlockCipher implements TlsCipher
     }
 
     public byte[] encodePlaintext(short type, byte[] plaintext, int offset, int len)
+    {
+        // room for the mac and the most padding that could be chosen
+        byte[] buf = new byte[len + encryptCipher.getBlockSize() + writeMac.getSize() + 256];
+        System.arraycopy(plaintext, offset, buf, 0, len);
+        int totalsize = encodePlaintextInPlace(type, buf, 0, len);
+        return Arrays.copyOf(buf, totalsize);
+    }
+
+    public int encodePlaintextInPlace(short type, byte[] buf, int offset, int len)
     {
         int blocksize = encryptCipher.getBlockSize();
-        int minPaddingSize = blocksize - ((len + writeMac.getSize() + 1) % blocksize);
+        int macSize = writeMac.getSize();
+        int minPaddingSize = blocksize - ((len + macSize + 1) % blocksize);
         int paddingSize = minPaddingSize;
 
+        /*
+         * RFC 4346 6.2.3.2. From TLS 1.1 each record carries its own IV; encrypting a
+         * random block ahead of the data, still chained from the last record, does that.
+         */
+        int ivSize = TlsUtils.isTLSv11(context) ? blocksize : 0;
+
+        int room = buf.length - offset - len - ivSize;
+        if (room < macSize + minPaddingSize + 1)
+        {
+            throw new IllegalArgumentException("no room in buffer for mac and padding");
+        }
+
+        if (ivSize > 0)
+        {
+            if (explicitIV == null)
+            {
+                explicitIV = new byte[blocksize];
+            }
+            context.getSecureRandom().nextBytes(explicitIV);
+            System.arraycopy(buf, offset, buf, offset + ivSize, len);
+            System.arraycopy(explicitIV, 0, buf, offset, ivSize);
+        }
+
         boolean isTls = context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv10.getFullVersion();
 
         if (isTls)
         {
-            // Add a random number of extra blocks worth of padding
-            int maxExtraPadBlocks = (255 - minPaddingSize) / blocksize;
+            // Add a random number of extra blocks worth of padding, as far as the buffer allows
+            int maxExtraPadBlocks = Math.min((255 - minPaddingSize) / blocksize,
+                (room - macSize - minPaddingSize - 1) / blocksize);
             int actualExtraPadBlocks = chooseExtraPadBlocks(context.getSecureRandom(), maxExtraPadBlocks);
             paddingSize += (actualExtraPadBlocks * blocksize);
         }
 
-        int totalsize = len + writeMac.getSize() + paddingSize + 1;
-        byte[] outbuf = new byte[totalsize];
-        System.arraycopy(plaintext, offset, outbuf, 0, len);
-        byte[] mac = writeMac.calculateMac(type, plaintext, offset, len);
-        System.arraycopy(mac, 0, outbuf, len, mac.length);
-        int paddoffset = len + mac.length;
+        int totalsize = ivSize + len + macSize + paddingSize + 1;
+        int plaintextOffset = offset + ivSize;
+        writeMac.calculateMac(type, buf, plaintextOffset, len, buf, plaintextOffset + len);
+        int paddoffset = plaintextOffset + len + macSize;
         for (int i = 0; i <= paddingSize; i++)
         {
-            outbuf[i + paddoffset] = (byte)paddingSize;
+            buf[i + paddoffset] = (byte)paddingSize;
+        }
+
+        if (encryptCipher instanceof MultiBlockCipher)
+        {
+            ((MultiBlockCipher)encryptCipher).processBlocks(buf, offset, totalsize / blocksize, buf, offset);
         }
-        for (int i = 0; i < totalsize; i += blocksize)
+        else
         {
-            encryptCipher.processBlock(outbuf, i, outbuf, i);
+            for (int i = 0; i < totalsize; i += blocksize)
+            {
+                encryptCipher.processBlock(buf, offset + i, buf, offset + i);
+            }
         }
-        return outbuf;
+        return totalsize;
     }
 
     public byte[] decodeCiphertext(short type, byte[] ciphertext, int offset, int len)
         throws IOException
     {
-        // TODO TLS 1.1 (RFC 4346) introduces an explicit IV
+        byte[] buf = new byte[len];
+        System.arraycopy(ciphertext, offset, buf, 0, len);
+        int plaintextlength = decodeCiphertextInPlace(type, buf, 0, len);
+        return Arrays.copyOf(buf, plaintextlength);
+    }
 
-        int minLength = readMac.getSize() + 1;
+    public int decodeCiphertextInPlace(short type, byte[] ciphertext, int offset, int len)
+        throws IOException
+    {
+        int macSize = readMac.getSize();
+        int minLength = macSize + 1;
         int blocksize = decryptCipher.getBlockSize();
+        int ivSize = TlsUtils.isTLSv11(context) ? blocksize : 0;
         boolean decrypterror = false;
 
         /*
-         * ciphertext must be at least (macsize + 1) bytes long
+         * ciphertext must be at least (macsize + 1) bytes long, after any explicit IV
          */
-        if (len < minLength)
+        if (len < ivSize + minLength)
         {
             throw new TlsFatalAlert(AlertDescription.decode_error);
         }
@@ -133,9 +201,25 @@ public class TlsBlockCipher implements TlsCipher
         /*
          * Decrypt all the ciphertext using the blockcipher
          */
-        for (int i = 0; i < len; i += blocksize)
+        if (decryptCipher instanceof MultiBlockCipher)
+        {
+            ((MultiBlockCipher)decryptCipher).processBlocks(ciphertext, offset, len / blocksize, ciphertext, offset);
+        }
+        else
         {
-            decryptCipher.processBlock(ciphertext, i + offset, ciphertext, i + offset);
+            for (int i = 0; i < len; i += blocksize)
+            {
+                decryptCipher.processBlock(ciphertext, i + offset, ciphertext, i + offset);
+            }
+        }
+
+        /*
+         * The first block of a TLS 1.1 record only served as the IV for the rest
+         */
+        if (ivSize > 0)
+        {
+            len -= ivSize;
+            System.arraycopy(ciphertext, offset + ivSize, ciphertext, offset, len);
         }
 
         /*
@@ -186,16 +270,22 @@ public class TlsBlockCipher implements TlsCipher
          * mac verification failed or padding verification failed.
          */
         int plaintextlength = len - minLength - paddingsize;
-        byte[] calculatedMac = readMac.calculateMac(type, ciphertext, offset, plaintextlength);
+        if (calculatedMac == null)
+        {
+            calculatedMac = new byte[macSize];
+        }
+        readMac.calculateMac(type, ciphertext, offset, plaintextlength, calculatedMac, 0);
 
         /*
          * Check all bytes in the mac (constant-time comparison).
          */
-        byte[] decryptedMac = new byte[calculatedMac.length];
-        System.arraycopy(ciphertext, offset + plaintextlength, decryptedMac, 0,
-            calculatedMac.length);
-
-        if (!Arrays.constantTimeAreEqual(calculatedMac, decryptedMac))
+        int macOffset = offset + plaintextlength;
+        int diff = 0;
+        for (int i = 0; i < macSize; ++i)
+        {
+            diff |= (calculatedMac[i] ^ ciphertext[macOffset + i]);
+        }
+        if (diff != 0)
         {
             decrypterror = true;
         }
@@ -208,9 +298,7 @@ public class TlsBlockCipher implements TlsCipher
             throw new TlsFatalAlert(AlertDescription.bad_record_mac);
         }
 
-        byte[] plaintext = new byte[plaintextlength];
-        System.arraycopy(ciphertext, offset, plaintext, 0, plaintextlength);
-        return plaintext;
+        return plaintextlength;
     }
 
     protected int chooseExtraPadBlocks(SecureRandom r, int max)
@@ -6,15 +6,22 @@ class TlsClientContextImpl implements TlsClientContext
 {
     private SecureRandom secureRandom;
     private SecurityParameters securityParameters;
+    private boolean server;
 
     private ProtocolVersion clientVersion = null;
     private ProtocolVersion serverVersion = null;
     private Object userObject = null;
 
     TlsClientContextImpl(SecureRandom secureRandom, SecurityParameters securityParameters)
+    {
+        this(secureRandom, securityParameters, false);
+    }
+
+    TlsClientContextImpl(SecureRandom secureRandom, SecurityParameters securityParameters, boolean server)
     {
         this.secureRandom = secureRandom;
         this.securityParameters = securityParameters;
+        this.server = server;
     }
 
     public SecureRandom getSecureRandom()
@@ -47,6 +54,11 @@ class TlsClientContextImpl implements TlsClientContext
         this.serverVersion = serverVersion;
     }
 
+    boolean isServer()
+    {
+        return server;
+    }
+
     public Object getUserObject()
     {
         return userObject;
@@ -1,21 +1,42 @@
 package org.spongycastle.crypto.tls;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
 
-import org.spongycastle.crypto.Signer;
-import org.spongycastle.crypto.io.SignerInputStream;
+import org.spongycastle.crypto.AsymmetricCipherKeyPair;
+import org.spongycastle.crypto.Digest;
 import org.spongycastle.crypto.params.DHParameters;
+import org.spongycastle.crypto.params.DHPrivateKeyParameters;
 import org.spongycastle.crypto.params.DHPublicKeyParameters;
+import org.spongycastle.util.BigIntegers;
+import org.spongycastle.util.io.TeeInputStream;
 
-class TlsDHEKeyExchange extends TlsDHKeyExchange
+class TlsDHEKeyExchange extends TlsDHKeyExchange implements TlsServerKeyExchange
 {
+    protected DHParameters dhParameters = null;
+    protected TlsSignerCredentials serverCredentials = null;
+    protected DHPrivateKeyParameters dhAgreeServerPrivateKey = null;
+    protected DHPublicKeyParameters dhAgreeClientPublicKey = null;
+
     TlsDHEKeyExchange(TlsClientContext context, int keyExchange)
     {
         super(context, keyExchange);
     }
 
+    /**
+     * Create the server side of the key exchange.
+     *
+     * @param dhParameters the group the server's ephemeral key is generated in.
+     */
+    TlsDHEKeyExchange(TlsClientContext context, int keyExchange, DHParameters dhParameters)
+    {
+        super(context, keyExchange);
+
+        this.dhParameters = dhParameters;
+    }
+
     public void skipServerKeyExchange() throws IOException
     {
         throw new TlsFatalAlert(AlertDescription.unexpected_message);
@@ -24,20 +45,14 @@ class TlsDHEKeyExchange extends TlsDHKeyExchange
     public void processServerKeyExchange(InputStream is)
         throws IOException
     {
-        SecurityParameters securityParameters = context.getSecurityParameters();
-
-        Signer signer = initSigner(tlsSigner, securityParameters);
-        InputStream sigIn = new SignerInputStream(is, signer);
+        ByteArrayOutputStream params = new ByteArrayOutputStream();
+        InputStream sigIn = new TeeInputStream(is, params);
 
         byte[] pBytes = TlsUtils.readOpaque16(sigIn);
         byte[] gBytes = TlsUtils.readOpaque16(sigIn);
         byte[] YsBytes = TlsUtils.readOpaque16(sigIn);
 
-        byte[] sigByte = TlsUtils.readOpaque16(is);
-        if (!signer.verifySignature(sigByte))
-        {
-            throw new TlsFatalAlert(AlertDescription.bad_certificate);
-        }
+        TlsUtils.verifyServerKeyExchangeSignature(context, tlsSigner, serverPublicKey, params.toByteArray(), is);
 
         BigInteger p = new BigInteger(1, pBytes);
         BigInteger g = new BigInteger(1, gBytes);
@@ -47,11 +62,97 @@ class TlsDHEKeyExchange extends TlsDHKeyExchange
             new DHParameters(p, g)));
     }
 
-    protected Signer initSigner(TlsSigner tlsSigner, SecurityParameters securityParameters)
+    public void processServerCredentials(TlsCredentials serverCredentials) throws IOException
+    {
+        if (!(serverCredentials instanceof TlsSignerCredentials))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        processServerCertificate(serverCredentials.getCertificate());
+
+        this.serverCredentials = (TlsSignerCredentials)serverCredentials;
+    }
+
+    public byte[] generateServerKeyExchange() throws IOException
+    {
+        if (dhParameters == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        AsymmetricCipherKeyPair kp = generateDHKeyPair(dhParameters);
+        this.dhAgreeServerPrivateKey = (DHPrivateKeyParameters)kp.getPrivate();
+
+        BigInteger Ys = ((DHPublicKeyParameters)kp.getPublic()).getY();
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        TlsUtils.writeOpaque16(BigIntegers.asUnsignedByteArray(dhParameters.getP()), buf);
+        TlsUtils.writeOpaque16(BigIntegers.asUnsignedByteArray(dhParameters.getG()), buf);
+        TlsUtils.writeOpaque16(BigIntegers.asUnsignedByteArray(Ys), buf);
+
+        byte[] params = buf.toByteArray();
+
+        SecurityParameters securityParameters = context.getSecurityParameters();
+
+        SignatureAndHashAlgorithm algorithm = null;
+        Digest hash;
+        if (TlsUtils.isTLSv12(context))
+        {
+            algorithm = TlsUtils.chooseSignatureAndHashAlgorithm(securityParameters.peerSigAlgs,
+                getSignatureAlgorithm());
+            hash = TlsUtils.createHash(algorithm.getHash());
+        }
+        else
+        {
+            hash = new CombinedHash();
+        }
+
+        hash.update(securityParameters.clientRandom, 0, securityParameters.clientRandom.length);
+        hash.update(securityParameters.serverRandom, 0, securityParameters.serverRandom.length);
+        hash.update(params, 0, params.length);
+
+        byte[] hashBytes = new byte[hash.getDigestSize()];
+        hash.doFinal(hashBytes, 0);
+
+        byte[] sigBytes = TlsUtils.generateSignature(serverCredentials, algorithm, hashBytes);
+
+        if (algorithm != null)
+        {
+            algorithm.encode(buf);
+        }
+        TlsUtils.writeOpaque16(sigBytes, buf);
+
+        return buf.toByteArray();
+    }
+
+    public void processClientKeyExchange(InputStream is) throws IOException
+    {
+        if (dhAgreeServerPrivateKey == null)
+        {
+            throw new TlsFatalAlert(AlertDescription.unexpected_message);
+        }
+
+        BigInteger Yc = new BigInteger(1, TlsUtils.readOpaque16(is));
+
+        this.dhAgreeClientPublicKey = validateDHPublicKey(new DHPublicKeyParameters(Yc, dhParameters));
+    }
+
+    public byte[] generatePremasterSecret() throws IOException
+    {
+        if (dhAgreeServerPrivateKey != null)
+        {
+            return calculateDHBasicAgreement(dhAgreeClientPublicKey, dhAgreeServerPrivateKey);
+        }
+
+        return super.generatePremasterSecret();
+    }
+
+    /**
+     * @return {@link SignatureAlgorithm}
+     */
+    protected short getSignatureAlgorithm()
     {
-        Signer signer = tlsSigner.createVerifyer(this.serverPublicKey);
-        signer.update(securityParameters.clientRandom, 0, securityParameters.clientRandom.length);
-        signer.update(securityParameters.serverRandom, 0, securityParameters.serverRandom.length);
-        return signer;
+        return keyExchange == KeyExchangeAlgorithm.DHE_DSS ? SignatureAlgorithm.dsa : SignatureAlgorithm.rsa;
     }
 }
@@ -13,19 +13,27 @@ import org.spongycastle.crypto.signers.DSADigestSigner;
 
 abstract class TlsDSASigner implements TlsSigner
 {
-    public byte[] calculateRawSignature(SecureRandom secureRandom, AsymmetricKeyParameter privateKey, byte[] md5andsha1)
-        throws CryptoException
+    public byte[] calculateRawSignature(SecureRandom secureRandom, AsymmetricKeyParameter privateKey,
+        SignatureAndHashAlgorithm algorithm, byte[] hash) throws CryptoException
     {
-        // Note: Only use the SHA1 part of the hash
         Signer signer = new DSADigestSigner(createDSAImpl(), new NullDigest());
         signer.init(true, new ParametersWithRandom(privateKey, secureRandom));
-        signer.update(md5andsha1, 16, 20);
+        if (algorithm == null)
+        {
+            // Note: Only use the SHA1 part of the hash
+            signer.update(hash, 16, 20);
+        }
+        else
+        {
+            signer.update(hash, 0, hash.length);
+        }
         return signer.generateSignature();
     }
 
-    public Signer createVerifyer(AsymmetricKeyParameter publicKey)
+    public Signer createVerifyer(SignatureAndHashAlgorithm algorithm, AsymmetricKeyParameter publicKey)
     {
-        Signer verifyer = new DSADigestSigner(createDSAImpl(), new SHA1Digest());
+        Signer verifyer = new DSADigestSigner(createDSAImpl(),
+            algorithm == null ? new SHA1Digest() : TlsUtils.createHash(algorithm.getHash()));
         verifyer.init(false, publicKey);
         return verifyer;
     }
@@ -1,13 +1,13 @@
 package org.spongycastle.crypto.tls;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.spongycastle.crypto.Signer;
-import org.spongycastle.crypto.io.SignerInputStream;
 import org.spongycastle.crypto.params.ECDomainParameters;
 import org.spongycastle.crypto.params.ECPublicKeyParameters;
 import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.util.io.TeeInputStream;
 
 /**
  * ECDHE key exchange (see RFC 4492)
@@ -27,10 +27,8 @@ class TlsECDHEKeyExchange extends TlsECDHKeyExchange
     public void processServerKeyExchange(InputStream is)
         throws IOException
     {
-        SecurityParameters securityParameters = context.getSecurityParameters();
-
-        Signer signer = initSigner(tlsSigner, securityParameters);
-        InputStream sigIn = new SignerInputStream(is, signer);
+        ByteArrayOutputStream params = new ByteArrayOutputStream();
+        InputStream sigIn = new TeeInputStream(is, params);
 
         short curveType = TlsUtils.readUint8(sigIn);
         ECDomainParameters curve_params;
@@ -53,11 +51,7 @@ class TlsECDHEKeyExchange extends TlsECDHKeyExchange
 
         byte[] publicBytes = TlsUtils.readOpaque8(sigIn);
 
-        byte[] sigByte = TlsUtils.readOpaque16(is);
-        if (!signer.verifySignature(sigByte))
-        {
-            throw new TlsFatalAlert(AlertDescription.bad_certificate);
-        }
+        TlsUtils.verifyServerKeyExchangeSignature(context, tlsSigner, serverPublicKey, params.toByteArray(), is);
 
         // TODO Check curve_params not null
 
@@ -101,12 +95,4 @@ class TlsECDHEKeyExchange extends TlsECDHKeyExchange
             throw new TlsFatalAlert(AlertDescription.internal_error);
         }
     }
-
-    protected Signer initSigner(TlsSigner tlsSigner, SecurityParameters securityParameters)
-    {
-        Signer signer = tlsSigner.createVerifyer(this.serverPublicKey);
-        signer.update(securityParameters.clientRandom, 0, securityParameters.clientRandom.length);
-        signer.update(securityParameters.serverRandom, 0, securityParameters.serverRandom.length);
-        return signer;
-    }
 }
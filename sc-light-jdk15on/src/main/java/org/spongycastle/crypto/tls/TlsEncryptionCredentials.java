@@ -0,0 +1,19 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+
+public interface TlsEncryptionCredentials extends TlsCredentials
+{
+    /**
+     * Decrypt the pre-master secret sent by the client in an RSA key exchange. A
+     * value which fails to decrypt must not cause an exception, as the failure would
+     * be visible to the client. Some random value should be returned instead, which
+     * the caller will reject in the same way as a pre-master secret with the wrong
+     * length or version.
+     *
+     * @param encryptedPreMasterSecret the encrypted pre-master secret.
+     * @return the pre-master secret, or a random value if it could not be decrypted.
+     * @throws IOException if the credentials cannot be used.
+     */
+    byte[] decryptPreMasterSecret(byte[] encryptedPreMasterSecret) throws IOException;
+}
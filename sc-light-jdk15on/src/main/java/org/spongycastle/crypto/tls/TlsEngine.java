@@ -0,0 +1,442 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+/**
+ * A non-blocking TLS connection, for either a client or a server, in the style
+ * of <code>javax.net.ssl.SSLEngine</code>.
+ * <p>
+ * Rather than reading from and writing to streams, the engine is given the
+ * bytes read from the network with {@link #unwrap(ByteBuffer, ByteBuffer)},
+ * and hands back the bytes to be sent with {@link #wrap(ByteBuffer, ByteBuffer)},
+ * so no thread ever has to block waiting for the peer and many connections
+ * can be driven by a few selector threads. The handshake itself, and the
+ * record layer with its ciphers and key exchanges, are those used by
+ * {@link TlsProtocolHandler} and {@link TlsServerProtocolHandler}.
+ * <p>
+ * If delegated tasks are turned on, handshake records are not processed
+ * inside <code>unwrap()</code>. The status becomes {@link #NEED_TASK} and the
+ * records, with the public key operations they lead to, are processed by
+ * running the task returned by {@link #getDelegatedTask()}, typically on a
+ * worker thread. The engine makes no progress until the task has run. For a
+ * server this keeps the private key operations, such as decrypting the
+ * pre-master secret or signing the key exchange, off the selector threads.
+ * <p>
+ * While a task is outstanding no other method touches the connection state:
+ * <code>wrap()</code> and <code>unwrap()</code> do nothing, the status is
+ * {@link #NEED_TASK}, and a call to <code>closeOutbound()</code> takes
+ * effect once the task has run.
+ */
+public class TlsEngine
+{
+    /**
+     * The handshake is complete, or has not been started.
+     */
+    public static final int NOT_HANDSHAKING = 0;
+
+    /**
+     * There is data waiting to be collected with <code>wrap()</code>.
+     */
+    public static final int NEED_WRAP = 1;
+
+    /**
+     * The handshake is waiting for more data from the peer.
+     */
+    public static final int NEED_UNWRAP = 2;
+
+    /**
+     * The task returned by <code>getDelegatedTask()</code> must be run.
+     */
+    public static final int NEED_TASK = 3;
+
+    /*
+     * The largest plaintext fragment put in a single record, and the size of
+     * a record header.
+     */
+    private static final int MAX_FRAGMENT = 1 << 14;
+    private static final int MAX_CIPHERTEXT = MAX_FRAGMENT + 2048;
+    private static final int RECORD_HEADER = 5;
+
+    private final TlsClient tlsClient;
+    private final TlsServer tlsServer;
+    private final ByteQueue inputQueue = new ByteQueue(1 << 14, RECORD_HEADER + MAX_CIPHERTEXT);
+    private final ByteQueue outputQueue = new ByteQueue(1 << 14);
+    private final TlsProtocol handler;
+    private final byte[] transfer = new byte[MAX_FRAGMENT];
+
+    private boolean useDelegatedTasks = false;
+    private boolean handshakeStarted = false;
+    private boolean taskPending = false;
+    private boolean taskTaken = false;
+    private boolean closePending = false;
+    private Exception taskException = null;
+
+    /**
+     * Create an engine for a client connection.
+     *
+     * @param tlsClient the client deciding the parameters of the connection.
+     * @param random the source of randomness for the connection.
+     */
+    public TlsEngine(TlsClient tlsClient, SecureRandom random)
+    {
+        if (tlsClient == null)
+        {
+            throw new IllegalArgumentException("'tlsClient' cannot be null");
+        }
+
+        this.tlsClient = tlsClient;
+        this.tlsServer = null;
+        this.handler = new TlsProtocolHandler(new ByteQueueInputStream(inputQueue),
+            new ByteQueueOutputStream(outputQueue), random);
+    }
+
+    /**
+     * Create an engine for a server connection.
+     *
+     * @param tlsServer the server deciding the parameters of the connection.
+     * @param random the source of randomness for the connection.
+     */
+    public TlsEngine(TlsServer tlsServer, SecureRandom random)
+    {
+        if (tlsServer == null)
+        {
+            throw new IllegalArgumentException("'tlsServer' cannot be null");
+        }
+
+        this.tlsClient = null;
+        this.tlsServer = tlsServer;
+        this.handler = new TlsServerProtocolHandler(new ByteQueueInputStream(inputQueue),
+            new ByteQueueOutputStream(outputQueue), random);
+    }
+
+    /**
+     * Set whether handshake records are processed by delegated tasks rather
+     * than within <code>unwrap()</code>.
+     *
+     * @param useDelegatedTasks true if delegated tasks should be used.
+     */
+    public synchronized void setUseDelegatedTasks(boolean useDelegatedTasks)
+    {
+        this.useDelegatedTasks = useDelegatedTasks;
+    }
+
+    /**
+     * Start the handshake. For a client the client hello is then waiting to
+     * be collected with <code>wrap()</code>, while a server waits for the
+     * client hello to be given to <code>unwrap()</code>.
+     *
+     * @throws IOException if the client hello cannot be created.
+     */
+    public synchronized void beginHandshake() throws IOException
+    {
+        if (handshakeStarted)
+        {
+            throw new IllegalStateException("handshake already started");
+        }
+
+        handshakeStarted = true;
+        if (tlsServer != null)
+        {
+            ((TlsServerProtocolHandler)handler).beginAccept(tlsServer);
+        }
+        else
+        {
+            ((TlsProtocolHandler)handler).beginHandshake(tlsClient);
+        }
+    }
+
+    /**
+     * Return the current handshake status, one of {@link #NOT_HANDSHAKING},
+     * {@link #NEED_WRAP}, {@link #NEED_UNWRAP} or {@link #NEED_TASK}.
+     */
+    public synchronized int getHandshakeStatus()
+    {
+        if (taskPending)
+        {
+            return NEED_TASK;
+        }
+        if (outputQueue.size() > 0)
+        {
+            return NEED_WRAP;
+        }
+        if (handshakeStarted && !handler.isHandshakeComplete() && !handler.isClosed())
+        {
+            return NEED_UNWRAP;
+        }
+        return NOT_HANDSHAKING;
+    }
+
+    /**
+     * Return true once the handshake has completed and application data can
+     * be exchanged.
+     */
+    public synchronized boolean isHandshakeComplete()
+    {
+        return !taskPending && handler.isHandshakeComplete();
+    }
+
+    /**
+     * Take data received from the peer from <code>src</code>, and place any
+     * application data it contains in <code>dst</code>.
+     * <p>
+     * At most one record is taken from <code>src</code> per call, and anything
+     * after it is left there for the next call. If <code>src</code> ends part way
+     * through a record, what there is of it is kept until the rest arrives.
+     * Application data which does not fit in <code>dst</code> is kept for the
+     * next call, and once a record's worth is waiting no further records are
+     * taken until it has been collected. Nothing is consumed while a delegated
+     * task is waiting to be run.
+     *
+     * @param src the data received from the peer.
+     * @param dst the buffer to receive application data.
+     * @return the number of bytes of application data placed in dst.
+     * @throws IOException if the peer's data is in error, or the connection has failed.
+     */
+    public synchronized int unwrap(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        checkTaskException();
+
+        if (taskPending)
+        {
+            return 0;
+        }
+
+        int needed;
+        while (src.hasRemaining() && (needed = bytesToCompleteRecord()) > 0)
+        {
+            int len = Math.min(Math.min(src.remaining(), needed), transfer.length);
+            src.get(transfer, 0, len);
+            inputQueue.addData(transfer, 0, len);
+        }
+
+        if (useDelegatedTasks && !handler.isHandshakeComplete() && isRecordAvailable())
+        {
+            taskPending = true;
+        }
+        else
+        {
+            processRecords();
+        }
+
+        int produced = 0;
+
+        while (dst.hasRemaining() && handler.availableApplicationData() > 0)
+        {
+            int len = handler.readAvailableApplicationData(transfer, 0, Math.min(dst.remaining(), transfer.length));
+            dst.put(transfer, 0, len);
+            produced += len;
+        }
+
+        return produced;
+    }
+
+    /**
+     * Take application data from <code>src</code>, and place the data to be
+     * sent to the peer in <code>dst</code>.
+     * <p>
+     * Application data is only consumed once the handshake is complete and
+     * everything already waiting to be sent has been collected, and at most
+     * one record's worth is consumed per call. Data which does not fit in
+     * <code>dst</code> is kept for the next call.
+     *
+     * @param src the application data to send.
+     * @param dst the buffer to receive the data for the peer.
+     * @return the number of bytes placed in dst.
+     * @throws IOException if the connection has failed.
+     */
+    public synchronized int wrap(ByteBuffer src, ByteBuffer dst) throws IOException
+    {
+        checkTaskException();
+
+        if (taskPending)
+        {
+            return 0;
+        }
+
+        if (src.hasRemaining() && outputQueue.size() == 0 && handler.isHandshakeComplete())
+        {
+            int len = Math.min(src.remaining(), transfer.length);
+            src.get(transfer, 0, len);
+            handler.writeData(transfer, 0, len);
+        }
+
+        int produced = Math.min(dst.remaining(), outputQueue.size());
+        int remaining = produced;
+
+        while (remaining > 0)
+        {
+            int len = Math.min(remaining, transfer.length);
+            outputQueue.removeData(transfer, 0, len);
+            dst.put(transfer, 0, len);
+            remaining -= len;
+        }
+
+        return produced;
+    }
+
+    /**
+     * Return the task which must be run when the status is
+     * {@link #NEED_TASK}, or null if there is none. A task is only returned
+     * once, so null is also returned until the task last returned has run.
+     */
+    public synchronized Runnable getDelegatedTask()
+    {
+        if (!taskPending || taskTaken)
+        {
+            return null;
+        }
+
+        taskTaken = true;
+
+        return new Runnable()
+        {
+            public void run()
+            {
+                runTask();
+            }
+        };
+    }
+
+    /**
+     * Send a close_notify alert to the peer, which then has to be collected
+     * with <code>wrap()</code>. If a delegated task is outstanding the alert
+     * is sent once the task has run.
+     *
+     * @throws IOException if the connection has failed.
+     */
+    public synchronized void closeOutbound() throws IOException
+    {
+        if (taskPending)
+        {
+            closePending = true;
+            return;
+        }
+
+        handler.close();
+    }
+
+    /**
+     * Return true if the connection is closed and all application data
+     * received has been collected.
+     */
+    public synchronized boolean isInboundDone()
+    {
+        return !taskPending && handler.isClosed() && handler.availableApplicationData() == 0;
+    }
+
+    /**
+     * Return true if the connection is closed and all data for the peer has
+     * been collected.
+     */
+    public synchronized boolean isOutboundDone()
+    {
+        return !taskPending && handler.isClosed() && outputQueue.size() == 0;
+    }
+
+    private void runTask()
+    {
+        /*
+         * The handshake records are processed without holding the lock, so the
+         * status can still be queried from the selector thread. Every public
+         * method checks taskPending before going near the handler or the
+         * queues, and taskPending is only cleared under the lock once the
+         * task is finished with them.
+         */
+        Exception failure = null;
+
+        try
+        {
+            processRecords();
+        }
+        catch (Exception e)
+        {
+            failure = e;
+        }
+
+        synchronized (this)
+        {
+            taskPending = false;
+            taskTaken = false;
+
+            if (closePending)
+            {
+                closePending = false;
+
+                try
+                {
+                    handler.close();
+                }
+                catch (IOException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                }
+            }
+
+            taskException = failure;
+        }
+    }
+
+    private void checkTaskException() throws IOException
+    {
+        if (taskException != null)
+        {
+            Exception e = taskException;
+
+            taskException = null;
+
+            if (e instanceof IOException)
+            {
+                throw (IOException)e;
+            }
+            throw (RuntimeException)e;
+        }
+    }
+
+    private void processRecords() throws IOException
+    {
+        /*
+         * Records are left in the input queue while a record's worth of application data
+         * is waiting to be collected, so the handler's queue stays within its limit.
+         */
+        while (!handler.isClosed() && isRecordAvailable() && handler.availableApplicationData() < MAX_FRAGMENT)
+        {
+            handler.safeReadData();
+        }
+    }
+
+    /**
+     * Return true if the input queue holds at least one complete record.
+     */
+    private boolean isRecordAvailable()
+    {
+        return inputQueue.size() >= RECORD_HEADER && bytesToCompleteRecord() <= 0;
+    }
+
+    /**
+     * Return the number of bytes still to be added to the input queue before
+     * the record at its head is complete. A header claiming a record longer
+     * than any allowed counts as complete, so the record layer sees it and fails.
+     */
+    private int bytesToCompleteRecord()
+    {
+        int size = inputQueue.size();
+
+        if (size < RECORD_HEADER)
+        {
+            return RECORD_HEADER - size;
+        }
+
+        int length = (inputQueue.peek(3) << 8) | inputQueue.peek(4);
+        if (length > MAX_CIPHERTEXT)
+        {
+            return 0;
+        }
+
+        return RECORD_HEADER + length - size;
+    }
+}
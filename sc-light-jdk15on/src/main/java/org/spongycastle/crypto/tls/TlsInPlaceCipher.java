@@ -0,0 +1,40 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+
+/**
+ * A TlsCipher which can also protect and unprotect records in place, in a
+ * buffer owned by the record layer, without allocating any new arrays.
+ */
+public interface TlsInPlaceCipher
+    extends TlsCipher
+{
+    /**
+     * The most a record can grow by when it is encoded, as allowed by the
+     * limit on TLSCiphertext.length.
+     */
+    static final int MAX_EXPANSION = 2048;
+
+    /**
+     * Encode the plaintext held in buf, replacing it with the ciphertext.
+     *
+     * @param type the content type of the record.
+     * @param buf the buffer holding the plaintext, with room for at least
+     * MAX_EXPANSION more bytes after it.
+     * @param offset the offset of the plaintext in buf.
+     * @param len the length of the plaintext.
+     * @return the length of the ciphertext, which starts at offset.
+     */
+    int encodePlaintextInPlace(short type, byte[] buf, int offset, int len) throws IOException;
+
+    /**
+     * Decode the ciphertext held in buf, replacing it with the plaintext.
+     *
+     * @param type the content type of the record.
+     * @param buf the buffer holding the ciphertext.
+     * @param offset the offset of the ciphertext in buf.
+     * @param len the length of the ciphertext.
+     * @return the length of the plaintext, which starts at offset.
+     */
+    int decodeCiphertextInPlace(short type, byte[] buf, int offset, int len) throws IOException;
+}
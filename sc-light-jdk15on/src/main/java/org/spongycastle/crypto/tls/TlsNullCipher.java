@@ -3,7 +3,7 @@ package org.spongycastle.crypto.tls;
 /**
  * A NULL CipherSuite in java, this should only be used during handshake.
  */
-public class TlsNullCipher implements TlsCipher
+public class TlsNullCipher implements TlsInPlaceCipher
 {
     public byte[] encodePlaintext(short type, byte[] plaintext, int offset, int len)
     {
@@ -15,6 +15,16 @@ public class TlsNullCipher implements TlsCipher
         return copyData(ciphertext, offset, len);
     }
 
+    public int encodePlaintextInPlace(short type, byte[] buf, int offset, int len)
+    {
+        return len;
+    }
+
+    public int decodeCiphertextInPlace(short type, byte[] buf, int offset, int len)
+    {
+        return len;
+    }
+
     protected byte[] copyData(byte[] text, int offset, int len)
     {
         byte[] result = new byte[len];
@@ -2,23 +2,72 @@ package org.spongycastle.crypto.tls;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * An OutputStream for an TLS connection.
+ * <p/>
+ * When the handler has buffered output enabled, writes are collected into
+ * records of up to 2^14 bytes and nothing reaches the network until a record
+ * fills or {@link #flush()} is called.
  */
 class TlsOutputStream extends OutputStream
 {
+    private static final int MAX_FRAGMENT = 1 << 14;
+
     private byte[] buf = new byte[1];
-    private TlsProtocolHandler handler;
+    private TlsProtocol handler;
+
+    /*
+     * Application data waiting to go out as a single record.
+     */
+    private byte[] record = null;
+    private int count = 0;
 
-    TlsOutputStream(TlsProtocolHandler handler)
+    TlsOutputStream(TlsProtocol handler)
     {
         this.handler = handler;
     }
 
     public void write(byte buf[], int offset, int len) throws IOException
     {
-        this.handler.writeData(buf, offset, len);
+        if (!handler.isOutputBuffered())
+        {
+            this.handler.writeData(buf, offset, len);
+            return;
+        }
+
+        if (count > 0)
+        {
+            int n = Math.min(len, MAX_FRAGMENT - count);
+            System.arraycopy(buf, offset, record, count, n);
+            count += n;
+            offset += n;
+            len -= n;
+
+            if (count == MAX_FRAGMENT)
+            {
+                writePending();
+            }
+        }
+
+        /*
+         * Whole records are sent straight from the caller's array.
+         */
+        int whole = len - (len % MAX_FRAGMENT);
+        if (whole > 0)
+        {
+            handler.writeData(buf, offset, whole, false);
+            offset += whole;
+            len -= whole;
+        }
+
+        if (len > 0)
+        {
+            getRecord();
+            System.arraycopy(buf, offset, record, 0, len);
+            count = len;
+        }
     }
 
     public void write(int arg0) throws IOException
@@ -27,6 +76,57 @@ class TlsOutputStream extends OutputStream
         this.write(buf, 0, 1);
     }
 
+    /**
+     * Write the remaining bytes of a sequence of buffers, packing them into as
+     * few records as possible. Unless output is buffered, the data is sent and
+     * flushed before returning.
+     */
+    long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        long total = 0;
+
+        getRecord();
+
+        for (int i = offset; i < offset + length; ++i)
+        {
+            ByteBuffer src = srcs[i];
+            while (src.hasRemaining())
+            {
+                int n = Math.min(src.remaining(), MAX_FRAGMENT - count);
+                src.get(record, count, n);
+                count += n;
+                total += n;
+
+                if (count == MAX_FRAGMENT)
+                {
+                    writePending();
+                }
+            }
+        }
+
+        if (!handler.isOutputBuffered())
+        {
+            writePending();
+            handler.flush();
+        }
+
+        return total;
+    }
+
+    /**
+     * Send any buffered application data as a record, without flushing the
+     * underlying stream.
+     */
+    void writePending() throws IOException
+    {
+        if (count > 0)
+        {
+            int len = count;
+            count = 0;
+            handler.writeData(record, 0, len, false);
+        }
+    }
+
     public void close() throws IOException
     {
         handler.close();
@@ -34,6 +134,15 @@ class TlsOutputStream extends OutputStream
 
     public void flush() throws IOException
     {
+        writePending();
         handler.flush();
     }
+
+    private void getRecord()
+    {
+        if (record == null)
+        {
+            record = new byte[MAX_FRAGMENT];
+        }
+    }
 }
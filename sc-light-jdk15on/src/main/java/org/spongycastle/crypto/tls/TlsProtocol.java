@@ -0,0 +1,730 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import org.spongycastle.crypto.prng.ThreadedSeedGenerator;
+import org.spongycastle.util.Arrays;
+
+/**
+ * The parts of TLS 1.0 common to both ends of a connection: the record layer,
+ * alerts, change cipher spec and application data. The handshake itself is
+ * left to {@link TlsProtocolHandler} for clients and
+ * {@link TlsServerProtocolHandler} for servers.
+ */
+public abstract class TlsProtocol
+{
+    static final Integer EXT_RenegotiationInfo = new Integer(ExtensionType.renegotiation_info);
+    static final Integer EXT_SessionTicket = new Integer(ExtensionType.session_ticket);
+    static final Integer EXT_ExtendedMasterSecret = new Integer(ExtensionType.extended_master_secret);
+    static final Integer EXT_SignatureAlgorithms = new Integer(ExtensionType.signature_algorithms);
+
+    static final byte[] emptybuf = new byte[0];
+
+    static final String TLS_ERROR_MESSAGE = "Internal TLS error, this could be an attack";
+
+    /*
+     * The most handshake data held while waiting for the rest of a message, enough
+     * for any reasonable certificate chain, and the most application data held
+     * while waiting for it to be read.
+     */
+    static final int MAX_HANDSHAKE_QUEUE = 1 << 17;
+    static final int MAX_APPLICATION_DATA_QUEUE = 1 << 20;
+
+    /*
+     * Queues for data from some protocols.
+     */
+    ByteQueue applicationDataQueue = new ByteQueue(1 << 14, MAX_APPLICATION_DATA_QUEUE);
+    ByteQueue changeCipherSpecQueue = new ByteQueue(16);
+    ByteQueue alertQueue = new ByteQueue(16);
+    ByteQueue handshakeQueue = new ByteQueue(1024, MAX_HANDSHAKE_QUEUE);
+
+    /*
+     * The Record Stream we use
+     */
+    RecordStream rs;
+    SecureRandom random;
+
+    TlsInputStream tlsInputStream = null;
+    TlsOutputStream tlsOutputStream = null;
+
+    private boolean closed = false;
+    private boolean failedWithError = false;
+    private boolean outputBuffered = false;
+    boolean appDataReady = false;
+
+    static SecureRandom createSecureRandom()
+    {
+        /*
+         * We use our threaded seed generator to generate a good random seed. If the user
+         * has a better random seed, he should use the constructor with a SecureRandom.
+         */
+        ThreadedSeedGenerator tsg = new ThreadedSeedGenerator();
+        SecureRandom random = new SecureRandom();
+
+        /*
+         * Hopefully, 20 bytes in fast mode are good enough.
+         */
+        random.setSeed(tsg.generateSeed(20, true));
+
+        return random;
+    }
+
+    TlsProtocol(InputStream is, OutputStream os, SecureRandom sr)
+    {
+        this.rs = new RecordStream(this, is, os);
+        this.random = sr;
+    }
+
+    /**
+     * Process a complete handshake message, which has already been added to
+     * the handshake hash unless it is a finished or hello request message.
+     */
+    abstract void processHandshakeMessage(short type, byte[] buf) throws IOException;
+
+    /**
+     * Called when the peer's change cipher spec message has been received.
+     */
+    abstract void receivedChangeCipherSpec() throws IOException;
+
+    protected void processData(short protocol, byte[] buf, int offset, int len) throws IOException
+    {
+        /*
+         * Have a look at the protocol type, and add it to the correct queue.
+         */
+        switch (protocol)
+        {
+            case ContentType.change_cipher_spec:
+                changeCipherSpecQueue.addData(buf, offset, len);
+                processChangeCipherSpec();
+                break;
+            case ContentType.alert:
+                alertQueue.addData(buf, offset, len);
+                processAlert();
+                break;
+            case ContentType.handshake:
+                if (!handshakeQueue.hasRoomFor(len))
+                {
+                    this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+                }
+                handshakeQueue.addData(buf, offset, len);
+                processHandshake();
+                break;
+            case ContentType.application_data:
+                if (!appDataReady)
+                {
+                    this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                }
+                if (!applicationDataQueue.hasRoomFor(len))
+                {
+                    this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+                }
+                applicationDataQueue.addData(buf, offset, len);
+                processApplicationData();
+                break;
+            default:
+                /*
+                 * Uh, we don't know this protocol.
+                 * 
+                 * RFC2246 defines on page 13, that we should ignore this.
+                 */
+        }
+    }
+
+    private void processHandshake() throws IOException
+    {
+        boolean read;
+        do
+        {
+            read = false;
+            /*
+             * We need the first 4 bytes, they contain type and length of the message.
+             */
+            if (handshakeQueue.size() >= 4)
+            {
+                byte[] beginning = new byte[4];
+                handshakeQueue.read(beginning, 0, 4, 0);
+                ByteArrayInputStream bis = new ByteArrayInputStream(beginning);
+                short type = TlsUtils.readUint8(bis);
+                int len = TlsUtils.readUint24(bis);
+
+                /*
+                 * Check if we have enough bytes in the buffer to read the full message.
+                 */
+                if (handshakeQueue.size() >= (len + 4))
+                {
+                    /*
+                     * Read the message.
+                     */
+                    byte[] buf = new byte[len];
+                    handshakeQueue.read(buf, 0, len, 4);
+                    handshakeQueue.removeData(len + 4);
+
+                    /*
+                     * RFC 2246 7.4.9. The value handshake_messages includes all handshake
+                     * messages starting at client hello up to, but not including, this
+                     * finished message. [..] Note: [Also,] Hello Request messages are
+                     * omitted from handshake hashes.
+                     */
+                    switch (type)
+                    {
+                        case HandshakeType.hello_request:
+                        case HandshakeType.finished:
+                            break;
+                        default:
+                            rs.updateHandshakeData(beginning, 0, 4);
+                            rs.updateHandshakeData(buf, 0, len);
+                            break;
+                    }
+
+                    /*
+                     * Now, parse the message.
+                     */
+                    processHandshakeMessage(type, buf);
+                    read = true;
+                }
+            }
+        }
+        while (read);
+    }
+
+    private void processApplicationData()
+    {
+        /*
+         * There is nothing we need to do here.
+         * 
+         * This function could be used for callbacks when application data arrives in the
+         * future.
+         */
+    }
+
+    private void processAlert() throws IOException
+    {
+        while (alertQueue.size() >= 2)
+        {
+            /*
+             * An alert is always 2 bytes. Read the alert.
+             */
+            short level = (short)alertQueue.peek(0);
+            short description = (short)alertQueue.peek(1);
+            alertQueue.removeData(2);
+            if (level == AlertLevel.fatal)
+            {
+                /*
+                 * This is a fatal error.
+                 */
+                this.failedWithError = true;
+                this.closed = true;
+                /*
+                 * Now try to close the stream, ignore errors.
+                 */
+                try
+                {
+                    rs.close();
+                }
+                catch (Exception e)
+                {
+
+                }
+                throw new IOException(TLS_ERROR_MESSAGE);
+            }
+            else
+            {
+                /*
+                 * This is just a warning.
+                 */
+                if (description == AlertDescription.close_notify)
+                {
+                    /*
+                     * Close notify
+                     */
+                    this.failWithError(AlertLevel.warning, AlertDescription.close_notify);
+                }
+                /*
+                 * If it is just a warning, we continue.
+                 */
+            }
+        }
+    }
+
+    /**
+     * This method is called, when a change cipher spec message is received.
+     * 
+     * @throws IOException If the message has an invalid content or the handshake is not
+     *             in the correct state.
+     */
+    private void processChangeCipherSpec() throws IOException
+    {
+        while (changeCipherSpecQueue.size() > 0)
+        {
+            /*
+             * A change cipher spec message is only one byte with the value 1.
+             */
+            int b = changeCipherSpecQueue.peek(0);
+            changeCipherSpecQueue.removeData(1);
+            if (b != 1)
+            {
+                /*
+                 * This should never happen.
+                 */
+                this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+            }
+
+            receivedChangeCipherSpec();
+        }
+    }
+
+    void sendChangeCipherSpec() throws IOException
+    {
+        byte[] cmessage = new byte[1];
+        cmessage[0] = 1;
+        rs.writeMessage(ContentType.change_cipher_spec, cmessage, 0, cmessage.length);
+
+        rs.sentWriteCipherSpec();
+    }
+
+    void sendFinished(TlsClientContext context, String asciiLabel, byte[] sslSender) throws IOException
+    {
+        byte[] verifyData = TlsUtils.calculateVerifyData(context, asciiLabel, rs.getCurrentHash(sslSender));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TlsUtils.writeUint8(HandshakeType.finished, bos);
+        TlsUtils.writeOpaque24(verifyData, bos);
+        byte[] message = bos.toByteArray();
+
+        rs.writeMessage(ContentType.handshake, message, 0, message.length);
+    }
+
+    /**
+     * Check the peer's finished message against the handshake so far, and
+     * then add it to the handshake hash, as the finished message we send
+     * after it must cover it.
+     */
+    void processFinished(TlsClientContext context, ByteArrayInputStream is, String asciiLabel,
+        byte[] sslSender) throws IOException
+    {
+        /*
+         * Read the checksum from the finished message, it has always 12
+         * bytes for TLS 1.0 and 36 for SSLv3.
+         */
+        boolean isTls = context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv10.getFullVersion();
+
+        int checksumLength = isTls ? 12 : 36;
+        byte[] verifyData = new byte[checksumLength];
+        TlsUtils.readFully(verifyData, is);
+
+        assertEmpty(is);
+
+        /*
+         * Calculate our own checksum.
+         */
+        byte[] expectedVerifyData = TlsUtils.calculateVerifyData(context, asciiLabel,
+            rs.getCurrentHash(sslSender));
+
+        /*
+         * Compare both checksums.
+         */
+        if (!Arrays.constantTimeAreEqual(expectedVerifyData, verifyData))
+        {
+            /*
+             * Wrong checksum in the finished message.
+             */
+            this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+        }
+
+        byte[] header = new byte[4];
+        TlsUtils.writeUint8(HandshakeType.finished, header, 0);
+        TlsUtils.writeUint24(checksumLength, header, 1);
+        rs.updateHandshakeData(header, 0, header.length);
+        rs.updateHandshakeData(verifyData, 0, checksumLength);
+    }
+
+    boolean isHandshakeComplete()
+    {
+        return appDataReady;
+    }
+
+    boolean isClosed()
+    {
+        return closed;
+    }
+
+    int availableApplicationData()
+    {
+        return applicationDataQueue.size();
+    }
+
+    /**
+     * Read whatever application data has already been received, without
+     * reading any more records.
+     */
+    int readAvailableApplicationData(byte[] buf, int offset, int len) throws IOException
+    {
+        if (this.failedWithError)
+        {
+            throw new IOException(TLS_ERROR_MESSAGE);
+        }
+
+        len = Math.min(len, applicationDataQueue.size());
+        applicationDataQueue.removeData(buf, offset, len);
+        return len;
+    }
+
+    /**
+     * Read data from the network. The method will return immediately, if there is still
+     * some data left in the buffer, or block until some application data has been read
+     * from the network.
+     * 
+     * @param buf The buffer where the data will be copied to.
+     * @param offset The position where the data will be placed in the buffer.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read.
+     * @throws IOException If something goes wrong during reading data.
+     */
+    protected int readApplicationData(byte[] buf, int offset, int len) throws IOException
+    {
+        while (applicationDataQueue.size() == 0)
+        {
+            /*
+             * We need to read some data.
+             */
+            if (this.closed)
+            {
+                if (this.failedWithError)
+                {
+                    /*
+                     * Something went terribly wrong, we should throw an IOException
+                     */
+                    throw new IOException(TLS_ERROR_MESSAGE);
+                }
+
+                /*
+                 * Connection has been closed, there is no more data to read.
+                 */
+                return -1;
+            }
+
+            safeReadData();
+        }
+        len = Math.min(len, applicationDataQueue.size());
+        applicationDataQueue.removeData(buf, offset, len);
+        return len;
+    }
+
+    void safeReadData() throws IOException
+    {
+        try
+        {
+            rs.readData();
+        }
+        catch (TlsFatalAlert e)
+        {
+            if (!this.closed)
+            {
+                this.failWithError(AlertLevel.fatal, e.getAlertDescription());
+            }
+            throw e;
+        }
+        catch (IOException e)
+        {
+            if (!this.closed)
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            if (!this.closed)
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+            throw e;
+        }
+    }
+
+    void safeWriteMessage(short type, byte[] buf, int offset, int len) throws IOException
+    {
+        try
+        {
+            rs.writeMessage(type, buf, offset, len);
+        }
+        catch (TlsFatalAlert e)
+        {
+            if (!this.closed)
+            {
+                this.failWithError(AlertLevel.fatal, e.getAlertDescription());
+            }
+            throw e;
+        }
+        catch (IOException e)
+        {
+            if (!closed)
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            if (!closed)
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Send some application data to the remote system, and flush it to the
+     * network unless output is buffered.
+     * <p/>
+     * The method will handle fragmentation internally.
+     * 
+     * @param buf The buffer with the data.
+     * @param offset The position in the buffer where the data is placed.
+     * @param len The length of the data.
+     * @throws IOException If something goes wrong during sending.
+     */
+    protected void writeData(byte[] buf, int offset, int len) throws IOException
+    {
+        writeData(buf, offset, len, !outputBuffered);
+    }
+
+    void writeData(byte[] buf, int offset, int len, boolean flush) throws IOException
+    {
+        if (this.closed)
+        {
+            if (this.failedWithError)
+            {
+                throw new IOException(TLS_ERROR_MESSAGE);
+            }
+
+            throw new IOException("Sorry, connection has been closed, you cannot write more data");
+        }
+
+        /*
+         * Protect against known IV attack! TLS 1.1 and later use an explicit IV
+         * for each record, so there the empty record is just overhead.
+         * 
+         * DO NOT REMOVE THIS LINE, EXCEPT YOU KNOW EXACTLY WHAT YOU ARE DOING HERE.
+         */
+        if (!rs.hasExplicitIV())
+        {
+            safeWriteMessage(ContentType.application_data, emptybuf, 0, 0);
+        }
+
+        do
+        {
+            /*
+             * We are only allowed to write fragments up to 2^14 bytes.
+             */
+            int toWrite = Math.min(len, 1 << 14);
+
+            safeWriteMessage(ContentType.application_data, buf, offset, toWrite);
+
+            offset += toWrite;
+            len -= toWrite;
+        }
+        while (len > 0);
+
+        if (flush)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Send the remaining bytes of a sequence of buffers as application data,
+     * packed into as few records as possible. Unless output is buffered the
+     * data is flushed to the network before returning.
+     * 
+     * @param srcs The buffers to take data from.
+     * @param offset The index of the first buffer to use.
+     * @param length The number of buffers to use.
+     * @return The number of bytes taken from the buffers.
+     * @throws IOException If something goes wrong during sending.
+     */
+    public long writeApplicationData(ByteBuffer[] srcs, int offset, int length) throws IOException
+    {
+        if (this.tlsOutputStream == null)
+        {
+            throw new IllegalStateException("handshake has not completed");
+        }
+
+        return this.tlsOutputStream.write(srcs, offset, length);
+    }
+
+    /**
+     * Set whether application data written to the OutputStream is buffered.
+     * <p/>
+     * When buffered, small writes are collected into records of up to 2^14
+     * bytes, and nothing is sent until a record is full or the stream is
+     * flushed. This saves a record header, MAC and padding per write for
+     * protocols that send many small messages. Output is not buffered by
+     * default.
+     * 
+     * @param outputBuffered true to buffer application data, false to send each write at once.
+     * @throws IOException If pending data could not be sent on turning buffering off.
+     */
+    public void setOutputBuffered(boolean outputBuffered) throws IOException
+    {
+        this.outputBuffered = outputBuffered;
+
+        if (!outputBuffered && this.tlsOutputStream != null)
+        {
+            this.tlsOutputStream.flush();
+        }
+    }
+
+    boolean isOutputBuffered()
+    {
+        return outputBuffered;
+    }
+
+    /**
+     * @return An OutputStream which can be used to send data.
+     */
+    public OutputStream getOutputStream()
+    {
+        return this.tlsOutputStream;
+    }
+
+    /**
+     * @return An InputStream which can be used to read data.
+     */
+    public InputStream getInputStream()
+    {
+        return this.tlsInputStream;
+    }
+
+    /**
+     * Terminate this connection with an alert.
+     * <p/>
+     * Can be used for normal closure too.
+     * 
+     * @param alertLevel The level of the alert, an be AlertLevel.fatal or AL_warning.
+     * @param alertDescription The exact alert message.
+     * @throws IOException If alert was fatal.
+     */
+    void failWithError(short alertLevel, short alertDescription) throws IOException
+    {
+        /*
+         * Check if the connection is still open.
+         */
+        if (!closed)
+        {
+            /*
+             * Prepare the message
+             */
+            this.closed = true;
+
+            if (alertLevel == AlertLevel.fatal)
+            {
+                /*
+                 * This is a fatal message.
+                 */
+                this.failedWithError = true;
+            }
+            sendAlert(alertLevel, alertDescription);
+            rs.close();
+            if (alertLevel == AlertLevel.fatal)
+            {
+                throw new IOException(TLS_ERROR_MESSAGE);
+            }
+        }
+        else
+        {
+            throw new IOException(TLS_ERROR_MESSAGE);
+        }
+    }
+
+    void sendAlert(short alertLevel, short alertDescription) throws IOException
+    {
+        byte[] error = new byte[2];
+        error[0] = (byte)alertLevel;
+        error[1] = (byte)alertDescription;
+
+        rs.writeMessage(ContentType.alert, error, 0, 2);
+    }
+
+    /**
+     * Closes this connection.
+     * 
+     * @throws IOException If something goes wrong during closing.
+     */
+    public void close() throws IOException
+    {
+        if (!closed)
+        {
+            if (this.tlsOutputStream != null)
+            {
+                this.tlsOutputStream.writePending();
+            }
+            this.failWithError(AlertLevel.warning, AlertDescription.close_notify);
+        }
+    }
+
+    /**
+     * Make sure the InputStream is now empty. Fail otherwise.
+     * 
+     * @param is The InputStream to check.
+     * @throws IOException If is is not empty.
+     */
+    protected void assertEmpty(ByteArrayInputStream is) throws IOException
+    {
+        if (is.available() > 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+    }
+
+    protected void flush() throws IOException
+    {
+        rs.flush();
+    }
+
+    static boolean arrayContains(short[] a, short n)
+    {
+        for (int i = 0; i < a.length; ++i)
+        {
+            if (a[i] == n)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean arrayContains(int[] a, int n)
+    {
+        for (int i = 0; i < a.length; ++i)
+        {
+            if (a[i] == n)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static byte[] createRenegotiationInfo(byte[] renegotiated_connection)
+        throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        TlsUtils.writeOpaque8(renegotiated_connection, buf);
+        return buf.toByteArray();
+    }
+
+    static void writeExtension(OutputStream output, Integer extType, byte[] extValue)
+        throws IOException
+    {
+        TlsUtils.writeUint16(extType.intValue(), output);
+        TlsUtils.writeOpaque16(extValue, output);
+    }
+}
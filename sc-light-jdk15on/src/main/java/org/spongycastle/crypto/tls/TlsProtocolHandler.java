@@ -12,16 +12,14 @@ import java.util.Vector;
 
 import org.spongycastle.asn1.ASN1Primitive;
 import org.spongycastle.asn1.x500.X500Name;
-import org.spongycastle.crypto.prng.ThreadedSeedGenerator;
 import org.spongycastle.util.Arrays;
 
 /**
- * An implementation of all high level protocols in TLS 1.0.
+ * An implementation of all high level protocols in TLS 1.0 - 1.2.
  */
 public class TlsProtocolHandler
+    extends TlsProtocol
 {
-    private static final Integer EXT_RenegotiationInfo = new Integer(ExtensionType.renegotiation_info);
-
     /*
      * Our Connection states
      */
@@ -38,30 +36,6 @@ public class TlsProtocolHandler
     private static final short CS_SERVER_CHANGE_CIPHER_SPEC_RECEIVED = 11;
     private static final short CS_DONE = 12;
 
-    private static final byte[] emptybuf = new byte[0];
-
-    private static final String TLS_ERROR_MESSAGE = "Internal TLS error, this could be an attack";
-
-    /*
-     * Queues for data from some protocols.
-     */
-    private ByteQueue applicationDataQueue = new ByteQueue();
-    private ByteQueue changeCipherSpecQueue = new ByteQueue();
-    private ByteQueue alertQueue = new ByteQueue();
-    private ByteQueue handshakeQueue = new ByteQueue();
-
-    /*
-     * The Record Stream we use
-     */
-    private RecordStream rs;
-    private SecureRandom random;
-
-    private TlsInputStream tlsInputStream = null;
-    private TlsOutputStream tlsOutputStream = null;
-
-    private boolean closed = false;
-    private boolean failedWithError = false;
-    private boolean appDataReady = false;
     private Hashtable clientExtensions;
 
     private SecurityParameters securityParameters = null;
@@ -74,24 +48,21 @@ public class TlsProtocolHandler
     private TlsAuthentication authentication = null;
     private CertificateRequest certificateRequest = null;
 
-    private short connection_state = 0;
-
-    private static SecureRandom createSecureRandom()
-    {
-        /*
-         * We use our threaded seed generator to generate a good random seed. If the user
-         * has a better random seed, he should use the constructor with a SecureRandom.
-         */
-        ThreadedSeedGenerator tsg = new ThreadedSeedGenerator();
-        SecureRandom random = new SecureRandom();
-
-        /*
-         * Hopefully, 20 bytes in fast mode are good enough.
-         */
-        random.setSeed(tsg.generateSeed(20, true));
+    /*
+     * Session resumption, RFC 2246 7.3 and RFC 5077
+     */
+    private TlsSession offeredSession = null;
+    private byte[] offeredSessionID = emptybuf;
+    private byte[] sessionID = null;
+    private int selectedCipherSuite = -1;
+    private short selectedCompressionMethod = -1;
+    private boolean resumedSession = false;
+    private boolean extendedMasterSecret = false;
+    private boolean expectSessionTicket = false;
+    private byte[] newSessionTicket = null;
+    private long newSessionTicketLifetime = 0;
 
-        return random;
-    }
+    private short connection_state = 0;
 
     public TlsProtocolHandler(InputStream is, OutputStream os)
     {
@@ -100,106 +71,17 @@ public class TlsProtocolHandler
 
     public TlsProtocolHandler(InputStream is, OutputStream os, SecureRandom sr)
     {
-        this.rs = new RecordStream(this, is, os);
-        this.random = sr;
+        super(is, os, sr);
     }
 
-    protected void processData(short protocol, byte[] buf, int offset, int len) throws IOException
+    void processHandshakeMessage(short type, byte[] buf) throws IOException
     {
-        /*
-         * Have a look at the protocol type, and add it to the correct queue.
-         */
-        switch (protocol)
-        {
-            case ContentType.change_cipher_spec:
-                changeCipherSpecQueue.addData(buf, offset, len);
-                processChangeCipherSpec();
-                break;
-            case ContentType.alert:
-                alertQueue.addData(buf, offset, len);
-                processAlert();
-                break;
-            case ContentType.handshake:
-                handshakeQueue.addData(buf, offset, len);
-                processHandshake();
-                break;
-            case ContentType.application_data:
-                if (!appDataReady)
-                {
-                    this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
-                }
-                applicationDataQueue.addData(buf, offset, len);
-                processApplicationData();
-                break;
-            default:
-                /*
-                 * Uh, we don't know this protocol.
-                 * 
-                 * RFC2246 defines on page 13, that we should ignore this.
-                 */
-        }
-    }
+        ByteArrayInputStream is = new ByteArrayInputStream(buf);
 
-    private void processHandshake() throws IOException
-    {
-        boolean read;
-        do
+        if (resumedSession && isKeyExchangeMessage(type))
         {
-            read = false;
-            /*
-             * We need the first 4 bytes, they contain type and length of the message.
-             */
-            if (handshakeQueue.size() >= 4)
-            {
-                byte[] beginning = new byte[4];
-                handshakeQueue.read(beginning, 0, 4, 0);
-                ByteArrayInputStream bis = new ByteArrayInputStream(beginning);
-                short type = TlsUtils.readUint8(bis);
-                int len = TlsUtils.readUint24(bis);
-
-                /*
-                 * Check if we have enough bytes in the buffer to read the full message.
-                 */
-                if (handshakeQueue.size() >= (len + 4))
-                {
-                    /*
-                     * Read the message.
-                     */
-                    byte[] buf = new byte[len];
-                    handshakeQueue.read(buf, 0, len, 4);
-                    handshakeQueue.removeData(len + 4);
-
-                    /*
-                     * RFC 2246 7.4.9. The value handshake_messages includes all handshake
-                     * messages starting at client hello up to, but not including, this
-                     * finished message. [..] Note: [Also,] Hello Request messages are
-                     * omitted from handshake hashes.
-                     */
-                    switch (type)
-                    {
-                        case HandshakeType.hello_request:
-                        case HandshakeType.finished:
-                            break;
-                        default:
-                            rs.updateHandshakeData(beginning, 0, 4);
-                            rs.updateHandshakeData(buf, 0, len);
-                            break;
-                    }
-
-                    /*
-                     * Now, parse the message.
-                     */
-                    processHandshakeMessage(type, buf);
-                    read = true;
-                }
-            }
+            this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
         }
-        while (read);
-    }
-
-    private void processHandshakeMessage(short type, byte[] buf) throws IOException
-    {
-        ByteArrayInputStream is = new ByteArrayInputStream(buf);
 
         switch (type)
         {
@@ -233,33 +115,15 @@ public class TlsProtocolHandler
                 switch (connection_state)
                 {
                     case CS_SERVER_CHANGE_CIPHER_SPEC_RECEIVED:
-                        /*
-                         * Read the checksum from the finished message, it has always 12
-                         * bytes for TLS 1.0 and 36 for SSLv3.
-                         */
-                        boolean isTls = tlsClientContext.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv10.getFullVersion();
-
-                        int checksumLength = isTls ? 12 : 36;
-                        byte[] serverVerifyData = new byte[checksumLength];
-                        TlsUtils.readFully(serverVerifyData, is);
-
-                        assertEmpty(is);
-
-                        /*
-                         * Calculate our own checksum.
-                         */
-                        byte[] expectedServerVerifyData = TlsUtils.calculateVerifyData(tlsClientContext,
-                            "server finished", rs.getCurrentHash(TlsUtils.SSL_SERVER));
+                        processFinished(tlsClientContext, is, "server finished", TlsUtils.SSL_SERVER);
 
-                        /*
-                         * Compare both checksums.
-                         */
-                        if (!Arrays.constantTimeAreEqual(expectedServerVerifyData, serverVerifyData))
+                        if (resumedSession)
                         {
                             /*
-                             * Wrong checksum in the finished message.
+                             * RFC 2246 7.3. In an abbreviated handshake the server's
+                             * finished message comes first, and is covered by ours.
                              */
-                            this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+                            sendChangeCipherSpecAndFinished();
                         }
 
                         connection_state = CS_DONE;
@@ -268,6 +132,11 @@ public class TlsProtocolHandler
                          * We are now ready to receive application data.
                          */
                         this.appDataReady = true;
+
+                        if (this.tlsClient instanceof TlsResumableClient)
+                        {
+                            ((TlsResumableClient)this.tlsClient).notifySessionEstablished(createSession());
+                        }
                         break;
                     default:
                         this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
@@ -304,17 +173,36 @@ public class TlsProtocolHandler
 
                         this.tlsClient.notifySessionID(sessionID);
 
+                        /*
+                         * RFC 2246 7.4.1.3. If the server echoes the session ID we
+                         * offered, it has agreed to resume that session.
+                         */
+                        this.sessionID = sessionID;
+                        this.resumedSession = offeredSession != null && sessionID.length > 0
+                            && Arrays.areEqual(sessionID, offeredSessionID);
+
+                        if (resumedSession && !server_version.equals(offeredSession.getServerVersion()))
+                        {
+                            this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
+                        }
+
                         /*
                          * Find out which CipherSuite the server has chosen and check that
                          * it was one of the offered ones.
                          */
                         int selectedCipherSuite = TlsUtils.readUint16(is);
                         if (!arrayContains(offeredCipherSuites, selectedCipherSuite)
-                            || selectedCipherSuite == CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV)
+                            || selectedCipherSuite == CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV
+                            || (TlsUtils.isTLSv12CipherSuite(selectedCipherSuite)
+                                && !TlsUtils.isTLSv12(tlsClientContext)))
                         {
                             this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
                         }
 
+                        securityParameters.prfAlgorithm = TlsUtils.getPRFAlgorithm(server_version,
+                            selectedCipherSuite);
+
+                        this.selectedCipherSuite = selectedCipherSuite;
                         this.tlsClient.notifySelectedCipherSuite(selectedCipherSuite);
 
                         /*
@@ -327,6 +215,14 @@ public class TlsProtocolHandler
                             this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
                         }
 
+                        if (resumedSession
+                            && (selectedCipherSuite != offeredSession.getCipherSuite()
+                                || selectedCompressionMethod != offeredSession.getCompressionMethod()))
+                        {
+                            this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
+                        }
+
+                        this.selectedCompressionMethod = selectedCompressionMethod;
                         this.tlsClient.notifySelectedCompressionMethod(selectedCompressionMethod);
 
                         /*
@@ -442,7 +338,41 @@ public class TlsProtocolHandler
                             tlsClient.processServerExtensions(serverExtensions);
                         }
 
-                        this.keyExchange = tlsClient.getKeyExchange();
+                        /*
+                         * RFC 5077 3.2. A server which will send a NewSessionTicket
+                         * message says so with an empty SessionTicket extension.
+                         */
+                        this.expectSessionTicket = serverExtensions.containsKey(EXT_SessionTicket);
+
+                        this.extendedMasterSecret = serverExtensions.containsKey(EXT_ExtendedMasterSecret);
+
+                        if (extendedMasterSecret && ((byte[])serverExtensions.get(EXT_ExtendedMasterSecret)).length != 0)
+                        {
+                            this.failWithError(AlertLevel.fatal, AlertDescription.decode_error);
+                        }
+
+                        if (resumedSession)
+                        {
+                            /*
+                             * RFC 7627 5.3. The resumed session must have been created
+                             * the same way as is now being agreed.
+                             */
+                            if (extendedMasterSecret != offeredSession.isExtendedMasterSecret())
+                            {
+                                this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+                            }
+
+                            /*
+                             * The keys come from the old master secret and the new
+                             * randoms, there is no key exchange.
+                             */
+                            securityParameters.masterSecret = Arrays.clone(offeredSession.getMasterSecret());
+                            rs.setPendingConnectionState(tlsClient.getCompression(), tlsClient.getCipher());
+                        }
+                        else
+                        {
+                            this.keyExchange = tlsClient.getKeyExchange();
+                        }
 
                         connection_state = CS_SERVER_HELLO_RECEIVED;
                         break;
@@ -520,8 +450,16 @@ public class TlsProtocolHandler
                          */
                         byte[] pms = this.keyExchange.generatePremasterSecret();
 
-                        securityParameters.masterSecret = TlsUtils.calculateMasterSecret(
-                            this.tlsClientContext, pms);
+                        if (extendedMasterSecret)
+                        {
+                            securityParameters.masterSecret = TlsUtils.calculateExtendedMasterSecret(
+                                this.tlsClientContext, pms, rs.getCurrentHash(null));
+                        }
+                        else
+                        {
+                            securityParameters.masterSecret = TlsUtils.calculateMasterSecret(
+                                this.tlsClientContext, pms);
+                        }
 
                         // TODO Is there a way to ensure the data is really overwritten?
                         /*
@@ -533,41 +471,39 @@ public class TlsProtocolHandler
                         if (clientCreds != null && clientCreds instanceof TlsSignerCredentials)
                         {
                             TlsSignerCredentials signerCreds = (TlsSignerCredentials)clientCreds;
-                            byte[] md5andsha1 = rs.getCurrentHash(null);
-                            byte[] clientCertificateSignature = signerCreds.generateCertificateSignature(
-                                md5andsha1);
-                            sendCertificateVerify(clientCertificateSignature);
-
-                            connection_state = CS_CERTIFICATE_VERIFY_SEND;
-                        }
 
-                        /*
-                         * Now, we send change cipher state
-                         */
-                        byte[] cmessage = new byte[1];
-                        cmessage[0] = 1;
-                        rs.writeMessage(ContentType.change_cipher_spec, cmessage, 0,
-                            cmessage.length);
+                            /*
+                             * RFC 5246 7.4.8. From TLS 1.2 the hash signed is one the
+                             * server listed in its certificate request.
+                             */
+                            SignatureAndHashAlgorithm algorithm = null;
+                            byte[] hash;
+                            if (TlsUtils.isTLSv12(tlsClientContext))
+                            {
+                                algorithm = TlsUtils.chooseSignatureAndHashAlgorithm(
+                                    certificateRequest.getSupportedSignatureAlgorithms(),
+                                    TlsUtils.getSignatureAlgorithm(signerCreds.getCertificate()));
+                                hash = rs.getHandshakeHash(algorithm.getHash());
+                            }
+                            else
+                            {
+                                hash = rs.getCurrentHash(null);
+                            }
 
-                        connection_state = CS_CLIENT_CHANGE_CIPHER_SPEC_SEND;
+                            byte[] clientCertificateSignature = TlsUtils.generateSignature(signerCreds,
+                                algorithm, hash);
+                            sendCertificateVerify(algorithm, clientCertificateSignature);
 
-                        /*
-                         * Initialize our cipher suite
-                         */
-                        rs.clientCipherSpecDecided(tlsClient.getCompression(), tlsClient.getCipher());
+                            connection_state = CS_CERTIFICATE_VERIFY_SEND;
+                        }
 
                         /*
-                         * Send our finished message.
+                         * Initialize our cipher suite, and send change cipher state and
+                         * our finished message.
                          */
-                        byte[] clientVerifyData = TlsUtils.calculateVerifyData(tlsClientContext,
-                            "client finished", rs.getCurrentHash(TlsUtils.SSL_CLIENT));
-
-                        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                        TlsUtils.writeUint8(HandshakeType.finished, bos);
-                        TlsUtils.writeOpaque24(clientVerifyData, bos);
-                        byte[] message = bos.toByteArray();
+                        rs.setPendingConnectionState(tlsClient.getCompression(), tlsClient.getCipher());
 
-                        rs.writeMessage(ContentType.handshake, message, 0, message.length);
+                        sendChangeCipherSpecAndFinished();
 
                         this.connection_state = CS_CLIENT_FINISHED_SEND;
                         break;
@@ -630,6 +566,12 @@ public class TlsProtocolHandler
                             certificateTypes[i] = TlsUtils.readUint8(is);
                         }
 
+                        Vector supportedSignatureAlgorithms = null;
+                        if (TlsUtils.isTLSv12(tlsClientContext))
+                        {
+                            supportedSignatureAlgorithms = TlsUtils.parseSupportedSignatureAlgorithms(is);
+                        }
+
                         byte[] authorities = TlsUtils.readOpaque16(is);
 
                         assertEmpty(is);
@@ -644,7 +586,7 @@ public class TlsProtocolHandler
                         }
 
                         this.certificateRequest = new CertificateRequest(certificateTypes,
-                            authorityDNs);
+                            supportedSignatureAlgorithms, authorityDNs);
                         this.keyExchange.validateCertificateRequest(this.certificateRequest);
 
                         break;
@@ -656,6 +598,29 @@ public class TlsProtocolHandler
                 this.connection_state = CS_CERTIFICATE_REQUEST_RECEIVED;
                 break;
             }
+            case HandshakeType.new_session_ticket:
+            {
+                /*
+                 * RFC 5077 3.3. The ticket is sent just before the server's change
+                 * cipher spec, after the server hello in an abbreviated handshake.
+                 */
+                boolean expected = resumedSession
+                    ? connection_state == CS_SERVER_HELLO_RECEIVED
+                    : connection_state == CS_CLIENT_FINISHED_SEND;
+
+                if (!expectSessionTicket || !expected)
+                {
+                    this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                }
+
+                this.newSessionTicketLifetime = TlsUtils.readUint32(is);
+                this.newSessionTicket = TlsUtils.readOpaque16(is);
+
+                assertEmpty(is);
+
+                this.expectSessionTicket = false;
+                break;
+            }
             case HandshakeType.hello_request:
                 /*
                  * RFC 2246 7.4.1.1 Hello request This message will be ignored by the
@@ -680,103 +645,21 @@ public class TlsProtocolHandler
         }
     }
 
-    private void processApplicationData()
+    void receivedChangeCipherSpec() throws IOException
     {
         /*
-         * There is nothing we need to do here.
-         * 
-         * This function could be used for callbacks when application data arrives in the
-         * future.
+         * Check if we are in the correct connection state. In an abbreviated
+         * handshake the server changes cipher spec straight after its hello.
          */
-    }
-
-    private void processAlert() throws IOException
-    {
-        while (alertQueue.size() >= 2)
+        short expectedState = resumedSession ? CS_SERVER_HELLO_RECEIVED : CS_CLIENT_FINISHED_SEND;
+        if (this.connection_state != expectedState || expectSessionTicket)
         {
-            /*
-             * An alert is always 2 bytes. Read the alert.
-             */
-            byte[] tmp = new byte[2];
-            alertQueue.read(tmp, 0, 2, 0);
-            alertQueue.removeData(2);
-            short level = tmp[0];
-            short description = tmp[1];
-            if (level == AlertLevel.fatal)
-            {
-                /*
-                 * This is a fatal error.
-                 */
-                this.failedWithError = true;
-                this.closed = true;
-                /*
-                 * Now try to close the stream, ignore errors.
-                 */
-                try
-                {
-                    rs.close();
-                }
-                catch (Exception e)
-                {
-
-                }
-                throw new IOException(TLS_ERROR_MESSAGE);
-            }
-            else
-            {
-                /*
-                 * This is just a warning.
-                 */
-                if (description == AlertDescription.close_notify)
-                {
-                    /*
-                     * Close notify
-                     */
-                    this.failWithError(AlertLevel.warning, AlertDescription.close_notify);
-                }
-                /*
-                 * If it is just a warning, we continue.
-                 */
-            }
+            this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
         }
-    }
 
-    /**
-     * This method is called, when a change cipher spec message is received.
-     * 
-     * @throws IOException If the message has an invalid content or the handshake is not
-     *             in the correct state.
-     */
-    private void processChangeCipherSpec() throws IOException
-    {
-        while (changeCipherSpecQueue.size() > 0)
-        {
-            /*
-             * A change cipher spec message is only one byte with the value 1.
-             */
-            byte[] b = new byte[1];
-            changeCipherSpecQueue.read(b, 0, 1, 0);
-            changeCipherSpecQueue.removeData(1);
-            if (b[0] != 1)
-            {
-                /*
-                 * This should never happen.
-                 */
-                this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
-            }
-
-            /*
-             * Check if we are in the correct connection state.
-             */
-            if (this.connection_state != CS_CLIENT_FINISHED_SEND)
-            {
-                this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
-            }
+        rs.receivedReadCipherSpec();
 
-            rs.serverClientSpecReceived();
-
-            this.connection_state = CS_SERVER_CHANGE_CIPHER_SPEC_RECEIVED;
-        }
+        this.connection_state = CS_SERVER_CHANGE_CIPHER_SPEC_RECEIVED;
     }
 
     private void sendClientCertificate(Certificate clientCert) throws IOException
@@ -814,7 +697,7 @@ public class TlsProtocolHandler
         rs.writeMessage(ContentType.handshake, message, 0, message.length);
     }
 
-    private void sendCertificateVerify(byte[] data) throws IOException
+    private void sendCertificateVerify(SignatureAndHashAlgorithm algorithm, byte[] data) throws IOException
     {
         /*
          * Send signature of handshake messages so far to prove we are the owner of the
@@ -822,13 +705,107 @@ public class TlsProtocolHandler
          */
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         TlsUtils.writeUint8(HandshakeType.certificate_verify, bos);
-        TlsUtils.writeUint24(data.length + 2, bos);
+
+        // Reserve space for length
+        TlsUtils.writeUint24(0, bos);
+
+        if (algorithm != null)
+        {
+            algorithm.encode(bos);
+        }
         TlsUtils.writeOpaque16(data, bos);
         byte[] message = bos.toByteArray();
 
+        // Patch actual length back in
+        TlsUtils.writeUint24(message.length - 4, message, 1);
+
         rs.writeMessage(ContentType.handshake, message, 0, message.length);
     }
 
+    private void sendChangeCipherSpecAndFinished() throws IOException
+    {
+        /*
+         * Now, we send change cipher state, and our finished message.
+         */
+        sendChangeCipherSpec();
+        sendFinished(tlsClientContext, "client finished", TlsUtils.SSL_CLIENT);
+    }
+
+    /**
+     * Pick the session to offer the server, if the client has one which can
+     * be resumed with what is being offered in this client hello.
+     */
+    private TlsSession chooseSessionToResume(ProtocolVersion clientVersion)
+    {
+        if (!(this.tlsClient instanceof TlsResumableClient))
+        {
+            return null;
+        }
+
+        TlsSession session = ((TlsResumableClient)this.tlsClient).getSessionToResume();
+
+        if (session == null || !session.isResumable()
+            || session.getServerVersion().getFullVersion() > clientVersion.getFullVersion()
+            || !arrayContains(offeredCipherSuites, session.getCipherSuite())
+            || !arrayContains(offeredCompressionMethods, session.getCompressionMethod()))
+        {
+            return null;
+        }
+
+        if (session.getSessionID().length == 0 && !offersSessionTickets())
+        {
+            return null;
+        }
+
+        return session;
+    }
+
+    private boolean offersSessionTickets()
+    {
+        return clientExtensions != null && clientExtensions.containsKey(EXT_SessionTicket);
+    }
+
+    private TlsSession createSession()
+    {
+        byte[] ticket = newSessionTicket;
+        long ticketLifetime = newSessionTicketLifetime;
+        long creationTime = System.currentTimeMillis();
+
+        if (resumedSession)
+        {
+            /*
+             * A resumed session lasts no longer than the one it came from, and
+             * keeps its old ticket unless the server has issued a new one.
+             */
+            creationTime = offeredSession.getCreationTime();
+
+            if (ticket == null)
+            {
+                ticket = offeredSession.getSessionTicket();
+                ticketLifetime = offeredSession.getTicketLifetimeHint();
+            }
+        }
+
+        return new TlsSession(sessionID, securityParameters.masterSecret, selectedCipherSuite,
+            selectedCompressionMethod, tlsClientContext.getServerVersion(), extendedMasterSecret,
+            ticket, ticketLifetime,
+            creationTime);
+    }
+
+    private static boolean isKeyExchangeMessage(short type)
+    {
+        switch (type)
+        {
+            case HandshakeType.certificate:
+            case HandshakeType.server_key_exchange:
+            case HandshakeType.certificate_request:
+            case HandshakeType.server_hello_done:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Connects to the remote system.
      * 
@@ -850,6 +827,26 @@ public class TlsProtocolHandler
      * @throws IOException If handshake was not successful.
      */
     public void connect(TlsClient tlsClient) throws IOException
+    {
+        beginHandshake(tlsClient);
+
+        /*
+         * We will now read data, until we have completed the handshake.
+         */
+        while (connection_state != CS_DONE)
+        {
+            safeReadData();
+        }
+
+        this.tlsInputStream = new TlsInputStream(this);
+        this.tlsOutputStream = new TlsOutputStream(this);
+    }
+
+    /**
+     * Start the handshake by sending the client hello, without waiting for
+     * the server's reply.
+     */
+    void beginHandshake(TlsClient tlsClient) throws IOException
     {
         if (tlsClient == null)
         {
@@ -881,24 +878,57 @@ public class TlsProtocolHandler
 
         ProtocolVersion client_version = this.tlsClient.getClientVersion();
         this.tlsClientContext.setClientVersion(client_version);
-        // TODO For SSLv3 support, server version needs to be set to ProtocolVersion.SSLv3
-        this.tlsClientContext.setServerVersion(client_version);
+        /*
+         * The server version, and with it the version of our records, is left unset
+         * until the server hello says which of the versions up to ours it has chosen.
+         */
         TlsUtils.writeVersion(client_version, os);
 
         os.write(securityParameters.clientRandom);
 
+        this.offeredCipherSuites = this.tlsClient.getCipherSuites();
+        this.offeredCompressionMethods = this.tlsClient.getCompressionMethods();
+
+        // Integer -> byte[]
+        this.clientExtensions = this.tlsClient.getClientExtensions();
+
         /*
-         * Length of Session id
+         * Session id, and ticket, of any session we are trying to resume
          */
-        TlsUtils.writeUint8((short)0, os);
+        this.offeredSession = chooseSessionToResume(client_version);
+
+        if (offersSessionTickets())
+        {
+            byte[] ticket = emptybuf;
+            if (offeredSession != null && offeredSession.getSessionTicket() != null)
+            {
+                ticket = offeredSession.getSessionTicket();
+            }
+
+            this.clientExtensions = new Hashtable(clientExtensions);
+            this.clientExtensions.put(EXT_SessionTicket, ticket);
+        }
+
+        if (offeredSession != null)
+        {
+            this.offeredSessionID = offeredSession.getSessionID();
+
+            if (offeredSessionID.length == 0)
+            {
+                /*
+                 * RFC 5077 3.4. With a ticket we make up a session ID, which the
+                 * server echoes if it accepts the ticket.
+                 */
+                this.offeredSessionID = new byte[32];
+                random.nextBytes(offeredSessionID);
+            }
+        }
+
+        TlsUtils.writeOpaque8(offeredSessionID, os);
 
         /*
          * Cipher suites
          */
-        this.offeredCipherSuites = this.tlsClient.getCipherSuites();
-
-        // Integer -> byte[]
-        this.clientExtensions = this.tlsClient.getClientExtensions();
 
         // Cipher Suites (and SCSV)
         {
@@ -927,8 +957,6 @@ public class TlsProtocolHandler
         }
 
         // Compression methods
-        this.offeredCompressionMethods = this.tlsClient.getCompressionMethods();
-
         TlsUtils.writeUint8((short)offeredCompressionMethods.length, os);
         TlsUtils.writeUint8Array(offeredCompressionMethods, os);
 
@@ -956,304 +984,5 @@ public class TlsProtocolHandler
         safeWriteMessage(ContentType.handshake, message, 0, message.length);
 
         connection_state = CS_CLIENT_HELLO_SEND;
-
-        /*
-         * We will now read data, until we have completed the handshake.
-         */
-        while (connection_state != CS_DONE)
-        {
-            safeReadData();
-        }
-
-        this.tlsInputStream = new TlsInputStream(this);
-        this.tlsOutputStream = new TlsOutputStream(this);
-    }
-
-    /**
-     * Read data from the network. The method will return immediately, if there is still
-     * some data left in the buffer, or block until some application data has been read
-     * from the network.
-     * 
-     * @param buf The buffer where the data will be copied to.
-     * @param offset The position where the data will be placed in the buffer.
-     * @param len The maximum number of bytes to read.
-     * @return The number of bytes read.
-     * @throws IOException If something goes wrong during reading data.
-     */
-    protected int readApplicationData(byte[] buf, int offset, int len) throws IOException
-    {
-        while (applicationDataQueue.size() == 0)
-        {
-            /*
-             * We need to read some data.
-             */
-            if (this.closed)
-            {
-                if (this.failedWithError)
-                {
-                    /*
-                     * Something went terribly wrong, we should throw an IOException
-                     */
-                    throw new IOException(TLS_ERROR_MESSAGE);
-                }
-
-                /*
-                 * Connection has been closed, there is no more data to read.
-                 */
-                return -1;
-            }
-
-            safeReadData();
-        }
-        len = Math.min(len, applicationDataQueue.size());
-        applicationDataQueue.read(buf, offset, len, 0);
-        applicationDataQueue.removeData(len);
-        return len;
-    }
-
-    private void safeReadData() throws IOException
-    {
-        try
-        {
-            rs.readData();
-        }
-        catch (TlsFatalAlert e)
-        {
-            if (!this.closed)
-            {
-                this.failWithError(AlertLevel.fatal, e.getAlertDescription());
-            }
-            throw e;
-        }
-        catch (IOException e)
-        {
-            if (!this.closed)
-            {
-                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
-            }
-            throw e;
-        }
-        catch (RuntimeException e)
-        {
-            if (!this.closed)
-            {
-                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
-            }
-            throw e;
-        }
-    }
-
-    private void safeWriteMessage(short type, byte[] buf, int offset, int len) throws IOException
-    {
-        try
-        {
-            rs.writeMessage(type, buf, offset, len);
-        }
-        catch (TlsFatalAlert e)
-        {
-            if (!this.closed)
-            {
-                this.failWithError(AlertLevel.fatal, e.getAlertDescription());
-            }
-            throw e;
-        }
-        catch (IOException e)
-        {
-            if (!closed)
-            {
-                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
-            }
-            throw e;
-        }
-        catch (RuntimeException e)
-        {
-            if (!closed)
-            {
-                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
-            }
-            throw e;
-        }
-    }
-
-    /**
-     * Send some application data to the remote system.
-     * <p/>
-     * The method will handle fragmentation internally.
-     * 
-     * @param buf The buffer with the data.
-     * @param offset The position in the buffer where the data is placed.
-     * @param len The length of the data.
-     * @throws IOException If something goes wrong during sending.
-     */
-    protected void writeData(byte[] buf, int offset, int len) throws IOException
-    {
-        if (this.closed)
-        {
-            if (this.failedWithError)
-            {
-                throw new IOException(TLS_ERROR_MESSAGE);
-            }
-
-            throw new IOException("Sorry, connection has been closed, you cannot write more data");
-        }
-
-        /*
-         * Protect against known IV attack!
-         * 
-         * DO NOT REMOVE THIS LINE, EXCEPT YOU KNOW EXACTLY WHAT YOU ARE DOING HERE.
-         */
-        safeWriteMessage(ContentType.application_data, emptybuf, 0, 0);
-
-        do
-        {
-            /*
-             * We are only allowed to write fragments up to 2^14 bytes.
-             */
-            int toWrite = Math.min(len, 1 << 14);
-
-            safeWriteMessage(ContentType.application_data, buf, offset, toWrite);
-
-            offset += toWrite;
-            len -= toWrite;
-        }
-        while (len > 0);
-
-    }
-
-    /**
-     * @return An OutputStream which can be used to send data.
-     */
-    public OutputStream getOutputStream()
-    {
-        return this.tlsOutputStream;
-    }
-
-    /**
-     * @return An InputStream which can be used to read data.
-     */
-    public InputStream getInputStream()
-    {
-        return this.tlsInputStream;
-    }
-
-    /**
-     * Terminate this connection with an alert.
-     * <p/>
-     * Can be used for normal closure too.
-     * 
-     * @param alertLevel The level of the alert, an be AlertLevel.fatal or AL_warning.
-     * @param alertDescription The exact alert message.
-     * @throws IOException If alert was fatal.
-     */
-    private void failWithError(short alertLevel, short alertDescription) throws IOException
-    {
-        /*
-         * Check if the connection is still open.
-         */
-        if (!closed)
-        {
-            /*
-             * Prepare the message
-             */
-            this.closed = true;
-
-            if (alertLevel == AlertLevel.fatal)
-            {
-                /*
-                 * This is a fatal message.
-                 */
-                this.failedWithError = true;
-            }
-            sendAlert(alertLevel, alertDescription);
-            rs.close();
-            if (alertLevel == AlertLevel.fatal)
-            {
-                throw new IOException(TLS_ERROR_MESSAGE);
-            }
-        }
-        else
-        {
-            throw new IOException(TLS_ERROR_MESSAGE);
-        }
-    }
-
-    private void sendAlert(short alertLevel, short alertDescription) throws IOException
-    {
-        byte[] error = new byte[2];
-        error[0] = (byte)alertLevel;
-        error[1] = (byte)alertDescription;
-
-        rs.writeMessage(ContentType.alert, error, 0, 2);
-    }
-
-    /**
-     * Closes this connection.
-     * 
-     * @throws IOException If something goes wrong during closing.
-     */
-    public void close() throws IOException
-    {
-        if (!closed)
-        {
-            this.failWithError(AlertLevel.warning, AlertDescription.close_notify);
-        }
-    }
-
-    /**
-     * Make sure the InputStream is now empty. Fail otherwise.
-     * 
-     * @param is The InputStream to check.
-     * @throws IOException If is is not empty.
-     */
-    protected void assertEmpty(ByteArrayInputStream is) throws IOException
-    {
-        if (is.available() > 0)
-        {
-            throw new TlsFatalAlert(AlertDescription.decode_error);
-        }
-    }
-
-    protected void flush() throws IOException
-    {
-        rs.flush();
-    }
-
-    private static boolean arrayContains(short[] a, short n)
-    {
-        for (int i = 0; i < a.length; ++i)
-        {
-            if (a[i] == n)
-            {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private static boolean arrayContains(int[] a, int n)
-    {
-        for (int i = 0; i < a.length; ++i)
-        {
-            if (a[i] == n)
-            {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private static byte[] createRenegotiationInfo(byte[] renegotiated_connection)
-        throws IOException
-    {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        TlsUtils.writeOpaque8(renegotiated_connection, buf);
-        return buf.toByteArray();
-    }
-
-    private static void writeExtension(OutputStream output, Integer extType, byte[] extValue)
-        throws IOException
-    {
-        TlsUtils.writeUint16(extType.intValue(), output);
-        TlsUtils.writeOpaque16(extValue, output);
     }
 }
@@ -10,11 +10,12 @@ import org.spongycastle.asn1.x509.X509CertificateStructure;
 import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 import org.spongycastle.crypto.params.RSAKeyParameters;
 import org.spongycastle.crypto.util.PublicKeyFactory;
+import org.spongycastle.util.io.Streams;
 
 /**
  * TLS 1.0 and SSLv3 RSA key exchange.
  */
-class TlsRSAKeyExchange implements TlsKeyExchange
+class TlsRSAKeyExchange implements TlsServerKeyExchange
 {
     protected TlsClientContext context;
 
@@ -22,6 +23,8 @@ class TlsRSAKeyExchange implements TlsKeyExchange
 
     protected RSAKeyParameters rsaServerPublicKey = null;
 
+    protected TlsEncryptionCredentials serverCredentials = null;
+
     protected byte[] premasterSecret;
 
     TlsRSAKeyExchange(TlsClientContext context)
@@ -115,6 +118,41 @@ class TlsRSAKeyExchange implements TlsKeyExchange
             this.rsaServerPublicKey, os);
     }
 
+    public void processServerCredentials(TlsCredentials serverCredentials) throws IOException
+    {
+        if (!(serverCredentials instanceof TlsEncryptionCredentials))
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        processServerCertificate(serverCredentials.getCertificate());
+
+        this.serverCredentials = (TlsEncryptionCredentials)serverCredentials;
+    }
+
+    public byte[] generateServerKeyExchange() throws IOException
+    {
+        return null;
+    }
+
+    public void processClientKeyExchange(InputStream is) throws IOException
+    {
+        boolean isTls = context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv10.getFullVersion();
+
+        byte[] encryptedPreMasterSecret;
+        if (isTls)
+        {
+            encryptedPreMasterSecret = TlsUtils.readOpaque16(is);
+        }
+        else
+        {
+            encryptedPreMasterSecret = Streams.readAll(is);
+        }
+
+        this.premasterSecret = TlsRSAUtils.safeDecryptPreMasterSecret(context, serverCredentials,
+            encryptedPreMasterSecret);
+    }
+
     public byte[] generatePremasterSecret() throws IOException
     {
         byte[] tmp = this.premasterSecret;
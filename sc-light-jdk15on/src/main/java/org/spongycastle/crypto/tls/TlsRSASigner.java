@@ -1,7 +1,15 @@
 package org.spongycastle.crypto.tls;
 
+import java.io.IOException;
 import java.security.SecureRandom;
 
+import org.spongycastle.asn1.ASN1Encoding;
+import org.spongycastle.asn1.ASN1ObjectIdentifier;
+import org.spongycastle.asn1.DERNull;
+import org.spongycastle.asn1.nist.NISTObjectIdentifiers;
+import org.spongycastle.asn1.x509.AlgorithmIdentifier;
+import org.spongycastle.asn1.x509.DigestInfo;
+import org.spongycastle.asn1.x509.X509ObjectIdentifiers;
 import org.spongycastle.crypto.CryptoException;
 import org.spongycastle.crypto.Signer;
 import org.spongycastle.crypto.digests.NullDigest;
@@ -11,21 +19,45 @@ import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 import org.spongycastle.crypto.params.ParametersWithRandom;
 import org.spongycastle.crypto.params.RSAKeyParameters;
 import org.spongycastle.crypto.signers.GenericSigner;
+import org.spongycastle.crypto.signers.RSADigestSigner;
 
 class TlsRSASigner implements TlsSigner
 {
-    public byte[] calculateRawSignature(SecureRandom random, AsymmetricKeyParameter privateKey, byte[] md5andsha1)
-        throws CryptoException
+    public byte[] calculateRawSignature(SecureRandom random, AsymmetricKeyParameter privateKey,
+        SignatureAndHashAlgorithm algorithm, byte[] hash) throws CryptoException
     {
+        byte[] input = hash;
+        if (algorithm != null)
+        {
+            // RFC 5246 4.7. TLS 1.2 signs a DER DigestInfo, as in PKCS#1
+            try
+            {
+                input = new DigestInfo(new AlgorithmIdentifier(getDigestOID(algorithm.getHash()), DERNull.INSTANCE),
+                    hash).getEncoded(ASN1Encoding.DER);
+            }
+            catch (IOException e)
+            {
+                throw new CryptoException("unable to encode DigestInfo: " + e.getMessage(), e);
+            }
+        }
+
         Signer sig = new GenericSigner(new PKCS1Encoding(new RSABlindedEngine()), new NullDigest());
         sig.init(true, new ParametersWithRandom(privateKey, random));
-        sig.update(md5andsha1, 0, md5andsha1.length);
+        sig.update(input, 0, input.length);
         return sig.generateSignature();
     }
 
-    public Signer createVerifyer(AsymmetricKeyParameter publicKey)
+    public Signer createVerifyer(SignatureAndHashAlgorithm algorithm, AsymmetricKeyParameter publicKey)
     {
-        Signer s = new GenericSigner(new PKCS1Encoding(new RSABlindedEngine()), new CombinedHash());
+        Signer s;
+        if (algorithm != null)
+        {
+            s = new RSADigestSigner(TlsUtils.createHash(algorithm.getHash()));
+        }
+        else
+        {
+            s = new GenericSigner(new PKCS1Encoding(new RSABlindedEngine()), new CombinedHash());
+        }
         s.init(false, publicKey);
         return s;
     }
@@ -34,4 +66,19 @@ class TlsRSASigner implements TlsSigner
     {
         return publicKey instanceof RSAKeyParameters && !publicKey.isPrivate();
     }
+
+    private static ASN1ObjectIdentifier getDigestOID(short hashAlgorithm)
+    {
+        switch (hashAlgorithm)
+        {
+            case HashAlgorithm.sha1:
+                return X509ObjectIdentifiers.id_SHA1;
+            case HashAlgorithm.sha256:
+                return NISTObjectIdentifiers.id_sha256;
+            case HashAlgorithm.sha384:
+                return NISTObjectIdentifiers.id_sha384;
+            default:
+                throw new IllegalArgumentException("unsupported HashAlgorithm: " + hashAlgorithm);
+        }
+    }
 }
@@ -48,4 +48,49 @@ public class TlsRSAUtils
 
         return premasterSecret;
     }
+
+    public static byte[] safeDecryptPreMasterSecret(TlsClientContext context,
+        TlsEncryptionCredentials encryptionCredentials, byte[] encryptedPreMasterSecret)
+        throws IOException
+    {
+        /*
+         * RFC 5246 7.4.7.1. To resist the Bleichenbacher attack, a pre-master secret
+         * that fails to decrypt, or has the wrong length or version, is replaced with a
+         * random one, so the failure only shows when the finished messages don't match.
+         * The random value is always generated, and the choice between it and the
+         * decrypted value is made with a mask rather than a branch, so it takes the same
+         * time whichever is used.
+         */
+        byte[] fallback = new byte[48];
+        context.getSecureRandom().nextBytes(fallback);
+        TlsUtils.writeVersion(context.getClientVersion(), fallback, 0);
+
+        byte[] M = fallback;
+
+        try
+        {
+            M = encryptionCredentials.decryptPreMasterSecret(encryptedPreMasterSecret);
+        }
+        catch (Exception e)
+        {
+            // only credentials which do not follow the interface contract get here, use the fallback
+        }
+
+        byte[] premasterSecret = new byte[48];
+        System.arraycopy(M, 0, premasterSecret, 0, Math.min(M.length, premasterSecret.length));
+
+        int diff = (M.length ^ premasterSecret.length)
+            | (premasterSecret[0] ^ fallback[0])
+            | (premasterSecret[1] ^ fallback[1]);
+
+        // all ones if any check failed, zero otherwise
+        int mask = (diff | -diff) >> 31;
+
+        for (int i = 0; i != premasterSecret.length; i++)
+        {
+            premasterSecret[i] = (byte)((premasterSecret[i] & ~mask) | (fallback[i] & mask));
+        }
+
+        return premasterSecret;
+    }
 }
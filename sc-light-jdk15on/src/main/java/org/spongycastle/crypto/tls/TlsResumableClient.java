@@ -0,0 +1,22 @@
+package org.spongycastle.crypto.tls;
+
+/**
+ * A client which keeps the sessions it establishes and offers them again
+ * for resumption. Clients not implementing this always perform a full
+ * handshake.
+ */
+public interface TlsResumableClient
+    extends TlsClient
+{
+    /**
+     * Return the session to offer for resumption, or null to always perform a
+     * full handshake.
+     */
+    TlsSession getSessionToResume();
+
+    /**
+     * Called when the handshake has completed, with the session which was
+     * established or resumed.
+     */
+    void notifySessionEstablished(TlsSession session);
+}
@@ -1,5 +1,6 @@
 package org.spongycastle.crypto.tls;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -9,14 +10,13 @@ import org.spongycastle.asn1.x509.KeyUsage;
 import org.spongycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.spongycastle.asn1.x509.X509CertificateStructure;
 import org.spongycastle.crypto.CryptoException;
-import org.spongycastle.crypto.Signer;
 import org.spongycastle.crypto.agreement.srp.SRP6Client;
 import org.spongycastle.crypto.agreement.srp.SRP6Util;
 import org.spongycastle.crypto.digests.SHA1Digest;
-import org.spongycastle.crypto.io.SignerInputStream;
 import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 import org.spongycastle.crypto.util.PublicKeyFactory;
 import org.spongycastle.util.BigIntegers;
+import org.spongycastle.util.io.TeeInputStream;
 
 /**
  * TLS 1.1 SRP key exchange.
@@ -107,15 +107,13 @@ class TlsSRPKeyExchange implements TlsKeyExchange
 
     public void processServerKeyExchange(InputStream is) throws IOException
     {
-        SecurityParameters securityParameters = context.getSecurityParameters();
-
         InputStream sigIn = is;
-        Signer signer = null;
+        ByteArrayOutputStream params = null;
 
         if (tlsSigner != null)
         {
-            signer = initSigner(tlsSigner, securityParameters);
-            sigIn = new SignerInputStream(is, signer);
+            params = new ByteArrayOutputStream();
+            sigIn = new TeeInputStream(is, params);
         }
 
         byte[] NBytes = TlsUtils.readOpaque16(sigIn);
@@ -123,14 +121,9 @@ class TlsSRPKeyExchange implements TlsKeyExchange
         byte[] sBytes = TlsUtils.readOpaque8(sigIn);
         byte[] BBytes = TlsUtils.readOpaque16(sigIn);
 
-        if (signer != null)
+        if (params != null)
         {
-            byte[] sigByte = TlsUtils.readOpaque16(is);
-
-            if (!signer.verifySignature(sigByte))
-            {
-                throw new TlsFatalAlert(AlertDescription.bad_certificate);
-            }
+            TlsUtils.verifyServerKeyExchangeSignature(context, tlsSigner, serverPublicKey, params.toByteArray(), is);
         }
 
         BigInteger N = new BigInteger(1, NBytes);
@@ -192,12 +185,4 @@ class TlsSRPKeyExchange implements TlsKeyExchange
             throw new TlsFatalAlert(AlertDescription.illegal_parameter);
         }
     }
-
-    protected Signer initSigner(TlsSigner tlsSigner, SecurityParameters securityParameters)
-    {
-        Signer signer = tlsSigner.createVerifyer(this.serverPublicKey);
-        signer.update(securityParameters.clientRandom, 0, securityParameters.clientRandom.length);
-        signer.update(securityParameters.serverRandom, 0, securityParameters.serverRandom.length);
-        return signer;
-    }
 }
@@ -0,0 +1,63 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+import java.util.Hashtable;
+
+/**
+ * The server's side of a connection, deciding the parameters of each
+ * handshake run by a {@link TlsServerProtocolHandler}.
+ * <p>
+ * A new instance is used for each connection, but state such as a session
+ * cache or credentials may be shared between instances, in which case it has
+ * to allow for several handshakes running at once.
+ */
+public interface TlsServer
+{
+    void init(TlsClientContext context);
+
+    void notifyClientVersion(ProtocolVersion clientVersion) throws IOException;
+
+    void notifyOfferedCipherSuites(int[] offeredCipherSuites) throws IOException;
+
+    void notifyOfferedCompressionMethods(short[] offeredCompressionMethods) throws IOException;
+
+    void notifySecureRenegotiation(boolean secureRenegotiation) throws IOException;
+
+    // Hashtable is (Integer -> byte[])
+    void processClientExtensions(Hashtable clientExtensions) throws IOException;
+
+    ProtocolVersion getServerVersion() throws IOException;
+
+    int getSelectedCipherSuite() throws IOException;
+
+    short getSelectedCompressionMethod() throws IOException;
+
+    // Hashtable is (Integer -> byte[])
+    Hashtable getServerExtensions() throws IOException;
+
+    /**
+     * Return the session with the given ID if it can be resumed, or null to
+     * perform a full handshake.
+     */
+    TlsSession getSessionToResume(byte[] sessionID);
+
+    /**
+     * Called when the session returned by getSessionToResume() is used, in
+     * place of the selection of the cipher suite and compression method.
+     */
+    void notifySessionResumed(TlsSession session);
+
+    TlsCredentials getCredentials() throws IOException;
+
+    TlsServerKeyExchange getKeyExchange() throws IOException;
+
+    TlsCompression getCompression() throws IOException;
+
+    TlsCipher getCipher() throws IOException;
+
+    /**
+     * Called when the handshake has completed, with the session which was
+     * established or resumed.
+     */
+    void notifySessionEstablished(TlsSession session);
+}
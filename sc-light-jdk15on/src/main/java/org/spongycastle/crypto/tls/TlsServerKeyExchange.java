@@ -0,0 +1,22 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The server side of a key exchange. Once the client key exchange has been
+ * processed, the pre-master secret is collected with
+ * {@link #generatePremasterSecret()} as on the client side.
+ */
+public interface TlsServerKeyExchange extends TlsKeyExchange
+{
+    void processServerCredentials(TlsCredentials serverCredentials) throws IOException;
+
+    /**
+     * Return the body of the server key exchange message, or null if this key
+     * exchange does not send one.
+     */
+    byte[] generateServerKeyExchange() throws IOException;
+
+    void processClientKeyExchange(InputStream is) throws IOException;
+}
@@ -0,0 +1,560 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.spongycastle.util.Arrays;
+
+/**
+ * An implementation of the server side of TLS 1.0, 1.1 and 1.2.
+ * <p>
+ * Each handler looks after a single connection, so a server handling many
+ * clients at once uses a handler, and a {@link TlsServer}, per connection.
+ * Client certificates are not requested, and session tickets are not issued;
+ * sessions are resumed by session ID through the server's session cache.
+ */
+public class TlsServerProtocolHandler
+    extends TlsProtocol
+{
+    /*
+     * Our Connection states
+     */
+    private static final short CS_CLIENT_HELLO_EXPECTED = 1;
+    private static final short CS_SERVER_HELLO_DONE_SEND = 2;
+    private static final short CS_CLIENT_KEY_EXCHANGE_RECEIVED = 3;
+    private static final short CS_SERVER_FINISHED_SEND = 4;
+    private static final short CS_CLIENT_CHANGE_CIPHER_SPEC_RECEIVED = 5;
+    private static final short CS_DONE = 6;
+
+    private SecurityParameters securityParameters = null;
+
+    private TlsClientContextImpl tlsServerContext = null;
+    private TlsServer tlsServer = null;
+    private TlsServerKeyExchange keyExchange = null;
+
+    private byte[] sessionID = null;
+    private int selectedCipherSuite = -1;
+    private short selectedCompressionMethod = -1;
+    private TlsSession resumedSession = null;
+    private boolean extendedMasterSecret = false;
+
+    private short connection_state = 0;
+
+    public TlsServerProtocolHandler(InputStream is, OutputStream os)
+    {
+        this(is, os, createSecureRandom());
+    }
+
+    public TlsServerProtocolHandler(InputStream is, OutputStream os, SecureRandom sr)
+    {
+        super(is, os, sr);
+    }
+
+    void processHandshakeMessage(short type, byte[] buf) throws IOException
+    {
+        ByteArrayInputStream is = new ByteArrayInputStream(buf);
+
+        switch (type)
+        {
+            case HandshakeType.client_hello:
+                switch (connection_state)
+                {
+                    case CS_CLIENT_HELLO_EXPECTED:
+                        processClientHello(is);
+                        break;
+                    case CS_DONE:
+                        /*
+                         * RFC 5746 4.4. Servers which do not support renegotiation may
+                         * respond to a client hello with a no_renegotiation alert.
+                         */
+                        sendAlert(AlertLevel.warning, AlertDescription.no_renegotiation);
+                        break;
+                    default:
+                        this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                }
+                break;
+            case HandshakeType.client_key_exchange:
+                switch (connection_state)
+                {
+                    case CS_SERVER_HELLO_DONE_SEND:
+                        this.keyExchange.processClientKeyExchange(is);
+
+                        assertEmpty(is);
+
+                        /*
+                         * Calculate the master_secret
+                         */
+                        byte[] pms = this.keyExchange.generatePremasterSecret();
+
+                        if (extendedMasterSecret)
+                        {
+                            securityParameters.masterSecret = TlsUtils.calculateExtendedMasterSecret(
+                                this.tlsServerContext, pms, rs.getCurrentHash(null));
+                        }
+                        else
+                        {
+                            securityParameters.masterSecret = TlsUtils.calculateMasterSecret(
+                                this.tlsServerContext, pms);
+                        }
+
+                        /*
+                         * RFC 2246 8.1. The pre_master_secret should be deleted from
+                         * memory once the master_secret has been computed.
+                         */
+                        Arrays.fill(pms, (byte)0);
+
+                        rs.setPendingConnectionState(tlsServer.getCompression(), tlsServer.getCipher());
+
+                        connection_state = CS_CLIENT_KEY_EXCHANGE_RECEIVED;
+                        break;
+                    default:
+                        this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                }
+                break;
+            case HandshakeType.finished:
+                switch (connection_state)
+                {
+                    case CS_CLIENT_CHANGE_CIPHER_SPEC_RECEIVED:
+                        processFinished(tlsServerContext, is, "client finished", TlsUtils.SSL_CLIENT);
+
+                        if (resumedSession == null)
+                        {
+                            /*
+                             * In a full handshake our finished message comes last, and
+                             * covers the client's.
+                             */
+                            sendChangeCipherSpec();
+                            sendFinished(tlsServerContext, "server finished", TlsUtils.SSL_SERVER);
+                        }
+
+                        connection_state = CS_DONE;
+
+                        /*
+                         * We are now ready to receive application data.
+                         */
+                        this.appDataReady = true;
+
+                        this.tlsServer.notifySessionEstablished(createSession());
+                        break;
+                    default:
+                        this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                }
+                break;
+            case HandshakeType.certificate:
+            case HandshakeType.certificate_verify:
+            default:
+                // We never request a client certificate
+                this.failWithError(AlertLevel.fatal, AlertDescription.unexpected_message);
+                break;
+        }
+    }
+
+    void receivedChangeCipherSpec() throws IOException
+    {
+        /*
+         * Check if we are in the correct connection state. In an abbreviated
+         * handshake the client changes cipher spec after our finished message.
+         */
+        short expectedState = resumedSession != null ? CS_SERVER_FINISHED_SEND : CS_CLIENT_KEY_EXCHANGE_RECEIVED;
+        if (this.connection_state != expectedState)
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+        }
+
+        rs.receivedReadCipherSpec();
+
+        this.connection_state = CS_CLIENT_CHANGE_CIPHER_SPEC_RECEIVED;
+    }
+
+    private void processClientHello(ByteArrayInputStream is) throws IOException
+    {
+        /*
+         * Read the client hello message
+         */
+        ProtocolVersion client_version = TlsUtils.readVersion(is);
+        if (client_version.getFullVersion() < ProtocolVersion.TLSv10.getFullVersion())
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.protocol_version);
+        }
+
+        this.tlsServerContext.setClientVersion(client_version);
+        this.tlsServer.notifyClientVersion(client_version);
+
+        securityParameters.clientRandom = new byte[32];
+        TlsUtils.readFully(securityParameters.clientRandom, is);
+
+        byte[] offeredSessionID = TlsUtils.readOpaque8(is);
+        if (offeredSessionID.length > 32)
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
+        }
+
+        int cipherSuitesLength = TlsUtils.readUint16(is);
+        if (cipherSuitesLength < 2 || (cipherSuitesLength & 1) != 0)
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.decode_error);
+        }
+
+        int[] offeredCipherSuites = new int[cipherSuitesLength / 2];
+        for (int i = 0; i < offeredCipherSuites.length; ++i)
+        {
+            offeredCipherSuites[i] = TlsUtils.readUint16(is);
+        }
+
+        short compressionMethodsLength = TlsUtils.readUint8(is);
+        if (compressionMethodsLength < 1)
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.decode_error);
+        }
+
+        short[] offeredCompressionMethods = new short[compressionMethodsLength];
+        for (int i = 0; i < offeredCompressionMethods.length; ++i)
+        {
+            offeredCompressionMethods[i] = TlsUtils.readUint8(is);
+        }
+
+        // Integer -> byte[]
+        Hashtable clientExtensions = new Hashtable();
+
+        if (is.available() > 0)
+        {
+            // Process extensions from extended client hello
+            byte[] extBytes = TlsUtils.readOpaque16(is);
+
+            ByteArrayInputStream ext = new ByteArrayInputStream(extBytes);
+            while (ext.available() > 0)
+            {
+                Integer extType = new Integer(TlsUtils.readUint16(ext));
+                byte[] extValue = TlsUtils.readOpaque16(ext);
+
+                /*
+                 * RFC 3546 2.3 There MUST NOT be more than one extension of the same type.
+                 */
+                if (clientExtensions.containsKey(extType))
+                {
+                    this.failWithError(AlertLevel.fatal, AlertDescription.illegal_parameter);
+                }
+
+                clientExtensions.put(extType, extValue);
+            }
+        }
+
+        assertEmpty(is);
+
+        ProtocolVersion server_version = this.tlsServer.getServerVersion();
+        if (server_version.getFullVersion() > client_version.getFullVersion())
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+        }
+
+        this.tlsServerContext.setServerVersion(server_version);
+
+        /*
+         * RFC 5746 3.6. The server MUST check if the "renegotiation_info" extension is
+         * included in the ClientHello, or if the TLS_EMPTY_RENEGOTIATION_INFO_SCSV is
+         * among the offered cipher suites.
+         */
+        boolean secure_negotiation = clientExtensions.containsKey(EXT_RenegotiationInfo);
+        if (secure_negotiation)
+        {
+            /*
+             * If the extension is present, the server MUST verify that the length of the
+             * "renegotiated_connection" field is zero, and if it is not, MUST abort the
+             * handshake.
+             */
+            byte[] renegExtValue = (byte[])clientExtensions.get(EXT_RenegotiationInfo);
+
+            if (!Arrays.constantTimeAreEqual(renegExtValue, createRenegotiationInfo(emptybuf)))
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+            }
+        }
+        else
+        {
+            secure_negotiation = arrayContains(offeredCipherSuites,
+                CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV);
+        }
+
+        this.tlsServer.notifySecureRenegotiation(secure_negotiation);
+        this.tlsServer.notifyOfferedCipherSuites(offeredCipherSuites);
+        this.tlsServer.notifyOfferedCompressionMethods(offeredCompressionMethods);
+        this.tlsServer.processClientExtensions(clientExtensions);
+
+        /*
+         * RFC 7627 5.3. The session is only resumed if it, and this client hello,
+         * agree on the use of the extended master secret.
+         */
+        this.extendedMasterSecret = clientExtensions.containsKey(EXT_ExtendedMasterSecret);
+
+        /*
+         * RFC 5246 7.4.1.4.1. The hashes a TLS 1.2 client accepts in our signatures.
+         */
+        if (TlsUtils.isTLSv12(tlsServerContext) && clientExtensions.containsKey(EXT_SignatureAlgorithms))
+        {
+            securityParameters.peerSigAlgs = TlsUtils.readSignatureAlgorithmsExtension(
+                (byte[])clientExtensions.get(EXT_SignatureAlgorithms));
+        }
+
+        this.resumedSession = chooseSessionToResume(offeredSessionID, offeredCipherSuites,
+            offeredCompressionMethods);
+
+        if (resumedSession != null)
+        {
+            this.sessionID = resumedSession.getSessionID();
+            this.selectedCipherSuite = resumedSession.getCipherSuite();
+            this.selectedCompressionMethod = resumedSession.getCompressionMethod();
+            this.securityParameters.masterSecret = Arrays.clone(resumedSession.getMasterSecret());
+
+            this.tlsServer.notifySessionResumed(resumedSession);
+        }
+        else
+        {
+            int selectedCipherSuite = this.tlsServer.getSelectedCipherSuite();
+            if (!arrayContains(offeredCipherSuites, selectedCipherSuite)
+                || selectedCipherSuite == CipherSuite.TLS_EMPTY_RENEGOTIATION_INFO_SCSV
+                || (TlsUtils.isTLSv12CipherSuite(selectedCipherSuite) && !TlsUtils.isTLSv12(tlsServerContext)))
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+
+            short selectedCompressionMethod = this.tlsServer.getSelectedCompressionMethod();
+            if (!arrayContains(offeredCompressionMethods, selectedCompressionMethod))
+            {
+                this.failWithError(AlertLevel.fatal, AlertDescription.internal_error);
+            }
+
+            this.sessionID = new byte[32];
+            random.nextBytes(sessionID);
+            this.selectedCipherSuite = selectedCipherSuite;
+            this.selectedCompressionMethod = selectedCompressionMethod;
+        }
+
+        securityParameters.prfAlgorithm = TlsUtils.getPRFAlgorithm(tlsServerContext.getServerVersion(),
+            selectedCipherSuite);
+
+        sendServerHello(secure_negotiation);
+
+        if (resumedSession != null)
+        {
+            /*
+             * RFC 2246 7.3. In an abbreviated handshake we change cipher spec and send
+             * our finished message straight away.
+             */
+            rs.setPendingConnectionState(tlsServer.getCompression(), tlsServer.getCipher());
+
+            sendChangeCipherSpec();
+            sendFinished(tlsServerContext, "server finished", TlsUtils.SSL_SERVER);
+
+            connection_state = CS_SERVER_FINISHED_SEND;
+            return;
+        }
+
+        this.keyExchange = tlsServer.getKeyExchange();
+
+        TlsCredentials serverCredentials = tlsServer.getCredentials();
+        this.keyExchange.processServerCredentials(serverCredentials);
+
+        sendServerCertificate(serverCredentials.getCertificate());
+
+        byte[] serverKeyExchange = this.keyExchange.generateServerKeyExchange();
+        if (serverKeyExchange != null)
+        {
+            sendHandshakeMessage(HandshakeType.server_key_exchange, serverKeyExchange);
+        }
+
+        sendHandshakeMessage(HandshakeType.server_hello_done, emptybuf);
+
+        connection_state = CS_SERVER_HELLO_DONE_SEND;
+    }
+
+    /**
+     * Return the session to resume for the session ID offered by the client,
+     * or null if a full handshake is needed.
+     */
+    private TlsSession chooseSessionToResume(byte[] offeredSessionID, int[] offeredCipherSuites,
+        short[] offeredCompressionMethods)
+        throws IOException
+    {
+        if (offeredSessionID.length == 0)
+        {
+            return null;
+        }
+
+        TlsSession session = this.tlsServer.getSessionToResume(offeredSessionID);
+
+        if (session == null || !session.isResumable()
+            || !Arrays.areEqual(offeredSessionID, session.getSessionID()))
+        {
+            return null;
+        }
+
+        /*
+         * RFC 7627 5.3. If the original session used the extended master secret but the
+         * new client hello does not offer it, the abbreviated handshake must be aborted.
+         * In the reverse case a full handshake is done instead.
+         */
+        if (session.isExtendedMasterSecret() && !extendedMasterSecret)
+        {
+            this.failWithError(AlertLevel.fatal, AlertDescription.handshake_failure);
+        }
+
+        if (!tlsServerContext.getServerVersion().equals(session.getServerVersion())
+            || !arrayContains(offeredCipherSuites, session.getCipherSuite())
+            || !arrayContains(offeredCompressionMethods, session.getCompressionMethod())
+            || session.isExtendedMasterSecret() != extendedMasterSecret)
+        {
+            return null;
+        }
+
+        return session;
+    }
+
+    private void sendServerHello(boolean secure_negotiation) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        TlsUtils.writeVersion(tlsServerContext.getServerVersion(), os);
+
+        securityParameters.serverRandom = new byte[32];
+        random.nextBytes(securityParameters.serverRandom);
+        TlsUtils.writeGMTUnixTime(securityParameters.serverRandom, 0);
+        os.write(securityParameters.serverRandom);
+
+        TlsUtils.writeOpaque8(sessionID, os);
+        TlsUtils.writeUint16(selectedCipherSuite, os);
+        TlsUtils.writeUint8(selectedCompressionMethod, os);
+
+        /*
+         * RFC 3546 2.3 If [...] the older session is resumed, then the server MUST
+         * ignore extensions appearing in the client hello, and send a server hello
+         * containing no extensions. The renegotiation_info and extended_master_secret
+         * extensions are the exceptions, as they must be echoed regardless.
+         */
+        // Integer -> byte[]
+        Hashtable serverExtensions = new Hashtable();
+
+        if (resumedSession == null)
+        {
+            Hashtable extensions = tlsServer.getServerExtensions();
+            if (extensions != null)
+            {
+                serverExtensions.putAll(extensions);
+            }
+        }
+
+        if (secure_negotiation)
+        {
+            serverExtensions.put(EXT_RenegotiationInfo, createRenegotiationInfo(emptybuf));
+        }
+
+        if (extendedMasterSecret)
+        {
+            serverExtensions.put(EXT_ExtendedMasterSecret, emptybuf);
+        }
+
+        if (!serverExtensions.isEmpty())
+        {
+            ByteArrayOutputStream ext = new ByteArrayOutputStream();
+
+            Enumeration keys = serverExtensions.keys();
+            while (keys.hasMoreElements())
+            {
+                Integer extType = (Integer)keys.nextElement();
+                writeExtension(ext, extType, (byte[])serverExtensions.get(extType));
+            }
+
+            TlsUtils.writeOpaque16(ext.toByteArray(), os);
+        }
+
+        sendHandshakeMessage(HandshakeType.server_hello, os.toByteArray());
+    }
+
+    private void sendServerCertificate(Certificate serverCert) throws IOException
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+        serverCert.encode(os);
+
+        sendHandshakeMessage(HandshakeType.certificate, os.toByteArray());
+    }
+
+    private void sendHandshakeMessage(short type, byte[] body) throws IOException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        TlsUtils.writeUint8(type, bos);
+        TlsUtils.writeUint24(body.length, bos);
+        bos.write(body);
+        byte[] message = bos.toByteArray();
+
+        rs.writeMessage(ContentType.handshake, message, 0, message.length);
+    }
+
+    private TlsSession createSession()
+    {
+        long creationTime = System.currentTimeMillis();
+
+        if (resumedSession != null)
+        {
+            // A resumed session lasts no longer than the one it came from
+            creationTime = resumedSession.getCreationTime();
+        }
+
+        return new TlsSession(sessionID, securityParameters.masterSecret, selectedCipherSuite,
+            selectedCompressionMethod, tlsServerContext.getServerVersion(), extendedMasterSecret,
+            null, 0, creationTime);
+    }
+
+    /**
+     * Accept a connection from a client, running the handshake to completion.
+     *
+     * @param tlsServer the server deciding the parameters of the connection.
+     * @throws IOException If handshake was not successful.
+     */
+    public void accept(TlsServer tlsServer) throws IOException
+    {
+        beginAccept(tlsServer);
+
+        /*
+         * We will now read data, until we have completed the handshake.
+         */
+        while (connection_state != CS_DONE)
+        {
+            safeReadData();
+        }
+
+        this.tlsInputStream = new TlsInputStream(this);
+        this.tlsOutputStream = new TlsOutputStream(this);
+    }
+
+    /**
+     * Get ready to receive the client hello, without waiting for it.
+     */
+    void beginAccept(TlsServer tlsServer) throws IOException
+    {
+        if (tlsServer == null)
+        {
+            throw new IllegalArgumentException("'tlsServer' cannot be null");
+        }
+        if (this.tlsServer != null)
+        {
+            throw new IllegalStateException("accept can only be called once");
+        }
+
+        this.securityParameters = new SecurityParameters();
+
+        this.tlsServerContext = new TlsClientContextImpl(random, securityParameters, true);
+
+        this.rs.init(tlsServerContext);
+
+        this.tlsServer = tlsServer;
+        this.tlsServer.init(tlsServerContext);
+
+        connection_state = CS_CLIENT_HELLO_EXPECTED;
+    }
+}
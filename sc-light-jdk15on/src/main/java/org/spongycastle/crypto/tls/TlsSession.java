@@ -0,0 +1,104 @@
+package org.spongycastle.crypto.tls;
+
+import org.spongycastle.util.Arrays;
+
+/**
+ * The state kept from a completed handshake so that a later connection to the
+ * same server can be resumed with an abbreviated handshake, either by session
+ * ID (RFC 2246 7.3) or by session ticket (RFC 5077).
+ */
+public class TlsSession
+{
+    private final byte[] sessionID;
+    private final byte[] masterSecret;
+    private final int cipherSuite;
+    private final short compressionMethod;
+    private final ProtocolVersion serverVersion;
+    private final boolean extendedMasterSecret;
+    private final byte[] sessionTicket;
+    private final long ticketLifetimeHint;
+    private final long creationTime;
+
+    TlsSession(byte[] sessionID, byte[] masterSecret, int cipherSuite, short compressionMethod,
+        ProtocolVersion serverVersion, boolean extendedMasterSecret, byte[] sessionTicket, long ticketLifetimeHint, long creationTime)
+    {
+        this.sessionID = Arrays.clone(sessionID);
+        this.masterSecret = Arrays.clone(masterSecret);
+        this.cipherSuite = cipherSuite;
+        this.compressionMethod = compressionMethod;
+        this.serverVersion = serverVersion;
+        this.extendedMasterSecret = extendedMasterSecret;
+        this.sessionTicket = Arrays.clone(sessionTicket);
+        this.ticketLifetimeHint = ticketLifetimeHint;
+        this.creationTime = creationTime;
+    }
+
+    /**
+     * @return the session ID given by the server, which may be empty.
+     */
+    public byte[] getSessionID()
+    {
+        return sessionID;
+    }
+
+    byte[] getMasterSecret()
+    {
+        return masterSecret;
+    }
+
+    public int getCipherSuite()
+    {
+        return cipherSuite;
+    }
+
+    public short getCompressionMethod()
+    {
+        return compressionMethod;
+    }
+
+    public ProtocolVersion getServerVersion()
+    {
+        return serverVersion;
+    }
+
+    /**
+     * @return true if the master secret was derived as in RFC 7627.
+     */
+    public boolean isExtendedMasterSecret()
+    {
+        return extendedMasterSecret;
+    }
+
+    /**
+     * @return the session ticket given by the server, or null if there is none.
+     */
+    public byte[] getSessionTicket()
+    {
+        return sessionTicket;
+    }
+
+    /**
+     * @return the lifetime of the session ticket in seconds suggested by the
+     * server, 0 if none was given.
+     */
+    public long getTicketLifetimeHint()
+    {
+        return ticketLifetimeHint;
+    }
+
+    /**
+     * @return the time the session was first established, in milliseconds since the epoch.
+     */
+    public long getCreationTime()
+    {
+        return creationTime;
+    }
+
+    /**
+     * @return true if the session has a session ID or ticket it can be resumed with.
+     */
+    public boolean isResumable()
+    {
+        return sessionID.length > 0 || sessionTicket != null;
+    }
+}
@@ -0,0 +1,26 @@
+package org.spongycastle.crypto.tls;
+
+/**
+ * A store of client sessions, keyed by whatever the application uses to
+ * identify a server, typically its host name and port. Implementations must
+ * be safe for use by several connections at once.
+ */
+public interface TlsSessionCache
+{
+    /**
+     * @param peer the key identifying the server.
+     * @return the session to offer to the server, or null if there is none.
+     */
+    TlsSession getSession(Object peer);
+
+    /**
+     * @param peer the key identifying the server.
+     * @param session the session just established with the server.
+     */
+    void putSession(Object peer, TlsSession session);
+
+    /**
+     * @param peer the key identifying the server.
+     */
+    void removeSession(Object peer);
+}
@@ -0,0 +1,20 @@
+package org.spongycastle.crypto.tls;
+
+import java.io.IOException;
+
+/**
+ * Signer credentials which can also sign with the hash the peer asked for, as
+ * TLS 1.2 requires. Credentials not implementing this can only be used for
+ * earlier versions.
+ */
+public interface TlsSignatureAndHashCredentials
+    extends TlsSignerCredentials
+{
+    /**
+     * Sign a hash for TLS 1.2, where the peer has told us which algorithms it accepts.
+     *
+     * @param algorithm the signature and hash to use, or null for the MD5/SHA-1 scheme
+     * @param hash the output of the hash named by algorithm
+     */
+    byte[] generateCertificateSignature(SignatureAndHashAlgorithm algorithm, byte[] hash) throws IOException;
+}
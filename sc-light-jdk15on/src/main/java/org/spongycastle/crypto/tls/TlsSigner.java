@@ -8,10 +8,14 @@ import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 
 interface TlsSigner
 {
-    byte[] calculateRawSignature(SecureRandom random, AsymmetricKeyParameter privateKey, byte[] md5andsha1)
-        throws CryptoException;
+    /**
+     * @param algorithm the TLS 1.2 signature and hash, or null for the MD5/SHA-1 scheme
+     *                  of earlier versions, in which case hash is the 36-byte md5andsha1
+     */
+    byte[] calculateRawSignature(SecureRandom random, AsymmetricKeyParameter privateKey,
+        SignatureAndHashAlgorithm algorithm, byte[] hash) throws CryptoException;
 
-    Signer createVerifyer(AsymmetricKeyParameter publicKey);
+    Signer createVerifyer(SignatureAndHashAlgorithm algorithm, AsymmetricKeyParameter publicKey);
 
     boolean isValidPublicKey(AsymmetricKeyParameter publicKey);
 }
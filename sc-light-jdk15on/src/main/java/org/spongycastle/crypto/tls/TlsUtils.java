@@ -1,9 +1,12 @@
 package org.spongycastle.crypto.tls;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Vector;
 
 import org.spongycastle.asn1.DERBitString;
 import org.spongycastle.asn1.x509.KeyUsage;
@@ -11,9 +14,17 @@ import org.spongycastle.asn1.x509.X509CertificateStructure;
 import org.spongycastle.asn1.x509.X509Extension;
 import org.spongycastle.asn1.x509.X509Extensions;
 import org.spongycastle.crypto.Digest;
+import org.spongycastle.crypto.Signer;
 import org.spongycastle.crypto.digests.MD5Digest;
 import org.spongycastle.crypto.digests.SHA1Digest;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.digests.SHA384Digest;
 import org.spongycastle.crypto.macs.HMac;
+import org.spongycastle.crypto.params.AsymmetricKeyParameter;
+import org.spongycastle.crypto.params.DSAPublicKeyParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.crypto.params.RSAKeyParameters;
+import org.spongycastle.crypto.util.PublicKeyFactory;
 import org.spongycastle.crypto.params.KeyParameter;
 import org.spongycastle.util.Arrays;
 import org.spongycastle.util.Strings;
@@ -294,6 +305,324 @@ public class TlsUtils
         return buf;
     }
 
+    /**
+     * The PRF negotiated for the current handshake: the MD5/SHA-1 combination below
+     * TLS 1.2, otherwise the single-hash PRF picked by the cipher suite.
+     */
+    static byte[] PRF(TlsClientContext context, byte[] secret, String asciiLabel, byte[] seed, int size)
+    {
+        int prfAlgorithm = context.getSecurityParameters().prfAlgorithm;
+
+        if (prfAlgorithm == PRFAlgorithm.tls_prf_legacy)
+        {
+            return PRF(secret, asciiLabel, seed, size);
+        }
+
+        return PRF_1_2(createPRFHash(prfAlgorithm), secret, asciiLabel, seed, size);
+    }
+
+    static Digest createPRFHash(int prfAlgorithm)
+    {
+        switch (prfAlgorithm)
+        {
+            case PRFAlgorithm.tls_prf_legacy:
+                return new CombinedHash();
+            case PRFAlgorithm.tls_prf_sha384:
+                return new SHA384Digest();
+            default:
+                return new SHA256Digest();
+        }
+    }
+
+    /**
+     * @param hashAlgorithm {@link HashAlgorithm}
+     */
+    static Digest createHash(short hashAlgorithm)
+    {
+        switch (hashAlgorithm)
+        {
+            case HashAlgorithm.md5:
+                return new MD5Digest();
+            case HashAlgorithm.sha1:
+                return new SHA1Digest();
+            case HashAlgorithm.sha256:
+                return new SHA256Digest();
+            case HashAlgorithm.sha384:
+                return new SHA384Digest();
+            default:
+                throw new IllegalArgumentException("unsupported HashAlgorithm: " + hashAlgorithm);
+        }
+    }
+
+    static boolean isSupportedHash(short hashAlgorithm)
+    {
+        switch (hashAlgorithm)
+        {
+            case HashAlgorithm.sha1:
+            case HashAlgorithm.sha256:
+            case HashAlgorithm.sha384:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Whether a cipher suite may only be used with TLS 1.2, as the AEAD suites of
+     * RFC 5288 and RFC 5289 may.
+     */
+    static boolean isTLSv12CipherSuite(int cipherSuite)
+    {
+        switch (cipherSuite)
+        {
+            case CipherSuite.TLS_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_anon_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_DH_anon_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_CBC_SHA256:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_128_CBC_SHA256:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_CBC_SHA256:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_128_CBC_SHA256:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_128_GCM_SHA256:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_GCM_SHA384:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the {@link PRFAlgorithm} for a cipher suite negotiated at a given version
+     */
+    static int getPRFAlgorithm(ProtocolVersion version, int cipherSuite)
+    {
+        if (version.getFullVersion() < ProtocolVersion.TLSv12.getFullVersion())
+        {
+            return PRFAlgorithm.tls_prf_legacy;
+        }
+
+        switch (cipherSuite)
+        {
+            case CipherSuite.TLS_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DHE_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_DSS_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_DH_anon_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_CBC_SHA384:
+            case CipherSuite.TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_ECDSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384:
+            case CipherSuite.TLS_ECDH_RSA_WITH_AES_256_GCM_SHA384:
+                return PRFAlgorithm.tls_prf_sha384;
+            default:
+                return PRFAlgorithm.tls_prf_sha256;
+        }
+    }
+
+    /**
+     * @return the {@link SignatureAlgorithm} matching the key in a certificate
+     */
+    static short getSignatureAlgorithm(Certificate certificate) throws IOException
+    {
+        AsymmetricKeyParameter publicKey;
+        try
+        {
+            publicKey = PublicKeyFactory.createKey(certificate.certs[0].getSubjectPublicKeyInfo());
+        }
+        catch (RuntimeException e)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+
+        if (publicKey instanceof RSAKeyParameters)
+        {
+            return SignatureAlgorithm.rsa;
+        }
+        if (publicKey instanceof DSAPublicKeyParameters)
+        {
+            return SignatureAlgorithm.dsa;
+        }
+        if (publicKey instanceof ECPublicKeyParameters)
+        {
+            return SignatureAlgorithm.ecdsa;
+        }
+        throw new TlsFatalAlert(AlertDescription.internal_error);
+    }
+
+    /*
+     * Only the contexts we create know which side of the connection they are for,
+     * any other is taken to be a client's.
+     */
+    static boolean isServer(TlsClientContext context)
+    {
+        return context instanceof TlsClientContextImpl && ((TlsClientContextImpl)context).isServer();
+    }
+
+    static boolean isTLSv11(TlsClientContext context)
+    {
+        return context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv11.getFullVersion();
+    }
+
+    static boolean isTLSv12(TlsClientContext context)
+    {
+        return context.getServerVersion().getFullVersion() >= ProtocolVersion.TLSv12.getFullVersion();
+    }
+
+    /**
+     * RFC 5246 7.4.1.4.1. The signature_algorithms we offer when negotiating TLS 1.2.
+     */
+    static Vector getDefaultSupportedSignatureAlgorithms()
+    {
+        short[] hashAlgorithms = new short[]{ HashAlgorithm.sha384, HashAlgorithm.sha256, HashAlgorithm.sha1 };
+        short[] signatureAlgorithms = new short[]{ SignatureAlgorithm.rsa, SignatureAlgorithm.dsa,
+            SignatureAlgorithm.ecdsa };
+
+        Vector result = new Vector();
+        for (int i = 0; i < signatureAlgorithms.length; ++i)
+        {
+            for (int j = 0; j < hashAlgorithms.length; ++j)
+            {
+                result.addElement(new SignatureAndHashAlgorithm(hashAlgorithms[j], signatureAlgorithms[i]));
+            }
+        }
+        return result;
+    }
+
+    static byte[] createSignatureAlgorithmsExtension(Vector supportedSignatureAlgorithms) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        encodeSupportedSignatureAlgorithms(supportedSignatureAlgorithms, buf);
+        return buf.toByteArray();
+    }
+
+    static Vector readSignatureAlgorithmsExtension(byte[] extensionValue) throws IOException
+    {
+        ByteArrayInputStream buf = new ByteArrayInputStream(extensionValue);
+        Vector result = parseSupportedSignatureAlgorithms(buf);
+        if (buf.available() > 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+        return result;
+    }
+
+    static void encodeSupportedSignatureAlgorithms(Vector supportedSignatureAlgorithms, OutputStream os)
+        throws IOException
+    {
+        writeUint16(2 * supportedSignatureAlgorithms.size(), os);
+        for (int i = 0; i < supportedSignatureAlgorithms.size(); ++i)
+        {
+            ((SignatureAndHashAlgorithm)supportedSignatureAlgorithms.elementAt(i)).encode(os);
+        }
+    }
+
+    static Vector parseSupportedSignatureAlgorithms(InputStream is) throws IOException
+    {
+        int length = readUint16(is);
+        if (length < 2 || (length & 1) != 0)
+        {
+            throw new TlsFatalAlert(AlertDescription.decode_error);
+        }
+        Vector result = new Vector(length / 2);
+        for (int i = 0; i < length; i += 2)
+        {
+            result.addElement(SignatureAndHashAlgorithm.parse(is));
+        }
+        return result;
+    }
+
+    /**
+     * Pick the hash to sign with for a given signature algorithm, from those the peer
+     * listed, falling back to the RFC 5246 7.4.1.4.1 default of SHA-1.
+     */
+    static SignatureAndHashAlgorithm chooseSignatureAndHashAlgorithm(Vector peerSigAlgs, short signature)
+    {
+        if (peerSigAlgs != null)
+        {
+            short[] preferredHashes = new short[]{ HashAlgorithm.sha256, HashAlgorithm.sha384, HashAlgorithm.sha1 };
+            for (int i = 0; i < preferredHashes.length; ++i)
+            {
+                SignatureAndHashAlgorithm candidate = new SignatureAndHashAlgorithm(preferredHashes[i], signature);
+                if (peerSigAlgs.contains(candidate))
+                {
+                    return candidate;
+                }
+            }
+        }
+        return new SignatureAndHashAlgorithm(HashAlgorithm.sha1, signature);
+    }
+
+    /**
+     * Sign hash with the given credentials, where algorithm is null before TLS 1.2.
+     * Credentials only supporting the MD5/SHA-1 scheme cannot be used with TLS 1.2.
+     */
+    static byte[] generateSignature(TlsSignerCredentials credentials, SignatureAndHashAlgorithm algorithm,
+        byte[] hash) throws IOException
+    {
+        if (credentials instanceof TlsSignatureAndHashCredentials)
+        {
+            return ((TlsSignatureAndHashCredentials)credentials).generateCertificateSignature(algorithm, hash);
+        }
+        if (algorithm != null)
+        {
+            throw new TlsFatalAlert(AlertDescription.internal_error);
+        }
+        return credentials.generateCertificateSignature(hash);
+    }
+
+    /**
+     * Check the signature on a ServerKeyExchange, where params holds the raw
+     * parameters as they appeared on the wire and is is positioned just past them.
+     */
+    static void verifyServerKeyExchangeSignature(TlsClientContext context, TlsSigner tlsSigner,
+        AsymmetricKeyParameter serverPublicKey, byte[] params, InputStream is) throws IOException
+    {
+        SignatureAndHashAlgorithm algorithm = null;
+        if (isTLSv12(context))
+        {
+            algorithm = SignatureAndHashAlgorithm.parse(is);
+            if (!isSupportedHash(algorithm.getHash()))
+            {
+                throw new TlsFatalAlert(AlertDescription.illegal_parameter);
+            }
+        }
+
+        byte[] sigBytes = readOpaque16(is);
+
+        SecurityParameters securityParameters = context.getSecurityParameters();
+        Signer signer = tlsSigner.createVerifyer(algorithm, serverPublicKey);
+        signer.update(securityParameters.clientRandom, 0, securityParameters.clientRandom.length);
+        signer.update(securityParameters.serverRandom, 0, securityParameters.serverRandom.length);
+        signer.update(params, 0, params.length);
+
+        if (!signer.verifySignature(sigBytes))
+        {
+            throw new TlsFatalAlert(AlertDescription.bad_certificate);
+        }
+    }
+
     static byte[] concat(byte[] a, byte[] b)
     {
         byte[] c = new byte[a.length + b.length];
@@ -330,7 +659,7 @@ public class TlsUtils
 
         if (isTls)
         {
-            return PRF(sp.masterSecret, "key expansion", random, size);
+            return PRF(context, sp.masterSecret, "key expansion", random, size);
         }
 
         Digest md5 = new MD5Digest();
@@ -372,7 +701,7 @@ public class TlsUtils
 
         if (isTls)
         {
-            return PRF(pms, "master secret", random, 48);
+            return PRF(context, pms, "master secret", random, 48);
         }
 
         Digest md5 = new MD5Digest();
@@ -402,6 +731,15 @@ public class TlsUtils
         return rval;
     }
 
+    /**
+     * RFC 7627 4. The master secret bound to the handshake which created it,
+     * rather than only to the randoms.
+     */
+    static byte[] calculateExtendedMasterSecret(TlsClientContext context, byte[] pms, byte[] sessionHash)
+    {
+        return PRF(context, pms, "extended master secret", sessionHash, 48);
+    }
+
     static byte[] calculateVerifyData(TlsClientContext context, String asciiLabel, byte[] handshakeHash)
     {
         ProtocolVersion pv = context.getServerVersion();
@@ -411,7 +749,7 @@ public class TlsUtils
 
         if (isTls)
         {
-            return PRF(sp.masterSecret, asciiLabel, handshakeHash, 12);
+            return PRF(context, sp.masterSecret, asciiLabel, handshakeHash, 12);
         }
 
         return handshakeHash;
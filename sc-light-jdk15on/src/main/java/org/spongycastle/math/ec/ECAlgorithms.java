@@ -23,7 +23,124 @@ public class ECAlgorithms
             }
         }
 
-        return implShamirsTrick(P, a, Q, b);
+        return implWNafInterleaved(P, a, Q, b);
+    }
+
+    /**
+     * Compute <code>a * G + b * Q</code>, where <code>G</code> is the fixed
+     * point of <code>g</code>. The comb table of <code>g</code> is combined
+     * with a Window NAF for <code>Q</code>, so that the doublings are shared
+     * and the <code>G</code> part only costs additions.
+     */
+    public static ECPoint sumOfTwoMultiplies(FixedPointCombMultiplier g, BigInteger a,
+        ECPoint Q, BigInteger b)
+    {
+        ECPoint G = g.getPoint();
+        ECCurve c = G.getCurve();
+        if (!c.equals(Q.getCurve()))
+        {
+            throw new IllegalArgumentException("P and Q must be on same curve");
+        }
+
+        // Point multiplication for Koblitz curves (using WTNAF) beats Shamir's trick
+        if (c instanceof ECCurve.F2m)
+        {
+            ECCurve.F2m f2mCurve = (ECCurve.F2m)c;
+            if (f2mCurve.isKoblitz())
+            {
+                return g.multiply(a).add(Q.multiply(b));
+            }
+        }
+
+        if (!g.isCombScalar(a))
+        {
+            return implWNafInterleaved(G, a, Q, b);
+        }
+
+        if (G instanceof ECPoint.Fp)
+        {
+            return implCombInterleavedFp(g, a, Q, b).toAffine(false);
+        }
+
+        byte widthQ = WNafMultiplier.getWindowWidth(b.bitLength());
+        ECPoint[] preCompQ = WNafMultiplier.getPreComp(Q, Q.getPreCompInfo(), 1 << (widthQ - 2));
+        byte[] wnafQ = WNafMultiplier.windowNaf(widthQ, b);
+
+        int m = Math.max(g.d, wnafQ.length);
+
+        ECPoint R = c.getInfinity();
+        for (int i = m - 1; i >= 0; --i)
+        {
+            R = R.twice();
+
+            if (i < g.d)
+            {
+                int index = g.column(a, i);
+                if (index != 0)
+                {
+                    R = R.add(g.table[index]);
+                }
+            }
+
+            R = addDigit(R, wnafQ, i, preCompQ);
+        }
+
+        return R;
+    }
+
+    /**
+     * Compute <code>a[i] * G + b[i] * Q[i]</code> for each <code>i</code>,
+     * where <code>G</code> is the fixed point of <code>g</code>. Over Fp the
+     * results are converted back to affine co-ordinates together, using
+     * Montgomery's trick, so there is only one field inversion for the batch.
+     *
+     * @param g a multiplier for the common point G.
+     * @param a the multipliers of G.
+     * @param Q the other points, all on the same curve as G.
+     * @param b the multipliers of the points in Q.
+     * @return the sums, in the same order as the arguments.
+     */
+    public static ECPoint[] sumOfTwoMultiplies(FixedPointCombMultiplier g, BigInteger[] a,
+        ECPoint[] Q, BigInteger[] b)
+    {
+        if (a.length != Q.length || b.length != Q.length)
+        {
+            throw new IllegalArgumentException("point and multiplier arrays must be the same length");
+        }
+
+        ECPoint G = g.getPoint();
+        ECCurve c = G.getCurve();
+        boolean koblitz = (c instanceof ECCurve.F2m) && ((ECCurve.F2m)c).isKoblitz();
+
+        if (!(G instanceof ECPoint.Fp) || koblitz)
+        {
+            ECPoint[] rs = new ECPoint[Q.length];
+            for (int i = 0; i != Q.length; i++)
+            {
+                rs[i] = sumOfTwoMultiplies(g, a[i], Q[i], b[i]);
+            }
+            return rs;
+        }
+
+        FpJacobianPoint[] js = new FpJacobianPoint[Q.length];
+        for (int i = 0; i != Q.length; i++)
+        {
+            if (!c.equals(Q[i].getCurve()))
+            {
+                throw new IllegalArgumentException("P and Q must be on same curve");
+            }
+
+            if (g.isCombScalar(a[i]))
+            {
+                js[i] = implCombInterleavedFp(g, a[i], Q[i], b[i]);
+            }
+            else
+            {
+                js[i] = FpJacobianPoint.fromAffine(implWNafInterleaved(G, a[i], Q[i], b[i]));
+            }
+        }
+
+        return FpJacobianPoint.normalizeAll(js, false);
     }
 
     /*
@@ -89,4 +206,139 @@ public class ECAlgorithms
 
         return R;
     }
+
+    /*
+     * The comb table for G interleaved with a Window NAF for Q, over Fp,
+     * leaving the result in Jacobian co-ordinates.
+     */
+    private static FpJacobianPoint implCombInterleavedFp(FixedPointCombMultiplier g, BigInteger a,
+        ECPoint Q, BigInteger b)
+    {
+        byte widthQ = WNafMultiplier.getWindowWidth(b.bitLength());
+        ECPoint[] preCompQ = WNafMultiplier.getPreComp(Q, Q.getPreCompInfo(), 1 << (widthQ - 2));
+        byte[] wnafQ = WNafMultiplier.windowNaf(widthQ, b);
+
+        FpJacobianPoint[] tableQ = FpJacobianPoint.fromAffine(preCompQ);
+        FpJacobianPoint[] negTableQ = negate(tableQ);
+
+        int m = Math.max(g.d, wnafQ.length);
+
+        FpJacobianPoint R = FpJacobianPoint.infinity((ECCurve.Fp)Q.getCurve());
+        for (int i = m - 1; i >= 0; --i)
+        {
+            R = R.twice();
+
+            if (i < g.d)
+            {
+                int index = g.column(a, i);
+                if (index != 0)
+                {
+                    R = R.add(g.jTable[index]);
+                }
+            }
+
+            R = addDigit(R, wnafQ, i, tableQ, negTableQ);
+        }
+
+        return R;
+    }
+
+    /*
+     * Interleaved Window NAF multiplication, "Guide to Elliptic Curve
+     * Cryptography", Hankerson, Menezes and Vanstone, Algorithm 3.51. Each
+     * point gets its own Window NAF and table of odd multiples, which is
+     * saved with the point as for a single multiplication, and a single
+     * chain of doublings is shared between them.
+     */
+    private static ECPoint implWNafInterleaved(ECPoint P, BigInteger k,
+        ECPoint Q, BigInteger l)
+    {
+        byte widthP = WNafMultiplier.getWindowWidth(k.bitLength());
+        byte widthQ = WNafMultiplier.getWindowWidth(l.bitLength());
+
+        ECPoint[] preCompP = WNafMultiplier.getPreComp(P, P.getPreCompInfo(), 1 << (widthP - 2));
+        ECPoint[] preCompQ = WNafMultiplier.getPreComp(Q, Q.getPreCompInfo(), 1 << (widthQ - 2));
+
+        byte[] wnafP = WNafMultiplier.windowNaf(widthP, k);
+        byte[] wnafQ = WNafMultiplier.windowNaf(widthQ, l);
+
+        int m = Math.max(wnafP.length, wnafQ.length);
+
+        if (P instanceof ECPoint.Fp)
+        {
+            FpJacobianPoint[] tableP = FpJacobianPoint.fromAffine(preCompP);
+            FpJacobianPoint[] negTableP = negate(tableP);
+            FpJacobianPoint[] tableQ = FpJacobianPoint.fromAffine(preCompQ);
+            FpJacobianPoint[] negTableQ = negate(tableQ);
+
+            FpJacobianPoint R = FpJacobianPoint.infinity((ECCurve.Fp)P.getCurve());
+            for (int i = m - 1; i >= 0; --i)
+            {
+                R = R.twice();
+                R = addDigit(R, wnafP, i, tableP, negTableP);
+                R = addDigit(R, wnafQ, i, tableQ, negTableQ);
+            }
+
+            return R.toAffine(false);
+        }
+
+        ECPoint R = P.getCurve().getInfinity();
+        for (int i = m - 1; i >= 0; --i)
+        {
+            R = R.twice();
+            R = addDigit(R, wnafP, i, preCompP);
+            R = addDigit(R, wnafQ, i, preCompQ);
+        }
+
+        return R;
+    }
+
+    private static ECPoint addDigit(ECPoint R, byte[] wnaf, int i, ECPoint[] preComp)
+    {
+        if (i < wnaf.length)
+        {
+            int digit = wnaf[i];
+            if (digit > 0)
+            {
+                return R.add(preComp[(digit - 1) / 2]);
+            }
+            if (digit < 0)
+            {
+                return R.subtract(preComp[(-digit - 1) / 2]);
+            }
+        }
+
+        return R;
+    }
+
+    private static FpJacobianPoint addDigit(FpJacobianPoint R, byte[] wnaf, int i,
+        FpJacobianPoint[] table, FpJacobianPoint[] negTable)
+    {
+        if (i < wnaf.length)
+        {
+            int digit = wnaf[i];
+            if (digit > 0)
+            {
+                return R.add(table[(digit - 1) / 2]);
+            }
+            if (digit < 0)
+            {
+                return R.add(negTable[(-digit - 1) / 2]);
+            }
+        }
+
+        return R;
+    }
+
+    private static FpJacobianPoint[] negate(FpJacobianPoint[] ps)
+    {
+        FpJacobianPoint[] rs = new FpJacobianPoint[ps.length];
+
+        for (int i = 0; i != ps.length; i++)
+        {
+            rs[i] = ps[i].negate();
+        }
+
+        return rs;
+    }
 }
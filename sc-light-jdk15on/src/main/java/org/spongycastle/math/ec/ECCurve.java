@@ -38,12 +38,21 @@ public abstract class ECCurve
         BigInteger q;
         ECPoint.Fp infinity;
 
+        /*
+         * Point doubling in Jacobian co-ordinates can be simplified when
+         * a = 0 or a = -3 (mod q), which covers most of the standard curves.
+         */
+        boolean aIsZero;
+        boolean aIsMinusThree;
+
         public Fp(BigInteger q, BigInteger a, BigInteger b)
         {
             this.q = q;
             this.a = fromBigInteger(a);
             this.b = fromBigInteger(b);
             this.infinity = new ECPoint.Fp(this, null, null);
+            this.aIsZero = a.mod(q).signum() == 0;
+            this.aIsMinusThree = a.add(BigInteger.valueOf(3)).mod(q).signum() == 0;
         }
 
         public BigInteger getQ()
@@ -94,7 +103,7 @@ public abstract class ECCurve
 
                 System.arraycopy(encoded, 1, i, 0, i.length);
 
-                ECFieldElement x = new ECFieldElement.Fp(this.q, new BigInteger(1, i));
+                ECFieldElement x = fromBigInteger(new BigInteger(1, i));
                 ECFieldElement alpha = x.multiply(x.square().add(a)).add(b);
                 ECFieldElement beta = alpha.sqrt();
 
@@ -116,7 +125,7 @@ public abstract class ECCurve
                 else
                 {
                     p = new ECPoint.Fp(this, x,
-                        new ECFieldElement.Fp(this.q, q.subtract(beta.toBigInteger())), true);
+                        fromBigInteger(q.subtract(beta.toBigInteger())), true);
                 }
                 break;
                 // uncompressed
@@ -131,8 +140,8 @@ public abstract class ECCurve
                 System.arraycopy(encoded, xEnc.length + 1, yEnc, 0, yEnc.length);
 
                 p = new ECPoint.Fp(this,
-                        new ECFieldElement.Fp(this.q, new BigInteger(1, xEnc)),
-                        new ECFieldElement.Fp(this.q, new BigInteger(1, yEnc)));
+                        fromBigInteger(new BigInteger(1, xEnc)),
+                        fromBigInteger(new BigInteger(1, yEnc)));
                 break;
             default:
                 throw new RuntimeException("Invalid point encoding 0x" + Integer.toString(encoded[0], 16));
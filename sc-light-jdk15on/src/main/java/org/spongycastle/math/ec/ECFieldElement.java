@@ -19,6 +19,14 @@ public abstract class ECFieldElement
     public abstract ECFieldElement invert();
     public abstract ECFieldElement sqrt();
 
+    /**
+     * Return true if this is the zero element of the field.
+     */
+    public boolean isZero()
+    {
+        return toBigInteger().signum() == 0;
+    }
+
     public String toString()
     {
         return this.toBigInteger().toString(2);
@@ -42,6 +50,18 @@ public abstract class ECFieldElement
             this.q = q;
         }
 
+        /**
+         * Constructor for subclasses using their own representation of the
+         * field element, which must override every operation that makes use
+         * of the <code>BigInteger</code> value.
+         *
+         * @param q the field prime.
+         */
+        protected Fp(BigInteger q)
+        {
+            this.q = q;
+        }
+
         public BigInteger toBigInteger()
         {
             return x;
@@ -294,12 +314,12 @@ public abstract class ECFieldElement
             }
             
             ECFieldElement.Fp o = (ECFieldElement.Fp)other;
-            return q.equals(o.q) && x.equals(o.x);
+            return q.equals(o.q) && toBigInteger().equals(o.toBigInteger());
         }
 
         public int hashCode()
         {
-            return q.hashCode() ^ x.hashCode();
+            return q.hashCode() ^ toBigInteger().hashCode();
         }
     }
 
@@ -15,9 +15,22 @@ public abstract class ECPoint
 
     protected boolean withCompression;
 
-    protected ECMultiplier multiplier = null;
+    protected volatile ECMultiplier multiplier = null;
 
-    protected PreCompInfo preCompInfo = null;
+    /**
+     * Precomputation saved by the multiplier for this point. A
+     * <code>PreCompInfo</code> is never modified once published here, a
+     * multiplier needing more precomputation replaces it with a new one, so
+     * the point can be shared between threads without further locking.
+     */
+    protected volatile PreCompInfo preCompInfo = null;
+
+    /**
+     * Comb table saved for this point when it is used as a fixed point. It is
+     * kept apart from <code>preCompInfo</code>, which the window multipliers
+     * replace whenever they need a larger table of their own.
+     */
+    protected volatile PreCompInfo fixedPointPreCompInfo = null;
 
     private static X9IntegerConverter converter = new X9IntegerConverter();
 
@@ -96,18 +109,37 @@ public abstract class ECPoint
 //        this.multiplier = multiplier;
 //    }
 
+    /**
+     * Returns the <code>PreCompInfo</code> last saved for this
+     * <code>ECPoint</code>, or <code>null</code> if there is none.
+     */
+    PreCompInfo getPreCompInfo()
+    {
+        return preCompInfo;
+    }
+
     /**
      * Sets the <code>PreCompInfo</code>. Used by <code>ECMultiplier</code>s
      * to save the precomputation for this <code>ECPoint</code> to store the
      * precomputation result for use by subsequent multiplication.
      * @param preCompInfo The values precomputed by the
-     * <code>ECMultiplier</code>.
+     * <code>ECMultiplier</code>, which must not be modified afterwards.
      */
     void setPreCompInfo(PreCompInfo preCompInfo)
     {
         this.preCompInfo = preCompInfo;
     }
 
+    PreCompInfo getFixedPointPreCompInfo()
+    {
+        return fixedPointPreCompInfo;
+    }
+
+    void setFixedPointPreCompInfo(PreCompInfo fixedPointPreCompInfo)
+    {
+        this.fixedPointPreCompInfo = fixedPointPreCompInfo;
+    }
+
     public abstract byte[] getEncoded();
 
     public abstract ECPoint add(ECPoint b);
@@ -148,8 +180,14 @@ public abstract class ECPoint
             return this.curve.getInfinity();
         }
 
-        assertECMultiplier();
-        return this.multiplier.multiply(this, k, preCompInfo);
+        ECMultiplier m = this.multiplier;
+        if (m == null)
+        {
+            assertECMultiplier();
+            m = this.multiplier;
+        }
+
+        return m.multiply(this, k, preCompInfo);
     }
 
     /**
@@ -0,0 +1,274 @@
+package org.spongycastle.math.ec;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Multiplication of a fixed point, typically the base point of a set of
+ * domain parameters, using the comb method ("Guide to Elliptic Curve
+ * Cryptography", Hankerson, Menezes and Vanstone, Algorithm 3.44).
+ * <p>
+ * A scalar of up to <code>width * d</code> bits is treated as
+ * <code>width</code> rows of <code>d</code> bits each, and the table holds
+ * every combination of the points <code>2<sup>i * d</sup>P</code>, so a
+ * multiplication only costs <code>d</code> doublings and at most
+ * <code>d</code> additions. The table is built once in the constructor and
+ * never changed afterwards, so an instance may be shared between threads.
+ */
+public class FixedPointCombMultiplier
+{
+    /*
+     * Recently used multipliers, one per slot picked by the hash of the point,
+     * so points decoded again from the same domain parameters find the table
+     * already built. A new point replaces whatever shared its slot.
+     */
+    private static final int CACHE_SIZE = 16;
+
+    private static final AtomicReferenceArray cache = new AtomicReferenceArray(CACHE_SIZE);
+
+    private final ECPoint   p;
+    private final int       bits;
+    private final int       width;
+
+    final int       d;
+    final ECPoint[] table;
+
+    /**
+     * The table again as Jacobian points for curves over Fp, so they can be
+     * used directly in mixed additions.
+     */
+    final FpJacobianPoint[] jTable;
+
+    /**
+     * Build the comb table for <code>p</code>.
+     *
+     * @param p the point to be multiplied.
+     * @param bits the maximum bit length of the scalars to be used, usually
+     * the bit length of the order of <code>p</code>. Larger scalars are
+     * still handled, but fall back to <code>p.multiply()</code>.
+     */
+    public FixedPointCombMultiplier(ECPoint p, int bits)
+    {
+        if (p.isInfinity())
+        {
+            throw new IllegalArgumentException("point at infinity cannot be used as fixed point");
+        }
+        if (bits < 1)
+        {
+            throw new IllegalArgumentException("bits must be positive");
+        }
+
+        this.p = p;
+        this.bits = bits;
+        this.width = (bits > 250) ? 6 : 5;
+        this.d = (bits + width - 1) / width;
+
+        if (p instanceof ECPoint.Fp)
+        {
+            this.table = buildTableFp(p);
+            this.jTable = FpJacobianPoint.fromAffine(table);
+        }
+        else
+        {
+            this.table = buildTable(p);
+            this.jTable = null;
+        }
+    }
+
+    /**
+     * Return a multiplier for <code>p</code>, reusing the table saved on
+     * <code>p</code>, or on an equal point on an equal curve, if there is one.
+     *
+     * @param p the point to be multiplied.
+     * @param bits the maximum bit length of the scalars to be used.
+     * @return a thread safe multiplier for <code>p</code>.
+     */
+    public static FixedPointCombMultiplier getInstance(ECPoint p, int bits)
+    {
+        PreCompInfo info = p.getFixedPointPreCompInfo();
+
+        if (info instanceof FixedPointPreCompInfo)
+        {
+            FixedPointCombMultiplier m = ((FixedPointPreCompInfo)info).getMultiplier();
+            if (m.bits == bits)
+            {
+                return m;
+            }
+        }
+
+        int hash = p.hashCode();
+        int idx = (hash ^ (hash >>> 8) ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+
+        FixedPointCombMultiplier m = (FixedPointCombMultiplier)cache.get(idx);
+        if (m == null || !m.isFor(p, bits))
+        {
+            m = new FixedPointCombMultiplier(p, bits);
+            cache.set(idx, m);
+        }
+
+        p.setFixedPointPreCompInfo(new FixedPointPreCompInfo(m));
+
+        return m;
+    }
+
+    private boolean isFor(ECPoint q, int qBits)
+    {
+        return bits == qBits && p.equals(q) && p.getCurve().equals(q.getCurve());
+    }
+
+    /**
+     * Return the point this multiplier was built for.
+     */
+    public ECPoint getPoint()
+    {
+        return p;
+    }
+
+    /**
+     * Return <code>k</code> times the fixed point.
+     *
+     * @param k the scalar to multiply by.
+     * @return the product, in affine form.
+     */
+    public ECPoint multiply(BigInteger k)
+    {
+        if (!isCombScalar(k))
+        {
+            return p.multiply(k);
+        }
+
+        if (p instanceof ECPoint.Fp)
+        {
+            return multiplyFp(k);
+        }
+
+        ECPoint q = p.getCurve().getInfinity();
+
+        for (int i = d - 1; i >= 0; i--)
+        {
+            q = q.twice();
+
+            int index = column(k, i);
+            if (index != 0)
+            {
+                q = q.add(table[index]);
+            }
+        }
+
+        return q;
+    }
+
+    private ECPoint multiplyFp(BigInteger k)
+    {
+        FpJacobianPoint q = FpJacobianPoint.infinity((ECCurve.Fp)p.getCurve());
+
+        for (int i = d - 1; i >= 0; i--)
+        {
+            q = q.twice();
+
+            int index = column(k, i);
+            if (index != 0)
+            {
+                q = q.add(jTable[index]);
+            }
+        }
+
+        return q.toAffine(false);
+    }
+
+    /**
+     * Return true if <code>k</code> is non-negative and short enough to be
+     * split over the rows of the comb table.
+     */
+    boolean isCombScalar(BigInteger k)
+    {
+        return k.signum() >= 0 && k.bitLength() <= width * d;
+    }
+
+    /**
+     * Gather bit <code>i</code> of each row of <code>k</code> into a table index.
+     */
+    int column(BigInteger k, int i)
+    {
+        int index = 0;
+
+        for (int j = width - 1; j >= 0; j--)
+        {
+            index <<= 1;
+            if (k.testBit(j * d + i))
+            {
+                index |= 1;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * table[j] = sum of 2^(i * d) * p for each bit i set in j, table[0] is unused.
+     */
+    private ECPoint[] buildTable(ECPoint p)
+    {
+        ECPoint[] base = new ECPoint[width];
+
+        base[0] = p;
+        for (int i = 1; i < width; i++)
+        {
+            ECPoint b = base[i - 1];
+            for (int j = 0; j < d; j++)
+            {
+                b = b.twice();
+            }
+            base[i] = b;
+        }
+
+        ECPoint[] t = new ECPoint[1 << width];
+
+        t[0] = p.getCurve().getInfinity();
+        for (int i = 0; i < width; i++)
+        {
+            int top = 1 << i;
+            for (int j = 0; j < top; j++)
+            {
+                t[top + j] = (j == 0) ? base[i] : t[j].add(base[i]);
+            }
+        }
+
+        return t;
+    }
+
+    /**
+     * As above, but working in Jacobian co-ordinates, so that there is one
+     * field inversion for each of the two passes rather than one per point.
+     */
+    private ECPoint[] buildTableFp(ECPoint p)
+    {
+        FpJacobianPoint[] jBase = new FpJacobianPoint[width];
+
+        jBase[0] = FpJacobianPoint.fromAffine(p);
+        for (int i = 1; i < width; i++)
+        {
+            FpJacobianPoint b = jBase[i - 1];
+            for (int j = 0; j < d; j++)
+            {
+                b = b.twice();
+            }
+            jBase[i] = b;
+        }
+
+        FpJacobianPoint[] base = FpJacobianPoint.fromAffine(FpJacobianPoint.normalizeAll(jBase, false));
+        FpJacobianPoint[] jt = new FpJacobianPoint[1 << width];
+
+        jt[0] = FpJacobianPoint.infinity((ECCurve.Fp)p.getCurve());
+        for (int i = 0; i < width; i++)
+        {
+            int top = 1 << i;
+            for (int j = 0; j < top; j++)
+            {
+                jt[top + j] = (j == 0) ? base[i] : jt[j].add(base[i]);
+            }
+        }
+
+        return FpJacobianPoint.normalizeAll(jt, false);
+    }
+}
@@ -0,0 +1,20 @@
+package org.spongycastle.math.ec;
+
+/**
+ * Class holding the comb table of a point used as a fixed point, see
+ * <code>FixedPointCombMultiplier</code>.
+ */
+class FixedPointPreCompInfo implements PreCompInfo
+{
+    private final FixedPointCombMultiplier multiplier;
+
+    FixedPointPreCompInfo(FixedPointCombMultiplier multiplier)
+    {
+        this.multiplier = multiplier;
+    }
+
+    FixedPointCombMultiplier getMultiplier()
+    {
+        return multiplier;
+    }
+}
@@ -0,0 +1,319 @@
+package org.spongycastle.math.ec;
+
+/**
+ * A point on an elliptic curve over Fp held in Jacobian projective
+ * co-ordinates, where <code>(X, Y, Z)</code> represents the affine point
+ * <code>(X/Z<sup>2</sup>, Y/Z<sup>3</sup>)</code>. Neither addition nor
+ * doubling require a field inversion in this form, so the multipliers carry
+ * out an entire scalar multiplication with these and only convert back to an
+ * affine <code>ECPoint.Fp</code> at the end.
+ * <p>
+ * Formulae are from "Guide to Elliptic Curve Cryptography", Hankerson,
+ * Menezes and Vanstone, section 3.2.2.
+ */
+class FpJacobianPoint
+{
+    private ECCurve.Fp     curve;
+    private ECFieldElement x;
+    private ECFieldElement y;
+    private ECFieldElement z;
+
+    /**
+     * Set when Z is known to be one, i.e. the point is actually affine. Mixed
+     * additions with such points are considerably cheaper.
+     */
+    private boolean        zIsOne;
+
+    private FpJacobianPoint(ECCurve.Fp curve, ECFieldElement x, ECFieldElement y, ECFieldElement z, boolean zIsOne)
+    {
+        this.curve = curve;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.zIsOne = zIsOne;
+    }
+
+    /**
+     * Return the point at infinity on the given curve.
+     */
+    static FpJacobianPoint infinity(ECCurve.Fp curve)
+    {
+        return new FpJacobianPoint(curve, null, null, null, false);
+    }
+
+    /**
+     * Return the Jacobian form of an affine point, i.e. (x, y, 1).
+     */
+    static FpJacobianPoint fromAffine(ECPoint p)
+    {
+        ECCurve.Fp curve = (ECCurve.Fp)p.getCurve();
+
+        if (p.isInfinity())
+        {
+            return infinity(curve);
+        }
+
+        return new FpJacobianPoint(curve, p.x, p.y, null, true);
+    }
+
+    /**
+     * Return the Jacobian form of each of the affine points in <code>ps</code>.
+     */
+    static FpJacobianPoint[] fromAffine(ECPoint[] ps)
+    {
+        FpJacobianPoint[] rs = new FpJacobianPoint[ps.length];
+
+        for (int i = 0; i != ps.length; i++)
+        {
+            rs[i] = fromAffine(ps[i]);
+        }
+
+        return rs;
+    }
+
+    ECCurve.Fp getCurve()
+    {
+        return curve;
+    }
+
+    boolean isInfinity()
+    {
+        return x == null;
+    }
+
+    FpJacobianPoint negate()
+    {
+        if (this.isInfinity())
+        {
+            return this;
+        }
+
+        return new FpJacobianPoint(curve, x, y.negate(), z, zIsOne);
+    }
+
+    FpJacobianPoint twice()
+    {
+        if (this.isInfinity())
+        {
+            return this;
+        }
+
+        if (y.isZero())
+        {
+            // (x, y) == (x, -y), so 2(x, y) == infinity
+            return infinity(curve);
+        }
+
+        ECFieldElement xx = x.square();
+        ECFieldElement m;
+
+        // M = 3X^2 + aZ^4
+        if (zIsOne)
+        {
+            m = three(xx).add(curve.a);
+        }
+        else if (curve.aIsZero)
+        {
+            m = three(xx);
+        }
+        else if (curve.aIsMinusThree)
+        {
+            ECFieldElement zz = z.square();
+            m = three(x.add(zz).multiply(x.subtract(zz)));
+        }
+        else
+        {
+            ECFieldElement zz = z.square();
+            m = three(xx).add(curve.a.multiply(zz.square()));
+        }
+
+        ECFieldElement yy = y.square();
+        ECFieldElement s = four(x.multiply(yy));                  // S = 4XY^2
+
+        ECFieldElement x3 = m.square().subtract(two(s));
+        ECFieldElement y3 = m.multiply(s.subtract(x3)).subtract(eight(yy.square()));
+        ECFieldElement z3 = zIsOne ? two(y) : two(y.multiply(z));
+
+        return new FpJacobianPoint(curve, x3, y3, z3, false);
+    }
+
+    FpJacobianPoint add(FpJacobianPoint b)
+    {
+        if (this.isInfinity())
+        {
+            return b;
+        }
+
+        if (b.isInfinity())
+        {
+            return this;
+        }
+
+        ECFieldElement u1, s1, u2, s2;
+
+        if (b.zIsOne)
+        {
+            u1 = this.x;
+            s1 = this.y;
+        }
+        else
+        {
+            ECFieldElement z2z2 = b.z.square();
+
+            u1 = this.x.multiply(z2z2);
+            s1 = this.y.multiply(z2z2.multiply(b.z));
+        }
+
+        if (this.zIsOne)
+        {
+            u2 = b.x;
+            s2 = b.y;
+        }
+        else
+        {
+            ECFieldElement z1z1 = this.z.square();
+
+            u2 = b.x.multiply(z1z1);
+            s2 = b.y.multiply(z1z1.multiply(this.z));
+        }
+
+        ECFieldElement h = u2.subtract(u1);
+        ECFieldElement r = s2.subtract(s1);
+
+        if (h.isZero())
+        {
+            if (r.isZero())
+            {
+                // this == b, i.e. this must be doubled
+                return this.twice();
+            }
+
+            // this == -b, i.e. the result is the point at infinity
+            return infinity(curve);
+        }
+
+        ECFieldElement hh = h.square();
+        ECFieldElement hhh = hh.multiply(h);
+        ECFieldElement v = u1.multiply(hh);
+
+        ECFieldElement x3 = r.square().subtract(hhh).subtract(two(v));
+        ECFieldElement y3 = r.multiply(v.subtract(x3)).subtract(s1.multiply(hhh));
+
+        ECFieldElement z3 = h;
+        if (!this.zIsOne)
+        {
+            z3 = z3.multiply(this.z);
+        }
+        if (!b.zIsOne)
+        {
+            z3 = z3.multiply(b.z);
+        }
+
+        return new FpJacobianPoint(curve, x3, y3, z3, false);
+    }
+
+    FpJacobianPoint subtract(FpJacobianPoint b)
+    {
+        return add(b.negate());
+    }
+
+    /**
+     * Convert back to affine co-ordinates - this costs one field inversion.
+     *
+     * @param withCompression the point compression setting for the result.
+     * @return the equivalent affine point.
+     */
+    ECPoint.Fp toAffine(boolean withCompression)
+    {
+        if (this.isInfinity())
+        {
+            return (ECPoint.Fp)curve.getInfinity();
+        }
+
+        if (zIsOne)
+        {
+            return new ECPoint.Fp(curve, x, y, withCompression);
+        }
+
+        return toAffine(z.invert(), withCompression);
+    }
+
+    private ECPoint.Fp toAffine(ECFieldElement zInv, boolean withCompression)
+    {
+        ECFieldElement zInv2 = zInv.square();
+
+        return new ECPoint.Fp(curve, x.multiply(zInv2), y.multiply(zInv2.multiply(zInv)), withCompression);
+    }
+
+    /**
+     * Convert a set of points back to affine co-ordinates using Montgomery's
+     * trick, so that only a single field inversion is needed for the lot.
+     *
+     * @param ps the points to convert, all on the same curve.
+     * @param withCompression the point compression setting for the results.
+     * @return the equivalent affine points, in the same order.
+     */
+    static ECPoint[] normalizeAll(FpJacobianPoint[] ps, boolean withCompression)
+    {
+        ECPoint[] rs = new ECPoint[ps.length];
+
+        // c[j] holds the product of the Z values of the first j + 1 points needing inversion
+        ECFieldElement[] c = new ECFieldElement[ps.length];
+        int[] idx = new int[ps.length];
+        int count = 0;
+
+        for (int i = 0; i != ps.length; i++)
+        {
+            FpJacobianPoint p = ps[i];
+
+            if (p.isInfinity() || p.zIsOne)
+            {
+                rs[i] = p.toAffine(withCompression);
+            }
+            else
+            {
+                c[count] = (count == 0) ? p.z : c[count - 1].multiply(p.z);
+                idx[count++] = i;
+            }
+        }
+
+        if (count == 0)
+        {
+            return rs;
+        }
+
+        ECFieldElement inv = c[count - 1].invert();
+
+        for (int j = count - 1; j > 0; j--)
+        {
+            FpJacobianPoint p = ps[idx[j]];
+
+            rs[idx[j]] = p.toAffine(inv.multiply(c[j - 1]), withCompression);
+            inv = inv.multiply(p.z);
+        }
+
+        rs[idx[0]] = ps[idx[0]].toAffine(inv, withCompression);
+
+        return rs;
+    }
+
+    private static ECFieldElement two(ECFieldElement e)
+    {
+        return e.add(e);
+    }
+
+    private static ECFieldElement three(ECFieldElement e)
+    {
+        return two(e).add(e);
+    }
+
+    private static ECFieldElement four(ECFieldElement e)
+    {
+        return two(two(e));
+    }
+
+    private static ECFieldElement eight(ECFieldElement e)
+    {
+        return two(four(e));
+    }
+}
@@ -18,6 +18,11 @@ class FpNafMultiplier implements ECMultiplier
         BigInteger e = k;
         BigInteger h = e.multiply(BigInteger.valueOf(3));
 
+        if (p instanceof ECPoint.Fp)
+        {
+            return multiplyFp(p, e, h);
+        }
+
         ECPoint neg = p.negate();
         ECPoint R = p;
 
@@ -36,4 +41,30 @@ class FpNafMultiplier implements ECMultiplier
 
         return R;
     }
+
+    /**
+     * As above, but carried out in Jacobian co-ordinates so that the only
+     * field inversion is the one converting the result back to affine.
+     */
+    private ECPoint multiplyFp(ECPoint p, BigInteger e, BigInteger h)
+    {
+        FpJacobianPoint pos = FpJacobianPoint.fromAffine(p);
+        FpJacobianPoint neg = pos.negate();
+        FpJacobianPoint R = pos;
+
+        for (int i = h.bitLength() - 2; i > 0; --i)
+        {
+            R = R.twice();
+
+            boolean hBit = h.testBit(i);
+            boolean eBit = e.testBit(i);
+
+            if (hBit != eBit)
+            {
+                R = R.add(hBit ? pos : neg);
+            }
+        }
+
+        return R.toAffine(false);
+    }
 }
@@ -20,7 +20,7 @@ class WNafMultiplier implements ECMultiplier
      * </code>, where the <code>k<sub>i</sub></code> denote the elements of the
      * returned <code>byte[]</code>.
      */
-    public byte[] windowNaf(byte width, BigInteger k)
+    public static byte[] windowNaf(byte width, BigInteger k)
     {
         // The window NAF is at most 1 element longer than the binary
         // representation of the integer k. byte can be used instead of short or
@@ -80,6 +80,41 @@ class WNafMultiplier implements ECMultiplier
         return wnafShort;
     }
 
+    /**
+     * Determine the optimal width of the Window NAF for a multiplier of the
+     * given bit length, based on literature values.
+     * @param m The bit length of the multiplier.
+     * @return The width to use.
+     */
+    static byte getWindowWidth(int m)
+    {
+        if (m < 13)
+        {
+            return 2;
+        }
+        if (m < 41)
+        {
+            return 3;
+        }
+        if (m < 121)
+        {
+            return 4;
+        }
+        if (m < 337)
+        {
+            return 5;
+        }
+        if (m < 897)
+        {
+            return 6;
+        }
+        if (m < 2305)
+        {
+            return 7;
+        }
+        return 8;
+    }
+
     /**
      * Multiplies <code>this</code> by an integer <code>k</code> using the
      * Window NAF method.
@@ -89,112 +124,147 @@ class WNafMultiplier implements ECMultiplier
      */
     public ECPoint multiply(ECPoint p, BigInteger k, PreCompInfo preCompInfo)
     {
-        WNafPreCompInfo wnafPreCompInfo;
+        // width of the Window NAF
+        byte width = getWindowWidth(k.bitLength());
 
-        if ((preCompInfo != null) && (preCompInfo instanceof WNafPreCompInfo))
-        {
-            wnafPreCompInfo = (WNafPreCompInfo)preCompInfo;
-        }
-        else
+        // The odd multiples 1, 3, 5, ..., 2^(width-1)-1 times p
+        ECPoint[] preComp = getPreComp(p, preCompInfo, 1 << (width - 2));
+
+        // Compute the Window NAF of the desired width
+        byte[] wnaf = windowNaf(width, k);
+
+        if (p instanceof ECPoint.Fp)
         {
-            // Ignore empty PreCompInfo or PreCompInfo of incorrect type
-            wnafPreCompInfo = new WNafPreCompInfo();
+            return multiplyFp(p, wnaf, preComp);
         }
 
-        // floor(log2(k))
-        int m = k.bitLength();
+        int l = wnaf.length;
 
-        // width of the Window NAF
-        byte width;
+        // Apply the Window NAF to p using the precomputed ECPoint values.
+        ECPoint q = p.getCurve().getInfinity();
+        for (int i = l - 1; i >= 0; i--)
+        {
+            q = q.twice();
 
-        // Required length of precomputation array
-        int reqPreCompLen;
+            if (wnaf[i] != 0)
+            {
+                if (wnaf[i] > 0)
+                {
+                    q = q.add(preComp[(wnaf[i] - 1)/2]);
+                }
+                else
+                {
+                    // wnaf[i] < 0
+                    q = q.subtract(preComp[(-wnaf[i] - 1)/2]);
+                }
+            }
+        }
 
-        // Determine optimal width and corresponding length of precomputation
-        // array based on literature values
-        if (m < 13)
+        return q;
+    }
+
+    /**
+     * Window NAF multiplication for points over Fp. The main loop is carried
+     * out in Jacobian co-ordinates, so the only field inversion is the one
+     * for the result.
+     */
+    private ECPoint multiplyFp(ECPoint p, byte[] wnaf, ECPoint[] preComp)
+    {
+        FpJacobianPoint[] table = FpJacobianPoint.fromAffine(preComp);
+        FpJacobianPoint[] negTable = new FpJacobianPoint[table.length];
+        for (int i = 0; i < table.length; i++)
         {
-            width = 2;
-            reqPreCompLen = 1;
+            negTable[i] = table[i].negate();
         }
-        else
+
+        FpJacobianPoint q = FpJacobianPoint.infinity((ECCurve.Fp)p.getCurve());
+        for (int i = wnaf.length - 1; i >= 0; i--)
         {
-            if (m < 41)
+            q = q.twice();
+
+            if (wnaf[i] > 0)
             {
-                width = 3;
-                reqPreCompLen = 2;
+                q = q.add(table[(wnaf[i] - 1)/2]);
             }
-            else
+            else if (wnaf[i] < 0)
             {
-                if (m < 121)
-                {
-                    width = 4;
-                    reqPreCompLen = 4;
-                }
-                else
-                {
-                    if (m < 337)
-                    {
-                        width = 5;
-                        reqPreCompLen = 8;
-                    }
-                    else
-                    {
-                        if (m < 897)
-                        {
-                            width = 6;
-                            reqPreCompLen = 16;
-                        }
-                        else
-                        {
-                            if (m < 2305)
-                            {
-                                width = 7;
-                                reqPreCompLen = 32;
-                            }
-                            else
-                            {
-                                width = 8;
-                                reqPreCompLen = 127;
-                            }
-                        }
-                    }
-                }
+                q = q.add(negTable[(-wnaf[i] - 1)/2]);
             }
         }
 
-        // The length of the precomputation array
-        int preCompLen = 1;
+        return q.toAffine(false);
+    }
 
-        ECPoint[] preComp = wnafPreCompInfo.getPreComp();
-        ECPoint twiceP = wnafPreCompInfo.getTwiceP();
+    /**
+     * Return the odd multiples p, 3p, ..., (2 * reqPreCompLen - 1)p in
+     * affine form. Any existing precomputation for <code>p</code> is reused,
+     * and if it has to be extended the result is saved in <code>p</code> for
+     * the next multiplication.
+     * @param p The point being multiplied.
+     * @param preCompInfo The precomputation currently saved for <code>p</code>.
+     * @param reqPreCompLen The number of odd multiples required.
+     * @return An array of at least <code>reqPreCompLen</code> points.
+     */
+    static ECPoint[] getPreComp(ECPoint p, PreCompInfo preCompInfo, int reqPreCompLen)
+    {
+        ECPoint[] preComp = null;
+        ECPoint twiceP = null;
+
+        // Ignore empty PreCompInfo or PreCompInfo of incorrect type
+        if (preCompInfo instanceof WNafPreCompInfo)
+        {
+            preComp = ((WNafPreCompInfo)preCompInfo).getPreComp();
+            twiceP = ((WNafPreCompInfo)preCompInfo).getTwiceP();
+        }
 
-        // Check if the precomputed ECPoints already exist
         if (preComp == null)
         {
-            // Precomputation must be performed from scratch, create an empty
-            // precomputation array of desired length
             preComp = new ECPoint[]{ p };
         }
-        else
+
+        int preCompLen = preComp.length;
+
+        if (preCompLen >= reqPreCompLen)
         {
-            // Take the already precomputed ECPoints to start with
-            preCompLen = preComp.length;
+            return preComp;
         }
 
-        if (twiceP == null)
+        // Precomputation array must be made bigger, the existing one may be
+        // in use by other threads so copy it into a new array.
+        ECPoint[] oldPreComp = preComp;
+        preComp = new ECPoint[reqPreCompLen];
+        System.arraycopy(oldPreComp, 0, preComp, 0, preCompLen);
+
+        if (p instanceof ECPoint.Fp)
         {
-            // Compute twice(p)
-            twiceP = p.twice();
-        }
+            // Work in Jacobian co-ordinates, so there is only one field
+            // inversion for all the new points
+            FpJacobianPoint twicePJ = (twiceP == null)
+                ? FpJacobianPoint.fromAffine(p).twice()
+                : FpJacobianPoint.fromAffine(twiceP);
+
+            // The new odd multiples of p, followed by twice(p)
+            FpJacobianPoint[] extra = new FpJacobianPoint[reqPreCompLen - preCompLen + 1];
+            FpJacobianPoint last = FpJacobianPoint.fromAffine(oldPreComp[preCompLen - 1]);
 
-        if (preCompLen < reqPreCompLen)
+            for (int i = 0; i < extra.length - 1; i++)
+            {
+                last = twicePJ.add(last);
+                extra[i] = last;
+            }
+            extra[extra.length - 1] = twicePJ;
+
+            ECPoint[] normalized = FpJacobianPoint.normalizeAll(extra, false);
+
+            System.arraycopy(normalized, 0, preComp, preCompLen, reqPreCompLen - preCompLen);
+            twiceP = normalized[normalized.length - 1];
+        }
+        else
         {
-            // Precomputation array must be made bigger, copy existing preComp
-            // array into the larger new preComp array
-            ECPoint[] oldPreComp = preComp;
-            preComp = new ECPoint[reqPreCompLen];
-            System.arraycopy(oldPreComp, 0, preComp, 0, preCompLen);
+            if (twiceP == null)
+            {
+                twiceP = p.twice();
+            }
 
             for (int i = preCompLen; i < reqPreCompLen; i++)
             {
@@ -202,39 +272,13 @@ class WNafMultiplier implements ECMultiplier
                 // The values 1, 3, 5, ..., 2^(width-1)-1 times p are
                 // computed
                 preComp[i] = twiceP.add(preComp[i - 1]);
-            }            
-        }
-
-        // Compute the Window NAF of the desired width
-        byte[] wnaf = windowNaf(width, k);
-        int l = wnaf.length;
-
-        // Apply the Window NAF to p using the precomputed ECPoint values.
-        ECPoint q = p.getCurve().getInfinity();
-        for (int i = l - 1; i >= 0; i--)
-        {
-            q = q.twice();
-
-            if (wnaf[i] != 0)
-            {
-                if (wnaf[i] > 0)
-                {
-                    q = q.add(preComp[(wnaf[i] - 1)/2]);
-                }
-                else
-                {
-                    // wnaf[i] < 0
-                    q = q.subtract(preComp[(-wnaf[i] - 1)/2]);
-                }
             }
         }
 
         // Set PreCompInfo in ECPoint, such that it is available for next
         // multiplication.
-        wnafPreCompInfo.setPreComp(preComp);
-        wnafPreCompInfo.setTwiceP(twiceP);
-        p.setPreCompInfo(wnafPreCompInfo);
-        return q;
-    }
+        p.setPreCompInfo(new WNafPreCompInfo(preComp, twiceP));
 
+        return preComp;
+    }
 }
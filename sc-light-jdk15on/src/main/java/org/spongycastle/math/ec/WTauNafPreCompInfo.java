@@ -12,7 +12,7 @@ class WTauNafPreCompInfo implements PreCompInfo
      * {@link org.spongycastle.math.ec.multiplier.WTauNafMultiplier.multiply()
      * WTauNafMultiplier.multiply()}</code>.
      */
-    private ECPoint.F2m[] preComp = null;
+    private final ECPoint.F2m[] preComp;
 
     /**
      * Constructor for <code>WTauNafPreCompInfo</code>
@@ -0,0 +1,120 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+/**
+ * Base class for arithmetic modulo a fixed prime, with field elements held as
+ * fixed length arrays of 32 bit words. Subclasses provide the reduction of a
+ * double length product, which for the primes we deal with can be done with
+ * a handful of word additions rather than a division.
+ */
+abstract class FixedPrimeField
+{
+    protected final BigInteger q;
+    protected final int[]      p;
+    protected final int        len;
+
+    protected FixedPrimeField(BigInteger q)
+    {
+        this.q = q;
+        this.len = (q.bitLength() + 31) >>> 5;
+        this.p = Nat.fromBigInteger(len, q);
+    }
+
+    BigInteger getQ()
+    {
+        return q;
+    }
+
+    int getLength()
+    {
+        return len;
+    }
+
+    int[] fromBigInteger(BigInteger x)
+    {
+        if (x.signum() < 0 || x.compareTo(q) >= 0)
+        {
+            throw new IllegalArgumentException("x value invalid in field element");
+        }
+
+        return Nat.fromBigInteger(len, x);
+    }
+
+    BigInteger toBigInteger(int[] x)
+    {
+        return Nat.toBigInteger(len, x);
+    }
+
+    void add(int[] x, int[] y, int[] z)
+    {
+        int c = Nat.add(len, x, y, z);
+        if (c != 0 || Nat.gte(len, z, p))
+        {
+            Nat.sub(len, z, p, z);
+        }
+    }
+
+    void subtract(int[] x, int[] y, int[] z)
+    {
+        int c = Nat.sub(len, x, y, z);
+        if (c != 0)
+        {
+            Nat.add(len, z, p, z);
+        }
+    }
+
+    void negate(int[] x, int[] z)
+    {
+        if (Nat.isZero(len, x))
+        {
+            System.arraycopy(x, 0, z, 0, len);
+        }
+        else
+        {
+            Nat.sub(len, p, x, z);
+        }
+    }
+
+    void multiply(int[] x, int[] y, int[] z)
+    {
+        int[] tt = new int[2 * len];
+        Nat.mul(len, x, y, tt);
+        reduce(tt, z);
+    }
+
+    void square(int[] x, int[] z)
+    {
+        int[] tt = new int[2 * len];
+        Nat.square(len, x, tt);
+        reduce(tt, z);
+    }
+
+    /**
+     * Reduce a double length value modulo the prime.
+     *
+     * @param tt the value to reduce, of length 2 * len.
+     * @param z the array to hold the result.
+     */
+    abstract void reduce(int[] tt, int[] z);
+
+    /**
+     * Finish a reduction which has left cc * 2^(32 * len) + z, where cc is a
+     * small, possibly negative, carry.
+     */
+    protected void reduceCarry(long cc, int[] z)
+    {
+        while (cc < 0)
+        {
+            cc += Nat.add(len, z, p, z);
+        }
+        while (cc > 0)
+        {
+            cc -= Nat.sub(len, z, p, z);
+        }
+        if (Nat.gte(len, z, p))
+        {
+            Nat.sub(len, z, p, z);
+        }
+    }
+}
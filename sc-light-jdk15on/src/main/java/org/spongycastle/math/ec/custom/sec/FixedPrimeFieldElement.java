@@ -0,0 +1,133 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECFieldElement;
+
+/**
+ * An element of one of the fixed prime fields, held as an array of 32 bit
+ * words. Operations with elements of the same field stay in that form, any
+ * other <code>ECFieldElement</code> is converted via its
+ * <code>BigInteger</code> value first.
+ */
+class FixedPrimeFieldElement
+    extends ECFieldElement.Fp
+{
+    private final FixedPrimeField field;
+    private final int[]           x;
+
+    FixedPrimeFieldElement(FixedPrimeField field, BigInteger x)
+    {
+        this(field, field.fromBigInteger(x));
+    }
+
+    private FixedPrimeFieldElement(FixedPrimeField field, int[] x)
+    {
+        super(field.getQ());
+
+        this.field = field;
+        this.x = x;
+    }
+
+    public BigInteger toBigInteger()
+    {
+        return field.toBigInteger(x);
+    }
+
+    public boolean isZero()
+    {
+        return Nat.isZero(field.getLength(), x);
+    }
+
+    public ECFieldElement add(ECFieldElement b)
+    {
+        int[] z = new int[field.getLength()];
+        field.add(x, wordsOf(b), z);
+        return new FixedPrimeFieldElement(field, z);
+    }
+
+    public ECFieldElement subtract(ECFieldElement b)
+    {
+        int[] z = new int[field.getLength()];
+        field.subtract(x, wordsOf(b), z);
+        return new FixedPrimeFieldElement(field, z);
+    }
+
+    public ECFieldElement multiply(ECFieldElement b)
+    {
+        int[] z = new int[field.getLength()];
+        field.multiply(x, wordsOf(b), z);
+        return new FixedPrimeFieldElement(field, z);
+    }
+
+    public ECFieldElement divide(ECFieldElement b)
+    {
+        return multiply(b.invert());
+    }
+
+    public ECFieldElement negate()
+    {
+        int[] z = new int[field.getLength()];
+        field.negate(x, z);
+        return new FixedPrimeFieldElement(field, z);
+    }
+
+    public ECFieldElement square()
+    {
+        int[] z = new int[field.getLength()];
+        field.square(x, z);
+        return new FixedPrimeFieldElement(field, z);
+    }
+
+    public ECFieldElement invert()
+    {
+        return new FixedPrimeFieldElement(field, toBigInteger().modInverse(field.getQ()));
+    }
+
+    public ECFieldElement sqrt()
+    {
+        ECFieldElement root = new ECFieldElement.Fp(field.getQ(), toBigInteger()).sqrt();
+
+        if (root == null)
+        {
+            return null;
+        }
+
+        return new FixedPrimeFieldElement(field, root.toBigInteger());
+    }
+
+    private int[] wordsOf(ECFieldElement b)
+    {
+        if (b instanceof FixedPrimeFieldElement)
+        {
+            FixedPrimeFieldElement o = (FixedPrimeFieldElement)b;
+
+            if (o.field == field)
+            {
+                return o.x;
+            }
+        }
+
+        return field.fromBigInteger(b.toBigInteger().mod(field.getQ()));
+    }
+
+    public boolean equals(Object other)
+    {
+        if (other instanceof FixedPrimeFieldElement)
+        {
+            FixedPrimeFieldElement o = (FixedPrimeFieldElement)other;
+
+            if (o.field == field)
+            {
+                return Nat.equal(field.getLength(), x, o.x);
+            }
+        }
+
+        return super.equals(other);
+    }
+
+    public int hashCode()
+    {
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,192 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic on fixed length natural numbers held as little-endian arrays of
+ * 32 bit words.
+ */
+abstract class Nat
+{
+    static final long M = 0xFFFFFFFFL;
+
+    /**
+     * z = x + y, returning the carry out (0 or 1).
+     */
+    static int add(int len, int[] x, int[] y, int[] z)
+    {
+        long c = 0;
+        for (int i = 0; i < len; ++i)
+        {
+            c += (x[i] & M) + (y[i] & M);
+            z[i] = (int)c;
+            c >>>= 32;
+        }
+        return (int)c;
+    }
+
+    /**
+     * z = x - y, returning the borrow out (0 or 1).
+     */
+    static int sub(int len, int[] x, int[] y, int[] z)
+    {
+        long c = 0;
+        for (int i = 0; i < len; ++i)
+        {
+            c += (x[i] & M) - (y[i] & M);
+            z[i] = (int)c;
+            c >>= 32;
+        }
+        return (int)-c;
+    }
+
+    /**
+     * zz = x * y, where zz has length 2 * len.
+     */
+    static void mul(int len, int[] x, int[] y, int[] zz)
+    {
+        long y0 = y[0] & M;
+        long c = 0;
+        for (int i = 0; i < len; ++i)
+        {
+            c += (x[i] & M) * y0;
+            zz[i] = (int)c;
+            c >>>= 32;
+        }
+        zz[len] = (int)c;
+
+        for (int j = 1; j < len; ++j)
+        {
+            long yj = y[j] & M;
+            c = 0;
+            for (int i = 0; i < len; ++i)
+            {
+                c += (x[i] & M) * yj + (zz[i + j] & M);
+                zz[i + j] = (int)c;
+                c >>>= 32;
+            }
+            zz[len + j] = (int)c;
+        }
+    }
+
+    /**
+     * zz = x * x, where zz has length 2 * len. Each cross product is only
+     * calculated once and then doubled.
+     */
+    static void square(int len, int[] x, int[] zz)
+    {
+        for (int i = 0; i < 2 * len; ++i)
+        {
+            zz[i] = 0;
+        }
+
+        for (int j = 1; j < len; ++j)
+        {
+            long xj = x[j] & M;
+            long c = 0;
+            for (int i = 0; i < j; ++i)
+            {
+                c += (x[i] & M) * xj + (zz[i + j] & M);
+                zz[i + j] = (int)c;
+                c >>>= 32;
+            }
+            zz[2 * j] = (int)c;
+        }
+
+        // double the cross products and add in the squares
+        long c = 0;
+        int prev = 0;
+        for (int i = 0; i < len; ++i)
+        {
+            long xi = x[i] & M;
+            long sq = xi * xi;
+
+            int lo = zz[2 * i], hi = zz[2 * i + 1];
+
+            c += (sq & M) + (((lo << 1) | (prev >>> 31)) & M);
+            zz[2 * i] = (int)c;
+            c >>>= 32;
+            c += (sq >>> 32) + (((hi << 1) | (lo >>> 31)) & M);
+            zz[2 * i + 1] = (int)c;
+            c >>>= 32;
+
+            prev = hi;
+        }
+    }
+
+    static boolean isZero(int len, int[] x)
+    {
+        for (int i = 0; i < len; ++i)
+        {
+            if (x[i] != 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return true if x >= y, both treated as unsigned.
+     */
+    static boolean gte(int len, int[] x, int[] y)
+    {
+        for (int i = len - 1; i >= 0; --i)
+        {
+            int xi = x[i] ^ Integer.MIN_VALUE;
+            int yi = y[i] ^ Integer.MIN_VALUE;
+            if (xi < yi)
+            {
+                return false;
+            }
+            if (xi > yi)
+            {
+                return true;
+            }
+        }
+        return true;
+    }
+
+    static boolean equal(int len, int[] x, int[] y)
+    {
+        for (int i = 0; i < len; ++i)
+        {
+            if (x[i] != y[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int[] fromBigInteger(int len, BigInteger x)
+    {
+        if (x.signum() < 0 || x.bitLength() > len * 32)
+        {
+            throw new IllegalArgumentException("value out of range");
+        }
+
+        int[] z = new int[len];
+        for (int i = 0; i < len; ++i)
+        {
+            z[i] = x.intValue();
+            x = x.shiftRight(32);
+        }
+        return z;
+    }
+
+    static BigInteger toBigInteger(int len, int[] x)
+    {
+        byte[] bs = new byte[len * 4];
+        for (int i = 0; i < len; ++i)
+        {
+            int xi = x[i];
+            int off = (len - 1 - i) * 4;
+            bs[off]     = (byte)(xi >>> 24);
+            bs[off + 1] = (byte)(xi >>> 16);
+            bs[off + 2] = (byte)(xi >>> 8);
+            bs[off + 3] = (byte)xi;
+        }
+        return new BigInteger(1, bs);
+    }
+}
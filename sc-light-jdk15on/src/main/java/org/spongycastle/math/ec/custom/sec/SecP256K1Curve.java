@@ -0,0 +1,29 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECConstants;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+
+/**
+ * The secp256k1 curve, with field elements held as fixed length word arrays
+ * and reduced using the special form of the prime rather than by division.
+ */
+public class SecP256K1Curve
+    extends ECCurve.Fp
+{
+    private static final SecP256K1Field FIELD = new SecP256K1Field();
+
+    public SecP256K1Curve()
+    {
+        super(SecP256K1Field.Q,
+            ECConstants.ZERO,
+            BigInteger.valueOf(7));
+    }
+
+    public ECFieldElement fromBigInteger(BigInteger x)
+    {
+        return new FixedPrimeFieldElement(FIELD, x);
+    }
+}
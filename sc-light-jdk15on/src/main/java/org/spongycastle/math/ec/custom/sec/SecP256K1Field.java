@@ -0,0 +1,59 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Arithmetic modulo the secp256k1 prime, p = 2^256 - 2^32 - 977. As
+ * 2^256 = 2^32 + 977 (mod p) the top half of a product can be folded into the
+ * bottom half with a multiply by a small constant.
+ */
+class SecP256K1Field
+    extends FixedPrimeField
+{
+    static final BigInteger Q = new BigInteger(1, Hex.decode(
+        "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F"));
+
+    private static final long M = Nat.M;
+
+    private static final long C = 977;
+
+    SecP256K1Field()
+    {
+        super(Q);
+    }
+
+    void reduce(int[] tt, int[] z)
+    {
+        // z = L + H * 977 + (H << 32), where tt = H * 2^256 + L
+        long cc = 0;
+        long prev = 0;
+        for (int i = 0; i < 8; ++i)
+        {
+            long hi = tt[8 + i] & M;
+            cc += (tt[i] & M) + hi * C + prev;
+            z[i] = (int)cc;
+            cc >>>= 32;
+            prev = hi;
+        }
+        cc += prev;
+
+        // the carry is now less than 2^33, fold it in the same way
+        long c2 = cc;
+        cc = (z[0] & M) + c2 * C;
+        z[0] = (int)cc;
+        cc >>>= 32;
+        cc += (z[1] & M) + c2;
+        z[1] = (int)cc;
+        cc >>>= 32;
+        for (int i = 2; cc != 0 && i < 8; ++i)
+        {
+            cc += z[i] & M;
+            z[i] = (int)cc;
+            cc >>>= 32;
+        }
+
+        reduceCarry(cc, z);
+    }
+}
@@ -0,0 +1,35 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * The NIST P-256 (secp256r1, also X9.62 prime256v1) curve, with field
+ * elements held as fixed length word arrays and reduced using the special
+ * form of the prime rather than by division.
+ */
+public class SecP256R1Curve
+    extends ECCurve.Fp
+{
+    private static final SecP256R1Field FIELD = new SecP256R1Field();
+
+    public SecP256R1Curve()
+    {
+        super(SecP256R1Field.Q,
+            fromHex("FFFFFFFF00000001000000000000000000000000FFFFFFFFFFFFFFFFFFFFFFFC"),
+            fromHex("5AC635D8AA3A93E7B3EBBD55769886BC651D06B0CC53B0F63BCE3C3E27D2604B"));
+    }
+
+    public ECFieldElement fromBigInteger(BigInteger x)
+    {
+        return new FixedPrimeFieldElement(FIELD, x);
+    }
+
+    private static BigInteger fromHex(String hex)
+    {
+        return new BigInteger(1, Hex.decode(hex));
+    }
+}
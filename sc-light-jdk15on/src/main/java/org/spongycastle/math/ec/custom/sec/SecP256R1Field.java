@@ -0,0 +1,72 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Arithmetic modulo the NIST P-256 prime, p = 2^256 - 2^224 + 2^192 + 2^96 - 1.
+ * Products are reduced using the fast reduction of FIPS 186-3, D.2.3.
+ */
+class SecP256R1Field
+    extends FixedPrimeField
+{
+    static final BigInteger Q = new BigInteger(1, Hex.decode(
+        "FFFFFFFF00000001000000000000000000000000FFFFFFFFFFFFFFFFFFFFFFFF"));
+
+    private static final long M = Nat.M;
+
+    SecP256R1Field()
+    {
+        super(Q);
+    }
+
+    void reduce(int[] tt, int[] z)
+    {
+        long c0 = tt[0] & M;
+        long c1 = tt[1] & M;
+        long c2 = tt[2] & M;
+        long c3 = tt[3] & M;
+        long c4 = tt[4] & M;
+        long c5 = tt[5] & M;
+        long c6 = tt[6] & M;
+        long c7 = tt[7] & M;
+
+        long c8 = tt[8] & M;
+        long c9 = tt[9] & M;
+        long c10 = tt[10] & M;
+        long c11 = tt[11] & M;
+        long c12 = tt[12] & M;
+        long c13 = tt[13] & M;
+        long c14 = tt[14] & M;
+        long c15 = tt[15] & M;
+
+        long cc = 0;
+        cc += c0 + c8 + c9 - c11 - c12 - c13 - c14;
+        z[0] = (int)cc;
+        cc >>= 32;
+        cc += c1 + c9 + c10 - c12 - c13 - c14 - c15;
+        z[1] = (int)cc;
+        cc >>= 32;
+        cc += c2 + c10 + c11 - c13 - c14 - c15;
+        z[2] = (int)cc;
+        cc >>= 32;
+        cc += c3 - c8 - c9 + (c11 << 1) + (c12 << 1) + c13 - c15;
+        z[3] = (int)cc;
+        cc >>= 32;
+        cc += c4 - c9 - c10 + (c12 << 1) + (c13 << 1) + c14;
+        z[4] = (int)cc;
+        cc >>= 32;
+        cc += c5 - c10 - c11 + (c13 << 1) + (c14 << 1) + c15;
+        z[5] = (int)cc;
+        cc >>= 32;
+        cc += c6 - c8 - c9 + c13 + 3 * c14 + (c15 << 1);
+        z[6] = (int)cc;
+        cc >>= 32;
+        cc += c7 + c8 - c10 - c11 - c12 - c13 + 3 * c15;
+        z[7] = (int)cc;
+        cc >>= 32;
+
+        reduceCarry(cc, z);
+    }
+}
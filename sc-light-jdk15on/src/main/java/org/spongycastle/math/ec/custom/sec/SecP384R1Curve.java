@@ -0,0 +1,35 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * The NIST P-384 (secp384r1) curve, with field elements held as fixed length
+ * word arrays and reduced using the special form of the prime rather than by
+ * division.
+ */
+public class SecP384R1Curve
+    extends ECCurve.Fp
+{
+    private static final SecP384R1Field FIELD = new SecP384R1Field();
+
+    public SecP384R1Curve()
+    {
+        super(SecP384R1Field.Q,
+            fromHex("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFFFF0000000000000000FFFFFFFC"),
+            fromHex("B3312FA7E23EE7E4988E056BE3F82D19181D9C6EFE8141120314088F5013875AC656398D8A2ED19D2A85C8EDD3EC2AEF"));
+    }
+
+    public ECFieldElement fromBigInteger(BigInteger x)
+    {
+        return new FixedPrimeFieldElement(FIELD, x);
+    }
+
+    private static BigInteger fromHex(String hex)
+    {
+        return new BigInteger(1, Hex.decode(hex));
+    }
+}
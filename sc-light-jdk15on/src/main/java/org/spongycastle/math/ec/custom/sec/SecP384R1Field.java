@@ -0,0 +1,92 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * Arithmetic modulo the NIST P-384 prime, p = 2^384 - 2^128 - 2^96 + 2^32 - 1.
+ * Products are reduced using the fast reduction of FIPS 186-3, D.2.4.
+ */
+class SecP384R1Field
+    extends FixedPrimeField
+{
+    static final BigInteger Q = new BigInteger(1, Hex.decode(
+        "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFFFF0000000000000000FFFFFFFF"));
+
+    private static final long M = Nat.M;
+
+    SecP384R1Field()
+    {
+        super(Q);
+    }
+
+    void reduce(int[] tt, int[] z)
+    {
+        long c0 = tt[0] & M;
+        long c1 = tt[1] & M;
+        long c2 = tt[2] & M;
+        long c3 = tt[3] & M;
+        long c4 = tt[4] & M;
+        long c5 = tt[5] & M;
+        long c6 = tt[6] & M;
+        long c7 = tt[7] & M;
+        long c8 = tt[8] & M;
+        long c9 = tt[9] & M;
+        long c10 = tt[10] & M;
+        long c11 = tt[11] & M;
+
+        long c12 = tt[12] & M;
+        long c13 = tt[13] & M;
+        long c14 = tt[14] & M;
+        long c15 = tt[15] & M;
+        long c16 = tt[16] & M;
+        long c17 = tt[17] & M;
+        long c18 = tt[18] & M;
+        long c19 = tt[19] & M;
+        long c20 = tt[20] & M;
+        long c21 = tt[21] & M;
+        long c22 = tt[22] & M;
+        long c23 = tt[23] & M;
+
+        long cc = 0;
+        cc += c0 + c12 + c20 + c21 - c23;
+        z[0] = (int)cc;
+        cc >>= 32;
+        cc += c1 - c12 + c13 - c20 + c22 + c23;
+        z[1] = (int)cc;
+        cc >>= 32;
+        cc += c2 - c13 + c14 - c21 + c23;
+        z[2] = (int)cc;
+        cc >>= 32;
+        cc += c3 + c12 - c14 + c15 + c20 + c21 - c22 - c23;
+        z[3] = (int)cc;
+        cc >>= 32;
+        cc += c4 + c12 + c13 - c15 + c16 + c20 + (c21 << 1) + c22 - (c23 << 1);
+        z[4] = (int)cc;
+        cc >>= 32;
+        cc += c5 + c13 + c14 - c16 + c17 + c21 + (c22 << 1) + c23;
+        z[5] = (int)cc;
+        cc >>= 32;
+        cc += c6 + c14 + c15 - c17 + c18 + c22 + (c23 << 1);
+        z[6] = (int)cc;
+        cc >>= 32;
+        cc += c7 + c15 + c16 - c18 + c19 + c23;
+        z[7] = (int)cc;
+        cc >>= 32;
+        cc += c8 + c16 + c17 - c19 + c20;
+        z[8] = (int)cc;
+        cc >>= 32;
+        cc += c9 + c17 + c18 - c20 + c21;
+        z[9] = (int)cc;
+        cc >>= 32;
+        cc += c10 + c18 + c19 - c21 + c22;
+        z[10] = (int)cc;
+        cc >>= 32;
+        cc += c11 + c19 + c20 - c22 + c23;
+        z[11] = (int)cc;
+        cc >>= 32;
+
+        reduceCarry(cc, z);
+    }
+}
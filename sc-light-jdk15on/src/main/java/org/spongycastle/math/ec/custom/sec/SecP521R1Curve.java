@@ -0,0 +1,35 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+import org.spongycastle.util.encoders.Hex;
+
+/**
+ * The NIST P-521 (secp521r1) curve, with field elements held as fixed length
+ * word arrays and reduced using the special form of the prime rather than by
+ * division.
+ */
+public class SecP521R1Curve
+    extends ECCurve.Fp
+{
+    private static final SecP521R1Field FIELD = new SecP521R1Field();
+
+    public SecP521R1Curve()
+    {
+        super(SecP521R1Field.Q,
+            fromHex("01FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFC"),
+            fromHex("0051953EB9618E1C9A1F929A21A0B68540EEA2DA725B99B315F3B8B489918EF109E156193951EC7E937B1652C0BD3BB1BF073573DF883D2C34F1EF451FD46B503F00"));
+    }
+
+    public ECFieldElement fromBigInteger(BigInteger x)
+    {
+        return new FixedPrimeFieldElement(FIELD, x);
+    }
+
+    private static BigInteger fromHex(String hex)
+    {
+        return new BigInteger(1, Hex.decode(hex));
+    }
+}
@@ -0,0 +1,53 @@
+package org.spongycastle.math.ec.custom.sec;
+
+import java.math.BigInteger;
+
+import org.spongycastle.math.ec.ECConstants;
+
+/**
+ * Arithmetic modulo the NIST P-521 prime, p = 2^521 - 1. As p is a Mersenne
+ * prime a product is reduced by adding its top 521 bits to its bottom 521 bits.
+ */
+class SecP521R1Field
+    extends FixedPrimeField
+{
+    static final BigInteger Q = ECConstants.ONE.shiftLeft(521).subtract(ECConstants.ONE);
+
+    private static final long M = Nat.M;
+
+    SecP521R1Field()
+    {
+        super(Q);
+    }
+
+    void reduce(int[] tt, int[] z)
+    {
+        // z = (tt mod 2^521) + (tt >> 521), 521 = 16 * 32 + 9
+        long cc = 0;
+        for (int i = 0; i < 16; ++i)
+        {
+            int hi = (tt[16 + i] >>> 9) | (tt[17 + i] << 23);
+            cc += (tt[i] & M) + (hi & M);
+            z[i] = (int)cc;
+            cc >>>= 32;
+        }
+        int hi = (tt[32] >>> 9) | (tt[33] << 23);
+        cc += (tt[16] & 0x1FF) + (hi & M);
+        z[16] = (int)cc;
+
+        // z < 2^522, fold bit 521 back in
+        cc = (z[16] >>> 9) & M;
+        z[16] &= 0x1FF;
+        for (int i = 0; cc != 0 && i < 17; ++i)
+        {
+            cc += z[i] & M;
+            z[i] = (int)cc;
+            cc >>>= 32;
+        }
+
+        if (Nat.gte(len, z, p))
+        {
+            Nat.sub(len, z, p, z);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.spongycastle.util;
+
+/**
+ * Interface for objects, such as digests, whose state can be saved and later
+ * restored, so that a common prefix only has to be processed once.
+ */
+public interface Memoable
+{
+    /**
+     * Produce a copy of this object with its configuration and in its current state.
+     * <p>
+     * The returned object may be used simply to store the state, or may be used as a similar object
+     * starting from the copied state.
+     */
+    Memoable copy();
+
+    /**
+     * Restore a copied object state into this object.
+     * <p>
+     * Implementations of this method <em>should</em> try to avoid or minimise memory allocation to
+     * perform the reset.
+     *
+     * @param other an object originally {@link #copy() copied} from an object of the same type as this
+     *            instance.
+     * @throws ClassCastException if the provided object is not of the correct type.
+     */
+    void reset(Memoable other);
+}
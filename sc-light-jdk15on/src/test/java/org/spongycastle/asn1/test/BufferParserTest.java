@@ -0,0 +1,167 @@
+package org.spongycastle.asn1.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.spongycastle.asn1.ASN1BufferParser;
+import org.spongycastle.asn1.ASN1EncodableVector;
+import org.spongycastle.asn1.ASN1Integer;
+import org.spongycastle.asn1.ASN1ObjectIdentifier;
+import org.spongycastle.asn1.BERTags;
+import org.spongycastle.asn1.DERApplicationSpecific;
+import org.spongycastle.asn1.DEROctetString;
+import org.spongycastle.asn1.DERSequence;
+import org.spongycastle.asn1.DERTaggedObject;
+import org.spongycastle.util.Arrays;
+import org.spongycastle.util.test.SimpleTest;
+
+public class BufferParserTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "BufferParser";
+    }
+
+    public void performTest()
+        throws IOException
+    {
+        ASN1ObjectIdentifier oid = new ASN1ObjectIdentifier("1.2.840.113549.1.1.11");
+        ASN1Integer number = new ASN1Integer(123456789);
+        DEROctetString octets = new DEROctetString(new byte[300]);
+        DERTaggedObject tagged = new DERTaggedObject(true, 3, number);
+        DERApplicationSpecific highTag = new DERApplicationSpecific(100, new byte[]{ 1, 2 });
+
+        ASN1EncodableVector inner = new ASN1EncodableVector();
+        inner.add(number);
+        inner.add(octets);
+
+        ASN1EncodableVector outer = new ASN1EncodableVector();
+        outer.add(oid);
+        outer.add(new DERSequence(inner));
+        outer.add(tagged);
+        outer.add(highTag);
+
+        byte[] enc = new DERSequence(outer).getEncoded();
+
+        ByteBuffer heap = ByteBuffer.allocate(enc.length + 10);
+        heap.position(10);
+        heap.put(enc);
+        heap.position(10);
+        checkParse(heap, 10, enc, oid, number, octets, tagged, highTag);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(enc.length);
+        direct.put(enc);
+        direct.flip();
+        checkParse(direct, 0, enc, oid, number, octets, tagged, highTag);
+
+        checkStartPart(enc, oid);
+        checkTruncated(enc);
+    }
+
+    private void checkParse(ByteBuffer buf, int base, byte[] enc, ASN1ObjectIdentifier oid, ASN1Integer number,
+        DEROctetString octets, DERTaggedObject tagged, DERApplicationSpecific highTag)
+        throws IOException
+    {
+        ASN1BufferParser parser = new ASN1BufferParser(buf);
+
+        isTrue("no outer sequence", parser.next());
+        isTrue("wrong outer tag", parser.getTag() == (BERTags.SEQUENCE | BERTags.CONSTRUCTED));
+        isTrue("wrong outer offset", parser.getOffset() == base);
+        isTrue("wrong outer length", parser.getEncodedLength() == enc.length);
+
+        parser.descend();
+
+        isTrue("no oid", parser.next());
+        isTrue("wrong oid tag", parser.getTagNo() == BERTags.OBJECT_IDENTIFIER);
+        isTrue("oid not interned", parser.toASN1Primitive() == parser.toASN1Primitive());
+        isTrue("wrong oid", oid.equals(parser.toASN1Primitive()));
+
+        isTrue("no inner sequence", parser.next());
+        isTrue("inner sequence not constructed", parser.isConstructed());
+        parser.descend();
+        isTrue("no integer", parser.next());
+        isTrue("wrong integer", number.equals(parser.toASN1Primitive()));
+        parser.ascend();
+
+        isTrue("no tagged object", parser.next());
+        isTrue("wrong tagged tag", parser.getTag() == (BERTags.TAGGED | BERTags.CONSTRUCTED | 3));
+        isTrue("wrong tagged object", tagged.equals(parser.toASN1Primitive()));
+
+        isTrue("no high tag", parser.next());
+        isTrue("wrong high tag number", parser.getTagNo() == 100);
+        isTrue("wrong high tag object", highTag.equals(parser.toASN1Primitive()));
+
+        ByteBuffer contents = parser.getContentBuffer();
+        isTrue("wrong content buffer", contents.remaining() == 2 && contents.get(0) == 1 && contents.get(1) == 2);
+
+        isTrue("extra element", !parser.next());
+        parser.ascend();
+        isTrue("extra outer element", !parser.next());
+        isTrue("wrong depth", parser.getDepth() == 0);
+        isTrue("buffer position moved", buf.position() == base);
+
+        // the octet string, read by offset
+        parser = new ASN1BufferParser(buf);
+        parser.next();
+        parser.descend();
+        parser.next();
+        parser.next();
+        parser.descend();
+        parser.next();
+        parser.next();
+
+        byte[] contentsCopy = new byte[parser.getContentLength()];
+        parser.getContents(contentsCopy, 0);
+        isTrue("wrong octets", Arrays.areEqual(octets.getOctets(), contentsCopy));
+        isTrue("wrong octets object", octets.equals(parser.toASN1Primitive()));
+    }
+
+    private void checkStartPart(byte[] enc, ASN1ObjectIdentifier oid)
+        throws IOException
+    {
+        ASN1BufferParser parser = new ASN1BufferParser(ByteBuffer.wrap(enc));
+
+        parser.next();
+        parser.descend();
+        parser.next();
+
+        int offset = parser.getOffset();
+        int length = parser.getEncodedLength();
+
+        parser = new ASN1BufferParser(ByteBuffer.wrap(enc), offset, length);
+
+        isTrue("no oid at offset", parser.next());
+        isTrue("wrong oid at offset", oid.equals(parser.toASN1Primitive()));
+        isTrue("extra element at offset", !parser.next());
+    }
+
+    private void checkTruncated(byte[] enc)
+    {
+        ASN1BufferParser parser = new ASN1BufferParser(ByteBuffer.wrap(enc, 0, enc.length - 1));
+
+        try
+        {
+            parser.next();
+            fail("truncated encoding not detected");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    private void isTrue(String message, boolean condition)
+    {
+        if (!condition)
+        {
+            fail(message);
+        }
+    }
+
+    public static void main(
+        String[] args)
+    {
+        runTest(new BufferParserTest());
+    }
+}
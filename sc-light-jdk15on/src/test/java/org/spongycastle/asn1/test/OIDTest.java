@@ -65,6 +65,24 @@ public class OIDTest
         }
     }
     
+    private void internCheck(
+        byte[] enc)
+        throws IOException
+    {
+        Object o1 = new ASN1InputStream(enc).readObject();
+        Object o2 = new ASN1InputStream(enc).readObject();
+
+        if (o1 != o2)
+        {
+            fail("decoded oids not shared for " + new String(Hex.encode(enc)));
+        }
+
+        if (!areEqual(enc, ((ASN1ObjectIdentifier)o1).getEncoded()))
+        {
+            fail("failed interned encoding test", new String(Hex.encode(enc)), new String(Hex.encode(((ASN1ObjectIdentifier)o1).getEncoded())));
+        }
+    }
+
     private void validOidCheck(
         String  oid)
         throws IOException
@@ -124,6 +142,18 @@ public class OIDTest
     {
         recodeCheck("2.100.3", req1);
         recodeCheck("1.2.54.34359733987.17", req2);
+
+        internCheck(req1);
+        internCheck(req2);
+
+        // a stream of distinct identifiers displaces cached ones rather than filling the cache
+        for (int i = 0; i != 5000; i++)
+        {
+            recodeCheck("1.2.3." + i, new ASN1ObjectIdentifier("1.2.3." + i).getEncoded());
+        }
+
+        internCheck(req1);
+        internCheck(req2);
         
         validOidCheck(PKCSObjectIdentifiers.pkcs_9_at_contentType.getId());
         validOidCheck("0.1");
@@ -69,7 +69,9 @@ public class RegressionTest
         new ESSCertIDv2UnitTest(),
         new ParsingTest(),
         new GeneralNameTest(),
-        new RFC4519Test()
+        new RFC4519Test(),
+        new BufferParserTest(),
+        new RevokedCertificateIndexTest()
     };
 
     public static void main(
@@ -0,0 +1,156 @@
+package org.spongycastle.asn1.test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Random;
+
+import org.spongycastle.asn1.ASN1EncodableVector;
+import org.spongycastle.asn1.ASN1Integer;
+import org.spongycastle.asn1.DERBitString;
+import org.spongycastle.asn1.DERNull;
+import org.spongycastle.asn1.DEROctetString;
+import org.spongycastle.asn1.DERSequence;
+import org.spongycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.spongycastle.asn1.x500.X500Name;
+import org.spongycastle.asn1.x509.AlgorithmIdentifier;
+import org.spongycastle.asn1.x509.CRLReason;
+import org.spongycastle.asn1.x509.Extension;
+import org.spongycastle.asn1.x509.Extensions;
+import org.spongycastle.asn1.x509.GeneralName;
+import org.spongycastle.asn1.x509.GeneralNames;
+import org.spongycastle.asn1.x509.RevokedCertificateIndex;
+import org.spongycastle.asn1.x509.TBSCertList;
+import org.spongycastle.asn1.x509.Time;
+import org.spongycastle.asn1.x509.V2TBSCertListGenerator;
+import org.spongycastle.util.test.SimpleTest;
+
+public class RevokedCertificateIndexTest
+    extends SimpleTest
+{
+    private static final X500Name CA = new X500Name("CN=CRL Issuer");
+    private static final X500Name OTHER_CA = new X500Name("CN=Other CA");
+
+    public String getName()
+    {
+        return "RevokedCertificateIndex";
+    }
+
+    public void performTest()
+        throws IOException
+    {
+        AlgorithmIdentifier sigAlg = new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+        Time now = new Time(new Date());
+
+        V2TBSCertListGenerator gen = new V2TBSCertListGenerator();
+
+        gen.setSignature(sigAlg);
+        gen.setIssuer(CA);
+        gen.setThisUpdate(now);
+        gen.setNextUpdate(now);
+
+        Random rand = new Random(42);
+        BigInteger[] serials = new BigInteger[500];
+
+        for (int i = 0; i != serials.length; i++)
+        {
+            serials[i] = new BigInteger(1 + rand.nextInt(148), rand).shiftLeft(11).add(BigInteger.valueOf(1000 + i));
+            gen.addCRLEntry(new ASN1Integer(serials[i]), now, i % 3 == 0 ? CRLReason.keyCompromise : 0);
+        }
+
+        gen.addCRLEntry(new ASN1Integer(BigInteger.valueOf(-5)), now, 0);
+        gen.addCRLEntry(new ASN1Integer(BigInteger.valueOf(7)), now, CRLReason.superseded);
+        gen.addCRLEntry(new ASN1Integer(BigInteger.valueOf(0)), now, 0);
+
+        // the same serial number from another issuer, then one more entry for that issuer
+        gen.addCRLEntry(new ASN1Integer(BigInteger.valueOf(7)), now, new Extensions(new Extension[] { new Extension(Extension.certificateIssuer, true,
+            new DEROctetString(new GeneralNames(new GeneralName(OTHER_CA)))) }));
+        gen.addCRLEntry(new ASN1Integer(BigInteger.valueOf(3)), now, 0);
+
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        v.add(gen.generateTBSCertList());
+        v.add(sigAlg);
+        v.add(new DERBitString(new byte[16]));
+
+        byte[] crl = new DERSequence(v).getEncoded();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(crl.length);
+        direct.put(crl);
+        direct.flip();
+
+        checkIndex(new RevokedCertificateIndex(ByteBuffer.wrap(crl)), serials);
+        checkIndex(new RevokedCertificateIndex(direct), serials);
+
+        gen = new V2TBSCertListGenerator();
+
+        gen.setSignature(sigAlg);
+        gen.setIssuer(CA);
+        gen.setThisUpdate(now);
+
+        v = new ASN1EncodableVector();
+        v.add(gen.generateTBSCertList());
+        v.add(sigAlg);
+        v.add(new DERBitString(new byte[16]));
+
+        RevokedCertificateIndex empty = new RevokedCertificateIndex(ByteBuffer.wrap(new DERSequence(v).getEncoded()));
+
+        isTrue("empty CRL has entries", empty.size() == 0);
+        isTrue("empty CRL lookup", empty.indexOf(BigInteger.ONE) == -1);
+    }
+
+    private void checkIndex(RevokedCertificateIndex index, BigInteger[] serials)
+        throws IOException
+    {
+        isTrue("wrong size", index.size() == serials.length + 5);
+
+        for (int i = 1; i < index.size(); i++)
+        {
+            isTrue("index not sorted", index.getSerialNumber(i - 1).compareTo(index.getSerialNumber(i)) <= 0);
+        }
+
+        for (int i = 0; i != serials.length; i++)
+        {
+            int pos = index.indexOf(serials[i]);
+
+            isTrue("serial not found", pos >= 0);
+
+            TBSCertList.CRLEntry entry = index.getEntry(pos);
+
+            isTrue("wrong entry", entry.getUserCertificate().getValue().equals(serials[i]));
+            isTrue("wrong extensions", entry.hasExtensions() == (i % 3 == 0));
+            isTrue("unexpected issuer", index.getPrecedingCertificateIssuer(pos) == null);
+        }
+
+        isTrue("negative serial", index.indexOf(BigInteger.valueOf(-5)) == 0);
+        isTrue("zero serial", index.indexOf(BigInteger.ZERO) == 1);
+        isTrue("missing serial found", index.indexOf(BigInteger.valueOf(999)) == -1);
+        isTrue("missing negative serial found", index.indexOf(BigInteger.valueOf(-6)) == -1);
+        isTrue("missing large serial found", index.indexOf(BigInteger.ONE.shiftLeft(200)) == -1);
+
+        int seven = index.indexOf(BigInteger.valueOf(7));
+
+        isTrue("first duplicate", !index.getEntry(seven).getExtensions().getExtension(Extension.reasonCode).isCritical());
+        isTrue("first duplicate issuer", index.getPrecedingCertificateIssuer(seven) == null);
+        isTrue("second duplicate", index.getEntry(seven + 1).getExtensions().getExtension(Extension.certificateIssuer) != null);
+        isTrue("second duplicate issuer", index.getPrecedingCertificateIssuer(seven + 1) == null);
+
+        int three = index.indexOf(BigInteger.valueOf(3));
+
+        isTrue("issuer not carried", OTHER_CA.equals(index.getPrecedingCertificateIssuer(three)));
+    }
+
+    private void isTrue(String message, boolean condition)
+    {
+        if (!condition)
+        {
+            fail(message);
+        }
+    }
+
+    public static void main(
+        String[]    args)
+    {
+        runTest(new RevokedCertificateIndexTest());
+    }
+}
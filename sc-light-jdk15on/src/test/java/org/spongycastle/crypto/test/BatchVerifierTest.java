@@ -0,0 +1,199 @@
+package org.spongycastle.crypto.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import org.spongycastle.asn1.sec.SECNamedCurves;
+import org.spongycastle.asn1.x9.X9ECParameters;
+import org.spongycastle.crypto.AsymmetricCipherKeyPair;
+import org.spongycastle.crypto.CipherParameters;
+import org.spongycastle.crypto.DSA;
+import org.spongycastle.crypto.generators.DSAKeyPairGenerator;
+import org.spongycastle.crypto.generators.DSAParametersGenerator;
+import org.spongycastle.crypto.generators.ECKeyPairGenerator;
+import org.spongycastle.crypto.params.DSAKeyGenerationParameters;
+import org.spongycastle.crypto.params.DSAParameters;
+import org.spongycastle.crypto.params.DSAPublicKeyParameters;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECKeyGenerationParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.crypto.params.ParametersWithRandom;
+import org.spongycastle.crypto.signers.DSASharedInverseVerifier;
+import org.spongycastle.crypto.signers.DSASigner;
+import org.spongycastle.crypto.signers.ECDSABatchVerifier;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.util.test.SimpleTest;
+
+/**
+ * check the batch verifiers agree with the individual signers, including
+ * for corrupted and out of range signatures.
+ */
+public class BatchVerifierTest
+    extends SimpleTest
+{
+    private static final int BATCH_SIZE = 12;
+
+    private SecureRandom random = new SecureRandom();
+
+    public String getName()
+    {
+        return "BatchVerifier";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        ecdsaTest(new String[] { "secp256r1", "secp384r1", "sect233r1" });
+        dsaTest();
+
+        ECDSABatchVerifier verifier = new ECDSABatchVerifier();
+
+        if (verifier.verify().length != 0)
+        {
+            fail("empty batch gave results");
+        }
+    }
+
+    private void ecdsaTest(String[] curveNames)
+    {
+        ECDSABatchVerifier batch = new ECDSABatchVerifier();
+        boolean[] expected = new boolean[BATCH_SIZE * curveNames.length];
+        int count = 0;
+
+        for (int c = 0; c != curveNames.length; c++)
+        {
+            X9ECParameters x9 = SECNamedCurves.getByName(curveNames[c]);
+            ECDomainParameters params = new ECDomainParameters(x9.getCurve(), x9.getG(), x9.getN(), x9.getH());
+
+            for (int i = 0; i != BATCH_SIZE; i++)
+            {
+                ECKeyPairGenerator kpGen = new ECKeyPairGenerator();
+
+                kpGen.init(new ECKeyGenerationParameters(params, random));
+
+                AsymmetricCipherKeyPair kp = kpGen.generateKeyPair();
+                ECPublicKeyParameters pub = (ECPublicKeyParameters)kp.getPublic();
+
+                ECDSASigner signer = new ECDSASigner();
+
+                signer.init(true, new ParametersWithRandom(kp.getPrivate(), random));
+
+                byte[] message = new byte[32];
+                random.nextBytes(message);
+
+                BigInteger[] sig = signer.generateSignature(message);
+
+                sig = corrupt(i, sig, params.getN(), message);
+
+                batch.add(message, sig[0], sig[1], pub);
+
+                expected[count++] = verify(new ECDSASigner(), pub, message, sig);
+            }
+        }
+
+        checkResults("ECDSA", batch.verify(), expected, count);
+
+        batch.reset();
+
+        if (batch.size() != 0)
+        {
+            fail("ECDSA batch not reset");
+        }
+    }
+
+    private void dsaTest()
+    {
+        DSAParametersGenerator pGen = new DSAParametersGenerator();
+
+        pGen.init(512, 20, random);
+
+        DSAParameters params = pGen.generateParameters();
+        DSASharedInverseVerifier batch = new DSASharedInverseVerifier();
+        boolean[] expected = new boolean[BATCH_SIZE];
+
+        for (int i = 0; i != BATCH_SIZE; i++)
+        {
+            DSAKeyPairGenerator kpGen = new DSAKeyPairGenerator();
+
+            kpGen.init(new DSAKeyGenerationParameters(random, params));
+
+            AsymmetricCipherKeyPair kp = kpGen.generateKeyPair();
+            DSAPublicKeyParameters pub = (DSAPublicKeyParameters)kp.getPublic();
+
+            DSASigner signer = new DSASigner();
+
+            signer.init(true, new ParametersWithRandom(kp.getPrivate(), random));
+
+            byte[] message = new byte[20];
+            random.nextBytes(message);
+
+            BigInteger[] sig = signer.generateSignature(message);
+
+            sig = corrupt(i, sig, params.getQ(), message);
+
+            batch.add(message, sig[0], sig[1], pub);
+
+            expected[i] = verify(new DSASigner(), pub, message, sig);
+        }
+
+        checkResults("DSA", batch.verify(), expected, BATCH_SIZE);
+    }
+
+    /*
+     * leave most signatures alone, but break a few in different ways.
+     */
+    private BigInteger[] corrupt(int i, BigInteger[] sig, BigInteger n, byte[] message)
+    {
+        switch (i % 6)
+        {
+        case 1:
+            return new BigInteger[] { sig[0], sig[1].add(BigInteger.valueOf(1)).mod(n) };
+        case 3:
+            message[0] ^= 1;
+            return sig;
+        case 5:
+            return new BigInteger[] { n, sig[1] };
+        default:
+            return sig;
+        }
+    }
+
+    private boolean verify(DSA signer, CipherParameters pub, byte[] message, BigInteger[] sig)
+    {
+        signer.init(false, pub);
+
+        return signer.verifySignature(message, sig[0], sig[1]);
+    }
+
+    private void checkResults(String label, boolean[] results, boolean[] expected, int count)
+    {
+        if (results.length != count)
+        {
+            fail(label + " batch result length wrong");
+        }
+
+        int valid = 0;
+        for (int i = 0; i != count; i++)
+        {
+            if (results[i] != expected[i])
+            {
+                fail(label + " batch result " + i + " wrong");
+            }
+            if (results[i])
+            {
+                valid++;
+            }
+        }
+
+        if (valid == 0 || valid == count)
+        {
+            fail(label + " batch did not mix valid and invalid signatures");
+        }
+    }
+
+    public static void main(
+        String[]    args)
+    {
+        runTest(new BatchVerifierTest());
+    }
+}
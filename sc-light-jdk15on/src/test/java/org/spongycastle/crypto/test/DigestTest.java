@@ -1,6 +1,7 @@
 package org.spongycastle.crypto.test;
 
 import org.spongycastle.crypto.Digest;
+import org.spongycastle.util.Memoable;
 import org.spongycastle.util.encoders.Hex;
 import org.spongycastle.util.test.SimpleTest;
 
@@ -65,6 +66,29 @@ public abstract class DigestTest
         {
             fail("failing second clone vector test", results[results.length - 1], new String(Hex.encode(resBuf)));
         }
+
+        //
+        // memo test
+        //
+        if (digest instanceof Memoable)
+        {
+            digest.update(lastV, 0, lastV.length/2);
+
+            Memoable m = ((Memoable)digest).copy();
+
+            digest.update(lastV, lastV.length/2, lastV.length - lastV.length/2);
+            digest.doFinal(resBuf, 0);
+
+            ((Memoable)digest).reset(m);
+
+            digest.update(lastV, lastV.length/2, lastV.length - lastV.length/2);
+            digest.doFinal(resBuf, 0);
+
+            if (!areEqual(lastDigest, resBuf))
+            {
+                fail("failing memo vector test", results[results.length - 1], new String(Hex.encode(resBuf)));
+            }
+        }
     }
 
     private byte[] toByteArray(String input)
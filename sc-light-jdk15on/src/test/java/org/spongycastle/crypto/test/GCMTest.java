@@ -7,6 +7,7 @@ import org.spongycastle.crypto.engines.AESFastEngine;
 import org.spongycastle.crypto.modes.GCMBlockCipher;
 import org.spongycastle.crypto.modes.gcm.BasicGCMMultiplier;
 import org.spongycastle.crypto.modes.gcm.GCMMultiplier;
+import org.spongycastle.crypto.modes.gcm.Tables32kGCMMultiplier;
 import org.spongycastle.crypto.modes.gcm.Tables64kGCMMultiplier;
 import org.spongycastle.crypto.modes.gcm.Tables8kGCMMultiplier;
 import org.spongycastle.crypto.params.AEADParameters;
@@ -335,6 +336,7 @@ public class GCMTest
         runTestCase(new BasicGCMMultiplier(), new BasicGCMMultiplier(), parameters, testName, P, C, T);
         runTestCase(new Tables8kGCMMultiplier(), new Tables8kGCMMultiplier(), parameters, testName, P, C, T);
         runTestCase(new Tables64kGCMMultiplier(), new Tables64kGCMMultiplier(), parameters, testName, P, C, T);
+        runTestCase(new Tables32kGCMMultiplier(), new Tables32kGCMMultiplier(), parameters, testName, P, C, T);
     }
 
     private void runTestCase(
@@ -425,6 +427,7 @@ public class GCMTest
             randomTest(srng, new BasicGCMMultiplier()); 
             randomTest(srng, new Tables8kGCMMultiplier()); 
             randomTest(srng, new Tables64kGCMMultiplier()); 
+            randomTest(srng, new Tables32kGCMMultiplier());
         }
     }
 
@@ -0,0 +1,310 @@
+package org.spongycastle.crypto.test;
+
+import java.security.SecureRandom;
+
+import org.spongycastle.crypto.BlockCipher;
+import org.spongycastle.crypto.BufferedBlockCipher;
+import org.spongycastle.crypto.CipherParameters;
+import org.spongycastle.crypto.DataLengthException;
+import org.spongycastle.crypto.MultiBlockCipher;
+import org.spongycastle.crypto.engines.AESEngine;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.engines.CamelliaEngine;
+import org.spongycastle.crypto.engines.TwofishEngine;
+import org.spongycastle.crypto.modes.CBCBlockCipher;
+import org.spongycastle.crypto.modes.SICBlockCipher;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.crypto.params.ParametersWithIV;
+import org.spongycastle.util.Arrays;
+import org.spongycastle.util.encoders.Hex;
+import org.spongycastle.util.test.SimpleTest;
+
+/**
+ * check processBlocks() on the multi-block ciphers and modes gives the same
+ * result as calling processBlock() for each block in turn.
+ */
+public class MultiBlockCipherTest
+    extends SimpleTest
+{
+    private static final int[] BLOCK_COUNTS = { 0, 1, 2, 63, 64, 65, 200 };
+
+    private SecureRandom random = new SecureRandom();
+
+    public String getName()
+    {
+        return "MultiBlockCipher";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        int[] keySizes = { 16, 24, 32 };
+
+        for (int i = 0; i != keySizes.length; i++)
+        {
+            KeyParameter key = new KeyParameter(randomBytes(keySizes[i]));
+            ParametersWithIV ivParam = new ParametersWithIV(key, randomBytes(16));
+
+            checkCipher(new AESEngine(), new AESEngine(), key);
+            checkCipher(new AESFastEngine(), new AESFastEngine(), key);
+            checkCipher(new CamelliaEngine(), new CamelliaEngine(), key);
+            checkCipher(new TwofishEngine(), new TwofishEngine(), key);
+
+            checkCipher(new CBCBlockCipher(new AESFastEngine()), new CBCBlockCipher(new AESFastEngine()), ivParam);
+            checkCipher(new CBCBlockCipher(new TwofishEngine()), new CBCBlockCipher(new TwofishEngine()), ivParam);
+            checkCipher(new SICBlockCipher(new AESFastEngine()), new SICBlockCipher(new AESFastEngine()), ivParam);
+            checkCipher(new SICBlockCipher(new CamelliaEngine()), new SICBlockCipher(new CamelliaEngine()), ivParam);
+
+            checkBuffered(new CBCBlockCipher(new AESEngine()), new CBCBlockCipher(new AESEngine()), ivParam);
+            checkBuffered(new SICBlockCipher(new AESEngine()), new SICBlockCipher(new AESEngine()), ivParam);
+        }
+
+        checkCounterCarry();
+        checkSeek(randomBytes(16));
+        checkSeek(Hex.decode("fffffffffffffffffffffffffffffff0"));
+        checkBadLengths();
+    }
+
+    private void checkCipher(MultiBlockCipher multi, BlockCipher single, CipherParameters params)
+    {
+        checkCipher(true, multi, single, params);
+        checkCipher(false, multi, single, params);
+    }
+
+    private void checkCipher(boolean forEncryption, MultiBlockCipher multi, BlockCipher single, CipherParameters params)
+    {
+        int blockSize = single.getBlockSize();
+
+        for (int i = 0; i != BLOCK_COUNTS.length; i++)
+        {
+            int count = BLOCK_COUNTS[i];
+            byte[] in = randomBytes(count * blockSize + 3);
+            byte[] expected = new byte[count * blockSize];
+
+            single.init(forEncryption, params);
+            for (int off = 0; off < expected.length; off += blockSize)
+            {
+                single.processBlock(in, off + 3, expected, off);
+            }
+
+            multi.init(forEncryption, params);
+
+            byte[] out = new byte[count * blockSize + 5];
+            int len = multi.processBlocks(in, 3, count, out, 5);
+
+            if (len != expected.length)
+            {
+                fail(multi.getAlgorithmName() + " wrong length returned: " + len);
+            }
+            if (!Arrays.areEqual(expected, copy(out, 5, len)))
+            {
+                fail(multi.getAlgorithmName() + " processBlocks mismatch for " + count + " blocks");
+            }
+
+            // in place, carrying on from where the last call left off
+            byte[] next = randomBytes(count * blockSize);
+            byte[] nextExpected = new byte[next.length];
+
+            for (int off = 0; off < next.length; off += blockSize)
+            {
+                single.processBlock(next, off, nextExpected, off);
+            }
+
+            multi.processBlocks(next, 0, count, next, 0);
+
+            if (!Arrays.areEqual(nextExpected, next))
+            {
+                fail(multi.getAlgorithmName() + " in place processBlocks mismatch for " + count + " blocks");
+            }
+        }
+    }
+
+    private void checkBuffered(BlockCipher multi, BlockCipher single, CipherParameters params)
+        throws Exception
+    {
+        byte[] in = randomBytes(992);
+
+        BufferedBlockCipher multiCipher = new BufferedBlockCipher(multi);
+        BufferedBlockCipher singleCipher = new BufferedBlockCipher(single);
+
+        multiCipher.init(true, params);
+
+        byte[] expected = new byte[in.length];
+        byte[] out = new byte[in.length];
+
+        // odd sized chunks, so the internal buffer is used as well
+        int outLen = 0;
+        int[] chunks = { 1, 15, 16, 17, 160, 333, 450 };
+        int off = 0;
+        for (int i = 0; i != chunks.length; i++)
+        {
+            outLen += multiCipher.processBytes(in, off, chunks[i], out, outLen);
+            off += chunks[i];
+        }
+        outLen += multiCipher.doFinal(out, outLen);
+
+        singleCipher.init(true, params);
+        int expLen = 0;
+        for (int i = 0; i != in.length; i++)
+        {
+            expLen += singleCipher.processByte(in[i], expected, expLen);
+        }
+        expLen += singleCipher.doFinal(expected, expLen);
+
+        if (outLen != expLen || !Arrays.areEqual(expected, out))
+        {
+            fail(multi.getAlgorithmName() + " buffered processBytes mismatch");
+        }
+    }
+
+    private void checkCounterCarry()
+    {
+        byte[] iv = new byte[16];
+        Arrays.fill(iv, (byte)0xff);
+        iv[0] = 0;
+        iv[15] = (byte)0xf0;
+
+        ParametersWithIV params = new ParametersWithIV(new KeyParameter(randomBytes(16)), iv);
+
+        checkCipher(new SICBlockCipher(new AESFastEngine()), new SICBlockCipher(new AESFastEngine()), params);
+    }
+
+    private void checkSeek(byte[] iv)
+    {
+        ParametersWithIV params = new ParametersWithIV(new KeyParameter(randomBytes(16)), iv);
+        SICBlockCipher cipher = new SICBlockCipher(new AESFastEngine());
+        int blocks = 300;
+
+        cipher.init(true, params);
+
+        byte[] keyStream = new byte[blocks * 16];
+
+        cipher.processBlocks(keyStream, 0, blocks, keyStream, 0);
+
+        int[] indexes = { 0, 1, 15, 16, 255, 256, 257, 290 };
+
+        for (int i = 0; i != indexes.length; i++)
+        {
+            int index = indexes[i];
+            byte[] out = new byte[(blocks - index) * 16];
+
+            cipher.seekTo(index);
+            cipher.processBlocks(out, 0, blocks - index, out, 0);
+
+            if (!Arrays.areEqual(copy(keyStream, index * 16, out.length), out))
+            {
+                fail("seekTo(" + index + ") gave wrong key stream");
+            }
+        }
+
+        cipher.seekTo(0);
+
+        byte[] block = new byte[16];
+
+        cipher.processBlock(block, 0, block, 0);
+
+        if (!Arrays.areEqual(copy(keyStream, 0, 16), block))
+        {
+            fail("seekTo(0) did not match reset");
+        }
+
+        try
+        {
+            cipher.seekTo(-1);
+            fail("negative block index not detected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            new SICBlockCipher(new AESFastEngine()).seekTo(0);
+            fail("seekTo() before init() not detected");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    private void checkBadLengths()
+    {
+        AESFastEngine engine = new AESFastEngine();
+
+        engine.init(true, new KeyParameter(new byte[16]));
+
+        try
+        {
+            engine.processBlocks(new byte[31], 0, 2, new byte[32], 0);
+            fail("short input not detected");
+        }
+        catch (DataLengthException e)
+        {
+            // expected
+        }
+
+        try
+        {
+            engine.processBlocks(new byte[32], 0, 2, new byte[32], 1);
+            fail("short output not detected");
+        }
+        catch (DataLengthException e)
+        {
+            // expected
+        }
+
+        // a block count whose length in bytes overflows an int
+        MultiBlockCipher[] ciphers = { engine, new SICBlockCipher(new AESFastEngine()) };
+
+        ciphers[1].init(true, new ParametersWithIV(new KeyParameter(new byte[16]), new byte[16]));
+
+        for (int i = 0; i != ciphers.length; i++)
+        {
+            try
+            {
+                ciphers[i].processBlocks(new byte[32], 0, (Integer.MAX_VALUE >> 4) + 2, new byte[32], 0);
+                fail("overflowing block count not detected");
+            }
+            catch (DataLengthException e)
+            {
+                // expected
+            }
+        }
+
+        try
+        {
+            new AESFastEngine().processBlocks(new byte[32], 0, 2, new byte[32], 0);
+            fail("uninitialised cipher not detected");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    private byte[] randomBytes(int len)
+    {
+        byte[] bytes = new byte[len];
+
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+
+    private static byte[] copy(byte[] buf, int off, int len)
+    {
+        byte[] res = new byte[len];
+
+        System.arraycopy(buf, off, res, 0, len);
+
+        return res;
+    }
+
+    public static void main(
+        String[]    args)
+    {
+        runTest(new MultiBlockCipherTest());
+    }
+}
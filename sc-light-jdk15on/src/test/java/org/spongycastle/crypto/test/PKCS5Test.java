@@ -1,6 +1,8 @@
 package org.spongycastle.crypto.test;
 
 import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.spongycastle.asn1.ASN1InputStream;
 import org.spongycastle.asn1.ASN1OctetString;
@@ -14,6 +16,7 @@ import org.spongycastle.asn1.pkcs.RC2CBCParameter;
 import org.spongycastle.crypto.BufferedBlockCipher;
 import org.spongycastle.crypto.CipherParameters;
 import org.spongycastle.crypto.PBEParametersGenerator;
+import org.spongycastle.crypto.digests.SHA1Digest;
 import org.spongycastle.crypto.engines.DESEngine;
 import org.spongycastle.crypto.engines.DESedeEngine;
 import org.spongycastle.crypto.engines.RC2Engine;
@@ -249,6 +252,43 @@ public class PKCS5Test
         {
             fail("192 test failed");
         }
+
+        //
+        // the same, computing the two blocks concurrently
+        //
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try
+        {
+            generator = new PKCS5S2ParametersGenerator(new SHA1Digest(), executor);
+
+            generator.init(
+                    PBEParametersGenerator.PKCS5PasswordToBytes(password),
+                    salt,
+                    500);
+
+            if (!areEqual(((KeyParameter)generator.generateDerivedParameters(192)).getKey(), Hex.decode("6a8970bf68c92caea84a8df28510858607126380cc47ab2d")))
+            {
+                fail("parallel 192 test failed");
+            }
+
+            // an interrupt does not abandon the blocks, it is restored once they are done
+            Thread.currentThread().interrupt();
+
+            byte[] key = ((KeyParameter)generator.generateDerivedParameters(192)).getKey();
+
+            if (!Thread.interrupted())
+            {
+                fail("interrupt not restored");
+            }
+            if (!areEqual(key, Hex.decode("6a8970bf68c92caea84a8df28510858607126380cc47ab2d")))
+            {
+                fail("interrupted parallel 192 test failed");
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
     }
 
     public static void main(
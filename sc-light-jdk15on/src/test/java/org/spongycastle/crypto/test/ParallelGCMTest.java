@@ -0,0 +1,173 @@
+package org.spongycastle.crypto.test;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.spongycastle.crypto.BlockCipher;
+import org.spongycastle.crypto.InvalidCipherTextException;
+import org.spongycastle.crypto.engines.AESFastEngine;
+import org.spongycastle.crypto.modes.AEADBlockCipher;
+import org.spongycastle.crypto.modes.GCMBlockCipher;
+import org.spongycastle.crypto.modes.ParallelGCMBlockCipher;
+import org.spongycastle.crypto.params.AEADParameters;
+import org.spongycastle.crypto.params.KeyParameter;
+import org.spongycastle.util.Arrays;
+import org.spongycastle.util.test.SimpleTest;
+
+/**
+ * check the parallel GCM implementation gives the same results as the
+ * serial one.
+ */
+public class ParallelGCMTest
+    extends SimpleTest
+{
+    private static final int[] LENGTHS = { 0, 1, 15, 16, 17, 1000, 16 * 1024, 16 * 1024 + 7, 100000, 250003 };
+
+    private SecureRandom random = new SecureRandom();
+
+    public String getName()
+    {
+        return "ParallelGCM";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try
+        {
+            for (int i = 0; i != LENGTHS.length; i++)
+            {
+                checkLength(executor, LENGTHS[i], 12, 0, 128);
+                checkLength(executor, LENGTHS[i], 8, 20, 96);
+                checkLength(executor, LENGTHS[i], 60, 33, 112);
+            }
+
+            checkFailure(executor);
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private void checkLength(ExecutorService executor, int len, int nonceLen, int aadLen, int macSize)
+        throws InvalidCipherTextException
+    {
+        AEADParameters params = new AEADParameters(new KeyParameter(randomBytes(16)), macSize, randomBytes(nonceLen), randomBytes(aadLen));
+
+        checkParams(executor, len, params);
+    }
+
+    private void checkParams(ExecutorService executor, int len, AEADParameters params)
+        throws InvalidCipherTextException
+    {
+        byte[] msg = randomBytes(len);
+
+        GCMBlockCipher serial = new GCMBlockCipher(new AESFastEngine());
+        ParallelGCMBlockCipher parallel = new ParallelGCMBlockCipher(new BlockCipher[] {
+            new AESFastEngine(), new AESFastEngine(), new AESFastEngine() }, executor);
+
+        byte[] expected = process(serial, true, params, msg, msg.length);
+        byte[] enc = process(parallel, true, params, msg, 333);
+
+        if (!Arrays.areEqual(expected, enc))
+        {
+            fail("encryption mismatch for length " + len);
+        }
+        if (!Arrays.areEqual(serial.getMac(), parallel.getMac()))
+        {
+            fail("mac mismatch for length " + len);
+        }
+
+        byte[] dec = process(parallel, false, params, enc, 4096);
+
+        if (!Arrays.areEqual(msg, dec))
+        {
+            fail("decryption mismatch for length " + len);
+        }
+
+        enc[random.nextInt(enc.length)] ^= 1;
+
+        try
+        {
+            process(parallel, false, params, enc, enc.length);
+            fail("corrupted message not detected for length " + len);
+        }
+        catch (InvalidCipherTextException e)
+        {
+            // expected
+        }
+    }
+
+    private void checkFailure(ExecutorService executor)
+        throws InvalidCipherTextException
+    {
+        final RuntimeException failure = new RuntimeException("engine failed");
+
+        BlockCipher failing = new AESFastEngine()
+        {
+            public int processBlock(byte[] in, int inOff, byte[] out, int outOff)
+            {
+                throw failure;
+            }
+        };
+
+        ParallelGCMBlockCipher parallel = new ParallelGCMBlockCipher(new BlockCipher[] {
+            new AESFastEngine(), failing }, executor);
+
+        try
+        {
+            process(parallel, true, new AEADParameters(new KeyParameter(randomBytes(16)), 128, randomBytes(12), null),
+                randomBytes(100000), 100000);
+            fail("chunk failure not reported");
+        }
+        catch (IllegalStateException e)
+        {
+            if (e.getCause() != failure)
+            {
+                fail("chunk failure cause not kept");
+            }
+        }
+    }
+
+    private byte[] process(AEADBlockCipher cipher, boolean forEncryption, AEADParameters params, byte[] in, int step)
+        throws InvalidCipherTextException
+    {
+        cipher.init(forEncryption, params);
+
+        byte[] out = new byte[cipher.getOutputSize(in.length)];
+        int outLen = 0;
+
+        for (int off = 0; off < in.length; off += step)
+        {
+            outLen += cipher.processBytes(in, off, Math.min(step, in.length - off), out, outLen);
+        }
+
+        outLen += cipher.doFinal(out, outLen);
+
+        if (outLen != out.length)
+        {
+            fail(cipher.getAlgorithmName() + " output length wrong");
+        }
+
+        return out;
+    }
+
+    private byte[] randomBytes(int len)
+    {
+        byte[] bytes = new byte[len];
+
+        random.nextBytes(bytes);
+
+        return bytes;
+    }
+
+    public static void main(
+        String[]    args)
+    {
+        runTest(new ParallelGCMTest());
+    }
+}
@@ -23,6 +23,8 @@ public class RegressionTest
         new ECGOST3410Test(),
         new ECIESTest(),
         new ECNRTest(),
+        new BatchVerifierTest(),
+        new MultiBlockCipherTest(),
         new MacTest(),
         new GOST28147MacTest(),
         new RC2Test(),
@@ -92,6 +94,7 @@ public class RegressionTest
         new CMacTest(),
         new EAXTest(),
         new GCMTest(),
+        new ParallelGCMTest(),
         new HCFamilyTest(),
         new HCFamilyVecTest(),
         new ISAACTest(),
@@ -2,6 +2,12 @@ package org.spongycastle.crypto.test;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.spongycastle.crypto.generators.SCrypt;
 import org.spongycastle.util.Strings;
@@ -23,6 +29,8 @@ public class SCryptTest extends SimpleTest
 
     public void performTest() throws Exception
     {
+        testParallel();
+
         BufferedReader br = new BufferedReader(new FileReader(getDataHome() + "/TestVectors.txt"));
 
         int count = 0;
@@ -73,6 +81,76 @@ public class SCryptTest extends SimpleTest
         br.close();
     }
 
+    private void testParallel()
+    {
+        byte[] P = Strings.toByteArray("password");
+        byte[] S = Strings.toByteArray("NaCl");
+        byte[] expected = Hex.decode("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+            + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+
+        if (!areEqual(expected, SCrypt.generate(P, S, 1024, 8, 16, 64)))
+        {
+            fail("Result does not match expected value in sequential test");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try
+        {
+            if (!areEqual(expected, SCrypt.generate(P, S, 1024, 8, 16, 64, executor)))
+            {
+                fail("Result does not match expected value in parallel test");
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        // an interrupted caller still waits for the running lane, then sees the interrupt
+        executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Thread.currentThread().interrupt();
+
+            SCrypt.generate(P, S, 16384, 8, 2, 64, executor);
+
+            fail("interrupt ignored");
+        }
+        catch (IllegalStateException e)
+        {
+            if (!(e.getCause() instanceof InterruptedException))
+            {
+                fail("interrupt not chained");
+            }
+            if (!Thread.interrupted())
+            {
+                fail("interrupt not restored");
+            }
+        }
+        finally
+        {
+            Thread.interrupted();
+            executor.shutdown();
+        }
+
+        // a rejected lane is reported to the caller
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue(1));
+        try
+        {
+            SCrypt.generate(P, S, 1024, 8, 16, 64, pool);
+
+            fail("rejected lane ignored");
+        }
+        catch (RejectedExecutionException e)
+        {
+            // expected
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
     private static boolean isEndData(String line)
     {
         return line == null || line.startsWith("scrypt");
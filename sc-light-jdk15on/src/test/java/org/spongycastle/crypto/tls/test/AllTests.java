@@ -17,6 +17,9 @@ public class AllTests
         TestSuite suite = new TestSuite("TLS tests");
         
         suite.addTest(BasicTlsTest.suite());
+        suite.addTest(ByteQueueTest.suite());
+        suite.addTest(TlsEngineTest.suite());
+        suite.addTest(TlsServerTest.suite());
         
         return suite;
     }
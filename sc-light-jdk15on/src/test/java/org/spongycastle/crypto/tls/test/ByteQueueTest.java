@@ -0,0 +1,90 @@
+package org.spongycastle.crypto.tls.test;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.spongycastle.crypto.tls.ByteQueue;
+import org.spongycastle.crypto.tls.TlsRuntimeException;
+import org.spongycastle.util.Arrays;
+
+public class ByteQueueTest
+    extends TestCase
+{
+    public void testWrapAround()
+    {
+        ByteQueue queue = new ByteQueue(16);
+
+        byte[] data = new byte[12];
+        byte[] out = new byte[12];
+
+        for (int i = 0; i != 10; i++)
+        {
+            Arrays.fill(data, (byte)i);
+            queue.addData(data, 0, data.length);
+            assertEquals(i, queue.peek(11));
+
+            queue.removeData(out, 0, out.length);
+            assertTrue(Arrays.areEqual(data, out));
+            assertEquals(0, queue.size());
+        }
+
+        // leave the start of the queue near the end of the buffer
+        queue.addData(data, 0, 10);
+        queue.removeData(8);
+        queue.addData(data, 0, 10);
+        queue.addData(new byte[]{ 1, 2, 3, 4 }, 0, 4);
+        assertEquals(16, queue.size());
+
+        byte[] tail = new byte[6];
+        queue.read(tail, 0, 6, 10);
+        assertTrue(Arrays.areEqual(new byte[]{ 9, 9, 1, 2, 3, 4 }, tail));
+    }
+
+    public void testGrowth()
+    {
+        ByteQueue queue = new ByteQueue(4);
+
+        byte[] data = new byte[1000];
+        for (int i = 0; i != data.length; i++)
+        {
+            data[i] = (byte)i;
+        }
+
+        queue.addData(data, 0, 3);
+        queue.removeData(2);
+        queue.addData(data, 3, data.length - 3);
+        assertEquals(data.length - 2, queue.size());
+
+        byte[] out = new byte[data.length - 2];
+        queue.removeData(out, 0, out.length);
+        assertTrue(Arrays.areEqual(Arrays.copyOfRange(data, 2, data.length), out));
+    }
+
+    public void testLimit()
+    {
+        ByteQueue queue = new ByteQueue(4, 8);
+
+        assertTrue(queue.hasRoomFor(8));
+        assertFalse(queue.hasRoomFor(9));
+
+        queue.addData(new byte[8], 0, 8);
+        assertFalse(queue.hasRoomFor(1));
+        try
+        {
+            queue.addData(new byte[1], 0, 1);
+            fail("limit not enforced");
+        }
+        catch (TlsRuntimeException e)
+        {
+            // expected
+        }
+
+        queue.removeData(1);
+        queue.addData(new byte[1], 0, 1);
+        assertEquals(8, queue.size());
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(ByteQueueTest.class);
+    }
+}
@@ -0,0 +1,380 @@
+package org.spongycastle.crypto.tls.test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.Security;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLSession;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.spongycastle.crypto.tls.AlwaysValidVerifyer;
+import org.spongycastle.crypto.tls.DefaultTlsClient;
+import org.spongycastle.crypto.tls.DefaultTlsSessionCache;
+import org.spongycastle.crypto.tls.LegacyTlsAuthentication;
+import org.spongycastle.crypto.tls.LegacyTlsClient;
+import org.spongycastle.crypto.tls.TlsAuthentication;
+import org.spongycastle.crypto.tls.TlsClient;
+import org.spongycastle.crypto.tls.TlsEngine;
+import org.spongycastle.crypto.tls.TlsKeyExchange;
+import org.spongycastle.crypto.tls.TlsSession;
+import org.spongycastle.crypto.tls.TlsSessionCache;
+import org.spongycastle.util.Arrays;
+
+/**
+ * Run a TlsEngine against the JSSE SSLEngine, passing the data between them
+ * in memory.
+ */
+public class TlsEngineTest
+    extends TestCase
+{
+    static
+    {
+        // recent JDKs disable TLS 1.0 by default
+        Security.setProperty("jdk.tls.disabledAlgorithms", "");
+    }
+
+    private static final int MAX_STEPS = 1000;
+
+    private static final String PEER = "localhost:443";
+
+    private ByteBuffer toServer;
+    private ByteBuffer toClient;
+    private ByteBuffer clientApp;
+    private ByteBuffer serverApp;
+
+    public void testHandshakeAndData()
+        throws Exception
+    {
+        runConnection(false, false);
+    }
+
+    public void testDelegatedTasks()
+        throws Exception
+    {
+        runConnection(true, false);
+    }
+
+    public void testSingleByteInput()
+        throws Exception
+    {
+        runConnection(false, true);
+    }
+
+    public void testCloseDuringTask()
+        throws Exception
+    {
+        toServer = ByteBuffer.allocate(1 << 17);
+        toClient = ByteBuffer.allocate(1 << 17);
+        clientApp = ByteBuffer.allocate(1 << 17);
+        serverApp = ByteBuffer.allocate(1 << 17);
+
+        SSLEngine server = new HTTPSServerThread().createSSLContext().createSSLEngine();
+        server.setUseClientMode(false);
+        server.setEnabledProtocols(new String[]{ "TLSv1" });
+
+        TlsEngine client = new TlsEngine(new LegacyTlsClient(new AlwaysValidVerifyer()), new SecureRandom());
+        client.setUseDelegatedTasks(true);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int i = 0; client.getHandshakeStatus() != TlsEngine.NEED_TASK; i++)
+        {
+            assertTrue("no delegated task", i < MAX_STEPS);
+
+            step(client, server, ByteBuffer.allocate(0), ByteBuffer.allocate(0), false);
+        }
+
+        Runnable task = client.getDelegatedTask();
+
+        // the close waits for the task, which still has the connection
+        client.closeOutbound();
+
+        assertEquals(TlsEngine.NEED_TASK, client.getHandshakeStatus());
+        assertFalse(client.isOutboundDone());
+        assertEquals(0, client.wrap(ByteBuffer.allocate(0), toServer));
+
+        task.run();
+
+        assertEquals(TlsEngine.NEED_WRAP, client.getHandshakeStatus());
+
+        client.wrap(ByteBuffer.allocate(0), toServer);
+
+        assertTrue(client.isOutboundDone());
+    }
+
+    public void testTLSv12()
+        throws Exception
+    {
+        SSLSession session = runConnection(new HTTPSServerThread().createSSLContext(),
+            new LegacyTlsClient(new AlwaysValidVerifyer()), "TLSv1.2", false, false);
+
+        assertEquals("TLSv1.2", session.getProtocol());
+        assertEquals("TLS_DHE_RSA_WITH_AES_256_GCM_SHA384", session.getCipherSuite());
+    }
+
+    public void testSessionResumption()
+        throws Exception
+    {
+        SSLContext serverContext = new HTTPSServerThread().createSSLContext();
+        TlsSessionCache cache = new DefaultTlsSessionCache(10, 60 * 1000);
+
+        CountingTlsClient first = new CountingTlsClient(cache);
+        runConnection(serverContext, first, false, false);
+
+        TlsSession session = cache.getSession(PEER);
+        assertNotNull(session);
+        assertTrue(session.isResumable());
+        assertEquals(1, first.keyExchanges);
+
+        CountingTlsClient second = new CountingTlsClient(cache);
+        runConnection(serverContext, second, false, false);
+
+        assertEquals(0, second.keyExchanges);
+        assertEquals(session.getCreationTime(), cache.getSession(PEER).getCreationTime());
+
+        // a server which has not seen the session forces a full handshake
+        CountingTlsClient third = new CountingTlsClient(cache);
+        runConnection(new HTTPSServerThread().createSSLContext(), third, false, false);
+
+        assertEquals(1, third.keyExchanges);
+        assertTrue(session.getCreationTime() <= cache.getSession(PEER).getCreationTime());
+    }
+
+    public void testSessionCacheEviction()
+        throws Exception
+    {
+        TlsSessionCache source = new DefaultTlsSessionCache(1, 60 * 1000);
+        runConnection(new HTTPSServerThread().createSSLContext(), new CountingTlsClient(source), false, false);
+
+        TlsSession session = source.getSession(PEER);
+
+        DefaultTlsSessionCache bounded = new DefaultTlsSessionCache(2, 60 * 1000);
+        bounded.putSession("a", session);
+        bounded.putSession("b", session);
+        bounded.getSession("a");
+        bounded.putSession("c", session);
+
+        assertEquals(2, bounded.size());
+        assertNotNull(bounded.getSession("a"));
+        assertNull(bounded.getSession("b"));
+        assertNotNull(bounded.getSession("c"));
+
+        bounded.removeSession("a");
+        assertNull(bounded.getSession("a"));
+
+        DefaultTlsSessionCache shortLived = new DefaultTlsSessionCache(2, 1);
+        shortLived.putSession("a", session);
+        Thread.sleep(10);
+
+        assertNull(shortLived.getSession("a"));
+        assertEquals(0, shortLived.size());
+    }
+
+    private void runConnection(boolean delegate, boolean singleBytes)
+        throws Exception
+    {
+        runConnection(new HTTPSServerThread().createSSLContext(),
+            new LegacyTlsClient(new AlwaysValidVerifyer()), delegate, singleBytes);
+    }
+
+    private void runConnection(SSLContext serverContext, TlsClient tlsClient, boolean delegate, boolean singleBytes)
+        throws Exception
+    {
+        runConnection(serverContext, tlsClient, "TLSv1", delegate, singleBytes);
+    }
+
+    private SSLSession runConnection(SSLContext serverContext, TlsClient tlsClient, String protocol,
+        boolean delegate, boolean singleBytes)
+        throws Exception
+    {
+        toServer = ByteBuffer.allocate(1 << 17);
+        toClient = ByteBuffer.allocate(1 << 17);
+        clientApp = ByteBuffer.allocate(1 << 17);
+        serverApp = ByteBuffer.allocate(1 << 17);
+
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setEnabledProtocols(new String[]{ protocol });
+
+        TlsEngine client = new TlsEngine(tlsClient, new SecureRandom());
+        client.setUseDelegatedTasks(delegate);
+
+        assertEquals(TlsEngine.NOT_HANDSHAKING, client.getHandshakeStatus());
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        assertEquals(TlsEngine.NEED_WRAP, client.getHandshakeStatus());
+
+        boolean sawTask = false;
+
+        for (int i = 0; !client.isHandshakeComplete() || client.getHandshakeStatus() != TlsEngine.NOT_HANDSHAKING; i++)
+        {
+            assertTrue("handshake did not complete", i < MAX_STEPS);
+
+            if (client.getHandshakeStatus() == TlsEngine.NEED_TASK)
+            {
+                sawTask = true;
+
+                Runnable task = client.getDelegatedTask();
+
+                // a task is only handed out once
+                assertNotNull(task);
+                assertNull(client.getDelegatedTask());
+                assertFalse(client.isHandshakeComplete());
+
+                task.run();
+            }
+
+            step(client, server, ByteBuffer.allocate(0), ByteBuffer.allocate(0), singleBytes);
+        }
+
+        assertEquals(delegate, sawTask);
+
+        byte[] request = new byte[40000];
+        new SecureRandom().nextBytes(request);
+
+        byte[] response = "HTTP/1.1 200 OK\r\n\r\nHello World!".getBytes();
+
+        ByteBuffer requestBuf = ByteBuffer.wrap(request);
+        ByteBuffer responseBuf = ByteBuffer.wrap(response);
+
+        for (int i = 0; serverApp.position() < request.length || clientApp.position() < response.length; i++)
+        {
+            assertTrue("data was not delivered", i < MAX_STEPS);
+
+            step(client, server, requestBuf, responseBuf, singleBytes);
+        }
+
+        assertTrue(Arrays.areEqual(request, contents(serverApp)));
+        assertTrue(Arrays.areEqual(response, contents(clientApp)));
+
+        client.closeOutbound();
+
+        assertEquals(TlsEngine.NEED_WRAP, client.getHandshakeStatus());
+        assertFalse(client.isOutboundDone());
+
+        step(client, server, requestBuf, responseBuf, singleBytes);
+
+        assertTrue(client.isOutboundDone());
+        assertTrue(server.isInboundDone());
+
+        return server.getSession();
+    }
+
+    /**
+     * Move whatever each side has to send across to the other.
+     */
+    private void step(TlsEngine client, SSLEngine server, ByteBuffer clientOut, ByteBuffer serverOut, boolean singleBytes)
+        throws Exception
+    {
+        client.wrap(clientOut, toServer);
+
+        toServer.flip();
+        for (;;)
+        {
+            SSLEngineResult result = server.unwrap(toServer, serverApp);
+            runServerTasks(server);
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0)
+            {
+                break;
+            }
+        }
+        toServer.compact();
+
+        for (;;)
+        {
+            SSLEngineResult result = server.wrap(serverOut, toClient);
+            runServerTasks(server);
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesProduced() == 0)
+            {
+                break;
+            }
+        }
+
+        toClient.flip();
+        if (singleBytes)
+        {
+            while (toClient.hasRemaining())
+            {
+                ByteBuffer one = ByteBuffer.allocate(1);
+                one.put(toClient.get());
+                one.flip();
+                client.unwrap(one, clientApp);
+
+                Runnable task = client.getDelegatedTask();
+                if (task != null)
+                {
+                    task.run();
+                    client.unwrap(ByteBuffer.allocate(0), clientApp);
+                }
+            }
+        }
+        else
+        {
+            client.unwrap(toClient, clientApp);
+        }
+        toClient.compact();
+    }
+
+    private static void runServerTasks(SSLEngine server)
+    {
+        Runnable task;
+        while ((task = server.getDelegatedTask()) != null)
+        {
+            task.run();
+        }
+    }
+
+    private static byte[] contents(ByteBuffer buf)
+    {
+        byte[] data = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * A client keeping its sessions in a cache, which counts the full
+     * handshakes it does.
+     */
+    private static class CountingTlsClient
+        extends DefaultTlsClient
+    {
+        int keyExchanges = 0;
+
+        CountingTlsClient(TlsSessionCache cache)
+        {
+            setSessionCache(cache, PEER);
+        }
+
+        public TlsKeyExchange getKeyExchange()
+            throws IOException
+        {
+            keyExchanges++;
+            return super.getKeyExchange();
+        }
+
+        public TlsAuthentication getAuthentication()
+            throws IOException
+        {
+            return new LegacyTlsAuthentication(new AlwaysValidVerifyer());
+        }
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(TlsEngineTest.class);
+    }
+
+    public static void main (String[] args)
+        throws Exception
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,848 @@
+package org.spongycastle.crypto.tls.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.util.Hashtable;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.spongycastle.asn1.x509.X509CertificateStructure;
+import org.spongycastle.crypto.params.AsymmetricKeyParameter;
+import org.spongycastle.crypto.params.RSAPrivateCrtKeyParameters;
+import org.spongycastle.crypto.tls.AlertDescription;
+import org.spongycastle.crypto.tls.AlertLevel;
+import org.spongycastle.crypto.tls.AlwaysValidVerifyer;
+import org.spongycastle.crypto.tls.Certificate;
+import org.spongycastle.crypto.tls.CipherSuite;
+import org.spongycastle.crypto.tls.ContentType;
+import org.spongycastle.crypto.tls.DefaultTlsClient;
+import org.spongycastle.crypto.tls.DefaultTlsEncryptionCredentials;
+import org.spongycastle.crypto.tls.DefaultTlsServer;
+import org.spongycastle.crypto.tls.DefaultTlsSessionCache;
+import org.spongycastle.crypto.tls.DefaultTlsSignerCredentials;
+import org.spongycastle.crypto.tls.ExtensionType;
+import org.spongycastle.crypto.tls.HandshakeType;
+import org.spongycastle.crypto.tls.LegacyTlsAuthentication;
+import org.spongycastle.crypto.tls.ProtocolVersion;
+import org.spongycastle.crypto.tls.SecurityParameters;
+import org.spongycastle.crypto.tls.TlsAuthentication;
+import org.spongycastle.crypto.tls.TlsClientContext;
+import org.spongycastle.crypto.tls.TlsEncryptionCredentials;
+import org.spongycastle.crypto.tls.TlsEngine;
+import org.spongycastle.crypto.tls.TlsProtocolHandler;
+import org.spongycastle.crypto.tls.TlsRSAUtils;
+import org.spongycastle.crypto.tls.TlsServerKeyExchange;
+import org.spongycastle.crypto.tls.TlsServerProtocolHandler;
+import org.spongycastle.crypto.tls.TlsSessionCache;
+import org.spongycastle.crypto.tls.TlsSignerCredentials;
+import org.spongycastle.util.Arrays;
+import org.spongycastle.util.encoders.Hex;
+import org.spongycastle.util.io.Streams;
+
+/**
+ * Run a TlsEngine acting as a server against the JSSE SSLEngine, and against
+ * a TlsEngine acting as a client, passing the data between them in memory.
+ * Buffered output is checked with the blocking handlers over pipes.
+ */
+public class TlsServerTest
+    extends TestCase
+{
+    static
+    {
+        // recent JDKs disable TLS 1.0 by default
+        Security.setProperty("jdk.tls.disabledAlgorithms", "");
+    }
+
+    private static final int MAX_STEPS = 1000;
+
+    private static final char[] SERVER_PASSWORD = "serverPassword".toCharArray();
+
+    private static Certificate serverCertificate;
+    private static AsymmetricKeyParameter serverPrivateKey;
+
+    private ByteBuffer toServer;
+    private ByteBuffer toClient;
+    private ByteBuffer clientApp;
+    private ByteBuffer serverApp;
+
+    public void testDHEKeyExchange()
+        throws Exception
+    {
+        CountingTlsServer tlsServer = new CountingTlsServer(null);
+        runConnection(createClientContext(), "TLS_DHE_RSA_WITH_AES_128_CBC_SHA", tlsServer, false);
+
+        assertEquals(1, tlsServer.keyExchanges);
+    }
+
+    public void testRSAKeyExchange()
+        throws Exception
+    {
+        CountingTlsServer tlsServer = new CountingTlsServer(null);
+        runConnection(createClientContext(), "TLS_RSA_WITH_AES_256_CBC_SHA", tlsServer, false);
+
+        assertEquals(1, tlsServer.keyExchanges);
+    }
+
+    public void testTLSv12()
+        throws Exception
+    {
+        runConnection(createClientContext(), "TLSv1.2", "TLS_DHE_RSA_WITH_AES_256_GCM_SHA384",
+            new CountingTlsServer(null), false);
+        runConnection(createClientContext(), "TLSv1.2", "TLS_RSA_WITH_AES_128_GCM_SHA256",
+            new CountingTlsServer(null), true);
+        runConnection(createClientContext(), "TLSv1.2", "TLS_DHE_RSA_WITH_AES_128_CBC_SHA",
+            new CountingTlsServer(null), false);
+    }
+
+    public void testLegacySignerCredentials()
+        throws Exception
+    {
+        CountingTlsServer tlsServer = new LegacySignerTlsServer();
+        runConnection(createClientContext(), "TLS_DHE_RSA_WITH_AES_128_CBC_SHA", tlsServer, false);
+
+        assertEquals(1, tlsServer.keyExchanges);
+    }
+
+    public void testDelegatedTasks()
+        throws Exception
+    {
+        runConnection(createClientContext(), "TLS_DHE_RSA_WITH_AES_256_CBC_SHA", new CountingTlsServer(null), true);
+        runConnection(createClientContext(), "SSL_RSA_WITH_3DES_EDE_CBC_SHA", new CountingTlsServer(null), true);
+    }
+
+    public void testSessionResumption()
+        throws Exception
+    {
+        SSLContext clientContext = createClientContext();
+        TlsSessionCache cache = new DefaultTlsSessionCache(10, 60 * 1000);
+
+        CountingTlsServer first = new CountingTlsServer(cache);
+        byte[] firstID = runConnection(clientContext, "TLS_RSA_WITH_AES_128_CBC_SHA", first, false);
+
+        assertEquals(1, first.keyExchanges);
+        assertNotNull(cache.getSession(new String(Hex.encode(firstID))));
+
+        CountingTlsServer second = new CountingTlsServer(cache);
+        byte[] secondID = runConnection(clientContext, "TLS_RSA_WITH_AES_128_CBC_SHA", second, true);
+
+        assertEquals(0, second.keyExchanges);
+        assertTrue(Arrays.areEqual(firstID, secondID));
+
+        // a server which has not seen the session forces a full handshake
+        CountingTlsServer third = new CountingTlsServer(new DefaultTlsSessionCache(10, 60 * 1000));
+        byte[] thirdID = runConnection(clientContext, "TLS_RSA_WITH_AES_128_CBC_SHA", third, false);
+
+        assertEquals(1, third.keyExchanges);
+        assertFalse(Arrays.areEqual(firstID, thirdID));
+    }
+
+    public void testOwnClient()
+        throws Exception
+    {
+        TlsSessionCache clientCache = new DefaultTlsSessionCache(10, 60 * 1000);
+        TlsSessionCache serverCache = new DefaultTlsSessionCache(10, 60 * 1000);
+
+        CountingTlsServer first = new CountingTlsServer(serverCache);
+        runConnection(new ResumingTlsClient(clientCache), first);
+
+        assertEquals(1, first.keyExchanges);
+        assertTrue(clientCache.getSession("server").isExtendedMasterSecret());
+        assertEquals(ProtocolVersion.TLSv12, clientCache.getSession("server").getServerVersion());
+        assertEquals(CipherSuite.TLS_DHE_RSA_WITH_AES_256_GCM_SHA384, clientCache.getSession("server").getCipherSuite());
+
+        CountingTlsServer second = new CountingTlsServer(serverCache);
+        runConnection(new ResumingTlsClient(clientCache), second);
+
+        assertEquals(0, second.keyExchanges);
+    }
+
+    public void testExtendedMasterSecretRequiredForResumption()
+        throws Exception
+    {
+        TlsSessionCache clientCache = new DefaultTlsSessionCache(10, 60 * 1000);
+        TlsSessionCache serverCache = new DefaultTlsSessionCache(10, 60 * 1000);
+
+        runConnection(new ResumingTlsClient(clientCache), new CountingTlsServer(serverCache));
+
+        assertTrue(clientCache.getSession("server").isExtendedMasterSecret());
+
+        // RFC 7627 5.3, the session used the extension so resuming without it is refused
+        allocateBuffers();
+
+        TlsEngine client = new TlsEngine(new NoExtendedMasterSecretClient(clientCache), new SecureRandom());
+        TlsEngine server = new TlsEngine(new CountingTlsServer(serverCache), new SecureRandom());
+
+        server.beginHandshake();
+        client.beginHandshake();
+
+        client.wrap(ByteBuffer.allocate(0), toServer);
+        toServer.flip();
+
+        try
+        {
+            server.unwrap(toServer, serverApp);
+            fail("resumption without extended master secret accepted");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        server.wrap(ByteBuffer.allocate(0), toClient);
+
+        byte[] alert = contents(toClient);
+
+        assertEquals(7, alert.length);
+        assertEquals(ContentType.alert, alert[0]);
+        assertEquals(AlertLevel.fatal, alert[5]);
+        assertEquals(AlertDescription.handshake_failure, alert[6]);
+    }
+
+    public void testHandshakeMessageLimit()
+        throws Exception
+    {
+        allocateBuffers();
+
+        TlsEngine server = new TlsEngine(new CountingTlsServer(null), new SecureRandom());
+
+        server.beginHandshake();
+
+        // a client hello claiming to be 16MB long, sent a record at a time
+        byte[] record = new byte[5 + (1 << 14)];
+        record[0] = ContentType.handshake;
+        record[1] = 3;
+        record[2] = 1;
+        record[3] = (byte)(record.length - 5 >> 8);
+        record[4] = (byte)(record.length - 5);
+        record[5] = HandshakeType.client_hello;
+        record[6] = record[7] = record[8] = (byte)0xff;
+
+        try
+        {
+            for (int i = 0; i != 16; i++)
+            {
+                server.unwrap(ByteBuffer.wrap(record), serverApp);
+
+                record[5] = record[6] = record[7] = record[8] = 0;
+            }
+            fail("oversized handshake message accepted");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+
+        server.wrap(ByteBuffer.allocate(0), toClient);
+
+        byte[] alert = contents(toClient);
+
+        assertEquals(7, alert.length);
+        assertEquals(ContentType.alert, alert[0]);
+        assertEquals(AlertDescription.handshake_failure, alert[6]);
+    }
+
+    public void testUnwrapTakesOneRecord()
+        throws Exception
+    {
+        allocateBuffers();
+
+        TlsEngine server = new TlsEngine(new CountingTlsServer(null), new SecureRandom());
+
+        server.beginHandshake();
+
+        // the start of a client hello, split over two records
+        byte[] records = new byte[]{
+            ContentType.handshake, 3, 1, 0, 4, HandshakeType.client_hello, 0, 0, 100,
+            ContentType.handshake, 3, 1, 0, 4, 3, 1, 0, 0 };
+
+        ByteBuffer src = ByteBuffer.wrap(records);
+
+        server.unwrap(src, serverApp);
+        assertEquals(9, src.remaining());
+
+        server.unwrap(src, serverApp);
+        assertEquals(0, src.remaining());
+
+        // a header claiming an oversized record fails without waiting for its body
+        server = new TlsEngine(new CountingTlsServer(null), new SecureRandom());
+
+        server.beginHandshake();
+
+        try
+        {
+            server.unwrap(ByteBuffer.wrap(new byte[]{ ContentType.handshake, 3, 1, (byte)0xff, (byte)0xff }), serverApp);
+            fail("oversized record accepted");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    public void testPreMasterSecretFallback()
+        throws Exception
+    {
+        loadServerCredentials();
+
+        TlsClientContext context = new FixedVersionContext(ProtocolVersion.TLSv10);
+
+        byte[] good = new byte[48];
+        new SecureRandom().nextBytes(good);
+        good[0] = 3;
+        good[1] = 1;
+
+        assertTrue(Arrays.areEqual(good, decryptPreMasterSecret(context, good)));
+
+        byte[] badVersion = Arrays.clone(good);
+        badVersion[1] = 0;
+
+        checkFallback(decryptPreMasterSecret(context, badVersion), badVersion);
+        checkFallback(decryptPreMasterSecret(context, Arrays.copyOf(good, 47)), good);
+        checkFallback(decryptPreMasterSecret(context, Arrays.copyOf(good, 49)), good);
+        checkFallback(decryptPreMasterSecret(context, new byte[0]), good);
+
+        // a padding failure gives a random value rather than an alert
+        byte[] garbage = new byte[128];
+        new SecureRandom().nextBytes(garbage);
+        garbage[0] = 0;
+
+        byte[] secret = TlsRSAUtils.safeDecryptPreMasterSecret(context,
+            new DefaultTlsEncryptionCredentials(context, serverCertificate, serverPrivateKey), garbage);
+
+        assertEquals(48, secret.length);
+        assertEquals(3, secret[0]);
+        assertEquals(1, secret[1]);
+    }
+
+    private static byte[] decryptPreMasterSecret(TlsClientContext context, final byte[] decrypted)
+        throws IOException
+    {
+        return TlsRSAUtils.safeDecryptPreMasterSecret(context, new TlsEncryptionCredentials()
+        {
+            public Certificate getCertificate()
+            {
+                return serverCertificate;
+            }
+
+            public byte[] decryptPreMasterSecret(byte[] encryptedPreMasterSecret)
+            {
+                return Arrays.clone(decrypted);
+            }
+        }, new byte[128]);
+    }
+
+    private static void checkFallback(byte[] secret, byte[] rejected)
+    {
+        assertEquals(48, secret.length);
+        assertEquals(3, secret[0]);
+        assertEquals(1, secret[1]);
+        assertFalse(Arrays.areEqual(Arrays.copyOfRange(rejected, 2, 48), Arrays.copyOfRange(secret, 2, 48)));
+    }
+
+    public void testBufferedOutput()
+        throws Exception
+    {
+        PipedInputStream serverIn = new PipedInputStream(1 << 16);
+        PipedInputStream clientIn = new PipedInputStream(1 << 16);
+        CountingOutputStream clientOut = new CountingOutputStream(new PipedOutputStream(serverIn));
+
+        final TlsServerProtocolHandler server = new TlsServerProtocolHandler(serverIn,
+            new PipedOutputStream(clientIn), new SecureRandom());
+        final CountingTlsServer tlsServer = new CountingTlsServer(null);
+        final byte[] received = new byte[10300];
+        final Exception[] failure = new Exception[1];
+
+        Thread serverThread = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    server.accept(tlsServer);
+                    Streams.readFully(server.getInputStream(), received);
+                    server.close();
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            }
+        };
+        serverThread.start();
+
+        TlsProtocolHandler client = new TlsProtocolHandler(clientIn, clientOut, new SecureRandom());
+        client.connect(new ResumingTlsClient(null));
+        client.setOutputBuffered(true);
+
+        byte[] message = new byte[100];
+        OutputStream out = client.getOutputStream();
+
+        int writes = clientOut.writes;
+        for (int i = 0; i != 100; i++)
+        {
+            message[0] = (byte)i;
+            out.write(message);
+        }
+
+        assertEquals("data sent before flush", writes, clientOut.writes);
+        out.flush();
+        assertEquals("messages not sent as one record", writes + 1, clientOut.writes);
+
+        client.setOutputBuffered(false);
+
+        ByteBuffer[] gather = new ByteBuffer[]{ ByteBuffer.wrap(new byte[50]), ByteBuffer.allocate(0),
+            ByteBuffer.wrap(new byte[250]) };
+        assertEquals(300, client.writeApplicationData(gather, 0, gather.length));
+        assertEquals("buffers not sent as one record", writes + 2, clientOut.writes);
+
+        serverThread.join(60 * 1000);
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        for (int i = 0; i != 100; i++)
+        {
+            assertEquals((byte)i, received[i * message.length]);
+        }
+    }
+
+    /**
+     * Run a JSSE client against a TlsEngine server, returning the session ID.
+     */
+    private byte[] runConnection(SSLContext clientContext, String cipherSuite, CountingTlsServer tlsServer,
+        boolean delegate)
+        throws Exception
+    {
+        return runConnection(clientContext, "TLSv1", cipherSuite, tlsServer, delegate);
+    }
+
+    private byte[] runConnection(SSLContext clientContext, String protocol, String cipherSuite,
+        CountingTlsServer tlsServer, boolean delegate)
+        throws Exception
+    {
+        allocateBuffers();
+
+        SSLEngine client = clientContext.createSSLEngine("localhost", 443);
+        client.setUseClientMode(true);
+        client.setEnabledProtocols(new String[]{ protocol });
+        client.setEnabledCipherSuites(new String[]{ cipherSuite });
+
+        TlsEngine server = new TlsEngine(tlsServer, new SecureRandom());
+        server.setUseDelegatedTasks(delegate);
+
+        server.beginHandshake();
+        client.beginHandshake();
+
+        assertEquals(TlsEngine.NEED_UNWRAP, server.getHandshakeStatus());
+
+        boolean sawTask = false;
+
+        for (int i = 0; !server.isHandshakeComplete() || server.getHandshakeStatus() != TlsEngine.NOT_HANDSHAKING; i++)
+        {
+            assertTrue("handshake did not complete", i < MAX_STEPS);
+
+            if (server.getHandshakeStatus() == TlsEngine.NEED_TASK)
+            {
+                sawTask = true;
+                server.getDelegatedTask().run();
+            }
+
+            step(client, server, ByteBuffer.allocate(0), ByteBuffer.allocate(0));
+        }
+
+        assertEquals(delegate, sawTask);
+        assertEquals(protocol, client.getSession().getProtocol());
+        assertEquals(cipherSuite, client.getSession().getCipherSuite());
+
+        byte[] request = "GET / HTTP/1.1\r\n\r\n".getBytes();
+        byte[] response = new byte[40000];
+        new SecureRandom().nextBytes(response);
+
+        ByteBuffer requestBuf = ByteBuffer.wrap(request);
+        ByteBuffer responseBuf = ByteBuffer.wrap(response);
+
+        for (int i = 0; serverApp.position() < request.length || clientApp.position() < response.length; i++)
+        {
+            assertTrue("data was not delivered", i < MAX_STEPS);
+
+            step(client, server, requestBuf, responseBuf);
+        }
+
+        assertTrue(Arrays.areEqual(request, contents(serverApp)));
+        assertTrue(Arrays.areEqual(response, contents(clientApp)));
+
+        server.closeOutbound();
+        step(client, server, requestBuf, responseBuf);
+
+        assertTrue(server.isOutboundDone());
+        assertTrue(client.isInboundDone());
+
+        return client.getSession().getId();
+    }
+
+    /**
+     * Run a TlsEngine client against a TlsEngine server.
+     */
+    private void runConnection(DefaultTlsClient tlsClient, CountingTlsServer tlsServer)
+        throws Exception
+    {
+        allocateBuffers();
+
+        TlsEngine client = new TlsEngine(tlsClient, new SecureRandom());
+        TlsEngine server = new TlsEngine(tlsServer, new SecureRandom());
+
+        server.beginHandshake();
+        client.beginHandshake();
+
+        byte[] request = new byte[40000];
+        new SecureRandom().nextBytes(request);
+
+        ByteBuffer requestBuf = ByteBuffer.wrap(request);
+
+        for (int i = 0; serverApp.position() < request.length; i++)
+        {
+            assertTrue("data was not delivered", i < MAX_STEPS);
+
+            client.wrap(requestBuf, toServer);
+            toServer.flip();
+            server.unwrap(toServer, serverApp);
+            toServer.compact();
+
+            server.wrap(ByteBuffer.allocate(0), toClient);
+            toClient.flip();
+            client.unwrap(toClient, clientApp);
+            toClient.compact();
+        }
+
+        assertTrue(client.isHandshakeComplete());
+        assertTrue(server.isHandshakeComplete());
+        assertTrue(Arrays.areEqual(request, contents(serverApp)));
+    }
+
+    /**
+     * Move whatever each side has to send across to the other.
+     */
+    private void step(SSLEngine client, TlsEngine server, ByteBuffer clientOut, ByteBuffer serverOut)
+        throws Exception
+    {
+        for (;;)
+        {
+            SSLEngineResult result = client.wrap(clientOut, toServer);
+            runClientTasks(client);
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesProduced() == 0)
+            {
+                break;
+            }
+        }
+
+        toServer.flip();
+        server.unwrap(toServer, serverApp);
+        toServer.compact();
+
+        server.wrap(serverOut, toClient);
+
+        toClient.flip();
+        for (;;)
+        {
+            SSLEngineResult result = client.unwrap(toClient, clientApp);
+            runClientTasks(client);
+            if (result.getStatus() != SSLEngineResult.Status.OK || result.bytesConsumed() == 0)
+            {
+                break;
+            }
+        }
+        toClient.compact();
+    }
+
+    private void allocateBuffers()
+    {
+        toServer = ByteBuffer.allocate(1 << 17);
+        toClient = ByteBuffer.allocate(1 << 17);
+        clientApp = ByteBuffer.allocate(1 << 17);
+        serverApp = ByteBuffer.allocate(1 << 17);
+    }
+
+    private static void runClientTasks(SSLEngine client)
+    {
+        Runnable task;
+        while ((task = client.getDelegatedTask()) != null)
+        {
+            task.run();
+        }
+    }
+
+    private static byte[] contents(ByteBuffer buf)
+    {
+        byte[] data = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * A JSSE client context accepting any server certificate, as the test
+     * certificate has long expired.
+     */
+    private static SSLContext createClientContext()
+        throws Exception
+    {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+
+        sslContext.init(null, new TrustManager[]{ new AcceptAllTrustManager() }, null);
+
+        return sslContext;
+    }
+
+    private static synchronized void loadServerCredentials()
+        throws Exception
+    {
+        if (serverCertificate != null)
+        {
+            return;
+        }
+
+        KeyStore serverStore = KeyStore.getInstance("JKS");
+
+        serverStore.load(new ByteArrayInputStream(KeyStores.server), SERVER_PASSWORD);
+
+        String alias = (String)serverStore.aliases().nextElement();
+        X509Certificate cert = (X509Certificate)serverStore.getCertificate(alias);
+        RSAPrivateCrtKey key = (RSAPrivateCrtKey)serverStore.getKey(alias, SERVER_PASSWORD);
+
+        serverCertificate = new Certificate(new X509CertificateStructure[]{
+            X509CertificateStructure.getInstance(cert.getEncoded()) });
+        serverPrivateKey = new RSAPrivateCrtKeyParameters(key.getModulus(), key.getPublicExponent(),
+            key.getPrivateExponent(), key.getPrimeP(), key.getPrimeQ(), key.getPrimeExponentP(),
+            key.getPrimeExponentQ(), key.getCrtCoefficient());
+    }
+
+    /**
+     * A server using the test key store, which counts the full handshakes it
+     * does.
+     */
+    private static class CountingTlsServer
+        extends DefaultTlsServer
+    {
+        int keyExchanges = 0;
+
+        CountingTlsServer(TlsSessionCache cache)
+            throws Exception
+        {
+            loadServerCredentials();
+
+            if (cache != null)
+            {
+                setSessionCache(cache);
+            }
+        }
+
+        public TlsServerKeyExchange getKeyExchange()
+            throws IOException
+        {
+            keyExchanges++;
+            return super.getKeyExchange();
+        }
+
+        protected TlsEncryptionCredentials getRSAEncryptionCredentials()
+        {
+            return new DefaultTlsEncryptionCredentials(context, serverCertificate, serverPrivateKey);
+        }
+
+        protected TlsSignerCredentials getRSASignerCredentials()
+        {
+            return new DefaultTlsSignerCredentials(context, serverCertificate, serverPrivateKey);
+        }
+    }
+
+    /**
+     * A server whose signer credentials only support the MD5/SHA-1 scheme, as
+     * implementations written before TLS 1.2 do.
+     */
+    private static class LegacySignerTlsServer
+        extends CountingTlsServer
+    {
+        LegacySignerTlsServer()
+            throws Exception
+        {
+            super(null);
+        }
+
+        protected TlsSignerCredentials getRSASignerCredentials()
+        {
+            final TlsSignerCredentials creds = super.getRSASignerCredentials();
+
+            return new TlsSignerCredentials()
+            {
+                public Certificate getCertificate()
+                {
+                    return creds.getCertificate();
+                }
+
+                public byte[] generateCertificateSignature(byte[] md5andsha1)
+                    throws IOException
+                {
+                    return creds.generateCertificateSignature(md5andsha1);
+                }
+            };
+        }
+    }
+
+    /**
+     * Counts the writes made to the network, one for each record sent.
+     */
+    private static class CountingOutputStream
+        extends FilterOutputStream
+    {
+        int writes = 0;
+
+        CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        public void write(byte[] buf, int off, int len)
+            throws IOException
+        {
+            writes++;
+            out.write(buf, off, len);
+        }
+    }
+
+    private static class ResumingTlsClient
+        extends DefaultTlsClient
+    {
+        ResumingTlsClient(TlsSessionCache cache)
+        {
+            setSessionCache(cache, "server");
+        }
+
+        public TlsAuthentication getAuthentication()
+            throws IOException
+        {
+            return new LegacyTlsAuthentication(new AlwaysValidVerifyer());
+        }
+    }
+
+    private static class NoExtendedMasterSecretClient
+        extends ResumingTlsClient
+    {
+        NoExtendedMasterSecretClient(TlsSessionCache cache)
+        {
+            super(cache);
+        }
+
+        public Hashtable getClientExtensions()
+            throws IOException
+        {
+            Hashtable clientExtensions = super.getClientExtensions();
+
+            clientExtensions.remove(new Integer(ExtensionType.extended_master_secret));
+
+            return clientExtensions;
+        }
+    }
+
+    private static class FixedVersionContext
+        implements TlsClientContext
+    {
+        private final ProtocolVersion version;
+        private final SecureRandom random = new SecureRandom();
+        private Object userObject;
+
+        FixedVersionContext(ProtocolVersion version)
+        {
+            this.version = version;
+        }
+
+        public SecureRandom getSecureRandom()
+        {
+            return random;
+        }
+
+        public SecurityParameters getSecurityParameters()
+        {
+            return null;
+        }
+
+        public ProtocolVersion getClientVersion()
+        {
+            return version;
+        }
+
+        public ProtocolVersion getServerVersion()
+        {
+            return version;
+        }
+
+        public Object getUserObject()
+        {
+            return userObject;
+        }
+
+        public void setUserObject(Object userObject)
+        {
+            this.userObject = userObject;
+        }
+    }
+
+    private static class AcceptAllTrustManager
+        extends X509ExtendedTrustManager
+    {
+        public void checkClientTrusted(X509Certificate[] chain, String authType)
+        {
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType)
+        {
+        }
+
+        public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+        {
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+        {
+        }
+
+        public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+        {
+        }
+
+        public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+        {
+        }
+
+        public X509Certificate[] getAcceptedIssuers()
+        {
+            return new X509Certificate[0];
+        }
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(TlsServerTest.class);
+    }
+
+    public static void main (String[] args)
+        throws Exception
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
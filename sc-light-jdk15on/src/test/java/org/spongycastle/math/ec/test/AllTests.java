@@ -17,6 +17,7 @@ public class AllTests
         TestSuite suite = new TestSuite("EC Math tests");
 
         suite.addTest(ECPointTest.suite());
+        suite.addTest(FixedPrimeCurveTest.suite());
 
         return suite;
     }
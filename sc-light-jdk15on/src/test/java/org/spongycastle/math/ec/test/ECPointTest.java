@@ -10,9 +10,11 @@ import junit.framework.TestSuite;
 
 import org.spongycastle.asn1.sec.SECNamedCurves;
 import org.spongycastle.asn1.x9.X9ECParameters;
+import org.spongycastle.math.ec.ECAlgorithms;
 import org.spongycastle.math.ec.ECCurve;
 import org.spongycastle.math.ec.ECFieldElement;
 import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
 
 /**
  * Test class for {@link org.spongycastle.math.ec.ECPoint ECPoint}. All
@@ -444,6 +446,132 @@ public class ECPointTest extends TestCase
         }
     }
 
+    /**
+     * Checks <code>FixedPointCombMultiplier</code> against
+     * <code>ECPoint.multiply()</code> for the generators of the standard
+     * elliptic curves as given in <code>SECNamedCurves</code>, including
+     * scalars too large for the comb table.
+     */
+    public void testFixedPointCombMultiply()
+    {
+        Enumeration curveEnum = SECNamedCurves.getNames();
+        while (curveEnum.hasMoreElements())
+        {
+            String name = (String) curveEnum.nextElement();
+            X9ECParameters x9ECParameters = SECNamedCurves.getByName(name);
+
+            BigInteger n = x9ECParameters.getN();
+            ECPoint g = x9ECParameters.getG();
+
+            FixedPointCombMultiplier comb = new FixedPointCombMultiplier(g, n.bitLength());
+
+            assertEquals("comb multiply by zero is not infinity", g.getCurve().getInfinity(), comb.multiply(BigInteger.ZERO));
+            assertEquals("comb multiply by one is not g", g, comb.multiply(BigInteger.ONE));
+            assertTrue("comb multiply by n is not infinity", comb.multiply(n).isInfinity());
+            assertEquals("comb multiply by n - 1 is not -g", g.negate(), comb.multiply(n.subtract(BigInteger.ONE)));
+
+            for (int i = 0; i < 5; i++)
+            {
+                BigInteger k = new BigInteger(n.bitLength(), secRand);
+                assertEquals("comb multiply is incorrect", g.multiply(k), comb.multiply(k));
+            }
+
+            BigInteger big = new BigInteger(n.bitLength() + 10, secRand);
+            assertEquals("comb multiply is incorrect", g.multiply(big), comb.multiply(big));
+        }
+    }
+
+    /**
+     * Checks both forms of <code>ECAlgorithms.sumOfTwoMultiplies()</code>
+     * against separate multiplications for the standard elliptic curves as
+     * given in <code>SECNamedCurves</code>.
+     */
+    public void testSumOfTwoMultiplies()
+    {
+        Enumeration curveEnum = SECNamedCurves.getNames();
+        while (curveEnum.hasMoreElements())
+        {
+            String name = (String) curveEnum.nextElement();
+            X9ECParameters x9ECParameters = SECNamedCurves.getByName(name);
+
+            BigInteger n = x9ECParameters.getN();
+            ECPoint g = x9ECParameters.getG();
+            ECPoint q = g.multiply(new BigInteger(n.bitLength(), secRand));
+
+            FixedPointCombMultiplier comb = new FixedPointCombMultiplier(g, n.bitLength());
+
+            for (int i = 0; i < 3; i++)
+            {
+                BigInteger a = new BigInteger(n.bitLength(), secRand);
+                BigInteger b = new BigInteger(n.bitLength(), secRand);
+                ECPoint ref = g.multiply(a).add(q.multiply(b));
+
+                assertEquals("sumOfTwoMultiplies is incorrect", ref, ECAlgorithms.sumOfTwoMultiplies(g, a, q, b));
+                assertEquals("sumOfTwoMultiplies with comb is incorrect", ref, ECAlgorithms.sumOfTwoMultiplies(comb, a, q, b));
+            }
+
+            BigInteger a = new BigInteger(n.bitLength() - 20, secRand);
+            assertEquals("sumOfTwoMultiplies with short scalar is incorrect", g.multiply(a),
+                ECAlgorithms.sumOfTwoMultiplies(comb, a, q, BigInteger.ZERO));
+            assertEquals("sumOfTwoMultiplies with short scalar is incorrect", q.multiply(a),
+                ECAlgorithms.sumOfTwoMultiplies(g, BigInteger.ZERO, q, a));
+            assertTrue("sumOfTwoMultiplies of opposite points is not infinity",
+                ECAlgorithms.sumOfTwoMultiplies(comb, a, g.negate(), a).isInfinity());
+        }
+    }
+
+    /**
+     * Multiplies a freshly created point from several threads at once, with
+     * scalars of differing lengths so the precomputation is extended while
+     * in use, and checks every result against the reference implementation.
+     */
+    public void testMultiplyConcurrent()
+        throws Exception
+    {
+        String[] names = { "secp256r1", "sect233k1", "sect283r1" };
+
+        for (int i = 0; i < names.length; i++)
+        {
+            X9ECParameters x9ECParameters = SECNamedCurves.getByName(names[i]);
+
+            final ECPoint p = x9ECParameters.getG().multiply(new BigInteger(32, secRand));
+            final int numBits = x9ECParameters.getN().bitLength();
+            final String[] failure = new String[1];
+
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++)
+            {
+                final int bits = 8 + t * numBits / threads.length;
+
+                threads[t] = new Thread()
+                {
+                    public void run()
+                    {
+                        for (int j = 0; j < 4; j++)
+                        {
+                            BigInteger k = new BigInteger(bits, secRand);
+                            if (!multiply(p, k).equals(p.multiply(k)))
+                            {
+                                failure[0] = "concurrent multiply incorrect for k = " + k;
+                            }
+                        }
+                    }
+                };
+            }
+
+            for (int t = 0; t < threads.length; t++)
+            {
+                threads[t].start();
+            }
+            for (int t = 0; t < threads.length; t++)
+            {
+                threads[t].join();
+            }
+
+            assertNull(failure[0], failure[0]);
+        }
+    }
+
     public static Test suite()
     {
         return new TestSuite(ECPointTest.class);
@@ -0,0 +1,138 @@
+package org.spongycastle.math.ec.test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.spongycastle.asn1.sec.SECNamedCurves;
+import org.spongycastle.asn1.x9.X962NamedCurves;
+import org.spongycastle.asn1.x9.X9ECParameters;
+import org.spongycastle.math.ec.ECConstants;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.custom.sec.SecP256K1Curve;
+import org.spongycastle.math.ec.custom.sec.SecP256R1Curve;
+import org.spongycastle.math.ec.custom.sec.SecP384R1Curve;
+import org.spongycastle.math.ec.custom.sec.SecP521R1Curve;
+
+/**
+ * Compare the specialised fixed prime curves against the generic
+ * <code>ECCurve.Fp</code> arithmetic.
+ */
+public class FixedPrimeCurveTest
+    extends TestCase
+{
+    private static final String[] NAMES = { "secp256k1", "secp256r1", "secp384r1", "secp521r1" };
+
+    private SecureRandom random = new SecureRandom();
+
+    public void testNamedCurveLookup()
+    {
+        assertTrue(SECNamedCurves.getByName("secp256k1").getCurve() instanceof SecP256K1Curve);
+        assertTrue(SECNamedCurves.getByName("secp256r1").getCurve() instanceof SecP256R1Curve);
+        assertTrue(SECNamedCurves.getByName("secp384r1").getCurve() instanceof SecP384R1Curve);
+        assertTrue(SECNamedCurves.getByName("secp521r1").getCurve() instanceof SecP521R1Curve);
+        assertTrue(X962NamedCurves.getByName("prime256v1").getCurve() instanceof SecP256R1Curve);
+    }
+
+    public void testFieldArithmetic()
+    {
+        for (int i = 0; i != NAMES.length; i++)
+        {
+            ECCurve.Fp fixed = (ECCurve.Fp)SECNamedCurves.getByName(NAMES[i]).getCurve();
+            ECCurve.Fp generic = new ECCurve.Fp(fixed.getQ(), fixed.getA().toBigInteger(), fixed.getB().toBigInteger());
+
+            assertEquals(generic, fixed);
+            assertEquals(fixed, generic);
+
+            BigInteger q = fixed.getQ();
+            BigInteger[] edges = { ECConstants.ZERO, ECConstants.ONE, q.subtract(ECConstants.ONE), q.shiftRight(1) };
+
+            for (int j = 0; j != edges.length; j++)
+            {
+                for (int k = 0; k != edges.length; k++)
+                {
+                    implTestOps(fixed, generic, edges[j], edges[k]);
+                }
+            }
+
+            for (int j = 0; j != 200; j++)
+            {
+                implTestOps(fixed, generic, randomElement(q), randomElement(q));
+            }
+        }
+    }
+
+    public void testMultiply()
+    {
+        for (int i = 0; i != NAMES.length; i++)
+        {
+            X9ECParameters x9 = SECNamedCurves.getByName(NAMES[i]);
+            ECCurve.Fp fixed = (ECCurve.Fp)x9.getCurve();
+            ECCurve.Fp generic = new ECCurve.Fp(fixed.getQ(), fixed.getA().toBigInteger(), fixed.getB().toBigInteger());
+
+            ECPoint g = x9.getG();
+            ECPoint gGeneric = generic.decodePoint(g.getEncoded());
+
+            for (int j = 0; j != 10; j++)
+            {
+                BigInteger k = new BigInteger(x9.getN().bitLength(), random);
+
+                ECPoint p = g.multiply(k);
+
+                assertEquals(gGeneric.multiply(k), p);
+                assertTrue(p.add(gGeneric).equals(gGeneric.add(p)));
+            }
+
+            assertTrue(g.multiply(x9.getN()).isInfinity());
+
+            ECPoint compressed = fixed.createPoint(g.getX().toBigInteger(), g.getY().toBigInteger(), true);
+            assertEquals(g, fixed.decodePoint(compressed.getEncoded()));
+        }
+    }
+
+    private void implTestOps(ECCurve.Fp fixed, ECCurve.Fp generic, BigInteger x, BigInteger y)
+    {
+        ECFieldElement fx = fixed.fromBigInteger(x), fy = fixed.fromBigInteger(y);
+        ECFieldElement gx = generic.fromBigInteger(x), gy = generic.fromBigInteger(y);
+
+        assertEquals(gx, fx);
+        assertEquals(fx, gx);
+        assertEquals(gx.hashCode(), fx.hashCode());
+        assertEquals(x, fx.toBigInteger());
+
+        assertEquals(gx.add(gy), fx.add(fy));
+        assertEquals(gx.subtract(gy), fx.subtract(fy));
+        assertEquals(gx.multiply(gy), fx.multiply(fy));
+        assertEquals(gx.square(), fx.square());
+        assertEquals(gx.negate(), fx.negate());
+        assertEquals(gx.multiply(gy), fx.multiply(gy));
+
+        if (y.signum() != 0)
+        {
+            assertEquals(gx.divide(gy), fx.divide(fy));
+            assertEquals(gy.invert(), fy.invert());
+        }
+    }
+
+    private BigInteger randomElement(BigInteger q)
+    {
+        BigInteger x;
+        do
+        {
+            x = new BigInteger(q.bitLength(), random);
+        }
+        while (x.compareTo(q) >= 0);
+
+        return x;
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite(FixedPrimeCurveTest.class);
+    }
+}
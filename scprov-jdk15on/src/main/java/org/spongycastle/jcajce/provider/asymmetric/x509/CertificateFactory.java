@@ -3,6 +3,7 @@ package org.spongycastle.jcajce.provider.asymmetric.x509;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 import java.security.cert.CRL;
 import java.security.cert.CRLException;
 import java.security.cert.CertPath;
@@ -15,11 +16,13 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
+import org.spongycastle.asn1.ASN1BufferParser;
 import org.spongycastle.asn1.ASN1InputStream;
 import org.spongycastle.asn1.ASN1ObjectIdentifier;
 import org.spongycastle.asn1.ASN1Sequence;
 import org.spongycastle.asn1.ASN1Set;
 import org.spongycastle.asn1.ASN1TaggedObject;
+import org.spongycastle.asn1.BERTags;
 import org.spongycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.spongycastle.asn1.pkcs.SignedData;
 import org.spongycastle.asn1.x509.CertificateList;
@@ -130,7 +133,15 @@ public class CertificateFactory
         ASN1InputStream aIn)
         throws IOException, CRLException
     {
-        ASN1Sequence seq = (ASN1Sequence)aIn.readObject();
+        byte[] encoding = aIn.readEncoded();
+
+        // a plain CRL is kept in the encoding it arrived in, see X509CRLObject
+        if (!isContentInfo(encoding))
+        {
+            return new X509CRLObject(encoding);
+        }
+
+        ASN1Sequence seq = ASN1Sequence.getInstance(encoding);
 
         if (seq.size() > 1
                 && seq.getObjectAt(0) instanceof ASN1ObjectIdentifier)
@@ -148,6 +159,23 @@ public class CertificateFactory
                      CertificateList.getInstance(seq));
     }
 
+    /*
+     * A PKCS#7 CRL set starts with the content type, a plain CRL with its TBSCertList.
+     */
+    private static boolean isContentInfo(byte[] encoding)
+        throws IOException
+    {
+        ASN1BufferParser p = new ASN1BufferParser(ByteBuffer.wrap(encoding));
+
+        if (!p.next() || !p.isConstructed())
+        {
+            return false;
+        }
+        p.descend();
+
+        return p.next() && p.getTag() == BERTags.OBJECT_IDENTIFIER;
+    }
+
     private CRL getCRL()
         throws CRLException
     {
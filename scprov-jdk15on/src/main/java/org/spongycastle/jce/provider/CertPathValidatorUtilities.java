@@ -38,6 +38,7 @@ import java.util.Set;
 import javax.security.auth.x500.X500Principal;
 
 import org.spongycastle.asn1.ASN1Encodable;
+import org.spongycastle.asn1.ASN1Encoding;
 import org.spongycastle.asn1.ASN1InputStream;
 import org.spongycastle.asn1.ASN1Integer;
 import org.spongycastle.asn1.ASN1OctetString;
@@ -983,7 +984,14 @@ public class CertPathValidatorUtilities
 
         if (isIndirect)
         {
-            crl_entry = crl.getRevokedCertificate(getSerialNumber(cert));
+            if (crl instanceof X509CRLObject)
+            {
+                crl_entry = ((X509CRLObject)crl).getRevokedCertificate(getSerialNumber(cert), getEncodedIssuerPrincipal(cert));
+            }
+            else
+            {
+                crl_entry = crl.getRevokedCertificate(getSerialNumber(cert));
+            }
 
             if (crl_entry == null)
             {
@@ -1127,7 +1135,7 @@ public class CertPathValidatorUtilities
         deltaSelect.setMaxBaseCRLNumber(completeCRLNumber);
 
         // find delta CRLs
-        Set temp = CRL_UTIL.findCRLs(deltaSelect, paramsPKIX, currentDate);
+        Set temp = CRL_UTIL.findCRLs(deltaSelect, paramsPKIX, currentDate, idp);
 
         Set result = new HashSet();
 
@@ -1206,7 +1214,17 @@ public class CertPathValidatorUtilities
 
         crlselect.setCompleteCRLEnabled(true);
 
-        Set crls = CRL_UTIL.findCRLs(crlselect, paramsPKIX, currentDate);
+        byte[] distributionPoint;
+        try
+        {
+            distributionPoint = dp.getEncoded(ASN1Encoding.DER);
+        }
+        catch (IOException e)
+        {
+            throw new AnnotatedException("Cannot encode distribution point.", e);
+        }
+
+        Set crls = CRL_UTIL.findCRLs(crlselect, paramsPKIX, currentDate, distributionPoint);
 
         if (crls.isEmpty())
         {
@@ -12,6 +12,8 @@ class CertStatus
 
     Date revocationDate = null;
 
+    Date nextUpdate = null;
+
     /**
      * @return Returns the revocationDate.
      */
@@ -28,6 +30,22 @@ class CertStatus
         this.revocationDate = revocationDate;
     }
 
+    /**
+     * @return Returns the earliest nextUpdate of the CRLs the status was taken from.
+     */
+    public Date getNextUpdate()
+    {
+        return nextUpdate;
+    }
+
+    /**
+     * @param nextUpdate The nextUpdate to set.
+     */
+    public void setNextUpdate(Date nextUpdate)
+    {
+        this.nextUpdate = nextUpdate;
+    }
+
     /**
      * @return Returns the certStatus.
      */
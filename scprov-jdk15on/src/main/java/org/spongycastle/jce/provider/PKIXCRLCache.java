@@ -0,0 +1,337 @@
+package org.spongycastle.jce.provider;
+
+import java.security.cert.X509CRL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.spongycastle.util.Arrays;
+import org.spongycastle.x509.ExtendedPKIXParameters;
+import org.spongycastle.x509.X509CRLStoreSelector;
+
+/**
+ * A cache of the CRLs found in the stores during path validation, which can be
+ * shared between validations by setting it on the {@link ExtendedPKIXParameters}.
+ * <p>
+ * CRLs are cached by issuer, distribution point and the stores searched, until the
+ * earliest nextUpdate still to come of the CRLs found. CRLs with no nextUpdate, or
+ * one already passed, are kept with the others but do not shorten the entry, and
+ * when no CRL found has a nextUpdate to come nothing is cached. Stores are compared
+ * by identity, so validations only share entries when their parameters hold the
+ * same store objects. When the cache is full the least recently used entry makes
+ * way for a new one.
+ * When an executor is given, an entry is reloaded in the background once it is within
+ * the refresh margin of expiring, and validations carry on using the current entry
+ * until the reload completes. If the reload finds CRLs which are themselves already
+ * within the margin, no newer CRLs having been published, the entry is not reloaded
+ * again until it expires. Lookups do not lock.
+ * <p>
+ * Note: the CRLs in the cache are still checked against each validation's own
+ * selection criteria, and their signatures are still checked, but CRLs added to the
+ * stores will not be seen until the entry for their issuer expires or is refreshed.
+ */
+public class PKIXCRLCache
+{
+    private static final PKIXCRLUtil CRL_UTIL = new PKIXCRLUtil();
+
+    private final Map entries = new ConcurrentHashMap();
+    private final int maxEntries;
+    private final long refreshMargin;
+    private final ExecutorService executor;
+
+    /**
+     * Create a cache of up to 1024 entries with no background refresh.
+     */
+    public PKIXCRLCache()
+    {
+        this(1024, 0, null);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxEntries the most issuer and distribution point combinations to cache.
+     * @param refreshMargin how many milliseconds before an entry expires to start reloading it.
+     * @param executor the executor to reload entries on, null to reload only when expired.
+     */
+    public PKIXCRLCache(int maxEntries, long refreshMargin, ExecutorService executor)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+
+        this.maxEntries = maxEntries;
+        this.refreshMargin = refreshMargin;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the number of issuer and distribution point combinations cached.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Return the CRLs in the stores for the issuers and distribution point in a
+     * selector. The result may include CRLs the selector would not match.
+     */
+    Collection getCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, byte[] distributionPoint)
+        throws AnnotatedException
+    {
+        CacheKey key = new CacheKey(crlselect, distributionPoint, paramsPKIX);
+        Entry entry = (Entry)entries.get(key);
+        long now = System.currentTimeMillis();
+
+        if (entry == null || now >= entry.expires)
+        {
+            entry = load(key);
+        }
+        else
+        {
+            entry.lastUsed = now;
+
+            if (executor != null && now >= entry.refreshAt)
+            {
+                refresh(key, entry);
+            }
+        }
+
+        return entry.crls;
+    }
+
+    private Entry load(CacheKey key)
+        throws AnnotatedException
+    {
+        X509CRLStoreSelector select = key.createSelector();
+        Set crls = new HashSet();
+
+        crls.addAll(CRL_UTIL.findCRLs(select, key.additionalStores));
+        crls.addAll(CRL_UTIL.findCRLs(select, key.stores));
+        crls.addAll(CRL_UTIL.findCRLs(select, key.certStores));
+
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(Collections.unmodifiableSet(crls), now, refreshMargin);
+
+        if (entry.expires > now)
+        {
+            if (entries.size() >= maxEntries && !entries.containsKey(key))
+            {
+                evict(now);
+            }
+
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    private void refresh(final CacheKey key, final Entry entry)
+    {
+        if (!entry.refreshing.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        try
+        {
+            executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        load(key);
+                    }
+                    catch (AnnotatedException e)
+                    {
+                        // keep the current entry until it expires, when it is loaded again
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /*
+     * Drop expired entries, or the least recently used one if none have expired.
+     */
+    private void evict(long now)
+    {
+        Object oldestKey = null;
+        long oldest = Long.MAX_VALUE;
+
+        for (Iterator it = entries.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry e = (Map.Entry)it.next();
+            Entry entry = (Entry)e.getValue();
+
+            if (now >= entry.expires)
+            {
+                it.remove();
+            }
+            else if (entry.lastUsed < oldest)
+            {
+                oldest = entry.lastUsed;
+                oldestKey = e.getKey();
+            }
+        }
+
+        if (entries.size() >= maxEntries && oldestKey != null)
+        {
+            entries.remove(oldestKey);
+        }
+    }
+
+    private static class Entry
+    {
+        final Set crls;
+        final long expires;
+        final long refreshAt;
+        final AtomicBoolean refreshing = new AtomicBoolean(false);
+        volatile long lastUsed;
+
+        Entry(Set crls, long now, long refreshMargin)
+        {
+            this.crls = crls;
+            this.lastUsed = now;
+
+            // CRLs with no next update still to come do not decide the expiry, and on their own are not kept
+            long expires = Long.MAX_VALUE;
+
+            for (Iterator it = crls.iterator(); it.hasNext();)
+            {
+                X509CRL crl = (X509CRL)it.next();
+
+                if (crl.getNextUpdate() != null && crl.getNextUpdate().getTime() > now)
+                {
+                    expires = Math.min(expires, crl.getNextUpdate().getTime());
+                }
+            }
+
+            this.expires = (expires == Long.MAX_VALUE) ? 0 : expires;
+
+            // CRLs already within the margin have no successor yet, so wait for them to expire
+            this.refreshAt = (expires - refreshMargin > now) ? expires - refreshMargin : expires;
+        }
+    }
+
+    /*
+     * The stores searched and the parts of a selector they are searched with, the
+     * rest of the selector is applied to the cached CRLs.
+     */
+    private static class CacheKey
+    {
+        final List additionalStores;
+        final List stores;
+        final List certStores;
+        private final Set issuers;
+        private final byte[] distributionPoint;
+        private final boolean completeCRL;
+        private final boolean deltaCRL;
+        private final boolean idpEnabled;
+        private final byte[] idp;
+
+        CacheKey(X509CRLStoreSelector crlselect, byte[] distributionPoint, ExtendedPKIXParameters paramsPKIX)
+        {
+            this.additionalStores = new ArrayList(paramsPKIX.getAdditionalStores());
+            this.stores = new ArrayList(paramsPKIX.getStores());
+            this.certStores = new ArrayList(paramsPKIX.getCertStores());
+            this.issuers = new HashSet(crlselect.getIssuers());
+            this.distributionPoint = Arrays.clone(distributionPoint);
+            this.completeCRL = crlselect.isCompleteCRLEnabled();
+            this.deltaCRL = crlselect.isDeltaCRLIndicatorEnabled();
+            this.idpEnabled = crlselect.isIssuingDistributionPointEnabled();
+            this.idp = crlselect.getIssuingDistributionPoint();
+        }
+
+        X509CRLStoreSelector createSelector()
+        {
+            X509CRLStoreSelector select = new X509CRLStoreSelector();
+
+            select.setIssuers(issuers);
+            select.setCompleteCRLEnabled(completeCRL);
+            select.setDeltaCRLIndicatorEnabled(deltaCRL);
+            select.setIssuingDistributionPointEnabled(idpEnabled);
+            select.setIssuingDistributionPoint(idp);
+
+            return select;
+        }
+
+        public int hashCode()
+        {
+            return issuers.hashCode() ^ Arrays.hashCode(distributionPoint) ^ Arrays.hashCode(idp)
+                ^ (completeCRL ? 1 : 0) ^ (deltaCRL ? 2 : 0) ^ (idpEnabled ? 4 : 0)
+                ^ identityHashCode(additionalStores) ^ (identityHashCode(stores) * 31) ^ (identityHashCode(certStores) * 961);
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof CacheKey))
+            {
+                return false;
+            }
+
+            CacheKey other = (CacheKey)o;
+
+            return issuers.equals(other.issuers)
+                && Arrays.areEqual(distributionPoint, other.distributionPoint)
+                && Arrays.areEqual(idp, other.idp)
+                && completeCRL == other.completeCRL
+                && deltaCRL == other.deltaCRL
+                && idpEnabled == other.idpEnabled
+                && sameStores(additionalStores, other.additionalStores)
+                && sameStores(stores, other.stores)
+                && sameStores(certStores, other.certStores);
+        }
+
+        private static int identityHashCode(List list)
+        {
+            int hash = 0;
+
+            for (int i = 0; i != list.size(); i++)
+            {
+                hash = hash * 31 + System.identityHashCode(list.get(i));
+            }
+
+            return hash;
+        }
+
+        private static boolean sameStores(List a, List b)
+        {
+            if (a.size() != b.size())
+            {
+                return false;
+            }
+
+            for (int i = 0; i != a.size(); i++)
+            {
+                if (a.get(i) != b.get(i))
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -21,15 +21,45 @@ public class PKIXCRLUtil
 {
     public Set findCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, Date currentDate)
         throws AnnotatedException
+    {
+        return findCRLs(crlselect, paramsPKIX, currentDate, null);
+    }
+
+    /**
+     * Find the CRLs matching a selector which are valid at the current date, or the
+     * date set in the parameters. If the parameters have a CRL cache, CRLs are looked
+     * up in it by issuer and the given distribution point.
+     *
+     * @param distributionPoint the encoding of the distribution point the CRLs are
+     * being found for, or null.
+     */
+    public Set findCRLs(X509CRLStoreSelector crlselect, ExtendedPKIXParameters paramsPKIX, Date currentDate, byte[] distributionPoint)
+        throws AnnotatedException
     {
         Set initialSet = new HashSet();
+        PKIXCRLCache cache = paramsPKIX.getCRLCache();
 
         // get complete CRL(s)
         try
         {
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getAdditionalStores()));
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getStores()));
-            initialSet.addAll(findCRLs(crlselect, paramsPKIX.getCertStores()));
+            if (cache != null && crlselect.getIssuers() != null)
+            {
+                for (Iterator it = cache.getCRLs(crlselect, paramsPKIX, distributionPoint).iterator(); it.hasNext();)
+                {
+                    X509CRL crl = (X509CRL)it.next();
+
+                    if (crlselect.match(crl))
+                    {
+                        initialSet.add(crl);
+                    }
+                }
+            }
+            else
+            {
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getAdditionalStores()));
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getStores()));
+                initialSet.addAll(findCRLs(crlselect, paramsPKIX.getCertStores()));
+            }
         }
         catch (AnnotatedException e)
         {
@@ -101,7 +131,7 @@ public class PKIXCRLUtil
      * @return a Collection of all found {@link java.security.cert.X509CRL X509CRL} objects. May be
      *         empty but never <code>null</code>.
      */
-    private final Collection findCRLs(X509CRLStoreSelector crlSelect,
+    final Collection findCRLs(X509CRLStoreSelector crlSelect,
         List crlStores) throws AnnotatedException
     {
         Set crls = new HashSet();
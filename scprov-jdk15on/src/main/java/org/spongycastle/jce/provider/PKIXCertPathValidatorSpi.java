@@ -13,6 +13,7 @@ import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -61,6 +62,34 @@ public class PKIXCertPathValidatorSpi
                     "trustAnchors is null, this is not allowed for certification path validation.");
         }
 
+        List pathCerts = certPath.getCertificates();
+
+        for (int i = 0; i != pathCerts.size(); i++)
+        {
+            if (!(pathCerts.get(i) instanceof X509Certificate))
+            {
+                throw new CertPathValidatorException("Certification path contains a non X.509 certificate.", null, certPath, i);
+            }
+        }
+
+        PKIXValidationCache validationCache = paramsPKIX.getValidationCache();
+        Object cacheKey = null;
+
+        if (validationCache != null)
+        {
+            cacheKey = validationCache.createKey(certPath, paramsPKIX);
+
+            if (cacheKey != null)
+            {
+                PKIXCertPathValidatorResult result = validationCache.get(cacheKey);
+
+                if (result != null)
+                {
+                    return result;
+                }
+            }
+        }
+
         //
         // 6.1.1 - inputs
         //
@@ -248,6 +277,7 @@ public class PKIXCertPathValidatorSpi
         }
 
         X509Certificate cert = null;
+        Date revocationLimit = null;
 
         for (index = certs.size() - 1; index >= 0; index--)
         {
@@ -271,9 +301,14 @@ public class PKIXCertPathValidatorSpi
             // 6.1.3
             //
 
-            RFC3280CertPathUtilities.processCertA(certPath, paramsPKIX, index, workingPublicKey,
+            Date crlLimit = RFC3280CertPathUtilities.processCertA(certPath, paramsPKIX, index, workingPublicKey,
                 verificationAlreadyPerformed, workingIssuerName, sign);
 
+            if (crlLimit != null && (revocationLimit == null || crlLimit.before(revocationLimit)))
+            {
+                revocationLimit = crlLimit;
+            }
+
             RFC3280CertPathUtilities.processCertBC(certPath, index, nameConstraintValidator);
 
             validPolicyTree = RFC3280CertPathUtilities.processCertD(certPath, index, acceptablePolicies,
@@ -422,7 +457,14 @@ public class PKIXCertPathValidatorSpi
 
         if ((explicitPolicy > 0) || (intersection != null))
         {
-            return new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+            PKIXCertPathValidatorResult result = new PKIXCertPathValidatorResult(trust, intersection, cert.getPublicKey());
+
+            if (cacheKey != null)
+            {
+                validationCache.put(cacheKey, result, certs, revocationLimit);
+            }
+
+            return result;
         }
 
         throw new CertPathValidatorException("Path processing failed on policy.", null, certPath, index);
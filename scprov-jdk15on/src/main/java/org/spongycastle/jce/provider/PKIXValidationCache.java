@@ -0,0 +1,387 @@
+package org.spongycastle.jce.provider;
+
+import java.security.cert.CertPath;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.spongycastle.crypto.Digest;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.util.Arrays;
+import org.spongycastle.x509.ExtendedPKIXParameters;
+
+/**
+ * A cache of successful certification path validations, which can be shared
+ * between validations by setting it on the {@link ExtendedPKIXParameters}.
+ * <p>
+ * Results are cached against a SHA-256 fingerprint of the path and of the trust
+ * anchors, together with the parameters that affect validation. A result is kept
+ * until any certificate in the path, or the trusted certificate, expires, or
+ * until the earliest nextUpdate of the CRLs used to check revocation. When the cache
+ * is full the least recently used result is dropped. Lookups do not lock.
+ * <p>
+ * Note: validations with certification path checkers, target constraints,
+ * additional locations enabled or a fixed validation date are never cached, nor are
+ * paths of anything other than X.509 certificates, and failed validations are
+ * always repeated. A revocation published
+ * before the nextUpdate of the CRL a result was checked against will not be seen
+ * until the result expires.
+ */
+public class PKIXValidationCache
+{
+    private final Map entries = new ConcurrentHashMap();
+    private final Map anchorDigests = new ConcurrentHashMap();
+    private final int maxEntries;
+
+    /**
+     * Create a cache of up to 1024 results.
+     */
+    public PKIXValidationCache()
+    {
+        this(1024);
+    }
+
+    /**
+     * @param maxEntries the most results to keep.
+     */
+    public PKIXValidationCache(int maxEntries)
+    {
+        if (maxEntries <= 0)
+        {
+            throw new IllegalArgumentException("maxEntries must be positive.");
+        }
+
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the number of results cached.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public void clear()
+    {
+        entries.clear();
+        anchorDigests.clear();
+    }
+
+    /**
+     * Create the key for validating a path with the given parameters.
+     *
+     * @return the key, or null if the validation cannot be cached.
+     */
+    Object createKey(CertPath certPath, ExtendedPKIXParameters paramsPKIX)
+    {
+        // stores added from the certificates' distribution points are new on each validation,
+        // and results are kept against the clock, which says nothing about a fixed date
+        if (!paramsPKIX.getCertPathCheckers().isEmpty() || paramsPKIX.getTargetConstraints() != null
+            || paramsPKIX.isAdditionalLocationsEnabled() || paramsPKIX.getDate() != null)
+        {
+            return null;
+        }
+
+        Digest digest = new SHA256Digest();
+
+        try
+        {
+            for (Iterator it = certPath.getCertificates().iterator(); it.hasNext();)
+            {
+                Object cert = it.next();
+
+                // leave other certificate types to fail validation as they would without a cache
+                if (!(cert instanceof X509Certificate))
+                {
+                    return null;
+                }
+
+                byte[] enc = ((X509Certificate)cert).getEncoded();
+
+                digest.update(enc, 0, enc.length);
+            }
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+
+        byte[] pathDigest = new byte[digest.getDigestSize()];
+        digest.doFinal(pathDigest, 0);
+
+        byte[] anchorsDigest = getAnchorsDigest(paramsPKIX.getTrustAnchors());
+
+        if (anchorsDigest == null)
+        {
+            return null;
+        }
+
+        return new CacheKey(pathDigest, anchorsDigest, new Object[]
+            {
+                paramsPKIX.getInitialPolicies(),
+                Boolean.valueOf(paramsPKIX.isExplicitPolicyRequired()),
+                Boolean.valueOf(paramsPKIX.isAnyPolicyInhibited()),
+                Boolean.valueOf(paramsPKIX.isPolicyMappingInhibited()),
+                Boolean.valueOf(paramsPKIX.getPolicyQualifiersRejected()),
+                Boolean.valueOf(paramsPKIX.isRevocationEnabled()),
+                Boolean.valueOf(paramsPKIX.isUseDeltasEnabled()),
+                new Integer(paramsPKIX.getValidityModel()),
+                paramsPKIX.getSigProvider(),
+                paramsPKIX.getCertStores(),
+                paramsPKIX.getStores(),
+                paramsPKIX.getAdditionalStores()
+            });
+    }
+
+    PKIXCertPathValidatorResult get(Object key)
+    {
+        Entry entry = (Entry)entries.get(key);
+
+        if (entry == null)
+        {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (now >= entry.expires)
+        {
+            entries.remove(key);
+
+            return null;
+        }
+
+        entry.lastUsed = now;
+
+        return (PKIXCertPathValidatorResult)entry.result.clone();
+    }
+
+    /**
+     * Keep a result until the first of the path's certificates, the trusted
+     * certificate or the revocation information expires.
+     *
+     * @param revocationLimit the earliest nextUpdate of the CRLs used, null if none were.
+     */
+    void put(Object key, PKIXCertPathValidatorResult result, List certs, Date revocationLimit)
+    {
+        long expires = revocationLimit != null ? revocationLimit.getTime() : Long.MAX_VALUE;
+
+        for (Iterator it = certs.iterator(); it.hasNext();)
+        {
+            expires = Math.min(expires, ((X509Certificate)it.next()).getNotAfter().getTime());
+        }
+
+        X509Certificate trustedCert = result.getTrustAnchor().getTrustedCert();
+
+        if (trustedCert != null)
+        {
+            expires = Math.min(expires, trustedCert.getNotAfter().getTime());
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (expires <= now)
+        {
+            return;
+        }
+
+        if (entries.size() >= maxEntries && !entries.containsKey(key))
+        {
+            evict(now);
+        }
+
+        entries.put(key, new Entry((PKIXCertPathValidatorResult)result.clone(), expires, now));
+    }
+
+    /*
+     * Drop expired results, or the least recently used one if none have expired.
+     */
+    private void evict(long now)
+    {
+        Object oldestKey = null;
+        long oldest = Long.MAX_VALUE;
+
+        for (Iterator it = entries.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry e = (Map.Entry)it.next();
+            Entry entry = (Entry)e.getValue();
+
+            if (now >= entry.expires)
+            {
+                it.remove();
+            }
+            else if (entry.lastUsed < oldest)
+            {
+                oldest = entry.lastUsed;
+                oldestKey = e.getKey();
+            }
+        }
+
+        if (entries.size() >= maxEntries && oldestKey != null)
+        {
+            entries.remove(oldestKey);
+        }
+    }
+
+    /*
+     * Trust anchors have no equals(), so the digest of each one is kept against
+     * the anchor object. The digests are sorted before being hashed together, so
+     * the result does not depend on the order the set gives the anchors in.
+     */
+    private byte[] getAnchorsDigest(Set anchors)
+    {
+        byte[][] digests = new byte[anchors.size()][];
+        int count = 0;
+
+        if (anchorDigests.size() > maxEntries)
+        {
+            anchorDigests.clear();
+        }
+
+        for (Iterator it = anchors.iterator(); it.hasNext();)
+        {
+            TrustAnchor anchor = (TrustAnchor)it.next();
+            byte[] anchorDigest = (byte[])anchorDigests.get(anchor);
+
+            if (anchorDigest == null)
+            {
+                anchorDigest = digestAnchor(anchor);
+
+                if (anchorDigest == null)
+                {
+                    return null;
+                }
+
+                anchorDigests.put(anchor, anchorDigest);
+            }
+
+            digests[count++] = anchorDigest;
+        }
+
+        java.util.Arrays.sort(digests, new Comparator()
+        {
+            public int compare(Object o1, Object o2)
+            {
+                byte[] a = (byte[])o1;
+                byte[] b = (byte[])o2;
+
+                for (int i = 0; i != a.length; i++)
+                {
+                    if (a[i] != b[i])
+                    {
+                        return (a[i] & 0xff) - (b[i] & 0xff);
+                    }
+                }
+
+                return 0;
+            }
+        });
+
+        Digest digest = new SHA256Digest();
+
+        for (int i = 0; i != digests.length; i++)
+        {
+            digest.update(digests[i], 0, digests[i].length);
+        }
+
+        byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+
+        return out;
+    }
+
+    private static byte[] digestAnchor(TrustAnchor anchor)
+    {
+        Digest digest = new SHA256Digest();
+
+        try
+        {
+            byte[] enc;
+
+            if (anchor.getTrustedCert() != null)
+            {
+                enc = anchor.getTrustedCert().getEncoded();
+            }
+            else
+            {
+                enc = anchor.getCA().getEncoded();
+                digest.update(enc, 0, enc.length);
+                enc = anchor.getCAPublicKey().getEncoded();
+            }
+
+            digest.update(enc, 0, enc.length);
+        }
+        catch (CertificateEncodingException e)
+        {
+            return null;
+        }
+
+        byte[] nameConstraints = anchor.getNameConstraints();
+
+        if (nameConstraints != null)
+        {
+            digest.update(nameConstraints, 0, nameConstraints.length);
+        }
+
+        byte[] out = new byte[digest.getDigestSize()];
+        digest.doFinal(out, 0);
+
+        return out;
+    }
+
+    private static class Entry
+    {
+        final PKIXCertPathValidatorResult result;
+        final long expires;
+        volatile long lastUsed;
+
+        Entry(PKIXCertPathValidatorResult result, long expires, long lastUsed)
+        {
+            this.result = result;
+            this.expires = expires;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static class CacheKey
+    {
+        private final byte[] pathDigest;
+        private final byte[] anchorsDigest;
+        private final Object[] params;
+
+        CacheKey(byte[] pathDigest, byte[] anchorsDigest, Object[] params)
+        {
+            this.pathDigest = pathDigest;
+            this.anchorsDigest = anchorsDigest;
+            this.params = params;
+        }
+
+        public int hashCode()
+        {
+            return Arrays.hashCode(pathDigest) ^ Arrays.hashCode(anchorsDigest) ^ java.util.Arrays.asList(params).hashCode();
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof CacheKey))
+            {
+                return false;
+            }
+
+            CacheKey other = (CacheKey)o;
+
+            return Arrays.areEqual(pathDigest, other.pathDigest)
+                && Arrays.areEqual(anchorsDigest, other.anchorsDigest)
+                && java.util.Arrays.equals(params, other.params);
+        }
+    }
+}
@@ -1446,7 +1446,7 @@ public class RFC3280CertPathUtilities
         return null;
     }
 
-    protected static void processCertA(
+    protected static Date processCertA(
         CertPath certPath,
         ExtendedPKIXParameters paramsPKIX,
         int index,
@@ -1499,11 +1499,13 @@ public class RFC3280CertPathUtilities
         //
         // (a) (3)
         //
+        Date revocationLimit = null;
+
         if (paramsPKIX.isRevocationEnabled())
         {
             try
             {
-                checkCRLs(paramsPKIX, cert, CertPathValidatorUtilities.getValidCertDateFromValidityModel(paramsPKIX,
+                revocationLimit = checkCRLs(paramsPKIX, cert, CertPathValidatorUtilities.getValidCertDateFromValidityModel(paramsPKIX,
                     certPath, index), sign, workingPublicKey, certs);
             }
             catch (AnnotatedException e)
@@ -1526,6 +1528,8 @@ public class RFC3280CertPathUtilities
                 + ") does not match SubjectName(" + workingIssuerName + ") of signing certificate.", null,
                 certPath, index);
         }
+
+        return revocationLimit;
     }
 
     protected static int prepareNextCertI1(
@@ -1870,6 +1874,12 @@ public class RFC3280CertPathUtilities
                     }
                 }
 
+                certStatus.setNextUpdate(getEarliest(certStatus.getNextUpdate(), crl, currentDate));
+                if (deltaCRL != null)
+                {
+                    certStatus.setNextUpdate(getEarliest(certStatus.getNextUpdate(), deltaCRL, currentDate));
+                }
+
                 validCrlFound = true;
             }
             catch (AnnotatedException e)
@@ -1883,6 +1893,20 @@ public class RFC3280CertPathUtilities
         }
     }
 
+    /*
+     * A CRL without a next update can only be relied on at the time it was checked.
+     */
+    private static Date getEarliest(Date date, X509CRL crl, Date currentDate)
+    {
+        Date nextUpdate = crl.getNextUpdate() != null ? crl.getNextUpdate() : currentDate;
+
+        if (date == null || nextUpdate.before(date))
+        {
+            return nextUpdate;
+        }
+        return date;
+    }
+
     /**
      * Checks a certificate if it is revoked.
      *
@@ -1893,10 +1917,11 @@ public class RFC3280CertPathUtilities
      * @param sign             The issuer certificate of the certificate <code>cert</code>.
      * @param workingPublicKey The public key of the issuer certificate <code>sign</code>.
      * @param certPathCerts    The certificates of the certification path.
+     * @return the earliest nextUpdate of the CRLs the status was taken from.
      * @throws AnnotatedException if the certificate is revoked or the status cannot be checked
      *                            or some error occurs.
      */
-    protected static void checkCRLs(
+    protected static Date checkCRLs(
         ExtendedPKIXParameters paramsPKIX,
         X509Certificate cert,
         Date validDate,
@@ -2020,6 +2045,7 @@ public class RFC3280CertPathUtilities
         {
             throw new AnnotatedException("Certificate status could not be determined.");
         }
+        return certStatus.getNextUpdate();
     }
 
     protected static int prepareNextCertJ(
@@ -2,6 +2,7 @@ package org.spongycastle.jce.provider;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -24,11 +25,15 @@ import java.util.Set;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.spongycastle.asn1.ASN1BufferParser;
 import org.spongycastle.asn1.ASN1Encodable;
+import org.spongycastle.asn1.ASN1EncodableVector;
 import org.spongycastle.asn1.ASN1Encoding;
 import org.spongycastle.asn1.ASN1InputStream;
 import org.spongycastle.asn1.ASN1ObjectIdentifier;
+import org.spongycastle.asn1.BERTags;
 import org.spongycastle.asn1.DERInteger;
+import org.spongycastle.asn1.DERSequence;
 import org.spongycastle.asn1.util.ASN1Dump;
 import org.spongycastle.asn1.x500.X500Name;
 import org.spongycastle.asn1.x509.CRLDistPoint;
@@ -38,8 +43,10 @@ import org.spongycastle.asn1.x509.Extension;
 import org.spongycastle.asn1.x509.Extensions;
 import org.spongycastle.asn1.x509.GeneralNames;
 import org.spongycastle.asn1.x509.IssuingDistributionPoint;
+import org.spongycastle.asn1.x509.RevokedCertificateIndex;
 import org.spongycastle.asn1.x509.TBSCertList;
 import org.spongycastle.jce.X509Principal;
+import org.spongycastle.util.Arrays;
 import org.spongycastle.util.encoders.Hex;
 import org.spongycastle.x509.extension.X509ExtensionUtil;
 
@@ -56,9 +63,12 @@ public class X509CRLObject
     extends X509CRL
 {
     private CertificateList c;
+    private byte[] encoding;
     private String sigAlgName;
     private byte[] sigAlgParams;
     private boolean isIndirect;
+    private volatile RevokedCertificateIndex revokedIndex;
+    private volatile PublicKey verifiedKey;
 
     static boolean isIndirectCRL(X509CRL crl)
         throws CRLException
@@ -76,14 +86,31 @@ public class X509CRLObject
         }
     }
 
+    /**
+     * The revoked certificates are only kept in the encoding of the CRL, where they
+     * are found through a {@link RevokedCertificateIndex}, so the parsed entries in
+     * c are not held on to.
+     */
     public X509CRLObject(
         CertificateList c)
         throws CRLException
     {
-        this.c = c;
-        
+        this(getDEREncoding(c));
+    }
+
+    /**
+     * Create a CRL from its encoding, which is kept as it is. Only the parts of the
+     * CRL other than the revoked certificates are decoded.
+     */
+    public X509CRLObject(
+        byte[] encoding)
+        throws CRLException
+    {
         try
         {
+            this.encoding = encoding;
+            this.c = withoutRevokedCertificates(encoding);
+
             this.sigAlgName = X509SignatureUtil.getSignatureName(c.getSignatureAlgorithm());
             
             if (c.getSignatureAlgorithm().getParameters() != null)
@@ -103,6 +130,71 @@ public class X509CRLObject
         }
     }
 
+    private static byte[] getDEREncoding(CertificateList c)
+        throws CRLException
+    {
+        try
+        {
+            return c.getEncoded(ASN1Encoding.DER);
+        }
+        catch (IOException e)
+        {
+            throw new CRLException("CRL contents invalid: " + e);
+        }
+    }
+
+    /*
+     * Decode everything in the CRL but the revokedCertificates, which are the only
+     * SEQUENCE in the TBSCertList after thisUpdate, nextUpdate being a time and
+     * crlExtensions tagged.
+     */
+    private static CertificateList withoutRevokedCertificates(byte[] encoding)
+        throws IOException
+    {
+        ASN1BufferParser p = new ASN1BufferParser(ByteBuffer.wrap(encoding));
+
+        if (!p.next() || p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED)
+            || p.getEncodedLength() != encoding.length)
+        {
+            throw new IOException("CRL is not a single SEQUENCE");
+        }
+        p.descend();
+
+        if (!p.next() || p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+        {
+            throw new IOException("CRL missing TBSCertList");
+        }
+        p.descend();
+
+        ASN1EncodableVector v = new ASN1EncodableVector();
+        int first = 3;
+
+        for (int i = 0; p.next(); i++)
+        {
+            if (i == 0 && p.getTag() == BERTags.INTEGER)
+            {
+                first = 4;
+            }
+
+            if (i < first || p.getTag() != (BERTags.SEQUENCE | BERTags.CONSTRUCTED))
+            {
+                v.add(p.toASN1Primitive());
+            }
+        }
+
+        p.ascend();
+
+        ASN1EncodableVector cl = new ASN1EncodableVector();
+
+        cl.add(new DERSequence(v));
+        while (p.next())
+        {
+            cl.add(p.toASN1Primitive());
+        }
+
+        return CertificateList.getInstance(new DERSequence(cl));
+    }
+
     /**
      * Will return true if any extensions are present and marked
      * as critical as we currently dont handle any extensions!
@@ -188,14 +280,7 @@ public class X509CRLObject
     public byte[] getEncoded()
         throws CRLException
     {
-        try
-        {
-            return c.getEncoded(ASN1Encoding.DER);
-        }
-        catch (IOException e)
-        {
-            throw new CRLException(e.toString());
-        }
+        return Arrays.clone(encoding);
     }
 
     public void verify(PublicKey key)
@@ -214,6 +299,12 @@ public class X509CRLObject
             throw new CRLException("Signature algorithm on CertificateList does not match TBSCertList.");
         }
 
+        // the CRL cannot change, so a key it has verified with need not be checked again
+        if (key.equals(verifiedKey))
+        {
+            return;
+        }
+
         Signature sig;
 
         if (sigProvider != null)
@@ -232,6 +323,8 @@ public class X509CRLObject
         {
             throw new SignatureException("CRL does not verify with supplied public key.");
         }
+
+        verifiedKey = key;
     }
 
     public int getVersion()
@@ -274,23 +367,13 @@ public class X509CRLObject
     private Set loadCRLEntries()
     {
         Set entrySet = new HashSet();
-        Enumeration certs = c.getRevokedCertificateEnumeration();
+        RevokedCertificateIndex index = getRevokedIndex();
 
-        X500Name previousCertificateIssuer = null; // the issuer
-        while (certs.hasMoreElements())
+        for (int i = 0; i != index.size(); i++)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
-            X509CRLEntryObject crlEntry = new X509CRLEntryObject(entry, isIndirect, previousCertificateIssuer);
-            entrySet.add(crlEntry);
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+            X500Name previousCertificateIssuer = isIndirect ? index.getPrecedingCertificateIssuer(i) : null;
 
-                if (currentCaName != null)
-                {
-                    previousCertificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                }
-            }
+            entrySet.add(new X509CRLEntryObject(getEntry(index, i), isIndirect, previousCertificateIssuer));
         }
 
         return entrySet;
@@ -298,30 +381,92 @@ public class X509CRLObject
 
     public X509CRLEntry getRevokedCertificate(BigInteger serialNumber)
     {
-        Enumeration certs = c.getRevokedCertificateEnumeration();
+        RevokedCertificateIndex index = getRevokedIndex();
+        int i = index.indexOf(serialNumber);
 
-        X500Name previousCertificateIssuer = null; // the issuer
-        while (certs.hasMoreElements())
+        if (i < 0)
         {
-            TBSCertList.CRLEntry entry = (TBSCertList.CRLEntry)certs.nextElement();
+            return null;
+        }
+
+        X500Name previousCertificateIssuer = isIndirect ? index.getPrecedingCertificateIssuer(i) : null;
+
+        return new X509CRLEntryObject(getEntry(index, i), isIndirect, previousCertificateIssuer);
+    }
+
+    /**
+     * Find the entry for a certificate from a given issuer. In an indirect CRL the
+     * same serial number may be revoked by more than one issuer, so every entry with
+     * the serial number is tried.
+     */
+    X509CRLEntry getRevokedCertificate(BigInteger serialNumber, X500Principal certIssuer)
+    {
+        RevokedCertificateIndex index = getRevokedIndex();
+        int i = index.indexOf(serialNumber);
 
-            if (serialNumber.equals(entry.getUserCertificate().getValue()))
+        if (i < 0)
+        {
+            return null;
+        }
+
+        X500Principal crlIssuer = getIssuerX500Principal();
+
+        for (; i < index.size() && index.getSerialNumber(i).equals(serialNumber); i++)
+        {
+            X500Name previousCertificateIssuer = isIndirect ? index.getPrecedingCertificateIssuer(i) : null;
+            X509CRLEntry entry = new X509CRLEntryObject(getEntry(index, i), isIndirect, previousCertificateIssuer);
+            X500Principal entryIssuer = entry.getCertificateIssuer();
+
+            if (certIssuer.equals(entryIssuer != null ? entryIssuer : crlIssuer))
             {
-                return new X509CRLEntryObject(entry, isIndirect, previousCertificateIssuer);
+                return entry;
             }
+        }
 
-            if (isIndirect && entry.hasExtensions())
-            {
-                Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
+        return null;
+    }
+
+    /**
+     * The entries are looked up through an index of their serial numbers over the
+     * encoding, built the first time one is asked for.
+     */
+    private RevokedCertificateIndex getRevokedIndex()
+    {
+        RevokedCertificateIndex index = revokedIndex;
 
-                if (currentCaName != null)
+        if (index == null)
+        {
+            synchronized (this)
+            {
+                index = revokedIndex;
+                if (index == null)
                 {
-                    previousCertificateIssuer = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
+                    try
+                    {
+                        index = new RevokedCertificateIndex(ByteBuffer.wrap(encoding));
+                    }
+                    catch (IOException e)
+                    {
+                        throw new IllegalStateException("can't index CRL entries: " + e);
+                    }
+                    revokedIndex = index;
                 }
             }
         }
 
-        return null;
+        return index;
+    }
+
+    private TBSCertList.CRLEntry getEntry(RevokedCertificateIndex index, int i)
+    {
+        try
+        {
+            return index.getEntry(i);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("can't decode CRL entry: " + e);
+        }
     }
 
     public Set getRevokedCertificates()
@@ -339,14 +484,25 @@ public class X509CRLObject
     public byte[] getTBSCertList()
         throws CRLException
     {
+        // c no longer has the revoked certificates, so the TBSCertList is taken from the encoding
+        ASN1BufferParser p = new ASN1BufferParser(ByteBuffer.wrap(encoding));
+
         try
         {
-            return c.getTBSCertList().getEncoded("DER");
+            p.next();
+            p.descend();
+            p.next();
         }
         catch (IOException e)
         {
             throw new CRLException(e.toString());
         }
+
+        byte[] tbs = new byte[p.getEncodedLength()];
+
+        System.arraycopy(encoding, p.getOffset(), tbs, 0, tbs.length);
+
+        return tbs;
     }
 
     public byte[] getSignature()
@@ -520,57 +676,64 @@ public class X509CRLObject
             throw new RuntimeException("X.509 CRL used with non X.509 Cert");
         }
 
-        TBSCertList.CRLEntry[] certs = c.getRevokedCertificates();
+        RevokedCertificateIndex index = getRevokedIndex();
+        BigInteger serialNumber = ((X509Certificate)cert).getSerialNumber();
+        int i = index.indexOf(serialNumber);
 
-        X500Name caName = c.getIssuer();
+        if (i < 0)
+        {
+            return false;
+        }
+
+        X500Name issuer;
+
+        if (cert instanceof  X509Certificate)
+        {
+            issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
+        }
+        else
+        {
+            try
+            {
+                issuer = org.spongycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
+            }
+            catch (CertificateEncodingException e)
+            {
+                throw new RuntimeException("Cannot process certificate");
+            }
+        }
 
-        if (certs != null)
+        // in an indirect CRL the serial number may be listed for more than one issuer
+        for (; i < index.size() && index.getSerialNumber(i).equals(serialNumber); i++)
         {
-            BigInteger serial = ((X509Certificate)cert).getSerialNumber();
+            X500Name caName = c.getIssuer();
 
-            for (int i = 0; i < certs.length; i++)
+            if (isIndirect)
             {
-                if (isIndirect && certs[i].hasExtensions())
-                {
-                    Extension currentCaName = certs[i].getExtensions().getExtension(Extension.certificateIssuer);
+                TBSCertList.CRLEntry entry = getEntry(index, i);
 
-                    if (currentCaName != null)
-                    {
-                        caName = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
-                    }
+                if (index.getPrecedingCertificateIssuer(i) != null)
+                {
+                    caName = index.getPrecedingCertificateIssuer(i);
                 }
 
-                if (certs[i].getUserCertificate().getValue().equals(serial))
+                if (entry.hasExtensions())
                 {
-                    X500Name issuer;
+                    Extension currentCaName = entry.getExtensions().getExtension(Extension.certificateIssuer);
 
-                    if (cert instanceof  X509Certificate)
-                    {
-                        issuer = X500Name.getInstance(((X509Certificate)cert).getIssuerX500Principal().getEncoded());
-                    }
-                    else
-                    {
-                        try
-                        {
-                            issuer = org.spongycastle.asn1.x509.Certificate.getInstance(cert.getEncoded()).getIssuer();
-                        }
-                        catch (CertificateEncodingException e)
-                        {
-                            throw new RuntimeException("Cannot process certificate");
-                        }
-                    }
-
-                    if (!caName.equals(issuer))
+                    if (currentCaName != null)
                     {
-                        return false;
+                        caName = X500Name.getInstance(GeneralNames.getInstance(currentCaName.getParsedValue()).getNames()[0].getName());
                     }
-
-                    return true;
                 }
             }
+
+            if (caName.equals(issuer))
+            {
+                return true;
+            }
         }
 
         return false;
     }
 }
-
@@ -3,16 +3,19 @@ package org.spongycastle.jce.provider;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.cert.CRL;
 import java.security.cert.CRLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.spongycastle.asn1.ASN1BufferParser;
 import org.spongycastle.asn1.ASN1InputStream;
 import org.spongycastle.asn1.ASN1Sequence;
 import org.spongycastle.asn1.ASN1Set;
 import org.spongycastle.asn1.ASN1TaggedObject;
+import org.spongycastle.asn1.BERTags;
 import org.spongycastle.asn1.DERObjectIdentifier;
 import org.spongycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.spongycastle.asn1.pkcs.SignedData;
@@ -34,7 +37,15 @@ public class X509CRLParser
         throws IOException, CRLException
     {
         ASN1InputStream dIn = new ASN1InputStream(in);
-        ASN1Sequence seq = (ASN1Sequence)dIn.readObject();
+        byte[] encoding = dIn.readEncoded();
+
+        // a plain CRL is kept in the encoding it arrived in, see X509CRLObject
+        if (!isContentInfo(encoding))
+        {
+            return new X509CRLObject(encoding);
+        }
+
+        ASN1Sequence seq = ASN1Sequence.getInstance(encoding);
 
         if (seq.size() > 1
                 && seq.getObjectAt(0) instanceof DERObjectIdentifier)
@@ -51,6 +62,23 @@ public class X509CRLParser
         return new X509CRLObject(CertificateList.getInstance(seq));
     }
 
+    /*
+     * A PKCS#7 CRL set starts with the content type, a plain CRL with its TBSCertList.
+     */
+    private static boolean isContentInfo(byte[] encoding)
+        throws IOException
+    {
+        ASN1BufferParser p = new ASN1BufferParser(ByteBuffer.wrap(encoding));
+
+        if (!p.next() || !p.isConstructed())
+        {
+            return false;
+        }
+        p.descend();
+
+        return p.next() && p.getTag() == BERTags.OBJECT_IDENTIFIER;
+    }
+
     private CRL getCRL()
         throws CRLException
     {
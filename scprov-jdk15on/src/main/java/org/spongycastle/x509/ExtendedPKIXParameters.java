@@ -1,5 +1,7 @@
 package org.spongycastle.x509;
 
+import org.spongycastle.jce.provider.PKIXCRLCache;
+import org.spongycastle.jce.provider.PKIXValidationCache;
 import org.spongycastle.util.Selector;
 import org.spongycastle.util.Store;
 
@@ -39,6 +41,10 @@ public class ExtendedPKIXParameters
 
     private Set attrCertCheckers;
 
+    private PKIXCRLCache crlCache;
+
+    private PKIXValidationCache validationCache;
+
     /**
      * Creates an instance of <code>PKIXParameters</code> with the specified
      * <code>Set</code> of most-trusted CAs. Each element of the set is a
@@ -131,6 +137,8 @@ public class ExtendedPKIXParameters
             prohibitedACAttributes = new HashSet(_params.prohibitedACAttributes);
             necessaryACAttributes = new HashSet(_params.necessaryACAttributes);
             attrCertCheckers = new HashSet(_params.attrCertCheckers);
+            crlCache = _params.crlCache;
+            validationCache = _params.validationCache;
         }
     }
 
@@ -373,6 +381,55 @@ public class ExtendedPKIXParameters
         additionalLocationsEnabled = enabled;
     }
 
+    /**
+     * Returns the cache CRLs are looked up in during validation.
+     *
+     * @return the CRL cache, or <code>null</code> if CRLs are always looked up
+     *         in the stores.
+     */
+    public PKIXCRLCache getCRLCache()
+    {
+        return crlCache;
+    }
+
+    /**
+     * Sets a cache to look up CRLs in during validation. The cache is not
+     * cloned, so the same cache can be shared by any number of parameters and
+     * validations.
+     *
+     * @param crlCache the CRL cache, or <code>null</code> to always look up CRLs
+     *            in the stores.
+     */
+    public void setCRLCache(PKIXCRLCache crlCache)
+    {
+        this.crlCache = crlCache;
+    }
+
+    /**
+     * Returns the cache of earlier validation results.
+     *
+     * @return the validation cache, or <code>null</code> if every path is
+     *         validated in full.
+     */
+    public PKIXValidationCache getValidationCache()
+    {
+        return validationCache;
+    }
+
+    /**
+     * Sets a cache of validation results, so a path validated with the same
+     * trust anchors and parameters is not processed again while its
+     * certificates and CRLs are current. The cache is not cloned, so the same
+     * cache can be shared by any number of parameters and validations.
+     *
+     * @param validationCache the validation cache, or <code>null</code> to
+     *            validate every path in full.
+     */
+    public void setValidationCache(PKIXValidationCache validationCache)
+    {
+        this.validationCache = validationCache;
+    }
+
     /**
      * Returns the required constraints on the target certificate or attribute
      * certificate. The constraints are returned as an instance of
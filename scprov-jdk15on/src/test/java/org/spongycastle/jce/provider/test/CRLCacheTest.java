@@ -0,0 +1,284 @@
+package org.spongycastle.jce.provider.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.spongycastle.asn1.x509.CRLNumber;
+import org.spongycastle.asn1.x509.CRLReason;
+import org.spongycastle.asn1.x509.X509Extensions;
+import org.spongycastle.jce.PrincipalUtil;
+import org.spongycastle.jce.provider.BouncyCastleProvider;
+import org.spongycastle.jce.provider.PKIXCRLCache;
+import org.spongycastle.util.test.SimpleTest;
+import org.spongycastle.x509.ExtendedPKIXParameters;
+import org.spongycastle.x509.X509V2CRLGenerator;
+import org.spongycastle.x509.extension.AuthorityKeyIdentifierStructure;
+
+public class CRLCacheTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "CRLCache";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        KeyPair rootPair = TestUtils.generateRSAKeyPair();
+        KeyPair interPair = TestUtils.generateRSAKeyPair();
+        KeyPair endPair = TestUtils.generateRSAKeyPair();
+
+        X509Certificate rootCert = TestUtils.generateRootCert(rootPair);
+        X509Certificate interCert = TestUtils.generateIntermediateCert(interPair.getPublic(), rootPair.getPrivate(), rootCert);
+        X509Certificate endCert = TestUtils.generateEndEntityCert(endPair.getPublic(), interPair.getPrivate(), interCert);
+
+        X509CRL rootCRL = TestUtils.createCRL(rootCert, rootPair.getPrivate(), BigInteger.valueOf(2));
+        X509CRL interCRL = TestUtils.createCRL(interCert, interPair.getPrivate(), BigInteger.valueOf(2));
+
+        // the end entity certificate has serial number 1
+        X509CRL revokingCRL = TestUtils.createCRL(interCert, interPair.getPrivate(), BigInteger.valueOf(1));
+
+        CertPath path = CertificateFactory.getInstance("X.509", "SC").generateCertPath(
+            Arrays.asList(new X509Certificate[] { endCert, interCert }));
+
+        PKIXCRLCache cache = new PKIXCRLCache();
+
+        ExtendedPKIXParameters params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+
+        validate(path, params);
+        validate(path, params);
+
+        if (cache.size() != 2)
+        {
+            fail("expected an entry for each CRL issuer, found " + cache.size());
+        }
+
+        // a revoked certificate is still found once its CRL is cached
+        PKIXCRLCache revokedCache = new PKIXCRLCache();
+
+        params = createParams(rootCert, interCert, endCert, rootCRL, revokingCRL, revokedCache);
+
+        checkRevoked(path, params);
+        checkRevoked(path, params);
+
+        // validations with other stores do not see each other's CRLs
+        params = createParams(rootCert, interCert, endCert, rootCRL, revokingCRL, cache);
+
+        checkRevoked(path, params);
+
+        if (cache.size() != 4)
+        {
+            fail("expected entries for each set of stores, found " + cache.size());
+        }
+
+        // entries due to expire are reloaded in the background, but only once if no newer CRLs turn up
+        CountingExecutor executor = new CountingExecutor();
+        long margin = 2000;
+
+        rootCRL = createCRL(rootCert, rootPair.getPrivate(), 2 * margin);
+        interCRL = createCRL(interCert, interPair.getPrivate(), 2 * margin);
+
+        cache = new PKIXCRLCache(16, margin, executor);
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+
+        validate(path, params);
+
+        Thread.sleep(margin + 200);
+
+        validate(path, params);
+
+        while (executor.getCompletedTaskCount() != executor.getTaskCount())
+        {
+            Thread.sleep(10);
+        }
+
+        validate(path, params);
+        validate(path, params);
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        if (executor.submitted != 2)
+        {
+            fail("expected one reload for each entry, found " + executor.submitted);
+        }
+
+        if (cache.size() != 2)
+        {
+            fail("expected refreshed entries, found " + cache.size());
+        }
+
+        cache.clear();
+
+        if (cache.size() != 0)
+        {
+            fail("cache not cleared");
+        }
+
+        // a CRL past its next update does not stop the others for its issuer being cached
+        X509CRL staleCRL = createCRL(interCert, interPair.getPrivate(), 1);
+
+        Thread.sleep(50);
+
+        cache = new PKIXCRLCache();
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+        params.addCertStore(CertStore.getInstance("Collection",
+            new CollectionCertStoreParameters(Collections.singletonList(staleCRL)), "SC"));
+
+        validate(path, params);
+
+        if (cache.size() != 2)
+        {
+            fail("expected entries alongside stale CRL, found " + cache.size());
+        }
+
+        // when full the least recently used entries make way for new ones
+        cache = new PKIXCRLCache(2, 0, null);
+
+        validate(path, createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache));
+
+        List crls = new ArrayList();
+
+        crls.add(rootCRL);
+        crls.add(interCRL);
+
+        params = createParams(rootCert, interCert, endCert, crls, cache);
+
+        validate(path, params);
+
+        // the revoking CRL is not seen while the earlier one is cached
+        crls.add(revokingCRL);
+
+        validate(path, params);
+
+        if (cache.size() != 2)
+        {
+            fail("cache grew past its limit: " + cache.size());
+        }
+    }
+
+    private ExtendedPKIXParameters createParams(X509Certificate rootCert, X509Certificate interCert, X509Certificate endCert,
+        X509CRL rootCRL, X509CRL interCRL, PKIXCRLCache cache)
+        throws Exception
+    {
+        List crls = new ArrayList();
+
+        crls.add(rootCRL);
+        crls.add(interCRL);
+
+        return createParams(rootCert, interCert, endCert, crls, cache);
+    }
+
+    /*
+     * The CRLs are held in a store of their own, which sees later changes to the list.
+     */
+    private ExtendedPKIXParameters createParams(X509Certificate rootCert, X509Certificate interCert, X509Certificate endCert,
+        List crls, PKIXCRLCache cache)
+        throws Exception
+    {
+        List list = new ArrayList();
+
+        list.add(rootCert);
+        list.add(interCert);
+        list.add(endCert);
+
+        CertStore store = CertStore.getInstance("Collection", new CollectionCertStoreParameters(list), "SC");
+
+        ExtendedPKIXParameters params = new ExtendedPKIXParameters(Collections.singleton(new TrustAnchor(rootCert, null)));
+
+        params.addCertStore(store);
+        params.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(crls), "SC"));
+        params.setDate(new Date());
+        params.setCRLCache(cache);
+
+        return params;
+    }
+
+    private X509CRL createCRL(X509Certificate caCert, PrivateKey caKey, long validity)
+        throws Exception
+    {
+        X509V2CRLGenerator crlGen = new X509V2CRLGenerator();
+        Date now = new Date();
+
+        crlGen.setIssuerDN(PrincipalUtil.getSubjectX509Principal(caCert));
+        crlGen.setThisUpdate(now);
+        crlGen.setNextUpdate(new Date(now.getTime() + validity));
+        crlGen.setSignatureAlgorithm("SHA256WithRSAEncryption");
+
+        crlGen.addCRLEntry(BigInteger.valueOf(2), now, CRLReason.privilegeWithdrawn);
+
+        crlGen.addExtension(X509Extensions.AuthorityKeyIdentifier, false, new AuthorityKeyIdentifierStructure(caCert));
+        crlGen.addExtension(X509Extensions.CRLNumber, false, new CRLNumber(BigInteger.valueOf(1)));
+
+        return crlGen.generate(caKey, "SC");
+    }
+
+    private void validate(CertPath path, ExtendedPKIXParameters params)
+        throws Exception
+    {
+        CertPathValidator.getInstance("PKIX", "SC").validate(path, params);
+    }
+
+    private void checkRevoked(CertPath path, ExtendedPKIXParameters params)
+        throws Exception
+    {
+        try
+        {
+            validate(path, params);
+
+            fail("revoked certificate accepted");
+        }
+        catch (CertPathValidatorException e)
+        {
+            if (e.getMessage().indexOf("Certificate revocation") < 0)
+            {
+                fail("wrong exception: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class CountingExecutor
+        extends ThreadPoolExecutor
+    {
+        volatile int submitted;
+
+        CountingExecutor()
+        {
+            super(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue());
+        }
+
+        public void execute(Runnable task)
+        {
+            submitted++;
+            super.execute(task);
+        }
+    }
+
+    public static void main(
+        String[] args)
+    {
+        Security.addProvider(new BouncyCastleProvider());
+
+        runTest(new CRLCacheTest());
+    }
+}
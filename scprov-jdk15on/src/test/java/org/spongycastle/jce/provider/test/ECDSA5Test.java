@@ -36,6 +36,9 @@ import org.spongycastle.asn1.teletrust.TeleTrusTObjectIdentifiers;
 import org.spongycastle.asn1.x509.SubjectPublicKeyInfo;
 import org.spongycastle.asn1.x9.X962Parameters;
 import org.spongycastle.asn1.x9.X9ObjectIdentifiers;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECKeyParameters;
+import org.spongycastle.jcajce.provider.asymmetric.ec.ECUtil;
 import org.spongycastle.jce.ECKeyUtil;
 import org.spongycastle.jce.ECPointUtil;
 import org.spongycastle.jce.provider.BouncyCastleProvider;
@@ -403,6 +406,65 @@ public class ECDSA5Test
         }
     }
 
+    private void testSharedGMultiplier()
+        throws Exception
+    {
+        KeyPair pair1 = generateKeyPair("prime256v1");
+        KeyPair pair2 = generateKeyPair("prime256v1");
+
+        ECDomainParameters params1 = ((ECKeyParameters)ECUtil.generatePrivateKeyParameter(pair1.getPrivate())).getParameters();
+        ECDomainParameters params2 = ((ECKeyParameters)ECUtil.generatePublicKeyParameter(pair2.getPublic())).getParameters();
+
+        if (params1 == params2)
+        {
+            fail("domain parameters unexpectedly shared");
+        }
+        if (params1.getGMultiplier() != params2.getGMultiplier())
+        {
+            fail("generator table not shared between key pairs");
+        }
+
+        // a key decoded again carries its own copy of the curve and generator
+        KeyFactory kFact = KeyFactory.getInstance("ECDSA", "SC");
+        PublicKey pub = kFact.generatePublic(new ECPublicKeySpec(((ECPublicKey)pair1.getPublic()).getW(), ((ECPublicKey)pair1.getPublic()).getParams()));
+
+        ECDomainParameters params3 = ((ECKeyParameters)ECUtil.generatePublicKeyParameter(pub)).getParameters();
+
+        if (params3.getG() == params1.getG())
+        {
+            fail("generator unexpectedly shared");
+        }
+        if (params3.getGMultiplier() != params1.getGMultiplier())
+        {
+            fail("generator table not shared with decoded key");
+        }
+
+        Signature s = Signature.getInstance("SHA256withECDSA", "SC");
+
+        s.initSign(pair1.getPrivate());
+        s.update(new byte[] { 1, 2, 3 });
+
+        byte[] sig = s.sign();
+
+        s.initVerify(pub);
+        s.update(new byte[] { 1, 2, 3 });
+
+        if (!s.verify(sig))
+        {
+            fail("signature with shared generator table failed to verify");
+        }
+    }
+
+    private KeyPair generateKeyPair(String curveName)
+        throws Exception
+    {
+        KeyPairGenerator kpGen = KeyPairGenerator.getInstance("ECDSA", "SC");
+
+        kpGen.initialize(new ECGenParameterSpec(curveName), new SecureRandom());
+
+        return kpGen.generateKeyPair();
+    }
+
     protected BigInteger[] derDecode(
         byte[]  encoding)
         throws IOException
@@ -433,6 +495,7 @@ public class ECDSA5Test
         testECDSA239bitBinary();
         testGeneration();
         testKeyPairGenerationWithOIDs();
+        testSharedGMultiplier();
     }
 
     public static void main(
@@ -0,0 +1,109 @@
+package org.spongycastle.jce.provider.test;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.spongycastle.asn1.x509.GeneralName;
+import org.spongycastle.asn1.x509.GeneralNames;
+import org.spongycastle.asn1.x509.IssuingDistributionPoint;
+import org.spongycastle.asn1.x509.X509Extensions;
+import org.spongycastle.asn1.x509.X509ExtensionsGenerator;
+import org.spongycastle.asn1.x509.X509Name;
+import org.spongycastle.jce.PrincipalUtil;
+import org.spongycastle.jce.provider.BouncyCastleProvider;
+import org.spongycastle.util.test.SimpleTest;
+import org.spongycastle.x509.X509V2CRLGenerator;
+
+public class IndirectCRLTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "IndirectCRL";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        KeyPair rootPair = TestUtils.generateRSAKeyPair();
+        KeyPair interPair = TestUtils.generateRSAKeyPair();
+        KeyPair endPair = TestUtils.generateRSAKeyPair();
+
+        X509Certificate rootCert = TestUtils.generateRootCert(rootPair);
+        X509Certificate interCert = TestUtils.generateIntermediateCert(interPair.getPublic(), rootPair.getPrivate(), rootCert);
+        X509Certificate endCert = TestUtils.generateEndEntityCert(endPair.getPublic(), interPair.getPrivate(), interCert);
+
+        //
+        // an indirect CRL from the root revoking serial number 1 for another CA first,
+        // then for the intermediate
+        //
+        X509V2CRLGenerator crlGen = new X509V2CRLGenerator();
+        Date now = new Date();
+
+        crlGen.setIssuerDN(PrincipalUtil.getSubjectX509Principal(rootCert));
+        crlGen.setThisUpdate(now);
+        crlGen.setNextUpdate(new Date(now.getTime() + 100000));
+        crlGen.setSignatureAlgorithm("SHA256WithRSAEncryption");
+
+        crlGen.addCRLEntry(BigInteger.valueOf(1), now, certificateIssuer(new X509Name("CN=Other CA")));
+        crlGen.addCRLEntry(BigInteger.valueOf(1), now, certificateIssuer(PrincipalUtil.getSubjectX509Principal(interCert)));
+        crlGen.addCRLEntry(BigInteger.valueOf(7), now, 0);
+
+        crlGen.addExtension(X509Extensions.IssuingDistributionPoint, true, new IssuingDistributionPoint(null, true, false));
+
+        byte[] encoding = crlGen.generate(rootPair.getPrivate(), "SC").getEncoded();
+
+        X509CRL crl = (X509CRL)CertificateFactory.getInstance("X.509", "SC").generateCRL(new ByteArrayInputStream(encoding));
+
+        if (!areEqual(encoding, crl.getEncoded()))
+        {
+            fail("encoding not preserved");
+        }
+
+        crl.verify(rootPair.getPublic(), "SC");
+
+        if (crl.getRevokedCertificates().size() != 3)
+        {
+            fail("wrong number of entries: " + crl.getRevokedCertificates().size());
+        }
+
+        if (!crl.isRevoked(endCert))
+        {
+            fail("certificate revoked by second entry for its serial number not found");
+        }
+
+        if (crl.isRevoked(interCert))
+        {
+            fail("certificate with revoked serial number from another issuer reported revoked");
+        }
+
+        // the entry without a certificateIssuer takes the issuer of the one before it
+        if (!crl.getRevokedCertificate(BigInteger.valueOf(7)).getCertificateIssuer().equals(interCert.getSubjectX500Principal()))
+        {
+            fail("wrong issuer for entry following certificateIssuer");
+        }
+    }
+
+    private X509Extensions certificateIssuer(X509Name issuer)
+    {
+        X509ExtensionsGenerator extGen = new X509ExtensionsGenerator();
+
+        extGen.addExtension(X509Extensions.CertificateIssuer, true, new GeneralNames(new GeneralName(issuer)));
+
+        return extGen.generate();
+    }
+
+    public static void main(
+        String[] args)
+    {
+        Security.addProvider(new BouncyCastleProvider());
+
+        runTest(new IndirectCRLTest());
+    }
+}
@@ -65,7 +65,10 @@ public class RegressionTest
         new SigNameTest(),
         new MQVTest(),
         new CMacTest(),
-        new CRL5Test()
+        new CRL5Test(),
+        new CRLCacheTest(),
+        new ValidationCacheTest(),
+        new IndirectCRLTest()
     };
 
     public static void main(
@@ -0,0 +1,321 @@
+package org.spongycastle.jce.provider.test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.cert.CertPath;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertStore;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXCertPathChecker;
+import java.security.cert.PKIXCertPathValidatorResult;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.spongycastle.jce.provider.BouncyCastleProvider;
+import org.spongycastle.jce.provider.PKIXValidationCache;
+import org.spongycastle.util.test.SimpleTest;
+import org.spongycastle.x509.ExtendedPKIXParameters;
+
+public class ValidationCacheTest
+    extends SimpleTest
+{
+    public String getName()
+    {
+        return "ValidationCache";
+    }
+
+    public void performTest()
+        throws Exception
+    {
+        KeyPair rootPair = TestUtils.generateRSAKeyPair();
+        KeyPair interPair = TestUtils.generateRSAKeyPair();
+        KeyPair endPair = TestUtils.generateRSAKeyPair();
+
+        X509Certificate rootCert = TestUtils.generateRootCert(rootPair);
+        X509Certificate interCert = TestUtils.generateIntermediateCert(interPair.getPublic(), rootPair.getPrivate(), rootCert);
+        X509Certificate endCert = TestUtils.generateEndEntityCert(endPair.getPublic(), interPair.getPrivate(), interCert);
+
+        X509CRL rootCRL = TestUtils.createCRL(rootCert, rootPair.getPrivate(), BigInteger.valueOf(2));
+        X509CRL interCRL = TestUtils.createCRL(interCert, interPair.getPrivate(), BigInteger.valueOf(2));
+
+        // the end entity certificate has serial number 1
+        X509CRL revokingCRL = TestUtils.createCRL(interCert, interPair.getPrivate(), BigInteger.valueOf(1));
+
+        CertPath path = CertificateFactory.getInstance("X.509", "SC").generateCertPath(
+            Arrays.asList(new X509Certificate[] { endCert, interCert }));
+
+        PKIXValidationCache cache = new PKIXValidationCache();
+
+        ExtendedPKIXParameters params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+
+        PKIXCertPathValidatorResult first = validate(path, params);
+        PKIXCertPathValidatorResult second = validate(path, params);
+
+        if (cache.size() != 1)
+        {
+            fail("expected one cached result, found " + cache.size());
+        }
+
+        if (!second.getPublicKey().equals(first.getPublicKey()) || second.getTrustAnchor() != first.getTrustAnchor())
+        {
+            fail("cached result does not match");
+        }
+
+        // the same path checked with other parameters is validated again
+        params.setUseDeltasEnabled(true);
+
+        validate(path, params);
+
+        if (cache.size() != 2)
+        {
+            fail("expected a result for each set of parameters, found " + cache.size());
+        }
+
+        // nor are validations at a fixed date, which the cache's expiry says nothing about
+        params.setDate(new Date());
+
+        validate(path, params);
+
+        if (cache.size() != 2)
+        {
+            fail("validation at a fixed date cached");
+        }
+
+        // a path of other certificates is rejected as it would be without the cache
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+
+        try
+        {
+            validate(new OtherCertPath(interCert), params);
+
+            fail("non X.509 path accepted");
+        }
+        catch (CertPathValidatorException e)
+        {
+            if (e.getIndex() != 0)
+            {
+                fail("wrong index for non X.509 certificate: " + e.getIndex());
+            }
+        }
+
+        // a set of the same anchor twice is not the same as one with neither
+        Set anchors = new HashSet();
+
+        anchors.add(new TrustAnchor(rootCert, null));
+        anchors.add(new TrustAnchor(rootCert, null));
+        anchors.add(new TrustAnchor(interCert, null));
+
+        cache.clear();
+
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+        params.setTrustAnchors(Collections.singleton(new TrustAnchor(interCert, null)));
+
+        CertPath endPath = CertificateFactory.getInstance("X.509", "SC").generateCertPath(
+            Collections.singletonList(endCert));
+
+        validate(endPath, params);
+
+        params.setTrustAnchors(anchors);
+
+        validate(endPath, params);
+
+        if (cache.size() != 2)
+        {
+            fail("different trust anchor sets share a result");
+        }
+
+        // failed validations are not cached
+        cache.clear();
+
+        params = createParams(rootCert, interCert, endCert, rootCRL, revokingCRL, cache);
+
+        checkRevoked(path, params);
+        checkRevoked(path, params);
+
+        if (cache.size() != 0)
+        {
+            fail("revoked path cached");
+        }
+
+        // nor are validations with path checkers
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+        params.addCertPathChecker(new AcceptingChecker());
+
+        validate(path, params);
+        validate(path, params);
+
+        if (cache.size() != 0)
+        {
+            fail("validation with path checker cached");
+        }
+
+        // the least recently used result is dropped when the cache is full
+        cache = new PKIXValidationCache(1);
+
+        params = createParams(rootCert, interCert, endCert, rootCRL, interCRL, cache);
+
+        validate(path, params);
+
+        params.setUseDeltasEnabled(true);
+
+        validate(path, params);
+
+        if (cache.size() != 1)
+        {
+            fail("cache exceeded its size, found " + cache.size());
+        }
+    }
+
+    private ExtendedPKIXParameters createParams(X509Certificate rootCert, X509Certificate interCert, X509Certificate endCert,
+        X509CRL rootCRL, X509CRL interCRL, PKIXValidationCache cache)
+        throws Exception
+    {
+        List list = new ArrayList();
+
+        list.add(rootCert);
+        list.add(interCert);
+        list.add(endCert);
+        list.add(rootCRL);
+        list.add(interCRL);
+
+        CertStore store = CertStore.getInstance("Collection", new CollectionCertStoreParameters(list), "SC");
+
+        ExtendedPKIXParameters params = new ExtendedPKIXParameters(Collections.singleton(new TrustAnchor(rootCert, null)));
+
+        params.addCertStore(store);
+        params.setValidationCache(cache);
+
+        return params;
+    }
+
+    private PKIXCertPathValidatorResult validate(CertPath path, ExtendedPKIXParameters params)
+        throws Exception
+    {
+        return (PKIXCertPathValidatorResult)CertPathValidator.getInstance("PKIX", "SC").validate(path, params);
+    }
+
+    private void checkRevoked(CertPath path, ExtendedPKIXParameters params)
+        throws Exception
+    {
+        try
+        {
+            validate(path, params);
+
+            fail("revoked certificate accepted");
+        }
+        catch (CertPathValidatorException e)
+        {
+            if (e.getMessage().indexOf("Certificate revocation") < 0)
+            {
+                fail("wrong exception: " + e.getMessage());
+            }
+        }
+    }
+
+    private static class AcceptingChecker
+        extends PKIXCertPathChecker
+    {
+        public void init(boolean forward)
+        {
+        }
+
+        public boolean isForwardCheckingSupported()
+        {
+            return true;
+        }
+
+        public Set getSupportedExtensions()
+        {
+            return null;
+        }
+
+        public void check(Certificate cert, Collection unresolvedCritExts)
+        {
+        }
+    }
+
+    /*
+     * A path holding a certificate which is not an X.509 one.
+     */
+    private static class OtherCertPath
+        extends CertPath
+    {
+        private final List certs;
+
+        OtherCertPath(final X509Certificate cert)
+        {
+            super("Other");
+
+            this.certs = Collections.singletonList(new Certificate("Other")
+            {
+                public byte[] getEncoded()
+                    throws CertificateEncodingException
+                {
+                    return cert.getEncoded();
+                }
+
+                public void verify(PublicKey key)
+                {
+                }
+
+                public void verify(PublicKey key, String sigProvider)
+                {
+                }
+
+                public String toString()
+                {
+                    return "Other";
+                }
+
+                public PublicKey getPublicKey()
+                {
+                    return cert.getPublicKey();
+                }
+            });
+        }
+
+        public Iterator getEncodings()
+        {
+            return Collections.EMPTY_LIST.iterator();
+        }
+
+        public byte[] getEncoded()
+        {
+            return new byte[0];
+        }
+
+        public byte[] getEncoded(String encoding)
+        {
+            return new byte[0];
+        }
+
+        public List getCertificates()
+        {
+            return certs;
+        }
+    }
+
+    public static void main(
+        String[] args)
+    {
+        Security.addProvider(new BouncyCastleProvider());
+
+        runTest(new ValidationCacheTest());
+    }
+}